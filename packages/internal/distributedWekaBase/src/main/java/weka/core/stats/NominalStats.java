@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import weka.core.Attribute;
+import weka.core.HeavyHitterSketch;
 import weka.core.Utils;
 import weka.distributed.CSVToARFFHeaderMapTask;
 
@@ -46,6 +47,19 @@ public class NominalStats extends Stats implements Serializable {
   /** The number of missing values for this nominal attribute */
   protected double m_numMissing;
 
+  /**
+   * Maximum number of distinct labels to keep exact counts for (0 = no
+   * limit). Once exceeded, counts are kept for (approximately) the most
+   * frequent labels only
+   */
+  protected int m_maxLabels;
+
+  /**
+   * Bounded memory counts, used in place of m_counts once the number of
+   * distinct labels exceeds m_maxLabels
+   */
+  protected HeavyHitterSketch m_sketch;
+
   /** A "label" to use when storing the number of missing values */
   public static final String MISSING_LABEL = "**missing**";
 
@@ -76,6 +90,138 @@ public class NominalStats extends Stats implements Serializable {
     super(attributeName);
   }
 
+  /**
+   * Constructs a new NominalStats that keeps counts for at most the given
+   * number of labels
+   * 
+   * @param attributeName the name of the data attribute that these stats
+   *          pertain to
+   * @param maxLabels the maximum number of labels to keep counts for (0 = no
+   *          limit)
+   */
+  public NominalStats(String attributeName, int maxLabels) {
+    super(attributeName);
+    m_maxLabels = maxLabels;
+  }
+
+  /**
+   * Set the maximum number of labels to keep counts for. When the number of
+   * distinct labels exceeds this, only the (approximately) most frequent ones
+   * are kept, using a heavy hitters sketch. Counts for the labels retained are
+   * then upper bounds on the true counts.
+   * 
+   * @param maxLabels the maximum number of labels (0 = no limit)
+   */
+  public void setMaxLabels(int maxLabels) {
+    m_maxLabels = maxLabels;
+    checkLabelLimit();
+  }
+
+  /**
+   * Get the maximum number of labels to keep counts for
+   * 
+   * @return the maximum number of labels (0 = no limit)
+   */
+  public int getMaxLabels() {
+    return m_maxLabels;
+  }
+
+  /**
+   * Returns true if the number of distinct labels has exceeded the limit, in
+   * which case counts are only kept for the most frequent labels and may be
+   * overestimates
+   * 
+   * @return true if counts are approximate
+   */
+  public boolean isApproximate() {
+    return m_sketch != null && !m_sketch.isExact();
+  }
+
+  /**
+   * Switch from exact counts to a heavy hitters sketch if the number of
+   * distinct labels exceeds the limit
+   */
+  protected void checkLabelLimit() {
+    if (m_sketch == null && m_maxLabels > 0 && m_counts.size() > m_maxLabels) {
+      useSketch();
+    }
+  }
+
+  /**
+   * Move the exact counts into a heavy hitters sketch
+   */
+  protected void useSketch() {
+    m_sketch = sketchOf(m_counts, m_maxLabels);
+    m_counts.clear();
+  }
+
+  /**
+   * Make a heavy hitters sketch holding the given counts
+   * 
+   * @param counts the counts
+   * @param capacity the capacity of the sketch
+   * @return the sketch
+   */
+  protected static HeavyHitterSketch sketchOf(
+    Map<String, NominalStats.Count> counts, int capacity) {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(capacity);
+    for (Map.Entry<String, NominalStats.Count> e : counts.entrySet()) {
+      sketch.add(e.getKey(), e.getValue().m_count);
+    }
+    return sketch;
+  }
+
+  /**
+   * Merge the counts of another NominalStats into this one. Exact counts are
+   * added up for as long as the number of distinct labels stays within the
+   * limit of this NominalStats. Otherwise the counts are merged as heavy
+   * hitters sketches, which keeps the (over-)estimates of the sketches
+   * bounded.
+   * 
+   * @param other the stats to merge
+   */
+  public void merge(NominalStats other) {
+    m_numMissing += other.m_numMissing;
+    if (m_sketch == null && other.m_sketch == null) {
+      for (Map.Entry<String, NominalStats.Count> e : other.m_counts
+        .entrySet()) {
+        add(e.getKey(), e.getValue().m_count);
+      }
+      return;
+    }
+
+    if (m_sketch == null) {
+      if (m_maxLabels <= 0) {
+        // no limit here, so keep the labels that the other one has counted
+        m_maxLabels = other.m_sketch.getCapacity();
+      }
+      useSketch();
+    }
+    m_sketch.merge(other.m_sketch != null ? other.m_sketch : sketchOf(
+      other.m_counts, m_maxLabels));
+  }
+
+  /**
+   * Get the label counts, sorted by label. If a sketch is in use, the counts
+   * are extracted from it.
+   * 
+   * @return a map of labels to counts
+   */
+  protected Map<String, NominalStats.Count> counts() {
+    if (m_sketch == null) {
+      return m_counts;
+    }
+
+    Map<String, NominalStats.Count> result =
+      new TreeMap<String, NominalStats.Count>();
+    for (String label : m_sketch.getItems()) {
+      Count c = new Count();
+      c.m_count = m_sketch.getCount(label);
+      result.put(label, c);
+    }
+    return result;
+  }
+
   /**
    * Convert a summary meta attribute to a NominalStats
    * 
@@ -85,12 +231,31 @@ public class NominalStats extends Stats implements Serializable {
    */
   public static NominalStats attributeToStats(Attribute a)
     throws IllegalArgumentException {
+    return attributeToStats(a, 0);
+  }
+
+  /**
+   * Convert a summary meta attribute to a NominalStats that keeps counts for
+   * at most the given number of labels. If the attribute has counts for as
+   * many labels as the limit, they may have been produced by a heavy hitters
+   * sketch (so that other labels may have been seen too). They are therefore
+   * held in a sketch, so that merging them with other stats accounts for the
+   * labels that may be missing.
+   * 
+   * @param a the attribute to convert
+   * @param maxLabels the maximum number of labels to keep counts for (0 = no
+   *          limit)
+   * @return a NominalStats
+   * @throws IllegalArgumentException if a problem occurs
+   */
+  public static NominalStats attributeToStats(Attribute a, int maxLabels)
+    throws IllegalArgumentException {
 
     if (!a.isNominal()) {
       throw new IllegalArgumentException("Stats attribute is not nominal!");
     }
 
-    NominalStats ns = new NominalStats(a.name());
+    NominalStats ns = new NominalStats(a.name(), maxLabels);
     for (int j = 0; j < a.numValues(); j++) {
       String v = a.value(j);
       String label = v.substring(0, v.lastIndexOf("_"));
@@ -106,6 +271,10 @@ public class NominalStats extends Stats implements Serializable {
         throw new IllegalArgumentException(n);
       }
     }
+    if (ns.m_sketch == null && maxLabels > 0
+      && ns.m_counts.size() >= maxLabels) {
+      ns.useSketch();
+    }
 
     return ns;
   }
@@ -121,15 +290,19 @@ public class NominalStats extends Stats implements Serializable {
 
     if (label == null) {
       m_numMissing += value;
+    } else if (m_sketch != null) {
+      m_sketch.add(label, value);
     } else {
 
       NominalStats.Count c = m_counts.get(label);
       if (c == null) {
         c = new Count();
+        c.m_count = value;
         m_counts.put(label, c);
+        checkLabelLimit();
+      } else {
+        c.m_count += value;
       }
-
-      c.m_count += value;
     }
   }
 
@@ -139,7 +312,7 @@ public class NominalStats extends Stats implements Serializable {
    * @return the set of labels
    */
   public Set<String> getLabels() {
-    return m_counts.keySet();
+    return counts().keySet();
   }
 
   /**
@@ -149,6 +322,10 @@ public class NominalStats extends Stats implements Serializable {
    * @return the count or missing value if the label is unknown
    */
   public double getCount(String label) {
+    if (m_sketch != null) {
+      return m_sketch.contains(label) ? m_sketch.getCount(label) : Utils
+        .missingValue();
+    }
     NominalStats.Count c = m_counts.get(label);
 
     if (c == null) {
@@ -177,7 +354,7 @@ public class NominalStats extends Stats implements Serializable {
     int maxIndex = -1;
 
     int index = 0;
-    for (Map.Entry<String, NominalStats.Count> e : m_counts.entrySet()) {
+    for (Map.Entry<String, NominalStats.Count> e : counts().entrySet()) {
       if (e.getValue().m_count > max) {
         max = e.getValue().m_count;
         maxIndex = index;
@@ -197,7 +374,7 @@ public class NominalStats extends Stats implements Serializable {
     double max = -1;
     String maxLabel = "";
 
-    for (Map.Entry<String, NominalStats.Count> e : m_counts.entrySet()) {
+    for (Map.Entry<String, NominalStats.Count> e : counts().entrySet()) {
       if (e.getValue().m_count > max) {
         max = e.getValue().m_count;
         maxLabel = e.getKey();
@@ -220,7 +397,7 @@ public class NominalStats extends Stats implements Serializable {
   public Attribute makeAttribute() {
     ArrayList<String> vals = new ArrayList<String>();
 
-    for (Map.Entry<String, NominalStats.Count> e : m_counts.entrySet()) {
+    for (Map.Entry<String, NominalStats.Count> e : counts().entrySet()) {
       vals.add(e.getKey() + "_" + e.getValue().m_count);
     }
 
@@ -165,6 +165,12 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
   protected boolean m_estimateQuantiles = false;
   /** The compression level for the TDigest quantile estimator */
   protected double m_quantileCompression = NumericStats.Q_COMPRESSION;
+
+  /**
+   * Maximum number of distinct labels to keep counts for in the summary
+   * statistics for nominal attributes (0 = no limit)
+   */
+  protected int m_maxNominalSummaryLabels;
   protected int m_parsingErrors;
 
   /**
@@ -218,6 +224,32 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
     String attName, double value, String nominalLabel, boolean isNominal,
     boolean isString, boolean treatZeroAsMissing, boolean estimateQuantiles,
     double quantileCompression) {
+    updateSummaryStats(summaryStats, attName, value, nominalLabel, isNominal,
+      isString, treatZeroAsMissing, estimateQuantiles, quantileCompression, 0);
+  }
+
+  /**
+   * Update the summary statistics for a given attribute with the given value
+   *
+   * @param summaryStats the map of summary statistics
+   * @param attName the name of the attribute being updated
+   * @param value the value to update with (if the attribute is numeric)
+   * @param nominalLabel holds the label/string for the attribute (if it is
+   *          nominal or string)
+   * @param isNominal true if the attribute is nominal
+   * @param isString true if the attribute is a string attribute
+   * @param treatZeroAsMissing treats zero as missing value for numeric
+   *          attributes
+   * @param estimateQuantiles true if we should estimate quantiles too
+   * @param quantileCompression the compression level to use in the TDigest
+   *          estimators
+   * @param maxNominalLabels the maximum number of distinct labels to keep
+   *          counts for in nominal summary stats (0 = no limit)
+   */
+  public static void updateSummaryStats(Map<String, Stats> summaryStats,
+    String attName, double value, String nominalLabel, boolean isNominal,
+    boolean isString, boolean treatZeroAsMissing, boolean estimateQuantiles,
+    double quantileCompression, int maxNominalLabels) {
     Stats s = summaryStats.get(attName);
 
     if (!isNominal && !isString) {
@@ -251,7 +283,7 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
       // nominal attribute
 
       if (s == null) {
-        s = new NominalStats(attName);
+        s = new NominalStats(attName, maxNominalLabels);
         summaryStats.put(attName, s);
       }
 
@@ -271,7 +303,7 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
 
         // need to replace this with NominalStats and transfer over the missing
         // count
-        s = new NominalStats(attName);
+        s = new NominalStats(attName, maxNominalLabels);
         ((NominalStats) s).add(null, missing);
         summaryStats.put(attName, s);
       }
@@ -376,7 +408,9 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
     for (int i = 0; i < tasks.size(); i++) {
       toCombine.add(tasks.get(i).getHeader());
     }
-    combinedHeaders = CSVToARFFHeaderReduceTask.aggregate(toCombine);
+    combinedHeaders =
+      CSVToARFFHeaderReduceTask.aggregate(toCombine,
+        master.getMaxNominalSummaryLabels());
 
     Map<String, TDigest> mergedDigests = new HashMap<String, TDigest>();
     if (master.getComputeQuartilesAsPartOfSummaryStats()) {
@@ -448,6 +482,13 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
       + "\tUse the same format [index range | name list]:<default label>.",
       "default-label", 1, "-default-label <spec>"));
 
+    result.add(new Option(
+      "\tMaximum number of distinct labels to keep counts for in the\n"
+        + "\tsummary statistics of nominal attributes. Beyond this, counts\n"
+        + "\tare kept (approximately) for the most frequent labels only.\n"
+        + "\t(default: 0 = no limit)", "max-nominal-summary-labels", 1,
+      "-max-nominal-summary-labels <num>"));
+
     result.add(new Option(
       "\tThe range of attribute to force type to be STRING.\n"
         + "\t'first' and 'last' are accepted as well.\n"
@@ -552,6 +593,11 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
       result.add("-treat-zeros-as-missing");
     }
 
+    if (getMaxNominalSummaryLabels() > 0) {
+      result.add("-max-nominal-summary-labels");
+      result.add("" + getMaxNominalSummaryLabels());
+    }
+
     for (String spec : m_nominalLabelSpecs) {
       result.add("-L");
       result.add(spec);
@@ -618,6 +664,13 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
 
     setTreatZerosAsMissing(Utils.getFlag("treat-zeros-as-missing", options));
 
+    tmpStr = Utils.getOption("max-nominal-summary-labels", options);
+    if (tmpStr.length() > 0) {
+      setMaxNominalSummaryLabels(Integer.parseInt(tmpStr));
+    } else {
+      setMaxNominalSummaryLabels(0);
+    }
+
     if (!m_suppressQuantileOptions) {
       setComputeQuartilesAsPartOfSummaryStats(Utils.getFlag(
         "compute-quartiles", options)); //$NON-NLS-1$
@@ -692,6 +745,40 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
     m_treatZeroAsMissing = t;
   }
 
+  /**
+   * Get the maximum number of distinct labels to keep counts for in the
+   * summary statistics of nominal attributes
+   *
+   * @return the maximum number of labels (0 = no limit)
+   */
+  public int getMaxNominalSummaryLabels() {
+    return m_maxNominalSummaryLabels;
+  }
+
+  /**
+   * Set the maximum number of distinct labels to keep counts for in the
+   * summary statistics of nominal attributes. Beyond this, a heavy hitters
+   * sketch keeps approximate counts for the most frequent labels only.
+   *
+   * @param max the maximum number of labels (0 = no limit)
+   */
+  public void setMaxNominalSummaryLabels(int max) {
+    m_maxNominalSummaryLabels = max;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxNominalSummaryLabelsTipText() {
+    return "The maximum number of distinct labels to keep counts for in the "
+      + "summary statistics of nominal attributes (0 = no limit). Beyond "
+      + "this, approximate counts are kept for the most frequent labels "
+      + "only, which bounds memory for high cardinality attributes.";
+  }
+
   /**
    * Get the compression level to use in the TDigest quantile estimators
    *
@@ -1154,7 +1241,8 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
             if (m_computeSummaryStats) {
               updateSummaryStats(m_summaryStats, m_attributeNames.get(i),
                 value, null, false, false, m_treatZeroAsMissing,
-                m_estimateQuantiles, m_quantileCompression);
+                m_estimateQuantiles, m_quantileCompression,
+                m_maxNominalSummaryLabels);
             }
           } catch (NumberFormatException ex) {
 
@@ -1176,14 +1264,16 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
               if (m_computeSummaryStats) {
                 updateSummaryStats(m_summaryStats, m_attributeNames.get(i), 1,
                   toAdd, true, false, m_treatZeroAsMissing,
-                  m_estimateQuantiles, m_quantileCompression);
+                  m_estimateQuantiles, m_quantileCompression,
+                  m_maxNominalSummaryLabels);
               }
             } else {
               m_attributeTypes[i] = TYPE.STRING;
               if (m_computeSummaryStats) {
                 updateSummaryStats(m_summaryStats, m_attributeNames.get(i), 1,
                   fieldVals[i].toString(), false, true, m_treatZeroAsMissing,
-                  m_estimateQuantiles, m_quantileCompression);
+                  m_estimateQuantiles, m_quantileCompression,
+                  m_maxNominalSummaryLabels);
               }
             }
           }
@@ -1200,7 +1290,8 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
           if (m_computeSummaryStats) {
             updateSummaryStats(m_summaryStats, m_attributeNames.get(i),
               d.getTime(), null, false, false, m_treatZeroAsMissing,
-              m_estimateQuantiles, m_quantileCompression);
+              m_estimateQuantiles, m_quantileCompression,
+              m_maxNominalSummaryLabels);
           }
 
         } else if (m_attributeTypes[i] == TYPE.NOMINAL) {
@@ -1214,21 +1305,24 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
             if (m_computeSummaryStats) {
               updateSummaryStats(m_summaryStats, m_attributeNames.get(i), 1,
                 toUpdate, true, false, m_treatZeroAsMissing,
-                m_estimateQuantiles, m_quantileCompression);
+                m_estimateQuantiles, m_quantileCompression,
+                m_maxNominalSummaryLabels);
             }
           } else {
             m_nominalVals.get(i).add(fieldVals[i].toString());
             if (m_computeSummaryStats) {
               updateSummaryStats(m_summaryStats, m_attributeNames.get(i), 1,
                 fieldVals[i].toString(), true, false, m_treatZeroAsMissing,
-                m_estimateQuantiles, m_quantileCompression);
+                m_estimateQuantiles, m_quantileCompression,
+                m_maxNominalSummaryLabels);
             }
           }
         } else if (m_attributeTypes[i] == TYPE.STRING) {
           if (m_computeSummaryStats) {
             updateSummaryStats(m_summaryStats, m_attributeNames.get(i), 1,
               fieldVals[i].toString(), false, true, m_treatZeroAsMissing,
-              m_estimateQuantiles, m_quantileCompression);
+              m_estimateQuantiles, m_quantileCompression,
+              m_maxNominalSummaryLabels);
           }
         }
       } else {
@@ -1237,7 +1331,8 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
           updateSummaryStats(m_summaryStats, m_attributeNames.get(i),
             Utils.missingValue(), null, m_attributeTypes[i] == TYPE.NOMINAL,
             m_attributeTypes[i] == TYPE.STRING, m_treatZeroAsMissing,
-            m_estimateQuantiles, m_quantileCompression);
+            m_estimateQuantiles, m_quantileCompression,
+            m_maxNominalSummaryLabels);
         }
       }
     }
@@ -1673,6 +1768,7 @@ public class CSVToARFFHeaderMapTask implements OptionHandler, Serializable {
         Stats s = null;
         if (origAtt.isNominal()) {
           s = NominalStats.attributeToStats(summaryAtt);
+          ((NominalStats) s).setMaxLabels(m_maxNominalSummaryLabels);
         } else if (origAtt.isString()) {
           s = StringStats.attributeToStats(summaryAtt);
         } else if (origAtt.isNumeric()) {
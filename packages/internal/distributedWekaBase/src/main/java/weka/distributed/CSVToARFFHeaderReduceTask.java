@@ -73,6 +73,26 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
   public static Instances aggregateHeadersAndQuartiles(
     List<HeaderAndQuantileDataHolder> toAggregate)
     throws DistributedWekaException {
+    return aggregateHeadersAndQuartiles(toAggregate, 0);
+  }
+
+  /**
+   * Performs aggregation over a list of header and quantile data holder
+   * objects. Produces a final aggregated heaer with quantile and histogram data
+   * + normal stats for numeric attributes.
+   * 
+   * @param toAggregate the list of header and quantile data holders to
+   *          aggregate over
+   * @param maxNominalSummaryLabels the maximum number of labels to keep counts
+   *          for in the summary of a nominal attribute (0 = no limit). Should
+   *          be the same as the map tasks used.
+   * @return a final aggregated header with normal stats plus quantiles and
+   *         histograms for numeric attributes
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public static Instances aggregateHeadersAndQuartiles(
+    List<HeaderAndQuantileDataHolder> toAggregate, int maxNominalSummaryLabels)
+    throws DistributedWekaException {
 
     // do the headers first
     List<Instances> headerList = new ArrayList<Instances>();
@@ -80,7 +100,7 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
       headerList.add(h.getHeader());
     }
 
-    Instances aggregatedHeader = aggregate(headerList);
+    Instances aggregatedHeader = aggregate(headerList, maxNominalSummaryLabels);
     ArrayList<Attribute> newAtts = new ArrayList<Attribute>();
 
     Instances noSummary = stripSummaryAtts(aggregatedHeader);
@@ -163,6 +183,23 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
    */
   public static Instances aggregate(List<Instances> headers)
     throws DistributedWekaException {
+    return aggregate(headers, 0);
+  }
+
+  /**
+   * Aggregates a list of Instances (headers) into a final Instances object.
+   * The counts of nominal summary attributes are merged as heavy hitters
+   * sketches once they exceed the given number of labels.
+   * 
+   * @param headers a list of headers to aggregate
+   * @param maxNominalSummaryLabels the maximum number of labels to keep counts
+   *          for in the summary of a nominal attribute (0 = no limit). Should
+   *          be the same as the map tasks used.
+   * @return a unified header as an Instances object
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public static Instances aggregate(List<Instances> headers,
+    int maxNominalSummaryLabels) throws DistributedWekaException {
 
     if (headers.size() == 0) {
       throw new DistributedWekaException("Nothing to aggregate!");
@@ -322,7 +359,8 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
 
     // Any summary stats atts?
     List<Attribute> summaryStats =
-      aggregateSummaryStats(headers, masterHeaderCheck);
+      aggregateSummaryStats(headers, masterHeaderCheck,
+        maxNominalSummaryLabels);
     for (Attribute a : summaryStats) {
       attribs.add(a);
     }
@@ -517,12 +555,14 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
    * 
    * @param headers the headers to aggregate
    * @param masterHeaderCheck the reference header with final types determined
+   * @param maxNominalSummaryLabels the maximum number of labels to keep
+   *          counts for in the summary of a nominal attribute (0 = no limit)
    * @return a list of aggregated Stats objects
    * @throws DistributedWekaException if a problem occurs
    */
   protected static List<Attribute> aggregateSummaryStats(
-    List<Instances> headers, Instances masterHeaderCheck)
-    throws DistributedWekaException {
+    List<Instances> headers, Instances masterHeaderCheck,
+    int maxNominalSummaryLabels) throws DistributedWekaException {
     List<Attribute> aggregated = new ArrayList<Attribute>();
     Map<String, Stats> aggStats =
       new LinkedHashMap<String, Stats>();
@@ -591,7 +631,7 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
           NominalStats ns =
             (NominalStats) aggStats.get(original.name());
           if (ns == null) {
-            ns = new NominalStats(original.name());
+            ns = new NominalStats(original.name(), maxNominalSummaryLabels);
             aggStats.put(original.name(), ns);
           }
 
@@ -613,23 +653,13 @@ public class CSVToARFFHeaderReduceTask implements Serializable {
                 .ordinal()];
             ns.add(null, missing);
           } else {
-
-            for (int j = 0; j < current.numValues(); j++) {
-              String v = current.value(j);
-              String label = v.substring(0, v.lastIndexOf("_"));
-              String freqCount =
-                v.substring(v.lastIndexOf("_") + 1, v.length());
-              try {
-                double fC = Double.parseDouble(freqCount);
-                if (label
-                  .equals(NominalStats.MISSING_LABEL)) {
-                  ns.add(null, fC);
-                } else {
-                  ns.add(label, fC);
-                }
-              } catch (NumberFormatException n) {
-                throw new DistributedWekaException(n);
-              }
+            // partial counts may come from heavy hitters sketches, which
+            // need to be merged rather than added up
+            try {
+              ns.merge(NominalStats.attributeToStats(current,
+                maxNominalSummaryLabels));
+            } catch (IllegalArgumentException ex) {
+              throw new DistributedWekaException(ex);
             }
           }
         } else if (original.isString()) {
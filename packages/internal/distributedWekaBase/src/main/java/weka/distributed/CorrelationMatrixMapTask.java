@@ -21,6 +21,8 @@
 
 package weka.distributed;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -28,6 +30,7 @@ import java.util.List;
 import java.util.Vector;
 
 import weka.core.Attribute;
+import weka.core.CovarianceAccumulator;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -84,6 +87,21 @@ public class CorrelationMatrixMapTask implements Serializable, OptionHandler {
   /** Holds the mean for each numeric attribute */
   protected double[] m_means;
 
+  /**
+   * Rows (centred on the means) waiting to be added to the matrix, stored by
+   * column. Missing values are stored as zero.
+   */
+  protected transient double[][] m_block;
+
+  /**
+   * Indicators of non-missing values for the rows in m_block (only used when
+   * ignoring missing values)
+   */
+  protected transient double[][] m_presentBlock;
+
+  /** The number of rows in m_block */
+  protected transient int m_blockRows;
+
   @Override
   public Enumeration<Option> listOptions() {
     Vector<Option> opts = new Vector<Option>();
@@ -215,6 +233,7 @@ public class CorrelationMatrixMapTask implements Serializable, OptionHandler {
    * @return the matrix
    */
   public double[][] getMatrix() {
+    flush();
     return m_corrMatrix;
   }
 
@@ -225,49 +244,58 @@ public class CorrelationMatrixMapTask implements Serializable, OptionHandler {
    *         means
    */
   public int[][] getCoOccurrenceCounts() {
+    flush();
     return m_coOccurrenceCounts;
   }
 
   /**
-   * Computes the partial covariance for two attributes on the current instance
-   * 
-   * @param inst the instance to update from
-   * @param i attribute i
-   * @param j attribute j
-   * @return the covariance update
+   * Performs a "combine" operation using the supplied partial
+   * CorrelationMatrixMapTasks. The partial covariance sums (and co-occurrence
+   * counts, if missing values are being ignored) are summed into the first
+   * task in the list, exactly as CorrelationMatrixRowReduceTask does for each
+   * row of the matrix. This allows partial reduces to occur in parallel (e.g.
+   * in a tree) before the final rows are computed.
+   *
+   * @param tasks a list of CorrelationMatrixMapTasks to "combine"
+   * @return a CorrelationMatrixMapTask with the merged state
+   * @throws DistributedWekaException if a problem occurs
    */
-  protected double cov(Instance inst, int i, int j) {
-    double iV = inst.value(i);
-    double jV = inst.value(j);
-
-    if (Utils.isMissingValue(iV)) {
-      if (m_replaceMissingWithMean) {
-        iV = m_means[i];
-      } else {
-        return 0; // skip missing
-      }
+  public static CorrelationMatrixMapTask combine(
+    List<CorrelationMatrixMapTask> tasks) throws DistributedWekaException {
+    if (tasks == null || tasks.size() == 0) {
+      throw new DistributedWekaException(
+        "[CorrelationMatrixMapTask:combine] no tasks to combine!");
     }
 
-    if (Utils.isMissingValue(jV)) {
-      if (m_replaceMissingWithMean) {
-        jV = m_means[j];
-      } else {
-        return 0; // skip missing
+    CorrelationMatrixMapTask master = tasks.get(0);
+    master.flush();
+    for (int k = 1; k < tasks.size(); k++) {
+      CorrelationMatrixMapTask t = tasks.get(k);
+      t.flush();
+      if (t.m_corrMatrix.length != master.m_corrMatrix.length
+        || (t.m_coOccurrenceCounts == null)
+          != (master.m_coOccurrenceCounts == null)) {
+        throw new DistributedWekaException(
+          "[CorrelationMatrixMapTask:combine] tasks have not been "
+            + "configured in the same way!");
       }
-    }
 
-    iV -= m_means[i];
-    jV -= m_means[j];
-
-    if (!m_replaceMissingWithMean) {
-      m_coOccurrenceCounts[i][j]++;
+      for (int i = 0; i < master.m_corrMatrix.length; i++) {
+        for (int j = 0; j < master.m_corrMatrix[i].length; j++) {
+          master.m_corrMatrix[i][j] += t.m_corrMatrix[i][j];
+          if (master.m_coOccurrenceCounts != null) {
+            master.m_coOccurrenceCounts[i][j] += t.m_coOccurrenceCounts[i][j];
+          }
+        }
+      }
     }
 
-    return iV * jV;
+    return master;
   }
 
   /**
-   * Process an instance
+   * Process an instance. Instances are buffered and added to the matrix a
+   * block at a time.
    * 
    * @param inst the instance to process
    * @throws Exception if a problem occurs
@@ -278,11 +306,57 @@ public class CorrelationMatrixMapTask implements Serializable, OptionHandler {
       inst = m_remove.output();
     }
 
-    for (int i = 0; i < inst.numAttributes(); i++) {
-      for (int j = 0; j < (i + 1); j++) {
-        m_corrMatrix[i][j] += cov(inst, i, j);
+    int numAtts = m_corrMatrix.length;
+    if (m_block == null) {
+      m_block = new double[numAtts][CovarianceAccumulator.BLOCK_ROWS];
+      if (!m_replaceMissingWithMean) {
+        m_presentBlock =
+          new double[numAtts][CovarianceAccumulator.BLOCK_ROWS];
       }
     }
+
+    // a missing value contributes nothing to the sums, whether it is
+    // replaced by the mean or ignored
+    for (int i = 0; i < numAtts; i++) {
+      double v = inst.value(i);
+      boolean missing = Utils.isMissingValue(v);
+      m_block[i][m_blockRows] = missing ? 0 : v - m_means[i];
+      if (m_presentBlock != null) {
+        m_presentBlock[i][m_blockRows] = missing ? 0 : 1;
+      }
+    }
+
+    if (++m_blockRows == CovarianceAccumulator.BLOCK_ROWS) {
+      flush();
+    }
+  }
+
+  /**
+   * Adds any buffered instances to the matrix
+   */
+  protected void flush() {
+    if (m_blockRows == 0) {
+      return;
+    }
+
+    CovarianceAccumulator.accumulateProducts(m_block, m_blockRows,
+      m_corrMatrix);
+    if (m_presentBlock != null) {
+      CovarianceAccumulator.accumulateCoOccurrences(m_presentBlock,
+        m_blockRows, m_coOccurrenceCounts);
+    }
+    m_blockRows = 0;
+  }
+
+  /**
+   * Adds any buffered instances to the matrix before serializing
+   * 
+   * @param out the stream to write to
+   * @throws IOException if a problem occurs
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    flush();
+    out.defaultWriteObject();
   }
 
   /**
@@ -297,6 +371,9 @@ public class CorrelationMatrixMapTask implements Serializable, OptionHandler {
     trainingHeader = CSVToARFFHeaderReduceTask.stripSummaryAtts(trainingHeader);
 
     m_remove = null;
+    m_block = null;
+    m_presentBlock = null;
+    m_blockRows = 0;
 
     StringBuilder rem = new StringBuilder();
     if (trainingHeader.classIndex() >= 0 && m_deleteClassIfSet) {
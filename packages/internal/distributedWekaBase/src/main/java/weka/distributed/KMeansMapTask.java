@@ -627,6 +627,59 @@ public class KMeansMapTask implements OptionHandler, Serializable {
     return options.toArray(new String[options.size()]);
   }
 
+  /**
+   * Performs a "combine" operation on partial centroid summary stats (as
+   * produced by getCentroidStats()) from several map tasks that have been
+   * configured with the same centroids. The stats for each centroid are
+   * aggregated and the partial within cluster errors summed, and the result is
+   * in the same format as the output of getCentroidStats(), so it can be
+   * combined again or passed to KMeansReduceTask.reduceClusters().
+   *
+   * @param partialCentroidStats a list of centroid stats lists to combine
+   * @return the combined centroid stats. A centroid that has no instances
+   *         assigned to it in any of the partials is null.
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public static List<Instances> combine(
+    List<List<Instances>> partialCentroidStats)
+    throws DistributedWekaException {
+    if (partialCentroidStats == null || partialCentroidStats.size() == 0) {
+      throw new DistributedWekaException(
+        "[KMeansMapTask:combine] nothing to combine!");
+    }
+    if (partialCentroidStats.size() == 1) {
+      return partialCentroidStats.get(0);
+    }
+
+    int numClusters = partialCentroidStats.get(0).size();
+    List<Instances> combined = new ArrayList<Instances>();
+    for (int i = 0; i < numClusters; i++) {
+      List<Instances> toAgg = new ArrayList<Instances>();
+      for (List<Instances> partial : partialCentroidStats) {
+        if (partial.size() != numClusters) {
+          throw new DistributedWekaException(
+            "[KMeansMapTask:combine] each list of centroid summary stats "
+              + "should contain " + numClusters + " entries");
+        }
+        if (partial.get(i) != null) {
+          toAgg.add(partial.get(i));
+        }
+      }
+
+      if (toAgg.size() == 0) {
+        combined.add(null);
+      } else {
+        double error = KMeansReduceTask.getErrorsForCluster(toAgg);
+        Instances aggregated = CSVToARFFHeaderReduceTask.aggregate(toAgg);
+        aggregated.setRelationName("Partial stats for centroid " + i + " : "
+          + error);
+        combined.add(aggregated);
+      }
+    }
+
+    return combined;
+  }
+
   /**
    * Utility method to choose start points for a number of runs of k-means given
    * a list of randomly selected instance objects. Avoids choosing duplicate
@@ -0,0 +1,773 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LocalMapReduceRunner.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+import distributed.core.DistributedJob;
+
+/**
+ * Runs the map tasks in this package over CSV files on the local machine,
+ * without Hadoop or Spark. The input files are divided into splits (byte
+ * ranges aligned to line boundaries, in the same way as Hadoop's text input
+ * format) and each split is processed by its own copy of the map task in a
+ * thread pool. The partial results are then merged by reduce-compatible
+ * combiners in a tree, with the combines of one level running in parallel
+ * with the map tasks and combines that are still to finish. The final result
+ * is computed by the corresponding reduce task, so the output is the same as
+ * that of the distributed version of the job.
+ * <p>
+ * Convenience methods are provided for the ARFF header, correlation matrix,
+ * k-means and classifier evaluation jobs. Other jobs can be run with
+ * run(List, SplitMapper, Combiner).
+ *
+ * @version $Revision$
+ */
+public class LocalMapReduceRunner {
+
+  /** Smallest split size used when the split size is computed automatically */
+  public static final long MIN_AUTO_SPLIT_SIZE = 64 * 1024;
+
+  /** Number of splits per thread when the split size is computed */
+  protected static final int SPLITS_PER_THREAD = 4;
+
+  /** Number of threads to use */
+  protected int m_numThreads = Runtime.getRuntime().availableProcessors();
+
+  /** Split size in bytes (<= 0 to compute from the input size) */
+  protected long m_splitSize;
+
+  /** Number of partial results merged by each combine */
+  protected int m_combineFanIn = 2;
+
+  /** Options for the CSVToARFFHeaderMapTask used to parse the input */
+  protected String m_csvOptions = "";
+
+  /**
+   * Maps the rows of one split to a partial result
+   *
+   * @param <P> the type of the partial result
+   */
+  public static interface SplitMapper<P> {
+
+    /**
+     * Process the rows of a split
+     *
+     * @param rows the rows of the split
+     * @return the partial result for the split
+     * @throws Exception if a problem occurs
+     */
+    P map(SplitReader rows) throws Exception;
+  }
+
+  /**
+   * Merges partial results. The result must be usable as a partial result in
+   * a subsequent combine.
+   *
+   * @param <P> the type of the partial result
+   */
+  public static interface Combiner<P> {
+
+    /**
+     * Combine partial results
+     *
+     * @param partials the partial results to combine (at least one)
+     * @return the combined result
+     * @throws Exception if a problem occurs
+     */
+    P combine(List<P> partials) throws Exception;
+  }
+
+  /**
+   * A split of an input file. Holds the rows whose first byte lies in
+   * [start, end).
+   */
+  public static class FileSplit {
+
+    /** The file */
+    protected File m_file;
+
+    /** Offset of the start of the split */
+    protected long m_start;
+
+    /** Offset of the end of the split (exclusive) */
+    protected long m_end;
+
+    public FileSplit(File file, long start, long end) {
+      m_file = file;
+      m_start = start;
+      m_end = end;
+    }
+
+    public File getFile() {
+      return m_file;
+    }
+
+    public long getStart() {
+      return m_start;
+    }
+
+    public long getEnd() {
+      return m_end;
+    }
+
+    @Override
+    public String toString() {
+      return m_file.getPath() + ":" + m_start + "-" + m_end;
+    }
+  }
+
+  /**
+   * Reads the rows of a FileSplit. Rows are decoded as UTF-8, and empty rows
+   * are skipped.
+   */
+  public static class SplitReader {
+
+    /** The underlying stream */
+    protected InputStream m_in;
+
+    /** Offset of the next byte in the file */
+    protected long m_pos;
+
+    /** Offset at which the split ends */
+    protected long m_end;
+
+    /** Buffer for the current row */
+    protected ByteArrayOutputStream m_row = new ByteArrayOutputStream(256);
+
+    /** Number of rows read so far */
+    protected int m_numRows;
+
+    /**
+     * Constructor. Positions the reader at the first row that starts in the
+     * split.
+     *
+     * @param split the split to read
+     * @throws IOException if a problem occurs
+     */
+    public SplitReader(FileSplit split) throws IOException {
+      m_end = split.getEnd();
+      FileInputStream fis = new FileInputStream(split.getFile());
+      m_in = new BufferedInputStream(fis, 64 * 1024);
+      if (split.getStart() > 0) {
+        // back up one byte so that a row starting exactly at the start
+        // of the split is not skipped
+        m_pos = split.getStart() - 1;
+        skipFully(m_pos);
+        int b;
+        while ((b = m_in.read()) >= 0) {
+          m_pos++;
+          if (b == '\n') {
+            break;
+          }
+        }
+      }
+    }
+
+    private void skipFully(long toSkip) throws IOException {
+      while (toSkip > 0) {
+        long skipped = m_in.skip(toSkip);
+        if (skipped <= 0) {
+          throw new IOException("Unable to seek to split start");
+        }
+        toSkip -= skipped;
+      }
+    }
+
+    /**
+     * Read the next row of the split
+     *
+     * @return the next row, or null at the end of the split
+     * @throws IOException if a problem occurs
+     */
+    public String readLine() throws IOException {
+      while (m_pos < m_end) {
+        m_row.reset();
+        int b;
+        boolean any = false;
+        while ((b = m_in.read()) >= 0) {
+          any = true;
+          m_pos++;
+          if (b == '\n') {
+            break;
+          }
+          m_row.write(b);
+        }
+        if (!any) {
+          return null;
+        }
+
+        String row = m_row.toString("UTF-8");
+        if (row.endsWith("\r")) {
+          row = row.substring(0, row.length() - 1);
+        }
+        if (row.trim().length() > 0) {
+          m_numRows++;
+          return row;
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Get the number of (non-empty) rows read so far
+     *
+     * @return the number of rows read
+     */
+    public int getNumRowsRead() {
+      return m_numRows;
+    }
+
+    /**
+     * Close the reader
+     *
+     * @throws IOException if a problem occurs
+     */
+    public void close() throws IOException {
+      m_in.close();
+    }
+  }
+
+  /**
+   * Set the number of threads to use
+   *
+   * @param numThreads the number of threads to use
+   */
+  public void setNumThreads(int numThreads) {
+    m_numThreads = numThreads;
+  }
+
+  /**
+   * Get the number of threads to use
+   *
+   * @return the number of threads to use
+   */
+  public int getNumThreads() {
+    return m_numThreads;
+  }
+
+  /**
+   * Set the split size in bytes. Values <= 0 mean the split size is computed
+   * from the total size of the input and the number of threads.
+   *
+   * @param splitSize the split size in bytes
+   */
+  public void setSplitSize(long splitSize) {
+    m_splitSize = splitSize;
+  }
+
+  /**
+   * Get the split size in bytes
+   *
+   * @return the split size in bytes
+   */
+  public long getSplitSize() {
+    return m_splitSize;
+  }
+
+  /**
+   * Set the number of partial results merged by each combine. Larger values
+   * give a shallower tree.
+   *
+   * @param fanIn the number of partials to merge per combine (at least 2)
+   */
+  public void setCombineFanIn(int fanIn) {
+    m_combineFanIn = fanIn;
+  }
+
+  /**
+   * Get the number of partial results merged by each combine
+   *
+   * @return the number of partials to merge per combine
+   */
+  public int getCombineFanIn() {
+    return m_combineFanIn;
+  }
+
+  /**
+   * Set the options for the CSVToARFFHeaderMapTask used to parse the input
+   * (and to compute the header in the ARFF header job)
+   *
+   * @param opts the options
+   */
+  public void setCSVMapTaskOptions(String opts) {
+    m_csvOptions = opts;
+  }
+
+  /**
+   * Get the options for the CSVToARFFHeaderMapTask used to parse the input
+   *
+   * @return the options
+   */
+  public String getCSVMapTaskOptions() {
+    return m_csvOptions;
+  }
+
+  /**
+   * Divide the input files into splits
+   *
+   * @param inputs the input files
+   * @return the splits
+   */
+  public List<FileSplit> computeSplits(List<File> inputs) {
+    long splitSize = m_splitSize;
+    if (splitSize <= 0) {
+      long total = 0;
+      for (File f : inputs) {
+        total += f.length();
+      }
+      splitSize =
+        Math.max(MIN_AUTO_SPLIT_SIZE,
+          total / (Math.max(1, m_numThreads) * SPLITS_PER_THREAD) + 1);
+    }
+
+    List<FileSplit> splits = new ArrayList<FileSplit>();
+    for (File f : inputs) {
+      long length = f.length();
+      for (long start = 0; start < length; start += splitSize) {
+        splits.add(new FileSplit(f, start, Math.min(length, start
+          + splitSize)));
+      }
+    }
+
+    return splits;
+  }
+
+  /**
+   * Run a job. Each split is processed by the mapper, and the partial results
+   * are merged in a tree by the combiner. Splits that contain no rows do not
+   * produce a partial result.
+   *
+   * @param inputs the input files
+   * @param mapper the mapper to use
+   * @param combiner the combiner to use
+   * @param <P> the type of the partial results
+   * @return the combined result, or null if the input contains no rows
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public <P> P run(List<File> inputs, final SplitMapper<P> mapper,
+    final Combiner<P> combiner) throws DistributedWekaException {
+
+    List<FileSplit> splits = computeSplits(inputs);
+    if (splits.size() == 0) {
+      return null;
+    }
+
+    final AtomicInteger count = new AtomicInteger();
+    ExecutorService executor =
+      Executors.newFixedThreadPool(Math.max(1, m_numThreads),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t =
+              new Thread(r, "LocalMapReduce-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+
+    try {
+      List<Future<P>> level = new ArrayList<Future<P>>();
+      for (final FileSplit split : splits) {
+        level.add(executor.submit(new Callable<P>() {
+          @Override
+          public P call() throws Exception {
+            SplitReader reader = new SplitReader(split);
+            try {
+              P result = mapper.map(reader);
+              return reader.getNumRowsRead() > 0 ? result : null;
+            } finally {
+              reader.close();
+            }
+          }
+        }));
+      }
+
+      // Submit all levels of the tree up front. The pool runs tasks in
+      // submission order, so a combine only starts once the tasks producing
+      // its inputs have started, and can't block the pool waiting for them
+      int fanIn = Math.max(2, m_combineFanIn);
+      while (level.size() > 1) {
+        List<Future<P>> next = new ArrayList<Future<P>>();
+        for (int i = 0; i < level.size(); i += fanIn) {
+          final List<Future<P>> group =
+            level.subList(i, Math.min(i + fanIn, level.size()));
+          next.add(executor.submit(new Callable<P>() {
+            @Override
+            public P call() throws Exception {
+              List<P> partials = new ArrayList<P>();
+              for (Future<P> f : group) {
+                P p = f.get();
+                if (p != null) {
+                  partials.add(p);
+                }
+              }
+              if (partials.size() == 0) {
+                return null;
+              }
+              return partials.size() == 1 ? partials.get(0) : combiner
+                .combine(partials);
+            }
+          }));
+        }
+        level = next;
+      }
+
+      return level.get(0).get();
+    } catch (InterruptedException ex) {
+      throw new DistributedWekaException(ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      while (cause instanceof ExecutionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof DistributedWekaException) {
+        throw (DistributedWekaException) cause;
+      }
+      throw new DistributedWekaException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Make a configured CSVToARFFHeaderMapTask
+   *
+   * @return the task
+   * @throws DistributedWekaException if a problem occurs
+   */
+  protected CSVToARFFHeaderMapTask makeCSVTask()
+    throws DistributedWekaException {
+    CSVToARFFHeaderMapTask task = new CSVToARFFHeaderMapTask();
+    try {
+      task.setOptions(Utils.splitOptions(m_csvOptions == null ? ""
+        : m_csvOptions));
+    } catch (Exception ex) {
+      throw new DistributedWekaException(ex);
+    }
+    return task;
+  }
+
+  /**
+   * Make a deep copy of a (configured) map task for processing a split
+   *
+   * @param prototype the task to copy
+   * @param <T> the type of the task
+   * @return a copy of the task
+   * @throws Exception if a problem occurs
+   */
+  @SuppressWarnings("unchecked")
+  protected static <T> T copyTask(SerializedObject prototype) throws Exception {
+    return (T) prototype.getObject();
+  }
+
+  /**
+   * Runs the ARFF header job - i.e. computes the header, with summary
+   * attributes, for the input.
+   *
+   * @param inputs the input files
+   * @param attNames the names of the attributes (may be null, in which case
+   *          names are generated)
+   * @return the header with summary attributes
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public Instances runHeaderJob(List<File> inputs, final List<String> attNames)
+    throws DistributedWekaException {
+
+    // check the options
+    final boolean quartiles =
+      makeCSVTask().getComputeQuartilesAsPartOfSummaryStats();
+
+    CSVToARFFHeaderMapTask combined =
+      run(inputs, new SplitMapper<CSVToARFFHeaderMapTask>() {
+        @Override
+        public CSVToARFFHeaderMapTask map(SplitReader rows) throws Exception {
+          CSVToARFFHeaderMapTask task = makeCSVTask();
+          String row;
+          while ((row = rows.readLine()) != null) {
+            task.processRow(row, attNames);
+          }
+          return task;
+        }
+      }, new Combiner<CSVToARFFHeaderMapTask>() {
+        @Override
+        public CSVToARFFHeaderMapTask combine(
+          List<CSVToARFFHeaderMapTask> partials) throws Exception {
+          return CSVToARFFHeaderMapTask.combine(partials);
+        }
+      });
+
+    if (combined == null) {
+      throw new DistributedWekaException("No rows in the input!");
+    }
+
+    if (quartiles) {
+      List<CSVToARFFHeaderMapTask.HeaderAndQuantileDataHolder> holders =
+        new ArrayList<CSVToARFFHeaderMapTask.HeaderAndQuantileDataHolder>();
+      holders.add(combined.getHeaderAndQuantileEstimators());
+      return CSVToARFFHeaderReduceTask.aggregateHeadersAndQuartiles(holders,
+        combined.getMaxNominalSummaryLabels());
+    }
+
+    List<Instances> headers = new ArrayList<Instances>();
+    headers.add(combined.getHeader());
+    return CSVToARFFHeaderReduceTask.aggregate(headers,
+      combined.getMaxNominalSummaryLabels());
+  }
+
+  /**
+   * Process the rows of a split with a per-instance map task
+   *
+   * @param rows the rows to process
+   * @param headerNoSummary the header of the data (sans summary attributes)
+   * @param processor receives each parsed instance
+   * @throws Exception if a problem occurs
+   */
+  protected void processInstances(SplitReader rows, Instances headerNoSummary,
+    InstanceProcessor processor) throws Exception {
+    CSVToARFFHeaderMapTask rowHelper = makeCSVTask();
+    List<String> attNames = new ArrayList<String>();
+    for (int i = 0; i < headerNoSummary.numAttributes(); i++) {
+      attNames.add(headerNoSummary.attribute(i).name());
+    }
+    rowHelper.initParserOnly(attNames);
+
+    // each split gets its own copy of the header, as string values
+    // get set in it
+    Instances header = new Instances(headerNoSummary, 0);
+    String row;
+    while ((row = rows.readLine()) != null) {
+      processor.process(DistributedJob.parseInstance(row, rowHelper, header,
+        true));
+    }
+  }
+
+  /**
+   * Receives the instances parsed from a split
+   */
+  protected static interface InstanceProcessor {
+    void process(Instance inst) throws Exception;
+  }
+
+  /**
+   * Runs the correlation matrix job
+   *
+   * @param inputs the input files
+   * @param headerWithSummary the header of the input, with summary attributes
+   *          and the class index set (if there is a class)
+   * @param mapTaskOptions options for the CorrelationMatrixMapTask
+   * @return the final correlation (or covariance) matrix. This is a lower
+   *         triangular matrix, as produced by CorrelationMatrixRowReduceTask
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public double[][] runCorrelationMatrixJob(List<File> inputs,
+    Instances headerWithSummary, String[] mapTaskOptions)
+    throws DistributedWekaException {
+
+    final CorrelationMatrixMapTask prototype = new CorrelationMatrixMapTask();
+    final SerializedObject so;
+    try {
+      prototype.setOptions(mapTaskOptions.clone());
+      prototype.setup(headerWithSummary);
+      so = new SerializedObject(prototype);
+    } catch (Exception ex) {
+      throw new DistributedWekaException(ex);
+    }
+
+    final Instances headerNoSummary =
+      CSVToARFFHeaderReduceTask.stripSummaryAtts(headerWithSummary);
+
+    CorrelationMatrixMapTask combined =
+      run(inputs, new SplitMapper<CorrelationMatrixMapTask>() {
+        @Override
+        public CorrelationMatrixMapTask map(SplitReader rows) throws Exception {
+          final CorrelationMatrixMapTask task = copyTask(so);
+          processInstances(rows, headerNoSummary, new InstanceProcessor() {
+            @Override
+            public void process(Instance inst) throws Exception {
+              task.processInstance(inst);
+            }
+          });
+          return task;
+        }
+      }, new Combiner<CorrelationMatrixMapTask>() {
+        @Override
+        public CorrelationMatrixMapTask combine(
+          List<CorrelationMatrixMapTask> partials) throws Exception {
+          return CorrelationMatrixMapTask.combine(partials);
+        }
+      });
+
+    if (combined == null) {
+      throw new DistributedWekaException("No rows in the input!");
+    }
+
+    double[][] partial = combined.getMatrix();
+    int[][] coOcc = combined.getCoOccurrenceCounts();
+    double[][] result = new double[partial.length][];
+    CorrelationMatrixRowReduceTask reduce =
+      new CorrelationMatrixRowReduceTask();
+    for (int i = 0; i < partial.length; i++) {
+      List<double[]> rowToAgg = new ArrayList<double[]>();
+      rowToAgg.add(partial[i]);
+      List<int[]> coOccToAgg = null;
+      if (coOcc != null) {
+        coOccToAgg = new ArrayList<int[]>();
+        coOccToAgg.add(coOcc[i]);
+      }
+      result[i] =
+        reduce.aggregate(i, rowToAgg, coOccToAgg, headerWithSummary,
+          !prototype.getIgnoreMissingValues(), prototype.getCovariance(),
+          !prototype.getKeepClassAttributeIfSet());
+    }
+
+    return result;
+  }
+
+  /**
+   * Runs one iteration of k-means for a single run
+   *
+   * @param inputs the input files
+   * @param mapTask a map task that has been configured, initialized (via
+   *          init()) and had its centroids set. It is copied for each split.
+   * @param headerWithSummary the header of the input, with summary attributes
+   * @param runNumber the number of the k-means run
+   * @param iterationNumber the number of the iteration
+   * @return a reduce task containing the new centroids
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public KMeansReduceTask runKMeansIteration(List<File> inputs,
+    KMeansMapTask mapTask, Instances headerWithSummary, int runNumber,
+    int iterationNumber) throws DistributedWekaException {
+
+    final SerializedObject so;
+    try {
+      so = new SerializedObject(mapTask);
+    } catch (Exception ex) {
+      throw new DistributedWekaException(ex);
+    }
+    final Instances headerNoSummary =
+      CSVToARFFHeaderReduceTask.stripSummaryAtts(headerWithSummary);
+
+    List<Instances> combined =
+      run(inputs, new SplitMapper<List<Instances>>() {
+        @Override
+        public List<Instances> map(SplitReader rows) throws Exception {
+          final KMeansMapTask task = copyTask(so);
+          processInstances(rows, headerNoSummary, new InstanceProcessor() {
+            @Override
+            public void process(Instance inst) throws Exception {
+              task.processInstance(inst);
+            }
+          });
+          return task.getCentroidStats();
+        }
+      }, new Combiner<List<Instances>>() {
+        @Override
+        public List<Instances> combine(List<List<Instances>> partials)
+          throws Exception {
+          return KMeansMapTask.combine(partials);
+        }
+      });
+
+    if (combined == null) {
+      throw new DistributedWekaException("No rows in the input!");
+    }
+
+    List<List<Instances>> toReduce = new ArrayList<List<Instances>>();
+    toReduce.add(combined);
+    return new KMeansReduceTask().reduceClusters(runNumber, iterationNumber,
+      new Instances(mapTask.getTransformedHeader(), 0), toReduce);
+  }
+
+  /**
+   * Runs the classifier evaluation job
+   *
+   * @param inputs the input files
+   * @param mapTask a map task that has had its classifier set and has been
+   *          set up (via setup()). It is copied for each split.
+   * @param headerWithSummary the header of the input, with summary attributes
+   *          and the class index set
+   * @return the aggregated evaluation
+   * @throws DistributedWekaException if a problem occurs
+   */
+  public Evaluation runEvaluationJob(List<File> inputs,
+    WekaClassifierEvaluationMapTask mapTask, Instances headerWithSummary)
+    throws DistributedWekaException {
+
+    final SerializedObject so;
+    try {
+      so = new SerializedObject(mapTask);
+    } catch (Exception ex) {
+      throw new DistributedWekaException(ex);
+    }
+    final Instances headerNoSummary =
+      CSVToARFFHeaderReduceTask.stripSummaryAtts(headerWithSummary);
+    headerNoSummary.setClassIndex(headerWithSummary.classIndex());
+
+    Evaluation result = run(inputs, new SplitMapper<Evaluation>() {
+      @Override
+      public Evaluation map(SplitReader rows) throws Exception {
+        final WekaClassifierEvaluationMapTask task = copyTask(so);
+        processInstances(rows, headerNoSummary, new InstanceProcessor() {
+          @Override
+          public void process(Instance inst) throws Exception {
+            task.processInstance(inst);
+          }
+        });
+        task.finalizeTask();
+        return task.getEvaluation();
+      }
+    }, new Combiner<Evaluation>() {
+      @Override
+      public Evaluation combine(List<Evaluation> partials) throws Exception {
+        return new WekaClassifierEvaluationReduceTask().aggregate(partials);
+      }
+    });
+
+    if (result == null) {
+      throw new DistributedWekaException("No rows in the input!");
+    }
+
+    return result;
+  }
+}
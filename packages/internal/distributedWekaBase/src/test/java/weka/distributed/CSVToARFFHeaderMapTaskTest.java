@@ -36,6 +36,7 @@ import org.junit.Test;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.stats.ArffSummaryNumericMetric;
+import weka.core.stats.NominalStats;
 import weka.core.stats.NumericAttributeBinData;
 import weka.core.stats.NumericStats;
 import weka.core.stats.QuantileCalculator;
@@ -758,6 +759,66 @@ public class CSVToARFFHeaderMapTaskTest {
       0.000001);
   }
 
+  @Test
+  public void testNominalSummaryLabelLimit() throws Exception {
+    CSVToARFFHeaderMapTask task = new CSVToARFFHeaderMapTask();
+    task.setOptions(new String[] { "-max-nominal-summary-labels", "20" });
+    assertEquals(20, task.getMaxNominalSummaryLabels());
+
+    List<String> attNames = new ArrayList<String>();
+    attNames.add("category");
+    attNames.add("value");
+    for (int i = 0; i < 500; i++) {
+      task.processRow("c" + i + "," + i, attNames);
+      if (i % 2 == 0) {
+        task.processRow("frequent," + i, attNames);
+      }
+    }
+
+    Instances header = task.getHeader();
+
+    // the header itself still has all the labels
+    assertEquals(501, header.attribute(0).numValues());
+
+    // but the summary only keeps counts for the most frequent ones
+    Attribute summary =
+      header.attribute(CSVToARFFHeaderMapTask.ARFF_SUMMARY_ATTRIBUTE_PREFIX
+        + "category");
+    NominalStats stats = NominalStats.attributeToStats(summary);
+    assertTrue(stats.getLabels().size() <= 20);
+    assertEquals("frequent", stats.getModeLabel());
+    assertTrue(stats.getCount("frequent") >= 250);
+  }
+
+  @Test
+  public void testNominalSummaryLabelLimitAggregate() throws Exception {
+    List<String> attNames = new ArrayList<String>();
+    attNames.add("category");
+    attNames.add("value");
+
+    List<Instances> headers = new ArrayList<Instances>();
+    for (int t = 0; t < 2; t++) {
+      CSVToARFFHeaderMapTask task = new CSVToARFFHeaderMapTask();
+      task.setOptions(new String[] { "-max-nominal-summary-labels", "20" });
+      for (int i = 0; i < 300; i++) {
+        task.processRow("t" + t + "c" + i + "," + i, attNames);
+        if (i % 2 == 0) {
+          task.processRow("frequent," + i, attNames);
+        }
+      }
+      headers.add(task.getHeader());
+    }
+
+    Instances header = CSVToARFFHeaderReduceTask.aggregate(headers, 20);
+    Attribute summary =
+      header.attribute(CSVToARFFHeaderMapTask.ARFF_SUMMARY_ATTRIBUTE_PREFIX
+        + "category");
+    NominalStats stats = NominalStats.attributeToStats(summary);
+    assertTrue(stats.getLabels().size() <= 20);
+    assertEquals("frequent", stats.getModeLabel());
+    assertTrue(stats.getCount("frequent") >= 300);
+  }
+
   public static void main(String[] args) {
     try {
       CSVToARFFHeaderMapTaskTest t = new CSVToARFFHeaderMapTaskTest();
@@ -773,6 +834,8 @@ public class CSVToARFFHeaderMapTaskTest {
       t.testProcessFromHeaderRoundTrip();
       t.testCombine();
       t.testProcessRoundTripWithQuantiles();
+      t.testNominalSummaryLabelLimit();
+      t.testNominalSummaryLabelLimitAggregate();
     } catch (Exception ex) {
       ex.printStackTrace();
     }
@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LocalMapReduceRunnerTest.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Test class for LocalMapReduceRunner. Checks that running the map tasks over
+ * many small splits and combining the results gives the same answer as a
+ * single map task over all the data.
+ *
+ * @version $Revision$
+ */
+public class LocalMapReduceRunnerTest {
+
+  protected static final double TOL = 1e-6;
+
+  protected static List<File> writeData(String data) throws Exception {
+    File f = File.createTempFile("localMapReduce", ".csv");
+    f.deleteOnExit();
+    Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+    w.write(data);
+    w.close();
+
+    List<File> inputs = new ArrayList<File>();
+    inputs.add(f);
+    return inputs;
+  }
+
+  protected static List<String> attNames(Instances data) {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < data.numAttributes(); i++) {
+      names.add(data.attribute(i).name());
+    }
+    return names;
+  }
+
+  protected static LocalMapReduceRunner getRunner(int fanIn) {
+    LocalMapReduceRunner runner = new LocalMapReduceRunner();
+    runner.setNumThreads(4);
+    runner.setSplitSize(300); // iris is ~4.5KB, so ~15 splits
+    runner.setCombineFanIn(fanIn);
+    return runner;
+  }
+
+  protected static Instances getSummaryHeader(Instances orig) throws Exception {
+    CSVToARFFHeaderMapTask task = new CSVToARFFHeaderMapTask();
+    List<String> names = attNames(orig);
+    for (int i = 0; i < orig.numInstances(); i++) {
+      task.processRow(orig.instance(i).toString(), names);
+    }
+    List<Instances> toAgg = new ArrayList<Instances>();
+    toAgg.add(task.getHeader());
+    Instances result = CSVToARFFHeaderReduceTask.aggregate(toAgg);
+    result.setClassIndex(orig.classIndex());
+    return result;
+  }
+
+  @Test
+  public void testSplitsCoverAllRows() throws Exception {
+    List<File> inputs = writeData(CorrelationMatrixMapTaskTest.IRIS_DATA);
+    LocalMapReduceRunner runner = getRunner(2);
+    assertTrue(runner.computeSplits(inputs).size() > 10);
+
+    List<String> rows =
+      runner.run(inputs, new LocalMapReduceRunner.SplitMapper<List<String>>() {
+        @Override
+        public List<String> map(LocalMapReduceRunner.SplitReader reader)
+          throws Exception {
+          List<String> result = new ArrayList<String>();
+          String row;
+          while ((row = reader.readLine()) != null) {
+            result.add(row);
+          }
+          return result;
+        }
+      }, new LocalMapReduceRunner.Combiner<List<String>>() {
+        @Override
+        public List<String> combine(List<List<String>> partials) {
+          List<String> result = new ArrayList<String>();
+          for (List<String> p : partials) {
+            result.addAll(p);
+          }
+          return result;
+        }
+      });
+
+    String[] expected = CorrelationMatrixMapTaskTest.IRIS_DATA.split("\n");
+    assertEquals(expected.length, rows.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], rows.get(i));
+    }
+  }
+
+  @Test
+  public void testHeaderJob() throws Exception {
+    Instances iris = CorrelationMatrixMapTaskTest.getIris();
+    Instances expected = getSummaryHeader(iris);
+
+    List<File> inputs = writeData(CorrelationMatrixMapTaskTest.IRIS_DATA);
+    Instances header = getRunner(3).runHeaderJob(inputs, attNames(iris));
+
+    assertEquals(expected.numAttributes(), header.numAttributes());
+    for (int i = 0; i < iris.numAttributes() - 1; i++) {
+      Attribute summary =
+        header.attribute(CSVToARFFHeaderMapTask.ARFF_SUMMARY_ATTRIBUTE_PREFIX
+          + iris.attribute(i).name());
+      Attribute expectedSummary =
+        expected
+          .attribute(CSVToARFFHeaderMapTask.ARFF_SUMMARY_ATTRIBUTE_PREFIX
+            + iris.attribute(i).name());
+      double[] stats = CSVToARFFHeaderReduceTask.attributeToStatsArray(summary);
+      double[] expectedStats =
+        CSVToARFFHeaderReduceTask.attributeToStatsArray(expectedSummary);
+      for (int j = 0; j < stats.length; j++) {
+        assertEquals(expectedStats[j], stats[j], TOL);
+      }
+    }
+
+    // nominal class values (all three seen, in any split)
+    assertEquals(3, header.attribute(iris.numAttributes() - 1).numValues());
+  }
+
+  @Test
+  public void testCorrelationMatrixJob() throws Exception {
+    Instances iris = CorrelationMatrixMapTaskTest.getIris();
+    iris.setClassIndex(iris.numAttributes() - 1);
+    Instances withSummary = getSummaryHeader(iris);
+
+    CorrelationMatrixMapTask single = new CorrelationMatrixMapTask();
+    single.setup(withSummary);
+    for (int i = 0; i < iris.numInstances(); i++) {
+      single.processInstance(iris.instance(i));
+    }
+    CorrelationMatrixRowReduceTask reduce =
+      new CorrelationMatrixRowReduceTask();
+
+    List<File> inputs = writeData(CorrelationMatrixMapTaskTest.IRIS_DATA);
+    double[][] matrix =
+      getRunner(2).runCorrelationMatrixJob(inputs, withSummary,
+        new String[0]);
+
+    assertEquals(4, matrix.length);
+    for (int i = 0; i < matrix.length; i++) {
+      List<double[]> toAgg = new ArrayList<double[]>();
+      toAgg.add(single.getMatrix()[i]);
+      double[] expected =
+        reduce.aggregate(i, toAgg, null, withSummary, true, false, true);
+      for (int j = 0; j < expected.length; j++) {
+        assertEquals(expected[j], matrix[i][j], TOL);
+      }
+    }
+  }
+
+  @Test
+  public void testKMeansIteration() throws Exception {
+    Instances iris = CorrelationMatrixMapTaskTest.getIris();
+    Instances withSummary = getSummaryHeader(iris);
+
+    KMeansMapTask task = new KMeansMapTask();
+    task.init(withSummary);
+    Instances initialCenters = new Instances(iris, 0);
+    initialCenters.add(iris.firstInstance());
+    initialCenters.add(iris.instance(50));
+    initialCenters.add(iris.instance(100));
+    task.setCentroids(task.applyFilters(initialCenters));
+
+    List<File> inputs = writeData(CorrelationMatrixMapTaskTest.IRIS_DATA);
+    KMeansReduceTask local =
+      getRunner(2).runKMeansIteration(inputs, task, withSummary, 0, 0);
+
+    // the runner copies the map task, so the original is still unused
+    for (int i = 0; i < iris.numInstances(); i++) {
+      task.processInstance(iris.instance(i));
+    }
+    List<List<Instances>> toReduce = new ArrayList<List<Instances>>();
+    toReduce.add(task.getCentroidStats());
+    KMeansReduceTask expected =
+      new KMeansReduceTask().reduceClusters(0, 0,
+        new Instances(task.getTransformedHeader(), 0), toReduce);
+
+    Instances centroids = local.getCentroidsForRun();
+    Instances expectedCentroids = expected.getCentroidsForRun();
+    assertEquals(expectedCentroids.numInstances(), centroids.numInstances());
+    for (int i = 0; i < centroids.numInstances(); i++) {
+      for (int j = 0; j < centroids.numAttributes(); j++) {
+        assertEquals(expectedCentroids.instance(i).value(j), centroids
+          .instance(i).value(j), TOL);
+      }
+    }
+    assertEquals(expected.getTotalWithinClustersError(),
+      local.getTotalWithinClustersError(), TOL);
+  }
+
+  @Test
+  public void testEvaluationJob() throws Exception {
+    Instances iris = CorrelationMatrixMapTaskTest.getIris();
+    iris.setClassIndex(iris.numAttributes() - 1);
+    Instances withSummary = getSummaryHeader(iris);
+
+    NaiveBayesUpdateable nb = new NaiveBayesUpdateable();
+    nb.buildClassifier(iris);
+
+    WekaClassifierEvaluationMapTask evaluator =
+      new WekaClassifierEvaluationMapTask();
+    evaluator.setClassifier(nb);
+    double[] priors = { 50.0, 50.0, 50.0 };
+    evaluator.setup(new Instances(iris, 0), priors, 150, 1L, 0);
+
+    List<File> inputs = writeData(CorrelationMatrixMapTaskTest.IRIS_DATA);
+    Evaluation eval =
+      getRunner(4).runEvaluationJob(inputs, evaluator, withSummary);
+
+    for (int i = 0; i < iris.numInstances(); i++) {
+      evaluator.processInstance(iris.instance(i));
+    }
+    evaluator.finalizeTask();
+    Evaluation expected = evaluator.getEvaluation();
+
+    assertEquals(150, (int) eval.numInstances());
+    assertEquals(expected.correct(), eval.correct(), TOL);
+    assertEquals(expected.meanAbsoluteError(), eval.meanAbsoluteError(), TOL);
+  }
+}
@@ -87,6 +87,9 @@ public class CSVToArffHeaderHadoopReducer extends
 
   protected int m_decimalPlaces = 2;
 
+  /** Maximum number of labels to keep counts for in nominal summaries */
+  protected int m_maxNominalSummaryLabels;
+
   @Override
   public void setup(Context context) throws IOException {
     m_task = new CSVToARFFHeaderReduceTask();
@@ -109,6 +112,12 @@ public class CSVToArffHeaderHadoopReducer extends
           }
         }
 
+        String maxLabels =
+          Utils.getOption("max-nominal-summary-labels", options);
+        if (!DistributedJobConfig.isEmpty(maxLabels)) {
+          m_maxNominalSummaryLabels = Integer.parseInt(maxLabels);
+        }
+
       } catch (Exception ex) {
         throw new IOException(ex);
       }
@@ -148,8 +157,10 @@ public class CSVToArffHeaderHadoopReducer extends
 
     try {
       Instances aggregated =
-        m_estimateQuantiles ? m_task.aggregateHeadersAndQuartiles(holdersToAgg)
-          : m_task.aggregate(headersToAgg);
+        m_estimateQuantiles ? CSVToARFFHeaderReduceTask
+          .aggregateHeadersAndQuartiles(holdersToAgg, m_maxNominalSummaryLabels)
+          : CSVToARFFHeaderReduceTask.aggregate(headersToAgg,
+            m_maxNominalSummaryLabels);
       writeHeaderToDestination(aggregated, outputDestination, conf);
       writeSummaryStatsStringToDestination(aggregated, outputDestination,
         m_estimateQuantiles, m_decimalPlaces, conf);
@@ -855,10 +855,13 @@ public class ArffHeaderSparkJob extends SparkJob implements
       }
     }
 
+    int maxNominalSummaryLabels =
+      partialTasks.get(0).getMaxNominalSummaryLabels();
     m_finalHeader =
       computeQuartiles ? CSVToARFFHeaderReduceTask
-        .aggregateHeadersAndQuartiles(headerPortionsDataHolder)
-        : CSVToARFFHeaderReduceTask.aggregate(headerPortionsInstances);
+        .aggregateHeadersAndQuartiles(headerPortionsDataHolder,
+          maxNominalSummaryLabels) : CSVToARFFHeaderReduceTask.aggregate(
+        headerPortionsInstances, maxNominalSummaryLabels);
     System.out.println(m_finalHeader);
 
     int decimalPlaces = 2;
@@ -93,6 +93,7 @@ import weka.server.NamedTask;
 import weka.server.PurgeTaskServlet;
 import weka.server.WekaServer;
 import weka.server.WekaServlet;
+import weka.server.WireFormat;
 import weka.server.logging.ServerLogger;
 
 /**
@@ -2583,7 +2584,8 @@ public class ClassifierPanelRemoteLauncher extends JPanel implements
 
     try {
       String service =
-        GetTaskResultServlet.CONTEXT_PATH + "/?name=" + taskID + "&client=Y";
+        GetTaskResultServlet.CONTEXT_PATH + "/?name=" + taskID + "&client=Y"
+          + "&" + WireFormat.WIRE_KEY + "=" + WireFormat.VERSION;
       post = new PostMethod(constructURL(service));
       post.setDoAuthentication(true);
       post.addRequestHeader(new Header("Content-Type", "text/plain"));
@@ -2600,10 +2602,8 @@ public class ClassifierPanelRemoteLauncher extends JPanel implements
           + "required");
       } else {
         is = post.getResponseBodyAsStream();
-        ObjectInputStream ois =
-          SerializationHelper.getObjectInputStream(new BufferedInputStream(
-            new GZIPInputStream(is)));
-        Object response = ois.readObject();
+        // older servers ignore the format request and send GZIP
+        Object response = WireFormat.readObject(is);
         if (response.toString().startsWith(WekaServlet.RESPONSE_ERROR)) {
 
           logMessage("Server returned an error: "
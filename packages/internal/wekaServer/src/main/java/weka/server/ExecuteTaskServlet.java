@@ -22,7 +22,6 @@
 package weka.server;
 
 import weka.core.LogHandler;
-import weka.core.SerializationHelper;
 import weka.experiment.Task;
 import weka.server.WekaTaskMap.WekaTaskEntry;
 import weka.server.logging.ServerLogger;
@@ -35,12 +34,10 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Accepts a task for execution. Tasks are added to a Map and may get executed
@@ -124,16 +121,12 @@ public class ExecuteTaskServlet extends WekaServlet {
 
     response.setStatus(HttpServletResponse.SC_OK);
 
-    ObjectInputStream ois = null;
     Object task = null;
     WekaTaskEntry entry = null;
     try {
       if (clientLegacy) {
-        // Deserialize the task
-	GZIPInputStream gzi = new GZIPInputStream(in);
-	ois = SerializationHelper.getObjectInputStream(gzi);        
-
-        task = ois.readObject();
+        // Deserialize the task (either compact or GZIP compressed)
+        task = WireFormat.readObject(in);
       } else if (clientNew) {
         // Deserialize the json
         StringBuilder b = new StringBuilder();
@@ -162,6 +155,8 @@ public class ExecuteTaskServlet extends WekaServlet {
         + m_server.getPort());
       entry.setServer(entry.getOriginatingServer());
       entry.setCameFromMaster(fromMaster);
+      entry.setPriority(TaskScheduler.parsePriority(request
+        .getParameter(TaskScheduler.PRIORITY_KEY)));
 
       if (task instanceof LogHandler) {
         ServerLogger sl = new ServerLogger(entry);
@@ -210,9 +205,9 @@ public class ExecuteTaskServlet extends WekaServlet {
       }
       ex.printStackTrace();
     } finally {
-      if (ois != null) {
-        ois.close();
-        ois = null;
+      if (in != null) {
+        in.close();
+        in = null;
       }
 
       if (oos != null) {
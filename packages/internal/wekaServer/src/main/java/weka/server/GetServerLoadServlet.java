@@ -29,11 +29,14 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
- * Returns the load of this Weka server instance.
+ * Returns the load of this Weka server instance. If the "detailed" parameter
+ * is set then a map of CPU load, memory and queued work estimates (see
+ * TaskScheduler) is returned instead of the load factor.
  * 
  * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
  * @version $Revision$
@@ -81,6 +84,10 @@ public class GetServerLoadServlet extends WekaServlet {
       clientParamLegacy != null && clientParamLegacy.equalsIgnoreCase("y");
     boolean clientNew =
       clientParamNew != null && clientParamNew.equalsIgnoreCase("y");
+    String detailedParam =
+      request.getParameter(TaskScheduler.DETAILED_STATUS_KEY);
+    boolean detailed =
+      detailedParam != null && detailedParam.equalsIgnoreCase("y");
 
     response.setStatus(HttpServletResponse.SC_OK);
     if (clientLegacy) {
@@ -99,7 +106,7 @@ public class GetServerLoadServlet extends WekaServlet {
 
     // if we have capacity free (our load factor < 1) then
     // report back our load factor
-    if (loadFactor > 1 && m_server.getSlaves().size() > 0) {
+    if (!detailed && loadFactor > 1 && m_server.getSlaves().size() > 0) {
       // Report back the lowest load out of ourself and the
       // slaves that we have registered
       Set<String> slaves = m_server.getSlaves();
@@ -114,7 +121,24 @@ public class GetServerLoadServlet extends WekaServlet {
     }
 
     try {
-      if (clientLegacy) {
+      if (detailed && clientLegacy) {
+        OutputStream outS = response.getOutputStream();
+
+        // send cpu, memory and queued work estimates back to client
+        oos = new ObjectOutputStream(new BufferedOutputStream(outS));
+        oos.writeObject(new HashMap<String, Object>(m_server.getScheduler()
+          .getLocalStatus()));
+        oos.flush();
+      } else if (detailed && clientNew) {
+        Map<String, Object> jResponse =
+          JSONProtocol.createOKResponseMap("OK. Server status");
+        jResponse.put(JSONProtocol.RESPONSE_PAYLOAD_KEY, m_server
+          .getScheduler().getLocalStatus());
+        String encodedResponse = JSONProtocol.encodeToJSONString(jResponse);
+        out = response.getWriter();
+        out.println(encodedResponse);
+        out.flush();
+      } else if (clientLegacy) {
         OutputStream outS = response.getOutputStream();
 
         // send load factor back to client
@@ -23,23 +23,21 @@ package weka.server;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.PostMethod;
 import weka.experiment.TaskStatusInfo;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -56,6 +54,9 @@ public class GetTaskResultServlet extends WekaServlet {
   /** The context path for this servlet */
   public static final String CONTEXT_PATH = "/weka/taskResult";
 
+  /** Results are sent to legacy clients in chunks of this many bytes */
+  public static final int RESULT_CHUNK_SIZE = 64 * 1024;
+
   /**
    * For serialization
    */
@@ -95,10 +96,13 @@ public class GetTaskResultServlet extends WekaServlet {
       jsonClientParam != null && jsonClientParam.equalsIgnoreCase("y");
     boolean clientLegacy =
       clientParamLegacy != null && clientParamLegacy.equalsIgnoreCase("y");
+    int wireVersion =
+      WireFormat.negotiateVersion(request.getParameter(WireFormat.WIRE_KEY));
 
     response.setStatus(HttpServletResponse.SC_OK);
     if (clientLegacy) {
       response.setContentType("application/octet-stream");
+      response.setBufferSize(RESULT_CHUNK_SIZE);
     } else {
       response.setCharacterEncoding("UTF-8");
       response.setContentType("text/html;charset=UTF-8");
@@ -106,6 +110,7 @@ public class GetTaskResultServlet extends WekaServlet {
 
     ObjectOutputStream oos = null;
     PrintWriter out = null;
+    boolean streaming = false;
 
     // Get the task
     NamedTask task = m_taskMap.getTask(taskName);
@@ -142,6 +147,7 @@ public class GetTaskResultServlet extends WekaServlet {
         }
       } else {
         TaskStatusInfo status = null;
+        boolean streamed = false;
 
         WekaTaskMap.WekaTaskEntry te = m_taskMap.getTaskKey(taskName);
 
@@ -151,6 +157,20 @@ public class GetTaskResultServlet extends WekaServlet {
           // ask the task to load it (if they have persisted it to save memory)
           task.loadResult();
           status = task.getTaskStatus();
+        } else if (clientLegacy) {
+          // the slave's response is already in the form that the client
+          // expects, so pass it through rather than holding the whole
+          // result in memory here
+          streaming = true;
+          streamed =
+            streamResultRemote(m_server, te.getServer(), te.getRemoteID(),
+              taskName, wireVersion, response.getOutputStream());
+          streaming = false;
+          if (!streamed) {
+            status =
+              getResultRemote(m_server, te.getServer(), te.getRemoteID(),
+                taskName);
+          }
         } else {
           // need to ask the slave for it (and handle error if slave is down...)
           String slave = te.getServer();
@@ -159,16 +179,24 @@ public class GetTaskResultServlet extends WekaServlet {
         }
 
         if (clientLegacy) {
-          // is actually the same as GetTaskStatusServlet, since the task status
-          // object encapsulates the result
-          OutputStream outS = response.getOutputStream();
-
-          // send status (and result if ready) back to client
-          oos =
-            new ObjectOutputStream(new BufferedOutputStream(
-              new GZIPOutputStream(outS)));
-          oos.writeObject(status);
-          oos.flush();
+          if (!streamed) {
+            // is actually the same as GetTaskStatusServlet, since the task
+            // status object encapsulates the result
+            OutputStream outS = response.getOutputStream();
+
+            // send status (and result if ready) back to client. The output
+            // goes out in chunks as the result is serialized
+            if (wireVersion > 0) {
+              WireFormat.writeObject(status, outS);
+            } else {
+              oos =
+                new ObjectOutputStream(new BufferedOutputStream(
+                  new GZIPOutputStream(outS, RESULT_CHUNK_SIZE),
+                  RESULT_CHUNK_SIZE));
+              oos.writeObject(status);
+              oos.flush();
+            }
+          }
 
           // tell the task to free memory (if possible) since the client has
           // collected the
@@ -204,6 +232,10 @@ public class GetTaskResultServlet extends WekaServlet {
           } else {
             if (status.getExecutionStatus() == TaskStatusInfo.PROCESSING) {
               out.println("No result available yet - task is processing...");
+            } else if (status.getExecutionStatus()
+              == WekaTaskMap.WekaTaskEntry.PREEMPTED) {
+              out.println("No result available yet - task has been "
+                + "preempted and is queued to run again...");
             } else if (status.getExecutionStatus() == TaskStatusInfo.FAILED) {
               out.println("No result available yet: processing failed "
                 + "(check logs)");
@@ -222,6 +254,13 @@ public class GetTaskResultServlet extends WekaServlet {
         }
       }
     } catch (Exception ex) {
+      if (streaming) {
+        // part of the result has already been sent, so the response can't
+        // be completed. Abort it, so that the client doesn't take what it
+        // has received for the whole result
+        throw new IOException("Unable to pass on the result of task '"
+          + taskName + "'", ex);
+      }
       if (oos != null) {
         oos.writeObject(WekaServlet.RESPONSE_ERROR + " " + ex.getMessage());
         oos.flush();
@@ -253,6 +292,97 @@ public class GetTaskResultServlet extends WekaServlet {
     }
   }
 
+  /**
+   * Copy the (serialized and compressed) result of a task from a slave to the
+   * supplied output stream, one chunk at a time.
+   * 
+   * @param server the server that handed the task to the slave
+   * @param slave the slave executing the task
+   * @param remoteTaskID the ID of the task on the slave
+   * @param origTaskID the ID of the task on this server
+   * @param wireVersion the WireFormat version accepted by the client (0 for
+   *          the legacy format only)
+   * @param dest the stream to write to
+   * @return false if the slave's response could not be obtained (in which case
+   *         nothing has been written to dest)
+   * @throws IOException if the response could not be copied in full after
+   *           part of it had been written to dest
+   */
+  protected static boolean streamResultRemote(WekaServer server,
+    String slave, String remoteTaskID, String origTaskID, int wireVersion,
+    OutputStream dest) throws IOException {
+
+    InputStream is = null;
+    PostMethod post = null;
+    boolean written = false;
+
+    try {
+      String url = "http://" + slave;
+      url = url.replace(" ", "%20");
+      url += CONTEXT_PATH;
+      url += "/?name=" + URLEncoder.encode(remoteTaskID, "UTF-8") + "&client=Y";
+      if (wireVersion > 0) {
+        url += "&" + WireFormat.WIRE_KEY + "=" + wireVersion;
+      }
+      post = new PostMethod(url);
+      post.setDoAuthentication(true);
+      post.addRequestHeader(new Header("Content-Type", "text/plain"));
+
+      // Get HTTP client
+      HttpClient client =
+        WekaServer.ConnectionManager.getSingleton().createHttpClient();
+      WekaServer.ConnectionManager.addCredentials(client, server.getUsername(),
+        server.getPassword());
+
+      // Execute request
+      int result = client.executeMethod(post);
+      if (result == 401) {
+        System.err.println("[WekaServer] Unable to get remote result of task'"
+          + origTaskID + "' - authentication required.\n");
+      } else if (result != HttpStatus.SC_OK) {
+        // don't pass an error page on as the result
+        System.err.println("[WekaServer] Unable to get remote result of task'"
+          + origTaskID + "' - slave replied with status " + result + ".\n");
+      } else {
+        is = post.getResponseBodyAsStream();
+        byte[] chunk = new byte[RESULT_CHUNK_SIZE];
+        int numRead;
+        while ((numRead = is.read(chunk)) >= 0) {
+          if (numRead > 0) {
+            written = true;
+            dest.write(chunk, 0, numRead);
+            dest.flush();
+          }
+        }
+      }
+    } catch (Exception ex) {
+      System.err.println("[WekaServer] A problem occurred while "
+        + "trying to retrieve remote result of task : '" + origTaskID + "' ("
+        + ex.getMessage() + ")");
+      System.err.println("Remote task id: " + remoteTaskID);
+      if (written) {
+        throw new IOException("Result of task '" + origTaskID
+          + "' is incomplete", ex);
+      }
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+          is = null;
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+
+      if (post != null) {
+        post.releaseConnection();
+        post = null;
+      }
+    }
+
+    return written;
+  }
+
   protected static TaskStatusInfo getResultRemote(WekaServer server,
     String slave, String remoteTaskID, String origTaskID) {
 
@@ -265,6 +395,7 @@ public class GetTaskResultServlet extends WekaServlet {
       url = url.replace(" ", "%20");
       url += CONTEXT_PATH;
       url += "/?name=" + URLEncoder.encode(remoteTaskID, "UTF-8") + "&client=Y";
+      url += "&" + WireFormat.WIRE_KEY + "=" + WireFormat.VERSION;
       post = new PostMethod(url);
       post.setDoAuthentication(true);
       post.addRequestHeader(new Header("Content-Type", "text/plain"));
@@ -286,10 +417,8 @@ public class GetTaskResultServlet extends WekaServlet {
 
         // the response
         is = post.getResponseBodyAsStream();
-        ObjectInputStream ois =
-          new ObjectInputStream(
-            new BufferedInputStream(new GZIPInputStream(is)));
-        Object response = ois.readObject();
+        // older slaves ignore the format request and send GZIP
+        Object response = WireFormat.readObject(is);
         if (response.toString().startsWith(WekaServlet.RESPONSE_ERROR)) {
           System.err
             .println("[WekaServer] A problem occurred while "
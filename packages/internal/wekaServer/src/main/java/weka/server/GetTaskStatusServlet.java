@@ -29,17 +29,14 @@ import weka.experiment.TaskStatusInfo;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -90,6 +87,8 @@ public class GetTaskStatusServlet extends WekaServlet {
     String jsonClientParam = request.getParameter(JSONProtocol.JSON_CLIENT_KEY);
     boolean clientLegacy =
       clientParamLegacy != null && clientParamLegacy.equalsIgnoreCase("y");
+    int wireVersion =
+      WireFormat.negotiateVersion(request.getParameter(WireFormat.WIRE_KEY));
     boolean clientNew =
       jsonClientParam != null && jsonClientParam.equalsIgnoreCase("y");
 
@@ -166,11 +165,15 @@ public class GetTaskStatusServlet extends WekaServlet {
           OutputStream outS = response.getOutputStream();
 
           // send status back to client
-          oos =
-            new ObjectOutputStream(new BufferedOutputStream(
-              new GZIPOutputStream(outS)));
-          oos.writeObject(status);
-          oos.flush();
+          if (wireVersion > 0) {
+            WireFormat.writeObject(status, outS);
+          } else {
+            oos =
+              new ObjectOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(outS)));
+            oos.writeObject(status);
+            oos.flush();
+          }
         } else if (clientNew) {
           // send the status back to the client
           Map<String, Object> responseJ =
@@ -267,6 +270,7 @@ public class GetTaskStatusServlet extends WekaServlet {
       url = url.replace(" ", "%20");
       url += CONTEXT_PATH;
       url += "/?name=" + URLEncoder.encode(remoteTaskID, "UTF-8") + "&client=Y";
+      url += "&" + WireFormat.WIRE_KEY + "=" + WireFormat.VERSION;
       post = new PostMethod(url);
       post.setDoAuthentication(true);
       post.addRequestHeader(new Header("Content-Type", "text/plain"));
@@ -288,10 +292,8 @@ public class GetTaskStatusServlet extends WekaServlet {
 
         // the response
         is = post.getResponseBodyAsStream();
-        ObjectInputStream ois =
-          new ObjectInputStream(
-            new BufferedInputStream(new GZIPInputStream(is)));
-        Object response = ois.readObject();
+        // older slaves ignore the format request and send GZIP
+        Object response = WireFormat.readObject(is);
         if (response.toString().startsWith(WekaServlet.RESPONSE_ERROR)) {
           System.err
             .println("[WekaServer] A problem occurred while "
@@ -359,6 +361,9 @@ public class GetTaskStatusServlet extends WekaServlet {
     case WekaTaskMap.WekaTaskEntry.STOPPED:
       executionStatus = "Stopped";
       break;
+    case WekaTaskMap.WekaTaskEntry.PREEMPTED:
+      executionStatus = "Preempted (queued to run again)";
+      break;
     }
 
     return executionStatus;
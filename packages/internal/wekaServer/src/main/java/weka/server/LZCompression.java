@@ -0,0 +1,503 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LZCompression.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 style block compressor (in the spirit of LZ4) implemented in
+ * pure Java. Compression ratios are lower than those of GZIP, but compression
+ * and decompression are several times faster, which makes it a better choice
+ * for moving large tasks, models and results between servers on a fast
+ * network.
+ * <p>
+ * A compressed block is a sequence of (literals, match) pairs. Each pair
+ * starts with a token byte holding the number of literals in the high four
+ * bits and the match length (minus four) in the low four bits, with a value of
+ * 15 meaning that further length bytes follow. The literals come next,
+ * followed by the two byte (little endian) offset of the match. The last pair
+ * of a block only has literals.
+ *
+ * @version $Revision$
+ */
+public class LZCompression {
+
+  /** Minimum length of a match */
+  protected static final int MIN_MATCH = 4;
+
+  /** The last few bytes of a block are always literals */
+  protected static final int LAST_LITERALS = 5;
+
+  /** Matches may not start in the last few bytes of a block */
+  protected static final int MF_LIMIT = 12;
+
+  /** Maximum match offset */
+  protected static final int MAX_OFFSET = 65535;
+
+  /** Number of bits in the hash of a four byte sequence */
+  protected static final int HASH_BITS = 14;
+
+  /** Size of the hash table */
+  protected static final int HASH_SIZE = 1 << HASH_BITS;
+
+  /** Controls how quickly the compressor skips over incompressible data */
+  protected static final int SKIP_STRENGTH = 6;
+
+  /** Size of the blocks written by LZOutputStream */
+  public static final int BLOCK_SIZE = 64 * 1024;
+
+  /** Block type - end of stream */
+  protected static final int BLOCK_END = 0;
+
+  /** Block type - compressed */
+  protected static final int BLOCK_COMPRESSED = 1;
+
+  /** Block type - stored (did not compress) */
+  protected static final int BLOCK_STORED = 2;
+
+  /**
+   * Get the maximum size of the compressed version of a block
+   *
+   * @param length the length of the uncompressed block
+   * @return the maximum compressed size
+   */
+  public static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compress a block of bytes
+   *
+   * @param src the source array
+   * @param srcOff offset of the block in the source array
+   * @param srcLen length of the block
+   * @param dst the destination array. Must have at least
+   *          maxCompressedLength(srcLen) bytes available from dstOff
+   * @param dstOff the offset to write to in the destination array
+   * @return the compressed length
+   */
+  public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst,
+    int dstOff) {
+    return compress(src, srcOff, srcLen, dst, dstOff, new int[HASH_SIZE]);
+  }
+
+  /**
+   * Compress a block of bytes, re-using a hash table
+   *
+   * @param src the source array
+   * @param srcOff offset of the block in the source array
+   * @param srcLen length of the block
+   * @param dst the destination array. Must have at least
+   *          maxCompressedLength(srcLen) bytes available from dstOff
+   * @param dstOff the offset to write to in the destination array
+   * @param table the hash table to use (HASH_SIZE entries)
+   * @return the compressed length
+   */
+  protected static int compress(byte[] src, int srcOff, int srcLen,
+    byte[] dst, int dstOff, int[] table) {
+
+    // positions are stored relative to srcOff, plus one (0 = empty)
+    Arrays.fill(table, 0);
+    int srcEnd = srcOff + srcLen;
+    int matchLimit = srcEnd - LAST_LITERALS;
+    int mfLimit = srcEnd - MF_LIMIT;
+    int anchor = srcOff;
+    int ip = srcOff;
+    int op = dstOff;
+
+    while (ip < mfLimit) {
+      int seq = readInt(src, ip);
+      int h = hash(seq);
+      int ref = table[h] - 1 + srcOff;
+      table[h] = ip - srcOff + 1;
+
+      if (ref < srcOff || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+        ip += 1 + ((ip - anchor) >>> SKIP_STRENGTH);
+        continue;
+      }
+
+      // extend the match backwards into the pending literals
+      while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+        ip--;
+        ref--;
+      }
+
+      int matchLen = MIN_MATCH;
+      while (ip + matchLen < matchLimit
+        && src[ip + matchLen] == src[ref + matchLen]) {
+        matchLen++;
+      }
+
+      op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen);
+      ip += matchLen;
+      anchor = ip;
+    }
+
+    // remaining literals
+    int litLen = srcEnd - anchor;
+    int token = Math.min(litLen, 15) << 4;
+    dst[op++] = (byte) token;
+    op = writeLength(dst, op, litLen - 15);
+    System.arraycopy(src, anchor, dst, op, litLen);
+    op += litLen;
+
+    return op - dstOff;
+  }
+
+  /**
+   * Decompress a block of bytes
+   *
+   * @param src the source array
+   * @param srcOff offset of the compressed block in the source array
+   * @param srcLen length of the compressed block
+   * @param dst the destination array
+   * @param dstOff the offset to write to in the destination array
+   * @param dstLen the uncompressed length of the block
+   * @throws IOException if the block is corrupt
+   */
+  public static void decompress(byte[] src, int srcOff, int srcLen,
+    byte[] dst, int dstOff, int dstLen) throws IOException {
+    int ip = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int op = dstOff;
+    int dstEnd = dstOff + dstLen;
+
+    try {
+      while (true) {
+        int token = src[ip++] & 0xff;
+
+        int litLen = token >>> 4;
+        if (litLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            litLen += b;
+          } while (b == 255);
+        }
+        if (op + litLen > dstEnd || ip + litLen > srcEnd) {
+          throw new IOException("Corrupt compressed block (literals)");
+        }
+        System.arraycopy(src, ip, dst, op, litLen);
+        ip += litLen;
+        op += litLen;
+
+        if (ip == srcEnd) {
+          // last sequence
+          break;
+        }
+
+        int offset = (src[ip++] & 0xff) | ((src[ip++] & 0xff) << 8);
+        int ref = op - offset;
+        if (offset == 0 || ref < dstOff) {
+          throw new IOException("Corrupt compressed block (offset)");
+        }
+
+        int matchLen = token & 15;
+        if (matchLen == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xff;
+            matchLen += b;
+          } while (b == 255);
+        }
+        matchLen += MIN_MATCH;
+        if (op + matchLen > dstEnd) {
+          throw new IOException("Corrupt compressed block (match)");
+        }
+
+        if (offset >= matchLen) {
+          System.arraycopy(dst, ref, dst, op, matchLen);
+          op += matchLen;
+        } else {
+          // overlapping copy (repeating pattern)
+          for (int i = 0; i < matchLen; i++) {
+            dst[op++] = dst[ref++];
+          }
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException ex) {
+      throw new IOException("Corrupt compressed block");
+    }
+
+    if (op != dstEnd) {
+      throw new IOException("Corrupt compressed block (length)");
+    }
+  }
+
+  private static int writeSequence(byte[] src, int litOff, int litLen,
+    byte[] dst, int op, int offset, int matchLen) {
+    int ml = matchLen - MIN_MATCH;
+    int token = (Math.min(litLen, 15) << 4) | Math.min(ml, 15);
+    dst[op++] = (byte) token;
+    op = writeLength(dst, op, litLen - 15);
+    System.arraycopy(src, litOff, dst, op, litLen);
+    op += litLen;
+    dst[op++] = (byte) offset;
+    dst[op++] = (byte) (offset >>> 8);
+    return writeLength(dst, op, ml - 15);
+  }
+
+  private static int writeLength(byte[] dst, int op, int remaining) {
+    if (remaining >= 0) {
+      while (remaining >= 255) {
+        dst[op++] = (byte) 255;
+        remaining -= 255;
+      }
+      dst[op++] = (byte) remaining;
+    }
+    return op;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16)
+      | ((b[i + 3] & 0xff) << 24);
+  }
+
+  private static int hash(int seq) {
+    return (seq * -1640531535) >>> (32 - HASH_BITS);
+  }
+
+  /**
+   * OutputStream that compresses what is written to it in blocks. Closing the
+   * stream (or calling finish()) writes an end of stream marker.
+   */
+  public static class LZOutputStream extends OutputStream {
+
+    /** The stream to write compressed blocks to */
+    protected DataOutputStream m_out;
+
+    /** Uncompressed bytes of the current block */
+    protected byte[] m_buffer = new byte[BLOCK_SIZE];
+
+    /** Compressed block */
+    protected byte[] m_compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+
+    /** Hash table re-used for each block */
+    protected int[] m_table = new int[HASH_SIZE];
+
+    /** Number of bytes in the current block */
+    protected int m_count;
+
+    /** True once the end of stream marker has been written */
+    protected boolean m_finished;
+
+    /**
+     * Constructor
+     *
+     * @param out the stream to write compressed blocks to
+     */
+    public LZOutputStream(OutputStream out) {
+      m_out = new DataOutputStream(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (m_count == m_buffer.length) {
+        writeBlock();
+      }
+      m_buffer[m_count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (m_count == m_buffer.length) {
+          writeBlock();
+        }
+        int toCopy = Math.min(len, m_buffer.length - m_count);
+        System.arraycopy(b, off, m_buffer, m_count, toCopy);
+        m_count += toCopy;
+        off += toCopy;
+        len -= toCopy;
+      }
+    }
+
+    /**
+     * Compress and write the current block (if non-empty)
+     *
+     * @throws IOException if a problem occurs
+     */
+    protected void writeBlock() throws IOException {
+      if (m_count == 0) {
+        return;
+      }
+      int compressedLen =
+        compress(m_buffer, 0, m_count, m_compressed, 0, m_table);
+      if (compressedLen < m_count) {
+        m_out.writeByte(BLOCK_COMPRESSED);
+        m_out.writeInt(m_count);
+        m_out.writeInt(compressedLen);
+        m_out.write(m_compressed, 0, compressedLen);
+      } else {
+        m_out.writeByte(BLOCK_STORED);
+        m_out.writeInt(m_count);
+        m_out.write(m_buffer, 0, m_count);
+      }
+      m_count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writeBlock();
+      m_out.flush();
+    }
+
+    /**
+     * Write any buffered data and the end of stream marker without closing
+     * the underlying stream
+     *
+     * @throws IOException if a problem occurs
+     */
+    public void finish() throws IOException {
+      if (!m_finished) {
+        writeBlock();
+        m_out.writeByte(BLOCK_END);
+        m_out.flush();
+        m_finished = true;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+      m_out.close();
+    }
+  }
+
+  /**
+   * InputStream that decompresses the blocks written by an LZOutputStream
+   */
+  public static class LZInputStream extends InputStream {
+
+    /** The stream to read compressed blocks from */
+    protected DataInputStream m_in;
+
+    /** Uncompressed bytes of the current block */
+    protected byte[] m_buffer = new byte[BLOCK_SIZE];
+
+    /** Compressed block */
+    protected byte[] m_compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+
+    /** Number of bytes in the current block */
+    protected int m_count;
+
+    /** Read position in the current block */
+    protected int m_pos;
+
+    /** True once the end of stream marker has been read */
+    protected boolean m_eof;
+
+    /**
+     * Constructor
+     *
+     * @param in the stream to read compressed blocks from
+     */
+    public LZInputStream(InputStream in) {
+      m_in = new DataInputStream(in);
+    }
+
+    /**
+     * Read the next block
+     *
+     * @return false if the end of the stream has been reached
+     * @throws IOException if a problem occurs
+     */
+    protected boolean readBlock() throws IOException {
+      if (m_eof) {
+        return false;
+      }
+
+      int type = m_in.read();
+      if (type < 0) {
+        throw new EOFException("Unexpected end of compressed stream");
+      }
+      if (type == BLOCK_END) {
+        m_eof = true;
+        return false;
+      }
+
+      int len = m_in.readInt();
+      if (len < 0 || len > BLOCK_SIZE) {
+        throw new IOException("Corrupt compressed stream (block length)");
+      }
+      if (type == BLOCK_STORED) {
+        m_in.readFully(m_buffer, 0, len);
+      } else if (type == BLOCK_COMPRESSED) {
+        int compressedLen = m_in.readInt();
+        if (compressedLen < 0 || compressedLen > m_compressed.length) {
+          throw new IOException("Corrupt compressed stream (block length)");
+        }
+        m_in.readFully(m_compressed, 0, compressedLen);
+        decompress(m_compressed, 0, compressedLen, m_buffer, 0, len);
+      } else {
+        throw new IOException("Corrupt compressed stream (block type "
+          + type + ")");
+      }
+      m_count = len;
+      m_pos = 0;
+
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      while (m_pos == m_count) {
+        if (!readBlock()) {
+          return -1;
+        }
+      }
+      return m_buffer[m_pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (m_pos == m_count) {
+        if (!readBlock()) {
+          return -1;
+        }
+      }
+      int toCopy = Math.min(len, m_count - m_pos);
+      System.arraycopy(m_buffer, m_pos, b, off, toCopy);
+      m_pos += toCopy;
+      return toCopy;
+    }
+
+    @Override
+    public int available() {
+      return m_count - m_pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+      m_in.close();
+    }
+  }
+}
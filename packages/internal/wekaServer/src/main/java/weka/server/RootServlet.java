@@ -28,7 +28,9 @@ import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.ServletException;
@@ -296,6 +298,77 @@ public class RootServlet extends WekaServlet {
     return load;
   }
 
+  /**
+   * Utility method to get the detailed status (CPU load, memory, queued work
+   * etc.) of a named slave
+   * 
+   * @param slave the name of the remote slave
+   * @param username the username to authenticate with
+   * @param password the password to authenticate with
+   * @return a map of status values, or null if the slave could not be
+   *         contacted. Older slaves only report their load factor (under
+   *         TaskScheduler.STATUS_LOAD).
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> getSlaveStatus(String slave,
+    String username, String password) {
+    Map<String, Object> status = null;
+
+    InputStream is = null;
+    PostMethod post = null;
+    try {
+      String url = "http://" + slave;
+      url = url.replace(" ", "%20");
+      url += GetServerLoadServlet.CONTEXT_PATH;
+      url += "/?client=Y&" + TaskScheduler.DETAILED_STATUS_KEY + "=Y";
+
+      post = new PostMethod(url);
+      post.setDoAuthentication(true);
+      post.addRequestHeader(new Header("Content-Type", "text/plain"));
+
+      // Get HTTP client
+      HttpClient client = WekaServer.ConnectionManager.getSingleton()
+        .createHttpClient();
+      WekaServer.ConnectionManager.addCredentials(client, username, password);
+
+      // Execute request
+      client.executeMethod(post);
+      // the response
+      is = post.getResponseBodyAsStream();
+      ObjectInputStream ois = new ObjectInputStream(is);
+      Object response = ois.readObject();
+
+      if (response instanceof Map) {
+        status = (Map<String, Object>) response;
+      } else if (response instanceof Double) {
+        // older servers just send back their load factor
+        status = new HashMap<String, Object>();
+        status.put(TaskScheduler.STATUS_LOAD, response);
+      } else {
+        throw new Exception(
+          "[WekaServer] Unexpected result from slave (request status)!");
+      }
+    } catch (Exception ex) {
+      System.err.println("Error getting slave status: " + ex.getMessage());
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+          is = null;
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+
+      if (post != null) {
+        post.releaseConnection();
+        post = null;
+      }
+    }
+
+    return status;
+  }
+
   @Override
   public String toString() {
     return "Root servlet";
@@ -0,0 +1,553 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TaskScheduler.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.server;
+
+import weka.server.WekaTaskMap.WekaTaskEntry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules task execution for a WekaServer. Keeps track of how long tasks
+ * have taken to execute in the past, runs local tasks in priority order and
+ * places tasks on the server (local or slave) that is predicted to finish them
+ * first, based on each server's queued work, execution slots, load adjust
+ * factor, CPU load and free memory. A high priority task that finds all local
+ * execution slots busy may preempt a running lower priority scheduled task,
+ * which gets re-queued and runs again once a slot becomes free. Such a task
+ * reports WekaTaskEntry.PREEMPTED rather than STOPPED.
+ *
+ * @version $Revision$
+ */
+public class TaskScheduler {
+
+  /** Priority for background tasks */
+  public static final int PRIORITY_LOW = -1;
+
+  /** Default priority */
+  public static final int PRIORITY_NORMAL = 0;
+
+  /** Priority for urgent tasks */
+  public static final int PRIORITY_HIGH = 1;
+
+  /** Request parameter used to specify the priority of a submitted task */
+  public static final String PRIORITY_KEY = "priority";
+
+  /** Request parameter used to ask a server for its detailed status */
+  public static final String DETAILED_STATUS_KEY = "detailed";
+
+  /** Status key - system load average per processor (-1 if unavailable) */
+  public static final String STATUS_CPU_LOAD = "cpuLoad";
+
+  /** Status key - bytes of heap available for new tasks */
+  public static final String STATUS_FREE_MEMORY = "freeMemory";
+
+  /** Status key - maximum heap size in bytes */
+  public static final String STATUS_MAX_MEMORY = "maxMemory";
+
+  /** Status key - number of execution slots */
+  public static final String STATUS_SLOTS = "slots";
+
+  /** Status key - load adjust factor of the server */
+  public static final String STATUS_LOAD_ADJUST = "loadAdjust";
+
+  /** Status key - number of running tasks */
+  public static final String STATUS_RUNNING = "running";
+
+  /** Status key - number of queued tasks */
+  public static final String STATUS_QUEUED = "queued";
+
+  /** Status key - estimated seconds of work outstanding on the server */
+  public static final String STATUS_QUEUED_WORK = "queuedWork";
+
+  /** Status key - coarse load factor (the only value older servers send) */
+  public static final String STATUS_LOAD = "load";
+
+  /** Status key - highest WireFormat version supported by the server */
+  public static final String STATUS_WIRE_VERSION = "wireVersion";
+
+  /** Predicted cost (seconds) of a task that has never been executed */
+  protected static final double DEFAULT_COST = 1.0;
+
+  /** Weight given to the most recent execution time of a task */
+  protected static final double COST_SMOOTHING = 0.3;
+
+  /** A server with less than this fraction of its heap free is penalized */
+  protected static final double LOW_MEMORY_FRACTION = 0.1;
+
+  /** Factor applied to the completion time of memory starved servers */
+  protected static final double LOW_MEMORY_PENALTY = 4.0;
+
+  /** The server that we are scheduling for */
+  protected WekaServer m_server;
+
+  /** The pool that runs local tasks */
+  protected ThreadPoolExecutor m_executorPool;
+
+  /** Smoothed execution times (seconds) keyed by task name */
+  protected Map<String, Double> m_costHistory = new HashMap<String, Double>();
+
+  /** Local tasks that are queued or running */
+  protected Set<QueuedTask> m_outstanding = new LinkedHashSet<QueuedTask>();
+
+  /** Provides FIFO ordering of tasks with the same priority */
+  protected AtomicLong m_sequence = new AtomicLong();
+
+  /** WireFormat versions supported by slaves (from their last status) */
+  protected Map<String, Integer> m_slaveWireVersions =
+    new HashMap<String, Integer>();
+
+  /**
+   * Constructor
+   *
+   * @param server the server to schedule tasks for
+   */
+  public TaskScheduler(WekaServer server) {
+    m_server = server;
+  }
+
+  /**
+   * Parse a priority request parameter
+   *
+   * @param priority the value of the parameter (may be null)
+   * @return the priority
+   */
+  public static int parsePriority(String priority) {
+    if (priority == null || priority.length() == 0) {
+      return PRIORITY_NORMAL;
+    }
+
+    if (priority.equalsIgnoreCase("low")) {
+      return PRIORITY_LOW;
+    }
+    if (priority.equalsIgnoreCase("high")) {
+      return PRIORITY_HIGH;
+    }
+    try {
+      return Integer.parseInt(priority.trim());
+    } catch (NumberFormatException ex) {
+      return PRIORITY_NORMAL;
+    }
+  }
+
+  /**
+   * Start (or restart) the pool that executes local tasks. Tasks waiting in
+   * the pool's queue are ordered by priority.
+   *
+   * @param numSlots the number of tasks to run concurrently
+   * @return the executor pool
+   */
+  public synchronized ThreadPoolExecutor startExecutorPool(int numSlots) {
+    if (m_executorPool != null) {
+      m_executorPool.shutdownNow();
+    }
+    m_outstanding.clear();
+
+    m_executorPool =
+      new ThreadPoolExecutor(numSlots, numSlots, 120, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>());
+
+    return m_executorPool;
+  }
+
+  /**
+   * Get the predicted cost of a task
+   *
+   * @param taskName the name of the task
+   * @return the predicted execution time in seconds
+   */
+  public synchronized double predictCost(String taskName) {
+    Double cost = m_costHistory.get(taskName);
+    if (cost != null) {
+      return cost;
+    }
+
+    if (m_costHistory.size() == 0) {
+      return DEFAULT_COST;
+    }
+
+    // use the average of the tasks we know about
+    double sum = 0;
+    for (Double c : m_costHistory.values()) {
+      sum += c;
+    }
+    return sum / m_costHistory.size();
+  }
+
+  /**
+   * Record the execution time of a task
+   *
+   * @param taskName the name of the task
+   * @param millis the execution time in milliseconds
+   */
+  public synchronized void recordExecution(String taskName, long millis) {
+    double seconds = millis / 1000.0;
+    Double cost = m_costHistory.get(taskName);
+    if (cost == null) {
+      m_costHistory.put(taskName, seconds);
+    } else {
+      m_costHistory.put(taskName, COST_SMOOTHING * seconds
+        + (1.0 - COST_SMOOTHING) * cost);
+    }
+  }
+
+  /**
+   * Queue a task for local execution. If all execution slots are busy and
+   * there is a running scheduled task with a lower priority then it is asked
+   * to stop and is re-queued.
+   *
+   * @param entry the entry of the task
+   * @param task the task
+   * @param toRun the work to do in order to execute the task
+   */
+  public void submit(WekaTaskEntry entry, NamedTask task, Runnable toRun) {
+    submit(new QueuedTask(entry, task, toRun, entry.getPriority(),
+      m_sequence.incrementAndGet(), predictCost(entry.getName())));
+  }
+
+  /**
+   * Queue a task for local execution
+   *
+   * @param toQueue the task to queue
+   */
+  protected void submit(QueuedTask toQueue) {
+    ThreadPoolExecutor pool;
+    synchronized (this) {
+      pool = m_executorPool;
+      if (pool == null || pool.isShutdown()) {
+        return;
+      }
+      m_outstanding.add(toQueue);
+
+      int running = 0;
+      QueuedTask victim = null;
+      for (QueuedTask t : m_outstanding) {
+        if (t.isRunning()) {
+          running++;
+          if (t.m_preempted || !(t.m_task instanceof Scheduled)
+            || t.m_priority >= toQueue.m_priority) {
+            continue;
+          }
+          // prefer the lowest priority and then the least work lost
+          if (victim == null || t.m_priority < victim.m_priority
+            || (t.m_priority == victim.m_priority
+              && t.m_startTime > victim.m_startTime)) {
+            victim = t;
+          }
+        }
+      }
+
+      if (victim != null && running >= pool.getMaximumPoolSize()) {
+        System.out.println("[WekaServer] Preempting task '"
+          + victim.m_entry.toString() + "' to run '"
+          + toQueue.m_entry.toString() + "'");
+        victim.m_preempted = true;
+        victim.m_task.stop();
+      }
+    }
+
+    pool.execute(toQueue);
+  }
+
+  /**
+   * Called when a local task has finished executing
+   *
+   * @param finished the task that has finished
+   */
+  protected void taskFinished(QueuedTask finished) {
+    boolean requeue;
+    synchronized (this) {
+      m_outstanding.remove(finished);
+      requeue = finished.m_preempted;
+      if (!requeue) {
+        recordExecution(finished.m_entry.getName(),
+          System.currentTimeMillis() - finished.m_startTime);
+      }
+    }
+
+    if (requeue) {
+      System.out.println("[WekaServer] Re-queuing preempted task '"
+        + finished.m_entry.toString() + "'");
+      // keep the original sequence number so that it goes ahead of tasks
+      // with the same priority that were submitted after it
+      submit(new QueuedTask(finished.m_entry, finished.m_task,
+        finished.m_toRun, finished.m_priority, finished.m_sequence,
+        finished.m_predictedCost));
+    }
+  }
+
+  /**
+   * Returns true if a task is running locally and has been asked to stop in
+   * order to make way for a higher priority task. Once it has stopped, such a
+   * task is queued again.
+   *
+   * @param task the task to check
+   * @return true if the task has been preempted
+   */
+  public synchronized boolean isPreempted(NamedTask task) {
+    for (QueuedTask t : m_outstanding) {
+      if (t.m_task == task && t.m_preempted) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the estimated amount of work (in seconds) that is queued or running
+   * locally
+   *
+   * @return the estimated outstanding work in seconds
+   */
+  public synchronized double getQueuedWork() {
+    long now = System.currentTimeMillis();
+    double work = 0;
+    for (QueuedTask t : m_outstanding) {
+      if (t.isRunning()) {
+        work +=
+          Math.max(0, t.m_predictedCost - (now - t.m_startTime) / 1000.0);
+      } else {
+        work += t.m_predictedCost;
+      }
+    }
+    return work;
+  }
+
+  /**
+   * Get the detailed status of the local server
+   *
+   * @return a map of status values
+   */
+  public Map<String, Object> getLocalStatus() {
+    Map<String, Object> status = new HashMap<String, Object>();
+
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    double cpuLoad = os.getSystemLoadAverage();
+    if (cpuLoad >= 0) {
+      cpuLoad /= os.getAvailableProcessors();
+    }
+    Runtime rt = Runtime.getRuntime();
+    long used = rt.totalMemory() - rt.freeMemory();
+
+    status.put(STATUS_CPU_LOAD, cpuLoad);
+    status.put(STATUS_FREE_MEMORY, rt.maxMemory() - used);
+    status.put(STATUS_MAX_MEMORY, rt.maxMemory());
+    status.put(STATUS_SLOTS, m_server.getNumExecutionSlots());
+    status.put(STATUS_LOAD_ADJUST, m_server.getLoadAdjust());
+    status.put(STATUS_RUNNING, m_server.numRunningTasks());
+    status.put(STATUS_QUEUED, m_server.numQueuedTasks());
+    status.put(STATUS_QUEUED_WORK, getQueuedWork());
+    status.put(STATUS_WIRE_VERSION, WireFormat.VERSION);
+
+    return status;
+  }
+
+  /**
+   * Estimate how long it would take a server to complete a task
+   *
+   * @param status the detailed status of the server
+   * @param cost the predicted cost of the task (in seconds)
+   * @return the estimated time (in seconds) to complete the task
+   */
+  public static double estimateCompletionTime(Map<String, Object> status,
+    double cost) {
+    int slots = Math.max(1, getInt(status, STATUS_SLOTS, 1));
+    int tasks =
+      getInt(status, STATUS_RUNNING, 0) + getInt(status, STATUS_QUEUED, 0);
+    double queuedWork = getDouble(status, STATUS_QUEUED_WORK, 0);
+    double loadAdjust = getDouble(status, STATUS_LOAD_ADJUST, 1.0);
+
+    // no waiting if there is a free slot, otherwise assume that the
+    // outstanding work is spread evenly over the slots
+    double wait = tasks < slots ? 0 : queuedWork / slots;
+    double time = (wait + cost) * loadAdjust;
+
+    // other processes competing for the CPU
+    double cpuLoad = getDouble(status, STATUS_CPU_LOAD, -1);
+    if (cpuLoad > 1) {
+      time *= cpuLoad;
+    }
+
+    double maxMem = getDouble(status, STATUS_MAX_MEMORY, -1);
+    double freeMem = getDouble(status, STATUS_FREE_MEMORY, -1);
+    if (maxMem > 0 && freeMem >= 0 && freeMem < LOW_MEMORY_FRACTION * maxMem) {
+      time *= LOW_MEMORY_PENALTY;
+    }
+
+    return time;
+  }
+
+  /**
+   * Choose the server that is predicted to complete a task first
+   *
+   * @param entry the entry of the task to place
+   * @param slaves the slaves that are available
+   * @return the host:port of the server to execute on
+   */
+  public String chooseExecutionHost(WekaTaskEntry entry,
+    Collection<String> slaves) {
+    String host = m_server.getHostname() + ":" + m_server.getPort();
+    double cost = predictCost(entry.getName());
+    double minTime = estimateCompletionTime(getLocalStatus(), cost);
+
+    // nothing can beat a free slot on the fastest server in the cluster
+    if (minTime <= cost) {
+      return host;
+    }
+
+    List<String> toCheck = new ArrayList<String>(slaves);
+    for (String slave : toCheck) {
+      Map<String, Object> status =
+        RootServlet.getSlaveStatus(slave, m_server.getUsername(),
+          m_server.getPassword());
+      if (status == null) {
+        continue;
+      }
+      setSlaveWireVersion(slave, getInt(status, STATUS_WIRE_VERSION, 0));
+
+      double time;
+      if (status.containsKey(STATUS_SLOTS)) {
+        time = estimateCompletionTime(status, cost);
+      } else {
+        // older server - fall back to the coarse load factor
+        double load = getDouble(status, STATUS_LOAD, 0);
+        time = load < 1 ? cost : cost * (1 + load);
+      }
+      System.out.println("[WekaServer] estimated completion time on slave : "
+        + slave + " " + time);
+      if (time < minTime) {
+        minTime = time;
+        host = slave;
+      }
+    }
+
+    return host;
+  }
+
+  /**
+   * Get the WireFormat version that a slave supports
+   *
+   * @param slave the host:port of the slave
+   * @return the version supported, or 0 if the slave only understands the
+   *         legacy format (or has not reported its status yet)
+   */
+  public synchronized int getSlaveWireVersion(String slave) {
+    Integer version = m_slaveWireVersions.get(slave);
+    return version != null ? Math.min(version, WireFormat.VERSION) : 0;
+  }
+
+  /**
+   * Set the WireFormat version that a slave supports
+   *
+   * @param slave the host:port of the slave
+   * @param version the version supported
+   */
+  public synchronized void setSlaveWireVersion(String slave, int version) {
+    m_slaveWireVersions.put(slave, version);
+  }
+
+  private static int getInt(Map<String, Object> status, String key,
+    int defaultVal) {
+    Object v = status.get(key);
+    return v instanceof Number ? ((Number) v).intValue() : defaultVal;
+  }
+
+  private static double getDouble(Map<String, Object> status, String key,
+    double defaultVal) {
+    Object v = status.get(key);
+    return v instanceof Number ? ((Number) v).doubleValue() : defaultVal;
+  }
+
+  /**
+   * A task waiting in, or running from, the local executor pool
+   */
+  protected class QueuedTask implements Runnable, Comparable<QueuedTask> {
+
+    /** The entry of the task */
+    protected WekaTaskEntry m_entry;
+
+    /** The task itself */
+    protected NamedTask m_task;
+
+    /** The work to do */
+    protected Runnable m_toRun;
+
+    /** Priority of the task */
+    protected int m_priority;
+
+    /** Submission order */
+    protected long m_sequence;
+
+    /** Predicted cost in seconds */
+    protected double m_predictedCost;
+
+    /** Time execution started (or -1 if not yet running) */
+    protected volatile long m_startTime = -1;
+
+    /** True if this task has been asked to stop to make way for another */
+    protected volatile boolean m_preempted;
+
+    protected QueuedTask(WekaTaskEntry entry, NamedTask task, Runnable toRun,
+      int priority, long sequence, double predictedCost) {
+      m_entry = entry;
+      m_task = task;
+      m_toRun = toRun;
+      m_priority = priority;
+      m_sequence = sequence;
+      m_predictedCost = predictedCost;
+    }
+
+    protected boolean isRunning() {
+      return m_startTime >= 0;
+    }
+
+    @Override
+    public void run() {
+      m_startTime = System.currentTimeMillis();
+      try {
+        m_toRun.run();
+      } finally {
+        taskFinished(this);
+      }
+    }
+
+    @Override
+    public int compareTo(QueuedTask o) {
+      if (m_priority != o.m_priority) {
+        return m_priority > o.m_priority ? -1 : 1;
+      }
+      return m_sequence < o.m_sequence ? -1
+        : (m_sequence == o.m_sequence ? 0 : 1);
+    }
+  }
+}
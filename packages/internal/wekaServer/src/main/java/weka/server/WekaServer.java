@@ -77,9 +77,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -139,6 +137,9 @@ public class WekaServer implements CommandlineRunnable {
   /** For running tasks */
   protected ThreadPoolExecutor m_executorPool;
 
+  /** Orders local tasks and places tasks on slaves */
+  protected TaskScheduler m_scheduler = new TaskScheduler(this);
+
   /** The Jetty web server instance */
   protected Server m_jettyServer;
 
@@ -252,6 +253,23 @@ public class WekaServer implements CommandlineRunnable {
     return taskAsBytes;
   }
 
+  /**
+   * Static utility method for serializing a task in a given format
+   * 
+   * @param toSerialize the task to serialize
+   * @param wireVersion the WireFormat version to use (0 for the legacy GZIP
+   *          compressed format)
+   * @return an array of bytes
+   * @throws Exception if a problem occurs
+   */
+  public static byte[] serializeTask(Task toSerialize, int wireVersion)
+    throws Exception {
+    if (wireVersion > 0) {
+      return WireFormat.toBytes(toSerialize);
+    }
+    return serializeTask(toSerialize);
+  }
+
   /**
    * Constructor
    */
@@ -616,13 +634,7 @@ public class WekaServer implements CommandlineRunnable {
    * Start the executor pool
    */
   protected void startExecutorPool() {
-    if (m_executorPool != null) {
-      m_executorPool.shutdownNow();
-    }
-
-    m_executorPool =
-      new ThreadPoolExecutor(m_numExecutionSlots, m_numExecutionSlots, 120,
-        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    m_executorPool = m_scheduler.startExecutorPool(m_numExecutionSlots);
   }
 
   /**
@@ -640,7 +652,7 @@ public class WekaServer implements CommandlineRunnable {
       return;
     }
 
-    String hostToUse = chooseExecutionHost();
+    String hostToUse = chooseExecutionHost(entry);
 
     if (task instanceof LogHandler) {
       Logger log = ((LogHandler) task).getLog();
@@ -674,6 +686,12 @@ public class WekaServer implements CommandlineRunnable {
           task.loadResources();
           task.execute();
 
+          if (m_scheduler.isPreempted(task)) {
+            // the task will run again, so it hasn't actually been stopped
+            task.getTaskStatus().setExecutionStatus(
+              WekaTaskMap.WekaTaskEntry.PREEMPTED);
+          }
+
           // save this task so that we have the last execution
           // time recorded
           // if (task instanceof Scheduled) {
@@ -698,7 +716,7 @@ public class WekaServer implements CommandlineRunnable {
         // task is pending (WekaTaskMap.WekaTaskEntry.PENDING)
         sendTaskStatusInfoToMaster(entry, WekaTaskMap.WekaTaskEntry.PENDING);
       }
-      m_executorPool.execute(toRun);
+      m_scheduler.submit(entry, task, toRun);
     } else {
       if (!executeTaskRemote(entry, task, hostToUse)) {
         // failed to hand off to slave for some reason
@@ -743,11 +761,14 @@ public class WekaServer implements CommandlineRunnable {
       // before we pass it on
       task.loadResources();
 
-      byte[] serializedTask = WekaServer.serializeTask(task);
+      // the slave accepts the compact format if it has told us so
+      byte[] serializedTask =
+        WekaServer.serializeTask(task, m_scheduler.getSlaveWireVersion(slave));
       String url = "http://" + slave;
       url = url.replace(" ", "%20");
       url += ExecuteTaskServlet.CONTEXT_PATH;
       url += "/?client=Y&master=Y";
+      url += "&" + TaskScheduler.PRIORITY_KEY + "=" + entry.getPriority();
       post = new PostMethod(url);
       RequestEntity entity = new ByteArrayRequestEntity(serializedTask);
       post.setRequestEntity(entity);
@@ -818,29 +839,14 @@ public class WekaServer implements CommandlineRunnable {
   }
 
   /**
-   * Choose a slave (or us if no slave is available) to execute on
+   * Choose a slave (or us if no slave is available) to execute on. The server
+   * that is predicted to complete the task first is chosen.
    * 
+   * @param entry the entry of the task to be executed
    * @return the name of the server to execute on
    */
-  protected String chooseExecutionHost() {
-    // start with the local server and load
-    String host = m_hostname + ":" + m_port;
-    double minLoad = getServerLoad();
-    // double minLoad = 2.0;
-
-    // run locally if we have some capacity (load < 1)
-    if (m_slaves.size() > 0 && minLoad >= 1.0) {
-      for (String slave : m_slaves.keySet()) {
-        double load = RootServlet.getSlaveLoad(this, slave);
-        System.out
-          .println("[WekaServer] load of slave : " + slave + " " + load);
-        if (load >= 0 && load < minLoad) {
-          minLoad = load;
-          host = slave;
-        }
-      }
-    }
-    return host;
+  protected String chooseExecutionHost(WekaTaskEntry entry) {
+    return m_scheduler.chooseExecutionHost(entry, m_slaves.keySet());
   }
 
   /**
@@ -1336,6 +1342,15 @@ public class WekaServer implements CommandlineRunnable {
       * m_loadAdjust / m_numExecutionSlots);
   }
 
+  /**
+   * Get the scheduler used by this server
+   * 
+   * @return the scheduler
+   */
+  public TaskScheduler getScheduler() {
+    return m_scheduler;
+  }
+
   /**
    * Get the hostname for this server
    * 
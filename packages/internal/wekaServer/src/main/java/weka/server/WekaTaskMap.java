@@ -73,6 +73,14 @@ public class WekaTaskMap {
      */
     public static final int STOPPED = 5;
 
+    /**
+     * Special constant to augment those in TaskStatusInfo. Used when a task
+     * has been stopped to make way for a higher priority task. Unlike STOPPED,
+     * the task has been queued again and will run once an execution slot
+     * becomes free.
+     */
+    public static final int PREEMPTED = 6;
+
     /**
      * For serialization
      */
@@ -105,6 +113,12 @@ public class WekaTaskMap {
     /** Date of last execution */
     protected Date m_lastExecution;
 
+    /**
+     * Execution priority of the task (see TaskScheduler.PRIORITY_LOW,
+     * PRIORITY_NORMAL and PRIORITY_HIGH)
+     */
+    protected int m_priority = TaskScheduler.PRIORITY_NORMAL;
+
     /**
      * Constructor
      * 
@@ -189,6 +203,14 @@ public class WekaTaskMap {
       return m_lastExecution;
     }
 
+    public synchronized void setPriority(int priority) {
+      m_priority = priority;
+    }
+
+    public synchronized int getPriority() {
+      return m_priority;
+    }
+
     @Override
     public String toString() {
       return m_taskName + s_taskNameIDSeparator + m_taskID;
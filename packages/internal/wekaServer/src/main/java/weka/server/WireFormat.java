@@ -0,0 +1,224 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    WireFormat.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.server;
+
+import weka.core.InstancesCodec;
+import weka.core.SerializationHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compact encoding used for moving tasks, models and results between Weka
+ * servers and their clients. Objects are written with Java serialization, but
+ * any Instances in the object graph are written in the compact binary form of
+ * InstancesCodec (nominal values as single bytes, sparse rows as index/value
+ * pairs) and the whole stream is compressed with the fast LZ compressor in
+ * LZCompression rather than GZIP.
+ * <p>
+ * The stream starts with a magic number, a format version and the compression
+ * used. readObject() recognizes both this format and the legacy GZIP
+ * compressed serialization, so receivers can accept either. Senders should
+ * only use the compact format when the other end is known to support it. For
+ * responses this is negotiated by the client sending the highest format
+ * version it understands in the WIRE_KEY request parameter. For tasks sent
+ * from a master to a slave it is negotiated via the slave's detailed status.
+ *
+ * @version $Revision$
+ */
+public class WireFormat {
+
+  /** The current (highest supported) version of the format */
+  public static final int VERSION = 1;
+
+  /** Request parameter holding the highest format version a client accepts */
+  public static final String WIRE_KEY = "wire";
+
+  /** No compression */
+  public static final int COMPRESSION_NONE = 0;
+
+  /** LZ compression */
+  public static final int COMPRESSION_LZ = 1;
+
+  /** Magic number at the start of a compact stream */
+  protected static final byte[] MAGIC = { 'W', 'K', 'W', 'F' };
+
+  /**
+   * Parse a format version request parameter
+   *
+   * @param wire the value of the parameter (may be null)
+   * @return the version to use for the response - 0 for the legacy format
+   */
+  public static int negotiateVersion(String wire) {
+    if (wire == null || wire.length() == 0) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Math.min(VERSION, Integer.parseInt(wire.trim())));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * Write an object in the compact format, using LZ compression. The
+   * underlying stream is flushed but not closed.
+   *
+   * @param toWrite the object to write
+   * @param out the stream to write to
+   * @throws IOException if a problem occurs
+   */
+  public static void writeObject(Object toWrite, OutputStream out)
+    throws IOException {
+    writeObject(toWrite, out, COMPRESSION_LZ);
+  }
+
+  /**
+   * Write an object in the compact format. The underlying stream is flushed
+   * but not closed.
+   *
+   * @param toWrite the object to write
+   * @param out the stream to write to
+   * @param compression the compression to use
+   * @throws IOException if a problem occurs
+   */
+  public static void writeObject(Object toWrite, OutputStream out,
+    int compression) throws IOException {
+    out.write(MAGIC);
+    out.write(VERSION);
+    out.write(compression);
+
+    LZCompression.LZOutputStream lz = null;
+    OutputStream body = out;
+    if (compression == COMPRESSION_LZ) {
+      lz = new LZCompression.LZOutputStream(out);
+      body = lz;
+    }
+
+    CompactObjectOutputStream oos =
+      new CompactObjectOutputStream(new BufferedOutputStream(body));
+    oos.writeObject(toWrite);
+    oos.flush();
+    if (lz != null) {
+      lz.finish();
+    }
+    out.flush();
+  }
+
+  /**
+   * Serialize an object in the compact format
+   *
+   * @param toWrite the object to serialize
+   * @return an array of bytes
+   * @throws IOException if a problem occurs
+   */
+  public static byte[] toBytes(Object toWrite) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    writeObject(toWrite, bos);
+    return bos.toByteArray();
+  }
+
+  /**
+   * Read an object written either in the compact format or as GZIP
+   * compressed (or plain) Java serialization
+   *
+   * @param in the stream to read from
+   * @return the object read
+   * @throws Exception if a problem occurs
+   */
+  public static Object readObject(InputStream in) throws Exception {
+    BufferedInputStream bin = new BufferedInputStream(in);
+    bin.mark(MAGIC.length + 2);
+    byte[] start = new byte[MAGIC.length];
+    int numRead = 0;
+    while (numRead < start.length) {
+      int r = bin.read(start, numRead, start.length - numRead);
+      if (r < 0) {
+        break;
+      }
+      numRead += r;
+    }
+
+    InputStream body;
+    if (numRead == MAGIC.length && isMagic(start)) {
+      int version = bin.read();
+      int compression = bin.read();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported wire format version: " + version);
+      }
+      if (compression == COMPRESSION_LZ) {
+        body = new LZCompression.LZInputStream(bin);
+      } else if (compression == COMPRESSION_NONE) {
+        body = bin;
+      } else {
+        throw new IOException("Unknown wire format compression: "
+          + compression);
+      }
+    } else {
+      bin.reset();
+      if (numRead >= 2 && (start[0] & 0xff) == 0x1f
+        && (start[1] & 0xff) == 0x8b) {
+        body = new GZIPInputStream(bin);
+      } else {
+        body = bin;
+      }
+    }
+
+    ObjectInputStream ois =
+      SerializationHelper.getObjectInputStream(new BufferedInputStream(body));
+    return ois.readObject();
+  }
+
+  private static boolean isMagic(byte[] start) {
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (start[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * ObjectOutputStream that writes Instances in compact form. Datasets that
+   * InstancesCodec can't encode, e.g. those mixing dense and sparse rows, are
+   * serialized as usual.
+   */
+  protected static class CompactObjectOutputStream extends ObjectOutputStream {
+
+    public CompactObjectOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) throws IOException {
+      return InstancesCodec.replaceObject(obj);
+    }
+  }
+}
@@ -22,6 +22,8 @@
 package weka.attributeSelection;
 
 import java.io.Serializable;
+import java.util.BitSet;
+import java.util.List;
 
 import weka.core.Instances;
 import weka.core.RevisionHandler;
@@ -85,6 +87,30 @@ public abstract class ASSearch
 				   options);
   }
 
+  /**
+   * Evaluates a list of attribute subsets. The whole list is passed to the
+   * evaluator if it implements BatchSubsetEvaluator (so that it can, for
+   * example, evaluate the subsets in parallel), otherwise the subsets are
+   * evaluated one at a time.
+   *
+   * @param evaluator the subset evaluator to use
+   * @param subsets the subsets to evaluate
+   * @return the merit of each subset, in the order of the list
+   * @throws Exception if a subset can't be evaluated
+   */
+  public static double[] evaluateSubsets(SubsetEvaluator evaluator,
+					 List<BitSet> subsets) throws Exception {
+
+    if (evaluator instanceof BatchSubsetEvaluator)
+      return ((BatchSubsetEvaluator) evaluator).evaluateSubsets(subsets);
+
+    double[] result = new double[subsets.size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = evaluator.evaluateSubset(subsets.get(i));
+
+    return result;
+  }
+
   /**
    * Creates copies of the current search scheme. Note that this method
    * now uses Serialization to perform a deep copy, so the search
@@ -0,0 +1,48 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    BatchSubsetEvaluator.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.attributeSelection;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Interface for subset evaluators that can evaluate several subsets at once,
+ * e.g. all the children of a node expanded by a search method. Search
+ * methods should evaluate their candidates via
+ * ASSearch.evaluateSubsets(), which falls back to evaluateSubset() for
+ * evaluators that don't implement this interface.
+ *
+ * @author Mark Hall (mhall@cs.waikato.ac.nz)
+ * @version $Revision$
+ */
+public interface BatchSubsetEvaluator extends SubsetEvaluator {
+
+  /**
+   * evaluates a list of subsets of attributes
+   *
+   * @param subsets the bitsets representing the attribute subsets to be
+   * evaluated (must not be modified by the evaluator)
+   * @return the "merit" of each subset, in the order of the list
+   * @exception Exception if a subset could not be evaluated
+   */
+  double[] evaluateSubsets(List<BitSet> subsets) throws Exception;
+}
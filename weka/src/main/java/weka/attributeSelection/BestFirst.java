@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 import weka.core.Instances;
@@ -784,6 +785,14 @@ public class BestFirst extends ASSearch implements OptionHandler,
         }
       }
 
+      // generate the children of this node (in both directions for a
+      // bi-directional search) and evaluate the ones that haven't been seen
+      // before as a batch
+      List<BitSet> children = new ArrayList<BitSet>();
+      List<Integer> childDirections = new ArrayList<Integer>();
+      List<BitSet> toEvaluate = new ArrayList<BitSet>();
+      List<Double> childMerits = new ArrayList<Double>();
+
       do {
         for (i = 0; i < m_numAttribs; i++) {
           if (sd == SELECTION_FORWARD) {
@@ -794,86 +803,91 @@ public class BestFirst extends ASSearch implements OptionHandler,
 
           if (z) {
             // set the bit (attribute to add/delete)
+            tt = (BitSet) temp_group.clone();
             if (sd == SELECTION_FORWARD) {
-              temp_group.set(i);
-              size++;
+              tt.set(i);
             } else {
-              temp_group.clear(i);
-              size--;
+              tt.clear(i);
             }
 
             /*
              * if this subset has been seen before, then it is already in the
              * list (or has been fully expanded)
              */
-            tt = (BitSet) temp_group.clone();
             hashC = tt.toString();
-
+            children.add(tt);
+            childDirections.add(sd);
             if (lookup.containsKey(hashC) == false) {
-              merit = ASEvaluator.evaluateSubset(temp_group);
-              m_totalEvals++;
-
-              // insert this one in the hashtable
-              if (insertCount > m_cacheSize * m_numAttribs) {
-                lookup = new Hashtable<String, Double>(m_cacheSize
-                  * m_numAttribs);
-                insertCount = 0;
-              }
-              hashC = tt.toString();
-              lookup.put(hashC, new Double(merit));
-              insertCount++;
+              toEvaluate.add(tt);
+              childMerits.add(null);
             } else {
-              merit = lookup.get(hashC).doubleValue();
+              childMerits.add(lookup.get(hashC));
             }
+          }
+        }
 
-            // insert this one in the list
-            Object[] add = new Object[1];
-            add[0] = tt.clone();
-            bfList.addToList(add, merit);
+        if (done == 2) {
+          sd = SELECTION_BACKWARD;
+        }
 
-            if (m_debug) {
-              System.out.print("Group: ");
-              printGroup(tt, m_numAttribs);
-              System.out.println("Merit: " + merit);
-            }
+        done--;
+      } while (done > 0);
 
-            // is this better than the best?
-            if (sd == SELECTION_FORWARD) {
-              z = ((merit - best_merit) > 0.00001);
-            } else {
-              if (merit == best_merit) {
-                z = (size < best_size);
-              } else {
-                z = (merit > best_merit);
-              }
-            }
+      double[] merits = evaluateSubsets(ASEvaluator, toEvaluate);
+      m_totalEvals += toEvaluate.size();
 
-            if (z) {
-              added = true;
-              stale = 0;
-              best_merit = merit;
-              // best_size = (size + best_size);
-              best_size = size;
-              best_group = (BitSet) (temp_group.clone());
-            }
+      for (int c = 0, e = 0; c < children.size(); c++) {
+        tt = children.get(c);
+        sd = childDirections.get(c);
+        int childSize = (sd == SELECTION_FORWARD) ? size + 1 : size - 1;
 
-            // unset this addition(deletion)
-            if (sd == SELECTION_FORWARD) {
-              temp_group.clear(i);
-              size--;
-            } else {
-              temp_group.set(i);
-              size++;
-            }
+        if (childMerits.get(c) == null) {
+          merit = merits[e++];
+
+          // insert this one in the hashtable
+          if (insertCount > m_cacheSize * m_numAttribs) {
+            lookup = new Hashtable<String, Double>(m_cacheSize
+              * m_numAttribs);
+            insertCount = 0;
           }
+          hashC = tt.toString();
+          lookup.put(hashC, new Double(merit));
+          insertCount++;
+        } else {
+          merit = childMerits.get(c).doubleValue();
         }
 
-        if (done == 2) {
-          sd = SELECTION_BACKWARD;
+        // insert this one in the list
+        Object[] add = new Object[1];
+        add[0] = tt.clone();
+        bfList.addToList(add, merit);
+
+        if (m_debug) {
+          System.out.print("Group: ");
+          printGroup(tt, m_numAttribs);
+          System.out.println("Merit: " + merit);
         }
 
-        done--;
-      } while (done > 0);
+        // is this better than the best?
+        if (sd == SELECTION_FORWARD) {
+          z = ((merit - best_merit) > 0.00001);
+        } else {
+          if (merit == best_merit) {
+            z = (childSize < best_size);
+          } else {
+            z = (merit > best_merit);
+          }
+        }
+
+        if (z) {
+          added = true;
+          stale = 0;
+          best_merit = merit;
+          // best_size = (size + best_size);
+          best_size = childSize;
+          best_group = (BitSet) (tt.clone());
+        }
+      }
 
       /*
        * if we haven't added a new attribute subset then full expansion of this
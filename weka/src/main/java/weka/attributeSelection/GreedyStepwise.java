@@ -808,6 +808,8 @@ public class GreedyStepwise extends ASSearch implements RankedOutputSearch,
     }
     while (!done) {
       List<Future<Double[]>> results = new ArrayList<Future<Double[]>>();
+      List<BitSet> candidates = new ArrayList<BitSet>();
+      List<Integer> candidateAtts = new ArrayList<Integer>();
       temp_group = (BitSet) m_best_group.clone();
       temp_best = best_merit;
       if (m_doRank) {
@@ -851,23 +853,10 @@ public class GreedyStepwise extends ASSearch implements RankedOutputSearch,
 
             results.add(future);
           } else {
-            temp_merit = ASEvaluator.evaluateSubset(temp_group);
-            if (m_backward) {
-              z = (temp_merit >= temp_best);
-            } else {
-              if (m_conservativeSelection) {
-                z = (temp_merit >= temp_best);
-              } else {
-                z = (temp_merit > temp_best);
-              }
-            }
-
-            if (z) {
-              temp_best = temp_merit;
-              temp_index = i;
-              addone = true;
-              done = false;
-            }
+            // collect the candidates so that they can be evaluated as a
+            // batch
+            candidates.add((BitSet) temp_group.clone());
+            candidateAtts.add(i);
           }
 
           // unset this addition/deletion
@@ -882,29 +871,43 @@ public class GreedyStepwise extends ASSearch implements RankedOutputSearch,
         }
       }
 
+      double[] merits;
+      int[] indexes;
       if (parallel) {
+        merits = new double[results.size()];
+        indexes = new int[results.size()];
         for (int j = 0; j < results.size(); j++) {
           Future<Double[]> f = results.get(j);
 
-          int index = f.get()[0].intValue();
-          temp_merit = f.get()[1].doubleValue();
+          indexes[j] = f.get()[0].intValue();
+          merits[j] = f.get()[1].doubleValue();
+        }
+      } else {
+        merits = evaluateSubsets(ASEvaluator, candidates);
+        indexes = new int[candidateAtts.size()];
+        for (int j = 0; j < indexes.length; j++) {
+          indexes[j] = candidateAtts.get(j);
+        }
+      }
 
-          if (m_backward) {
+      for (int j = 0; j < merits.length; j++) {
+        temp_merit = merits[j];
+
+        if (m_backward) {
+          z = (temp_merit >= temp_best);
+        } else {
+          if (m_conservativeSelection) {
             z = (temp_merit >= temp_best);
           } else {
-            if (m_conservativeSelection) {
-              z = (temp_merit >= temp_best);
-            } else {
-              z = (temp_merit > temp_best);
-            }
+            z = (temp_merit > temp_best);
           }
+        }
 
-          if (z) {
-            temp_best = temp_merit;
-            temp_index = index;
-            addone = true;
-            done = false;
-          }
+        if (z) {
+          temp_best = temp_merit;
+          temp_index = indexes[j];
+          addone = true;
+          done = false;
         }
       }
 
@@ -72,6 +72,12 @@ import weka.filters.unsupervised.attribute.*;
  *  transformed attribute names. (-1 = include all)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of threads to use when computing the covariance
+ *  matrix. (0 = number of cores, default = 1)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -159,6 +165,9 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
   /** maximum number of attributes in the transformed attribute name */
   private int m_maxAttrsInName = 5;
 
+  /** number of threads to use when computing the covariance matrix */
+  private int m_numExecutionSlots = 1;
+
   /**
    * holds the transposed eigenvectors for converting back to the original space
    */
@@ -188,7 +197,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
    **/
   @Override
   public Enumeration<Option> listOptions() {
-    Vector<Option> newVector = new Vector<Option>(4);
+    Vector<Option> newVector = new Vector<Option>(5);
 
     newVector.addElement(new Option("\tCenter (rather than standardize) the"
       + "\n\tdata and compute PCA using the covariance (rather"
@@ -204,6 +213,11 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     newVector.addElement(new Option(
       "\tMaximum number of attributes to include in "
         + "\n\ttransformed attribute names. (-1 = include all)", "A", 1, "-A"));
+
+    newVector.addElement(new Option(
+      "\tNumber of threads to use when computing the covariance"
+        + "\n\tmatrix. (0 = number of cores, default = 1)", "num-slots", 1,
+      "-num-slots <num>"));
     return newVector.elements();
   }
 
@@ -240,6 +254,12 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
    *  transformed attribute names. (-1 = include all)
    * </pre>
    *
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of threads to use when computing the covariance
+   *  matrix. (0 = number of cores, default = 1)
+   * </pre>
+   *
    * <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -261,6 +281,11 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
       setMaximumAttributeNames(Integer.parseInt(optionString));
     }
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
     setTransformBackToOriginal(Utils.getFlag('O', options));
     setCenterData(Utils.getFlag('C', options));
   }
@@ -272,6 +297,7 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     m_coverVariance = 0.95;
     m_sumOfEigenValues = 0.0;
     m_transBackToOriginal = false;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -366,6 +392,35 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     return m_maxAttrsInName;
   }
 
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use when computing the covariance "
+      + "matrix (0 = use the number of available cores).";
+  }
+
+  /**
+   * Sets the number of threads to use when computing the covariance matrix
+   *
+   * @param slots the number of threads (0 = number of available cores)
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Gets the number of threads to use when computing the covariance matrix
+   * 
+   * @return the number of threads (0 = number of available cores)
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    *
@@ -417,6 +472,11 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     options.add("-A");
     options.add("" + getMaximumAttributeNames());
 
+    if (getNumExecutionSlots() != 1) {
+      options.add("-num-slots");
+      options.add("" + getNumExecutionSlots());
+    }
+
     if (getTransformBackToOriginal()) {
       options.add("-O");
     }
@@ -717,17 +777,14 @@ public class PrincipalComponents extends UnsupervisedAttributeEvaluator
     }
 
     // now compute the covariance matrix
+    double[][] coMoments =
+      CovarianceAccumulator.compute(m_trainInstances, m_numExecutionSlots)
+        .getCoMoments();
     m_correlation = new UpperSymmDenseMatrix(m_numAttribs);
     for (int i = 0; i < m_numAttribs; i++) {
-      for (int j = i; j < m_numAttribs; j++) {
-
-        double cov = 0;
-        for (Instance inst : m_trainInstances) {
-          cov += inst.value(i) * inst.value(j);
-        }
-
-        cov /= m_trainInstances.numInstances() - 1;
-        m_correlation.set(i, j, cov);
+      for (int j = 0; j <= i; j++) {
+        m_correlation.set(j, i,
+          coMoments[i][j] / (m_trainInstances.numInstances() - 1));
       }
     }
   }
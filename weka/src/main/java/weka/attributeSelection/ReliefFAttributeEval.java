@@ -21,23 +21,34 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.ManhattanDistance;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
+import weka.core.neighboursearch.LinearNNSearch;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 
 /**
  * <!-- globalinfo-start --> ReliefFAttributeEval :<br/>
@@ -137,6 +148,27 @@ import weka.core.Utils;
  *  (Default = 2)
  * </pre>
  * 
+ * <pre>
+ * -N
+ *  Use a nearest neighbour search algorithm
+ *  (built separately for each class) to find
+ *  the nearest hits and misses.
+ * </pre>
+ * 
+ * <pre>
+ * -S &lt;search algorithm specification&gt;
+ *  The nearest neighbour search algorithm to
+ *  use. Use in conjunction with -N.
+ *  (Default = weka.core.neighboursearch.LinearNNSearch with
+ *  ReliefF's own distance)
+ * </pre>
+ * 
+ * <pre>
+ * -num-slots &lt;int&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -202,6 +234,9 @@ public class ReliefFAttributeEval extends ASEvaluation implements
   /** k nearest scores + instance indexes for n classes */
   private double[][][] m_karray;
 
+  /** The k nearest instances for n classes (parallel to m_karray) */
+  private Instance[][] m_kinstances;
+
   /** Upper bound for numeric attributes */
   private double[] m_maxArray;
 
@@ -233,6 +268,27 @@ public class ReliefFAttributeEval extends ASEvaluation implements
   /** Weight by distance rather than equal weights */
   private boolean m_weightByDistance;
 
+  /** Use a nearest neighbour search rather than a linear scan */
+  private boolean m_useNNSearch;
+
+  /** The template for the per-class nearest neighbour searches */
+  private NearestNeighbourSearch m_NNSearch = defaultSearch();
+
+  /**
+   * The training instances of each class (a single set holding all the
+   * training instances if the class is numeric)
+   */
+  private Instances[] m_classData;
+
+  /** Index of each training instance in its entry of m_classData */
+  private int[] m_classDataIndex;
+
+  /** The nearest neighbour search for each entry of m_classData */
+  private NearestNeighbourSearch[] m_classSearch;
+
+  /** The number of threads to process the sampled instances with */
+  private int m_poolSize = 1;
+
   /**
    * Constructor
    */
@@ -328,6 +384,19 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       + "\tSensible value=1/5 to 1/10 of the\n"
       + "\tnumber of nearest neighbours.\n" + "\t(Default = 2)", "A", 1,
       "-A <num>"));
+    newVector.addElement(new Option(
+      "\tUse a nearest neighbour search algorithm\n"
+        + "\t(built separately for each class) to find\n"
+        + "\tthe nearest hits and misses.", "N", 0, "-N"));
+    newVector.addElement(new Option(
+      "\tThe nearest neighbour search algorithm to\n"
+        + "\tuse. Use in conjunction with -N.\n"
+        + "\t(Default = weka.core.neighboursearch.LinearNNSearch with\n"
+        + "\tReliefF's own distance)", "S", 1,
+      "-S <search algorithm specification>"));
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+      + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <int>"));
     return newVector.elements();
   }
 
@@ -375,6 +444,27 @@ public class ReliefFAttributeEval extends ASEvaluation implements
    *  (Default = 2)
    * </pre>
    * 
+   * <pre>
+   * -N
+   *  Use a nearest neighbour search algorithm
+   *  (built separately for each class) to find
+   *  the nearest hits and misses.
+   * </pre>
+   * 
+   * <pre>
+   * -S &lt;search algorithm specification&gt;
+   *  The nearest neighbour search algorithm to
+   *  use. Use in conjunction with -N.
+   *  (Default = weka.core.neighboursearch.LinearNNSearch with
+   *  ReliefF's own distance)
+   * </pre>
+   * 
+   * <pre>
+   * -num-slots &lt;int&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -409,6 +499,28 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       setWeightByDistance(true); // turn on weighting by distance
       setSigma(Integer.parseInt(optionString));
     }
+
+    setUseNearestNeighbourSearch(Utils.getFlag('N', options));
+    optionString = Utils.getOption('S', options);
+
+    if (optionString.length() != 0) {
+      String[] searchSpec = Utils.splitOptions(optionString);
+      if (searchSpec.length == 0) {
+        throw new Exception("Invalid NearestNeighbourSearch algorithm "
+          + "specification string.");
+      }
+      String className = searchSpec[0];
+      searchSpec[0] = "";
+      setUseNearestNeighbourSearch(true); // turn on the neighbour search
+      setNearestNeighbourSearch((NearestNeighbourSearch) Utils.forName(
+        NearestNeighbourSearch.class, className, searchSpec));
+    }
+
+    optionString = Utils.getOption("num-slots", options);
+
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -560,6 +672,90 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     return m_weightByDistance;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useNearestNeighbourSearchTipText() {
+    return "Find the nearest hits and misses with a nearest neighbour search "
+      + "algorithm (built separately for each class) instead of a linear "
+      + "scan. Neighbours are determined by the search algorithm's distance "
+      + "function, which normalizes over the instances of each class.";
+  }
+
+  /**
+   * Set whether to use a nearest neighbour search algorithm
+   * 
+   * @param b true if the nearest neighbour search is to be used.
+   */
+  public void setUseNearestNeighbourSearch(boolean b) {
+    m_useNNSearch = b;
+  }
+
+  /**
+   * Get whether a nearest neighbour search algorithm is used
+   * 
+   * @return true if the nearest neighbour search is used
+   */
+  public boolean getUseNearestNeighbourSearch() {
+    return m_useNNSearch;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String nearestNeighbourSearchTipText() {
+    return "The nearest neighbour search algorithm to use. Use in conjunction "
+      + "with useNearestNeighbourSearch.";
+  }
+
+  /**
+   * Set the nearest neighbour search algorithm
+   * 
+   * @param search the nearest neighbour search algorithm.
+   */
+  public void setNearestNeighbourSearch(NearestNeighbourSearch search) {
+    m_NNSearch = search;
+  }
+
+  /**
+   * Get the nearest neighbour search algorithm
+   * 
+   * @return the nearest neighbour search algorithm
+   */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return m_NNSearch;
+  }
+
+  /**
+   * @return a string to describe the option
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots, for example, the number of cores "
+      + "in the CPU. The sampled instances are divided between the slots. "
+      + "With useNearestNeighbourSearch, each slot builds its own searches, "
+      + "which multiplies their memory use.";
+  }
+
+  /**
+   * Gets the number of threads.
+   */
+  public int getNumExecutionSlots() {
+    return m_poolSize;
+  }
+
+  /**
+   * Sets the number of threads
+   */
+  public void setNumExecutionSlots(int nT) {
+    m_poolSize = nT;
+  }
+
   /**
    * Gets the current settings of ReliefFAttributeEval.
    * 
@@ -586,6 +782,16 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       options.add("" + getSigma());
     }
 
+    if (getUseNearestNeighbourSearch()) {
+      options.add("-N");
+      options.add("-S");
+      options.add(m_NNSearch.getClass().getName() + " "
+        + Utils.joinOptions(m_NNSearch.getOptions()));
+    }
+
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+
     return options.toArray(new String[0]);
   }
 
@@ -619,6 +825,12 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       } else {
         text.append("\tEqual influence nearest neighbours\n");
       }
+
+      if (m_useNNSearch) {
+        text.append("\tNearest neighbour search: "
+          + m_NNSearch.getClass().getName() + " "
+          + Utils.joinOptions(m_NNSearch.getOptions()) + "\n");
+      }
     }
 
     return text.toString();
@@ -660,6 +872,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
   public void buildEvaluator(Instances data) throws Exception {
 
     int z, totalInstances;
+    int[] samples;
     Random r = new Random(m_seed);
 
     // can evaluator handle data?
@@ -679,10 +892,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     if (!m_numericClass) {
       m_numClasses = m_trainInstances.attribute(m_classIndex).numValues();
     } else {
-      m_ndc = 0;
       m_numClasses = 1;
-      m_nda = new double[m_numAttribs];
-      m_ndcda = new double[m_numAttribs];
     }
 
     if (m_weightByDistance) // set up the rank based weights
@@ -695,11 +905,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       }
     }
 
-    // the final attribute weights
-    m_weights = new double[m_numAttribs];
-    // num classes (1 for numeric class) knn neighbours,
-    // and 0 = distance, 1 = instance index
-    m_karray = new double[m_numClasses][m_Knn][2];
+    initBuffers();
 
     if (!m_numericClass) {
       m_classProbs = new double[m_numClasses];
@@ -715,9 +921,6 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       }
     }
 
-    m_worst = new double[m_numClasses];
-    m_index = new int[m_numClasses];
-    m_stored = new int[m_numClasses];
     m_minArray = new double[m_numAttribs];
     m_maxArray = new double[m_numAttribs];
 
@@ -735,7 +938,9 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       totalInstances = m_sampleM;
     }
 
-    // process each instance, updating attribute weights
+    // draw the sample up front so that it does not depend on the number
+    // of execution slots
+    samples = new int[totalInstances];
     for (int i = 0; i < totalInstances; i++) {
       if (totalInstances == m_numInstances) {
         z = i;
@@ -747,6 +952,81 @@ public class ReliefFAttributeEval extends ASEvaluation implements
         z *= -1;
       }
 
+      samples[i] = z;
+    }
+
+    if (m_useNNSearch) {
+      splitByClass();
+    }
+
+    // process each instance, updating attribute weights
+    if (m_poolSize > 1 && totalInstances > 1) {
+      processSamplesInParallel(samples);
+    } else {
+      if (m_useNNSearch) {
+        buildSearches();
+      }
+      processSamples(samples, 0, totalInstances);
+    }
+
+    // the per-class data is only needed for the neighbour searches
+    m_classData = null;
+    m_classDataIndex = null;
+    m_classSearch = null;
+
+    // now scale weights by 1/m_numInstances (nominal class) or
+    // calculate weights numeric class
+    // System.out.println("num inst:"+m_numInstances+" r_ndc:"+r_ndc);
+    for (int i = 0; i < m_numAttribs; i++) {
+      if (i != m_classIndex) {
+        if (m_numericClass) {
+          m_weights[i] = m_ndcda[i] / m_ndc
+            - ((m_nda[i] - m_ndcda[i]) / (totalInstances - m_ndc));
+        } else {
+          m_weights[i] *= (1.0 / totalInstances);
+        }
+
+        // System.out.println(r_weights[i]);
+      }
+    }
+  }
+
+  /**
+   * Allocates the buffers for the nearest hits/misses and the accumulators
+   * for the attribute weights.
+   */
+  private void initBuffers() {
+    // the final attribute weights
+    m_weights = new double[m_numAttribs];
+    // num classes (1 for numeric class) knn neighbours,
+    // and 0 = distance, 1 = instance index
+    m_karray = new double[m_numClasses][m_Knn][2];
+    m_kinstances = new Instance[m_numClasses][m_Knn];
+    m_worst = new double[m_numClasses];
+    m_index = new int[m_numClasses];
+    m_stored = new int[m_numClasses];
+
+    if (m_numericClass) {
+      m_ndc = 0;
+      m_nda = new double[m_numAttribs];
+      m_ndcda = new double[m_numAttribs];
+    }
+  }
+
+  /**
+   * Updates the attribute weights with a range of the sampled instances.
+   * 
+   * @param samples the indexes of the sampled instances
+   * @param start the first entry of samples to process
+   * @param end one past the last entry of samples to process
+   * @throws Exception if the nearest neighbours can't be found
+   */
+  private void processSamples(int[] samples, int start, int end)
+    throws Exception {
+
+    for (int i = start; i < end; i++) {
+      int z = samples[i];
+
       if (!(m_trainInstances.instance(z).isMissing(m_classIndex))) {
         // first clear the knn and worst index stuff for the classes
         for (int j = 0; j < m_numClasses; j++) {
@@ -754,10 +1034,15 @@ public class ReliefFAttributeEval extends ASEvaluation implements
 
           for (int k = 0; k < m_Knn; k++) {
             m_karray[j][k][0] = m_karray[j][k][1] = 0;
+            m_kinstances[j][k] = null;
           }
         }
 
-        findKHitMiss(z);
+        if (m_useNNSearch) {
+          findKHitMissSearch(z);
+        } else {
+          findKHitMiss(z);
+        }
 
         if (m_numericClass) {
           updateWeightsNumericClass(z);
@@ -766,20 +1051,173 @@ public class ReliefFAttributeEval extends ASEvaluation implements
         }
       }
     }
+  }
 
-    // now scale weights by 1/m_numInstances (nominal class) or
-    // calculate weights numeric class
-    // System.out.println("num inst:"+m_numInstances+" r_ndc:"+r_ndc);
-    for (int i = 0; i < m_numAttribs; i++) {
-      if (i != m_classIndex) {
+  /**
+   * Divides the sampled instances between m_poolSize workers, each of which
+   * accumulates its own weights, and adds up the workers' results in a fixed
+   * order.
+   * 
+   * @param samples the indexes of the sampled instances
+   * @throws Exception if a worker fails
+   */
+  private void processSamplesInParallel(int[] samples) throws Exception {
+    int numWorkers = Math.min(m_poolSize, samples.length);
+    ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+    List<ReliefFAttributeEval> workers = new ArrayList<ReliefFAttributeEval>();
+    List<Future<ReliefFAttributeEval>> results =
+      new ArrayList<Future<ReliefFAttributeEval>>();
+
+    try {
+      for (int w = 0; w < numWorkers; w++) {
+        final ReliefFAttributeEval worker = createWorker();
+        final int[] fSamples = samples;
+        final int start = (int) ((long) samples.length * w / numWorkers);
+        final int end = (int) ((long) samples.length * (w + 1) / numWorkers);
+
+        workers.add(worker);
+        results.add(pool.submit(new Callable<ReliefFAttributeEval>() {
+          @Override
+          public ReliefFAttributeEval call() throws Exception {
+            if (worker.m_useNNSearch) {
+              // searches aren't thread-safe, each worker needs its own
+              worker.buildSearches();
+            }
+            worker.processSamples(fSamples, start, end);
+            return worker;
+          }
+        }));
+      }
+
+      for (Future<ReliefFAttributeEval> f : results) {
+        ReliefFAttributeEval worker;
+        try {
+          worker = f.get();
+        } catch (ExecutionException ex) {
+          if (ex.getCause() instanceof Exception) {
+            throw (Exception) ex.getCause();
+          }
+          throw ex;
+        }
+
+        for (int i = 0; i < m_numAttribs; i++) {
+          m_weights[i] += worker.m_weights[i];
+        }
         if (m_numericClass) {
-          m_weights[i] = m_ndcda[i] / m_ndc
-            - ((m_nda[i] - m_ndcda[i]) / (totalInstances - m_ndc));
-        } else {
-          m_weights[i] *= (1.0 / totalInstances);
+          m_ndc += worker.m_ndc;
+          for (int i = 0; i < m_numAttribs; i++) {
+            m_nda[i] += worker.m_nda[i];
+            m_ndcda[i] += worker.m_ndcda[i];
+          }
         }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 
-        // System.out.println(r_weights[i]);
+  /**
+   * Creates an evaluator that shares the training data and statistics of
+   * this one, but has its own neighbour buffers and weight accumulators.
+   * 
+   * @return the new worker
+   */
+  private ReliefFAttributeEval createWorker() {
+    ReliefFAttributeEval worker = new ReliefFAttributeEval();
+
+    worker.m_trainInstances = m_trainInstances;
+    worker.m_classIndex = m_classIndex;
+    worker.m_numAttribs = m_numAttribs;
+    worker.m_numInstances = m_numInstances;
+    worker.m_numericClass = m_numericClass;
+    worker.m_numClasses = m_numClasses;
+    worker.m_classProbs = m_classProbs;
+    worker.m_minArray = m_minArray;
+    worker.m_maxArray = m_maxArray;
+    worker.m_Knn = m_Knn;
+    worker.m_sigma = m_sigma;
+    worker.m_weightByDistance = m_weightByDistance;
+    worker.m_weightsByRank = m_weightsByRank;
+    worker.m_useNNSearch = m_useNNSearch;
+    worker.m_NNSearch = m_NNSearch;
+    worker.m_classData = m_classData;
+    worker.m_classDataIndex = m_classDataIndex;
+    worker.initBuffers();
+
+    return worker;
+  }
+
+  /**
+   * Sets up the data for the nearest neighbour searches: the training
+   * instances split by class value (instances with a missing class are left
+   * out), or all the training instances if the class is numeric.
+   */
+  private void splitByClass() {
+    m_classDataIndex = new int[m_numInstances];
+
+    if (m_numericClass) {
+      m_classData = new Instances[] { m_trainInstances };
+      for (int i = 0; i < m_numInstances; i++) {
+        m_classDataIndex[i] = i;
+      }
+      return;
+    }
+
+    int[] counts = new int[m_numClasses];
+    for (int i = 0; i < m_numInstances; i++) {
+      if (!m_trainInstances.instance(i).classIsMissing()) {
+        counts[(int) m_trainInstances.instance(i).value(m_classIndex)]++;
+      }
+    }
+
+    m_classData = new Instances[m_numClasses];
+    for (int j = 0; j < m_numClasses; j++) {
+      m_classData[j] = new Instances(m_trainInstances, counts[j]);
+    }
+
+    for (int i = 0; i < m_numInstances; i++) {
+      Instance inst = m_trainInstances.instance(i);
+      if (inst.classIsMissing()) {
+        m_classDataIndex[i] = -1;
+      } else {
+        int cl = (int) inst.value(m_classIndex);
+        m_classDataIndex[i] = m_classData[cl].numInstances();
+        m_classData[cl].add(inst);
+      }
+    }
+  }
+
+  /**
+   * Builds a copy of the nearest neighbour search template for each
+   * non-empty entry of m_classData. The searches keep per-query state (e.g.,
+   * the distances of the last query) and aren't thread-safe, so each worker
+   * builds its own; their memory is therefore multiplied by the number of
+   * execution slots.
+   * 
+   * @throws Exception if a search can't be built
+   */
+  private void buildSearches() throws Exception {
+    m_classSearch = new NearestNeighbourSearch[m_classData.length];
+
+    NearestNeighbourSearch template = m_NNSearch;
+    if (template.getDistanceFunction() instanceof ReliefFDistance) {
+      double[][] ranges = new double[m_numAttribs][3];
+      for (int i = 0; i < m_numAttribs; i++) {
+        ranges[i][ReliefFDistance.R_MIN] = m_minArray[i];
+        ranges[i][ReliefFDistance.R_MAX] = m_maxArray[i];
+        ranges[i][ReliefFDistance.R_WIDTH] = m_maxArray[i] - m_minArray[i];
+      }
+      template = (NearestNeighbourSearch) new SerializedObject(template)
+        .getObject();
+      ((ReliefFDistance) template.getDistanceFunction())
+        .setFixedRanges(ranges);
+    }
+
+    for (int j = 0; j < m_classData.length; j++) {
+      if (m_classData[j].numInstances() > 0) {
+        m_classSearch[j] = (NearestNeighbourSearch) new SerializedObject(
+          template).getObject();
+        m_classSearch[j].setInstances(m_classData[j]);
       }
     }
   }
@@ -796,6 +1234,81 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     return m_weights[attribute];
   }
 
+  /**
+   * The distance ReliefF uses in its linear scan: the Manhattan distance,
+   * with a difference of 1 - 1/(number of values) for missing nominal values.
+   * The ranges of all training instances are used for normalizing, not just
+   * those of the instances the search holds (a single class), so that a
+   * search with this distance finds the same neighbours as the linear scan.
+   */
+  public static class ReliefFDistance extends ManhattanDistance {
+
+    /** for serialization */
+    private static final long serialVersionUID = -3519546830184413372L;
+
+    /** The ranges of all training instances (null to use the search's) */
+    protected double[][] m_FixedRanges;
+
+    /**
+     * Sets the ranges to normalize with
+     * 
+     * @param ranges the ranges, or null to use those of the instances set
+     */
+    public void setFixedRanges(double[][] ranges) {
+      m_FixedRanges = ranges;
+      invalidate();
+    }
+
+    /**
+     * Initializes the attribute indices and ranges.
+     */
+    @Override
+    protected void initialize() {
+      super.initialize();
+      if (m_FixedRanges != null) {
+        m_Ranges = new double[m_FixedRanges.length][];
+        for (int i = 0; i < m_FixedRanges.length; i++) {
+          m_Ranges[i] = m_FixedRanges[i].clone();
+        }
+      }
+    }
+
+    /**
+     * Computes the difference between two given attribute values.
+     * 
+     * @param index the attribute index
+     * @param val1 the first value
+     * @param val2 the second value
+     * @return the difference
+     */
+    @Override
+    protected double difference(int index, double val1, double val2) {
+      if (m_Data.attribute(index).isNominal()
+        && (Utils.isMissingValue(val1) || Utils.isMissingValue(val2))) {
+        return 1.0 - (1.0 / m_Data.attribute(index).numValues());
+      }
+
+      return super.difference(index, val1, val2);
+    }
+  }
+
+  /**
+   * Returns the default nearest neighbour search: a linear scan with
+   * ReliefF's own distance, which can handle missing values.
+   * 
+   * @return the search
+   */
+  private static NearestNeighbourSearch defaultSearch() {
+    LinearNNSearch search = new LinearNNSearch();
+    try {
+      search.setDistanceFunction(new ReliefFDistance());
+    } catch (Exception ex) {
+      // can't happen, LinearNNSearch accepts any distance function
+      throw new IllegalStateException(ex);
+    }
+    return search;
+  }
+
   /**
    * Reset options to their default values
    */
@@ -806,6 +1319,9 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     m_sigma = 2;
     m_weightByDistance = false;
     m_seed = 1;
+    m_useNNSearch = false;
+    m_NNSearch = defaultSearch();
+    m_poolSize = 1;
   }
 
   /**
@@ -980,25 +1496,20 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     for (i = 0; i < m_stored[0]; i++) {
       // P diff prediction (class) given nearest instances
       if (m_weightByDistance) {
-        temp = difference(
-          m_classIndex,
-          inst.value(m_classIndex),
-          m_trainInstances.instance((int) m_karray[0][tempSorted[i]][1]).value(
-            m_classIndex));
+        temp = difference(m_classIndex, inst.value(m_classIndex),
+          m_kinstances[0][tempSorted[i]].value(m_classIndex));
         temp *= (m_weightsByRank[i] / distNorm);
       } else {
         temp = difference(m_classIndex, inst.value(m_classIndex),
-          m_trainInstances.instance((int) m_karray[0][i][1])
-            .value(m_classIndex));
+          m_kinstances[0][i].value(m_classIndex));
         temp *= (1.0 / m_stored[0]); // equal influence
       }
 
       m_ndc += temp;
 
       Instance cmp;
-      cmp = (m_weightByDistance) ? m_trainInstances
-        .instance((int) m_karray[0][tempSorted[i]][1]) : m_trainInstances
-        .instance((int) m_karray[0][i][1]);
+      cmp = (m_weightByDistance) ? m_kinstances[0][tempSorted[i]]
+        : m_kinstances[0][i];
 
       double temp_diffP_diffA_givNearest = difference(m_classIndex,
         inst.value(m_classIndex), cmp.value(m_classIndex));
@@ -1131,9 +1642,8 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     // do the k nearest hits of the same class
     for (j = 0, temp_diff = 0.0; j < m_stored[cl]; j++) {
       Instance cmp;
-      cmp = (m_weightByDistance) ? m_trainInstances
-        .instance((int) m_karray[cl][tempSortedClass[j]][1]) : m_trainInstances
-        .instance((int) m_karray[cl][j][1]);
+      cmp = (m_weightByDistance) ? m_kinstances[cl][tempSortedClass[j]]
+        : m_kinstances[cl][j];
 
       for (int p1 = 0, p2 = 0; p1 < inst.numValues() || p2 < cmp.numValues();) {
         if (p1 >= inst.numValues()) {
@@ -1189,9 +1699,8 @@ public class ReliefFAttributeEval extends ASEvaluation implements
       {
         for (j = 0; j < m_stored[k]; j++) {
           Instance cmp;
-          cmp = (m_weightByDistance) ? m_trainInstances
-            .instance((int) m_karray[k][tempSortedAtt[k][j]][1])
-            : m_trainInstances.instance((int) m_karray[k][j][1]);
+          cmp = (m_weightByDistance) ? m_kinstances[k][tempSortedAtt[k][j]]
+            : m_kinstances[k][j];
 
           for (int p1 = 0, p2 = 0; p1 < inst.numValues()
             || p2 < cmp.numValues();) {
@@ -1281,6 +1790,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
         if (m_stored[cl] < m_Knn) {
           m_karray[cl][m_stored[cl]][0] = temp_diff;
           m_karray[cl][m_stored[cl]][1] = i;
+          m_kinstances[cl][m_stored[cl]] = cmpInst;
           m_stored[cl]++;
 
           // note the worst diff for this class
@@ -1301,6 +1811,7 @@ public class ReliefFAttributeEval extends ASEvaluation implements
           if (temp_diff < m_karray[cl][m_index[cl]][0]) {
             m_karray[cl][m_index[cl]][0] = temp_diff;
             m_karray[cl][m_index[cl]][1] = i;
+            m_kinstances[cl][m_index[cl]] = cmpInst;
 
             for (j = 0, ww = -1.0; j < m_stored[cl]; j++) {
               if (m_karray[cl][j][0] > ww) {
@@ -1316,6 +1827,38 @@ public class ReliefFAttributeEval extends ASEvaluation implements
     }
   }
 
+  /**
+   * Finds the same neighbours as findKHitMiss, but using the nearest
+   * neighbour search of each class rather than a linear scan. The sampled
+   * instance is passed to the searches as the object held in m_classData so
+   * that the search of its own class leaves it out.
+   * 
+   * @param instNum the index of the instance to find nearest neighbours of
+   * @throws Exception if the nearest neighbours can't be found
+   */
+  private void findKHitMissSearch(int instNum) throws Exception {
+    int own = m_numericClass ? 0 : (int) m_trainInstances.instance(instNum)
+      .value(m_classIndex);
+    Instance thisInst = m_classData[own].instance(m_classDataIndex[instNum]);
+
+    for (int cl = 0; cl < m_classData.length; cl++) {
+      if (m_classSearch[cl] == null) {
+        continue;
+      }
+
+      Instances neighbours = m_classSearch[cl].kNearestNeighbours(thisInst,
+        m_Knn);
+      double[] distances = m_classSearch[cl].getDistances();
+
+      // ties for the kth neighbour may return more than k instances
+      for (int j = 0; j < neighbours.numInstances() && j < m_Knn; j++) {
+        m_karray[cl][j][0] = distances[j];
+        m_kinstances[cl][j] = neighbours.instance(j);
+        m_stored[cl]++;
+      }
+    }
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -39,16 +39,25 @@ import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
+import weka.core.ThreadSafe;
 import weka.core.Utils;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -128,6 +137,18 @@ import java.util.Vector;
  * </pre>
  * 
  * <pre>
+ * -num-slots &lt;int&gt;
+ *  Number of execution slots for evaluating a batch of subsets.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
+ * <pre>
+ * -cache-size &lt;int&gt;
+ *  Maximum number of evaluated subsets to keep in the cache.
+ *  (default 1000, 0 disables the cache)
+ * </pre>
+ * 
+ * <pre>
  * Options specific to scheme weka.classifiers.rules.ZeroR:
  * </pre>
  * 
@@ -142,8 +163,8 @@ import java.util.Vector;
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
  * @version $Revision$
  */
-public class WrapperSubsetEval extends ASEvaluation
-  implements SubsetEvaluator, OptionHandler, TechnicalInformationHandler {
+public class WrapperSubsetEval extends ASEvaluation implements
+  BatchSubsetEvaluator, OptionHandler, TechnicalInformationHandler, ThreadSafe {
 
   /** for serialization */
   static final long serialVersionUID = -4573057658746728675L;
@@ -154,8 +175,6 @@ public class WrapperSubsetEval extends ASEvaluation
   private int m_classIndex;
   /** number of attributes in the training data */
   private int m_numAttribs;
-  /** holds an evaluation object */
-  private Evaluation m_Evaluation;
   /** holds the base classifier object */
   private Classifier m_BaseClassifier;
   /** number of folds to use for cross validation */
@@ -167,6 +186,12 @@ public class WrapperSubsetEval extends ASEvaluation
    * accuracy of a subset
    */
   private double m_threshold;
+  /** number of threads to evaluate a batch of subsets with */
+  private int m_poolSize;
+  /** maximum number of evaluated subsets to remember */
+  private int m_cacheSize;
+  /** the merits of recently evaluated subsets */
+  private transient SubsetCache m_cache;
 
   public static final int EVAL_DEFAULT = 1;
   public static final int EVAL_ACCURACY = 2;
@@ -324,6 +349,34 @@ public class WrapperSubsetEval extends ASEvaluation
     return result;
   }
 
+  /**
+   * A cache of subset merits that discards the least recently used subset
+   * once it is full.
+   */
+  protected static class SubsetCache extends LinkedHashMap<BitSet, Double> {
+
+    /** for serialization */
+    private static final long serialVersionUID = -2410578713543165312L;
+
+    /** the maximum number of subsets to keep */
+    protected int m_maxSize;
+
+    /**
+     * Constructor
+     * 
+     * @param maxSize the maximum number of subsets to keep
+     */
+    public SubsetCache(int maxSize) {
+      super(16, 0.75f, true);
+      m_maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<BitSet, Double> eldest) {
+      return size() > m_maxSize;
+    }
+  }
+
   /**
    * Constructor. Calls restOptions to set default options
    **/
@@ -374,6 +427,16 @@ public class WrapperSubsetEval extends ASEvaluation
         + "\tthe class-weighted average.",
       "IRclass", 1, "-IRclass <label | index>"));
 
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for evaluating a batch of subsets.\n"
+        + "\t(default 1 - i.e. no parallelism)",
+      "num-slots", 1, "-num-slots <int>"));
+
+    newVector.addElement(new Option(
+      "\tMaximum number of evaluated subsets to keep in the cache.\n"
+        + "\t(default 1000, 0 disables the cache)",
+      "cache-size", 1, "-cache-size <int>"));
+
     if ((m_BaseClassifier != null)
       && (m_BaseClassifier instanceof OptionHandler)) {
       newVector.addElement(new Option("", "", 0, "\nOptions specific to scheme "
@@ -435,6 +498,18 @@ public class WrapperSubsetEval extends ASEvaluation
    * </pre>
    * 
    * <pre>
+   * -num-slots &lt;int&gt;
+   *  Number of execution slots for evaluating a batch of subsets.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
+   * <pre>
+   * -cache-size &lt;int&gt;
+   *  Maximum number of evaluated subsets to keep in the cache.
+   *  (default 1000, 0 disables the cache)
+   * </pre>
+   * 
+   * <pre>
    * Options specific to scheme weka.classifiers.rules.ZeroR:
    * </pre>
    * 
@@ -498,6 +573,16 @@ public class WrapperSubsetEval extends ASEvaluation
     if (optionString.length() > 0) {
       setIRClassValue(optionString);
     }
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
+    optionString = Utils.getOption("cache-size", options);
+    if (optionString.length() != 0) {
+      setCacheSize(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -681,6 +766,59 @@ public class WrapperSubsetEval extends ASEvaluation
     return m_BaseClassifier;
   }
 
+  /**
+   * @return a string to describe the option
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots, for example, the number of cores "
+      + "in the CPU. Used when a search method evaluates a batch of subsets "
+      + "(e.g. all the children of a node) at once.";
+  }
+
+  /**
+   * Gets the number of threads.
+   */
+  public int getNumExecutionSlots() {
+    return m_poolSize;
+  }
+
+  /**
+   * Sets the number of threads
+   */
+  public void setNumExecutionSlots(int nT) {
+    m_poolSize = nT;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String cacheSizeTipText() {
+    return "The maximum number of evaluated subsets to remember. The cache "
+      + "is kept until the evaluator is rebuilt, so it is shared by repeated "
+      + "searches. 0 disables the cache.";
+  }
+
+  /**
+   * Set the maximum number of evaluated subsets to cache
+   * 
+   * @param size the maximum number of subsets
+   */
+  public void setCacheSize(int size) {
+    m_cacheSize = size;
+  }
+
+  /**
+   * Get the maximum number of evaluated subsets to cache
+   * 
+   * @return the maximum number of subsets
+   */
+  public int getCacheSize() {
+    return m_cacheSize;
+  }
+
   /**
    * Gets the current settings of WrapperSubsetEval.
    * 
@@ -695,7 +833,7 @@ public class WrapperSubsetEval extends ASEvaluation
       classifierOptions = ((OptionHandler) m_BaseClassifier).getOptions();
     }
 
-    String[] options = new String[13 + classifierOptions.length];
+    String[] options = new String[17 + classifierOptions.length];
     int current = 0;
 
     if (getClassifier() != null) {
@@ -718,6 +856,11 @@ public class WrapperSubsetEval extends ASEvaluation
       options[current++] = m_IRClassValS;
     }
 
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
+    options[current++] = "-cache-size";
+    options[current++] = "" + getCacheSize();
+
     options[current++] = "--";
     System.arraycopy(classifierOptions, 0, options, current,
       classifierOptions.length);
@@ -732,11 +875,13 @@ public class WrapperSubsetEval extends ASEvaluation
 
   protected void resetOptions() {
     m_trainInstances = null;
-    m_Evaluation = null;
     m_BaseClassifier = new ZeroR();
     m_folds = 5;
     m_seed = 1;
     m_threshold = 0.01;
+    m_poolSize = 1;
+    m_cacheSize = 1000;
+    m_cache = null;
   }
 
   /**
@@ -804,6 +949,7 @@ public class WrapperSubsetEval extends ASEvaluation
     m_trainInstances = data;
     m_classIndex = m_trainInstances.classIndex();
     m_numAttribs = m_trainInstances.numAttributes();
+    m_cache = (m_cacheSize > 0) ? new SubsetCache(m_cacheSize) : null;
 
     if (m_IRClassValS != null && m_IRClassValS.length() > 0) {
       // try to parse as a number first
@@ -828,6 +974,128 @@ public class WrapperSubsetEval extends ASEvaluation
    */
   @Override
   public double evaluateSubset(BitSet subset) throws Exception {
+    Double cached = getCachedMerit(subset);
+    if (cached != null) {
+      return cached.doubleValue();
+    }
+
+    double merit = crossValidateSubset(subset);
+    cacheMerit(subset, merit);
+
+    return merit;
+  }
+
+  /**
+   * Evaluates a list of subsets of attributes. Subsets that are not in the
+   * cache are cross-validated in parallel if more than one execution slot
+   * is available.
+   * 
+   * @param subsets the bitsets representing the attribute subsets to be
+   *          evaluated
+   * @return the merit of each subset, in the order of the list
+   * @throws Exception if a subset could not be evaluated
+   */
+  @Override
+  public double[] evaluateSubsets(List<BitSet> subsets) throws Exception {
+    double[] result = new double[subsets.size()];
+    List<Integer> toEvaluate = new ArrayList<Integer>();
+
+    for (int i = 0; i < result.length; i++) {
+      Double cached = getCachedMerit(subsets.get(i));
+      if (cached != null) {
+        result[i] = cached.doubleValue();
+      } else {
+        toEvaluate.add(i);
+      }
+    }
+
+    if (m_poolSize > 1 && toEvaluate.size() > 1) {
+      ExecutorService pool =
+        Executors.newFixedThreadPool(Math.min(m_poolSize, toEvaluate.size()));
+      List<Future<Double>> results = new ArrayList<Future<Double>>();
+
+      try {
+        for (int i : toEvaluate) {
+          final BitSet subset = subsets.get(i);
+          results.add(pool.submit(new Callable<Double>() {
+            @Override
+            public Double call() throws Exception {
+              return crossValidateSubset(subset);
+            }
+          }));
+        }
+
+        for (int j = 0; j < results.size(); j++) {
+          try {
+            result[toEvaluate.get(j)] = results.get(j).get().doubleValue();
+          } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+              throw (Exception) ex.getCause();
+            }
+            throw ex;
+          }
+        }
+      } finally {
+        pool.shutdownNow();
+      }
+    } else {
+      for (int i : toEvaluate) {
+        result[i] = crossValidateSubset(subsets.get(i));
+      }
+    }
+
+    for (int i : toEvaluate) {
+      cacheMerit(subsets.get(i), result[i]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Looks up the merit of a subset in the cache.
+   * 
+   * @param subset the subset to look up
+   * @return the merit, or null if the subset is not in the cache
+   */
+  private Double getCachedMerit(BitSet subset) {
+    SubsetCache cache = m_cache;
+    if (cache == null) {
+      return null;
+    }
+
+    synchronized (cache) {
+      return cache.get(subset);
+    }
+  }
+
+  /**
+   * Stores the merit of a subset in the cache.
+   * 
+   * @param subset the subset (a copy is stored)
+   * @param merit the merit of the subset
+   */
+  private void cacheMerit(BitSet subset, double merit) {
+    SubsetCache cache = m_cache;
+    if (cache == null) {
+      return;
+    }
+
+    synchronized (cache) {
+      cache.put((BitSet) subset.clone(), merit);
+    }
+  }
+
+  /**
+   * Estimates the merit of a subset of attributes by cross-validating the
+   * base classifier. Only reads the state of this evaluator, so it can be
+   * called from several threads at once.
+   * 
+   * @param subset a bitset representing the attribute subset to be evaluated
+   * @return the merit of the subset
+   * @throws Exception if the subset could not be evaluated
+   */
+  private double crossValidateSubset(BitSet subset) throws Exception {
+    Evaluation evaluation;
     double evalMetric = 0;
     double[] repError = new double[5];
     int numAttributes = 0;
@@ -865,53 +1133,53 @@ public class WrapperSubsetEval extends ASEvaluation
 
     // max of 5 repetitions of cross validation
     for (i = 0; i < 5; i++) {
-      m_Evaluation = new Evaluation(trainCopy);
-      m_Evaluation.crossValidateModel(m_BaseClassifier, trainCopy, m_folds,
+      evaluation = new Evaluation(trainCopy);
+      evaluation.crossValidateModel(m_BaseClassifier, trainCopy, m_folds,
         Rnd);
 
       switch (m_evaluationMeasure.getID()) {
       case EVAL_DEFAULT:
-        repError[i] = m_Evaluation.errorRate();
+        repError[i] = evaluation.errorRate();
         break;
       case EVAL_ACCURACY:
-        repError[i] = m_Evaluation.errorRate();
+        repError[i] = evaluation.errorRate();
         break;
       case EVAL_RMSE:
-        repError[i] = m_Evaluation.rootMeanSquaredError();
+        repError[i] = evaluation.rootMeanSquaredError();
         break;
       case EVAL_MAE:
-        repError[i] = m_Evaluation.meanAbsoluteError();
+        repError[i] = evaluation.meanAbsoluteError();
         break;
       case EVAL_FMEASURE:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedFMeasure();
+          repError[i] = evaluation.weightedFMeasure();
         } else {
-          repError[i] = m_Evaluation.fMeasure(m_IRClassVal);
+          repError[i] = evaluation.fMeasure(m_IRClassVal);
         }
         break;
       case EVAL_AUC:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedAreaUnderROC();
+          repError[i] = evaluation.weightedAreaUnderROC();
         } else {
-          repError[i] = m_Evaluation.areaUnderROC(m_IRClassVal);
+          repError[i] = evaluation.areaUnderROC(m_IRClassVal);
         }
         break;
       case EVAL_AUPRC:
         if (m_IRClassVal < 0) {
-          repError[i] = m_Evaluation.weightedAreaUnderPRC();
+          repError[i] = evaluation.weightedAreaUnderPRC();
         } else {
-          repError[i] = m_Evaluation.areaUnderPRC(m_IRClassVal);
+          repError[i] = evaluation.areaUnderPRC(m_IRClassVal);
         }
         break;
       case EVAL_CORRELATION:
-        repError[i] = m_Evaluation.correlationCoefficient();
+        repError[i] = evaluation.correlationCoefficient();
         break;
       default:
         if (m_evaluationMeasure.getID() >= EVAL_PLUGIN) {
           metricName = ((PluginTag) m_evaluationMeasure).getMetricName();
           statName = ((PluginTag) m_evaluationMeasure).getStatisticName();
           statName = ((PluginTag) m_evaluationMeasure).getStatisticName();
-          pluginMetric = m_Evaluation.getPluginMetric(metricName);
+          pluginMetric = evaluation.getPluginMetric(metricName);
           if (pluginMetric == null) {
             throw new Exception(
               "Metric  " + metricName + " does not seem to be " + "available");
@@ -944,7 +1212,6 @@ public class WrapperSubsetEval extends ASEvaluation
     }
 
     evalMetric /= i;
-    m_Evaluation = null;
 
     switch (m_evaluationMeasure.getID()) {
     case EVAL_DEFAULT:
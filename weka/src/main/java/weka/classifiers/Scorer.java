@@ -0,0 +1,413 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    Scorer.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.classifiers.meta.FilteredClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.WekaException;
+import weka.filters.Filter;
+import weka.filters.FusableFilter;
+
+/**
+ * Scores single rows with a trained classifier, for online prediction. The
+ * values of a row are given as a double[] in the order of the attributes of
+ * the training data, or as a map from attribute names to values, and the
+ * prediction is written into an array supplied by the caller.
+ * <p>
+ * The scorer owns one instance whose values are overwritten for every row, so
+ * no instance or value array is created per row. FilteredClassifier wrappers
+ * are compiled away: their (trained) filters are copied once and applied
+ * directly, followed by the innermost classifier. Filters still create their
+ * own output instances, and most classifiers create the array that their
+ * distributionForInstance() returns. Only filters known to be row-local (see
+ * FusableFilter) are given the reused instance; any other first filter, e.g.
+ * one that keeps a history of its input like TimeSeriesTranslate, gets a copy
+ * of each row.
+ * <p>
+ * A scorer is not thread-safe, each thread needs its own. The classifier
+ * itself is shared by all scorers created for it, so if it isn't safe to use
+ * from several threads, each scorer should be given its own copy (see
+ * AbstractClassifier.makeCopy()). The classifier must not keep a reference to
+ * the instances it is asked to classify, since their values change with the
+ * next row.
+ *
+ * @version $Revision$
+ */
+public class Scorer implements RevisionHandler {
+
+  /**
+   * An instance whose values are overwritten in place
+   */
+  protected static class Buffer extends DenseInstance {
+
+    /** For serialization */
+    private static final long serialVersionUID = -5128440385627913861L;
+
+    /** The array holding the values */
+    protected double[] m_Values;
+
+    /**
+     * Creates the buffer for a dataset
+     *
+     * @param dataset the dataset
+     */
+    protected Buffer(Instances dataset) {
+      super(dataset.numAttributes());
+      m_Values = m_AttValues;
+      setDataset(dataset);
+    }
+
+    /**
+     * Returns the array holding the values, to be overwritten by the caller.
+     * The values are all missing initially.
+     *
+     * @return the values
+     */
+    protected double[] values() {
+      // setValue() replaces the array with a copy
+      m_AttValues = m_Values;
+      return m_Values;
+    }
+  }
+
+  /** The header of the data the classifier was trained on */
+  protected Instances m_Header;
+
+  /** The filters, in the order in which they are applied */
+  protected Filter[] m_Filters;
+
+  /** The classifier that makes the predictions */
+  protected Classifier m_Classifier;
+
+  /** The instance that holds the current row */
+  protected Buffer m_Buffer;
+
+  /** The index of each attribute, by name */
+  protected Map<String, Integer> m_Indices;
+
+  /** The prediction for the current row, used by classify() */
+  protected double[] m_Prediction;
+
+  /** Whether the first filter is given a copy of each row */
+  protected boolean m_CopyRows;
+
+  /** The indices of the string attributes */
+  protected int[] m_StringIndices;
+
+  /**
+   * Compiles a trained classifier into a scorer
+   *
+   * @param classifier the trained classifier
+   * @param header the header of the data the classifier was trained on (with
+   *          the class index set)
+   * @throws Exception if the filters can't be copied
+   */
+  public Scorer(Classifier classifier, Instances header) throws Exception {
+    if (header.classIndex() < 0) {
+      throw new WekaException("No class attribute set in header");
+    }
+
+    // string attributes get their own copy, which holds the current value
+    m_Header = header.stringFreeStructure();
+
+    List<Filter> filters = new ArrayList<Filter>();
+    while (classifier.getClass() == FilteredClassifier.class) {
+      FilteredClassifier fc = (FilteredClassifier) classifier;
+      filters.add(Filter.makeCopy(fc.getFilter()));
+      classifier = fc.getClassifier();
+    }
+    m_Filters = filters.toArray(new Filter[filters.size()]);
+    m_Classifier = classifier;
+    m_CopyRows = (m_Filters.length > 0) && !isRowLocal(m_Filters[0]);
+
+    m_Buffer = new Buffer(m_Header);
+    m_Indices = new HashMap<String, Integer>();
+    List<Integer> strings = new ArrayList<Integer>();
+    for (int i = 0; i < m_Header.numAttributes(); i++) {
+      m_Indices.put(m_Header.attribute(i).name(), i);
+      if (m_Header.attribute(i).isString() && i != m_Header.classIndex()) {
+        strings.add(i);
+      }
+    }
+    m_StringIndices = new int[strings.size()];
+    for (int i = 0; i < m_StringIndices.length; i++) {
+      m_StringIndices[i] = strings.get(i);
+    }
+    m_Prediction = new double[numOutputs()];
+  }
+
+  /**
+   * Returns whether a filter is known to produce a new output instance for
+   * each input instance without keeping a reference to the input, so that it
+   * can be given the reused instance
+   *
+   * @param filter the trained filter
+   * @return true if the filter is row-local
+   */
+  protected static boolean isRowLocal(Filter filter) {
+    return (filter instanceof FusableFilter)
+      && ((FusableFilter) filter).canTransformValues();
+  }
+
+  /**
+   * Returns the classifier that makes the predictions, i.e., the classifier
+   * without its FilteredClassifier wrappers
+   *
+   * @return the classifier
+   */
+  public Classifier getClassifier() {
+    return m_Classifier;
+  }
+
+  /**
+   * Returns the header of the rows that are scored
+   *
+   * @return the header
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the length of the arrays that distribution() writes to
+   *
+   * @return the number of class values, or 1 for a numeric class
+   */
+  public int numOutputs() {
+    return m_Header.classAttribute().isNominal() ? m_Header.numClasses() : 1;
+  }
+
+  /**
+   * Returns the index of an attribute
+   *
+   * @param name the name of the attribute
+   * @return the index, or -1 if there is no such attribute
+   */
+  public int indexOf(String name) {
+    Integer index = m_Indices.get(name);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Computes the class distribution of a row
+   *
+   * @param values the values of the row, in the internal format of
+   *          Instance.value() and in the order of the attributes of the
+   *          header. The value of the class is ignored. String values can't
+   *          be given this way, since the header has no strings that they
+   *          could index, so the values of string attributes must be
+   *          missing; rows with strings are scored with distribution(Map,
+   *          double[]).
+   * @param result the array to write the distribution to (see numOutputs())
+   * @throws Exception if the row can't be scored
+   */
+  public void distribution(double[] values, double[] result)
+    throws Exception {
+    if (values.length != m_Header.numAttributes()) {
+      throw new WekaException("Expected " + m_Header.numAttributes()
+        + " values, got " + values.length);
+    }
+    for (int index : m_StringIndices) {
+      if (!Utils.isMissingValue(values[index])) {
+        throw new WekaException("Value of string attribute "
+          + m_Header.attribute(index).name() + " must be given by name");
+      }
+    }
+
+    System.arraycopy(values, 0, m_Buffer.values(), 0, values.length);
+    score(result);
+  }
+
+  /**
+   * Computes the class distribution of a row given by attribute name.
+   * Numeric and date values are given as numbers, nominal and string values
+   * as strings (or as the index of a nominal value). Attributes that are not
+   * in the map are missing, as are null values.
+   *
+   * @param fields the values of the row, by attribute name
+   * @param result the array to write the distribution to (see numOutputs())
+   * @throws Exception if a field is unknown or has an invalid value
+   */
+  public void distribution(Map<String, ?> fields, double[] result)
+    throws Exception {
+    double[] values = m_Buffer.values();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Utils.missingValue();
+    }
+
+    for (Map.Entry<String, ?> field : fields.entrySet()) {
+      Integer index = m_Indices.get(field.getKey());
+      if (index == null) {
+        throw new WekaException("Unknown attribute: " + field.getKey());
+      }
+      if (field.getValue() != null) {
+        values[index] = parse(m_Header.attribute(index), field.getValue());
+      }
+    }
+    score(result);
+  }
+
+  /**
+   * Predicts the class of a row
+   *
+   * @param values the values of the row (see distribution(double[],
+   *          double[]))
+   * @return the index of the most likely class value, the predicted value of
+   *         a numeric class, or a missing value if there is no prediction
+   * @throws Exception if the row can't be scored
+   */
+  public double classify(double[] values) throws Exception {
+    distribution(values, m_Prediction);
+    return predicted(m_Prediction);
+  }
+
+  /**
+   * Predicts the class of a row given by attribute name
+   *
+   * @param fields the values of the row (see distribution(Map, double[]))
+   * @return the index of the most likely class value, the predicted value of
+   *         a numeric class, or a missing value if there is no prediction
+   * @throws Exception if the row can't be scored
+   */
+  public double classify(Map<String, ?> fields) throws Exception {
+    distribution(fields, m_Prediction);
+    return predicted(m_Prediction);
+  }
+
+  /**
+   * Turns a distribution into a prediction, like
+   * AbstractClassifier.classifyInstance()
+   *
+   * @param dist the distribution
+   * @return the prediction
+   */
+  protected double predicted(double[] dist) {
+    if (dist.length == 1) {
+      return dist[0];
+    }
+
+    int max = 0;
+    for (int i = 1; i < dist.length; i++) {
+      if (dist[i] > dist[max]) {
+        max = i;
+      }
+    }
+    return dist[max] > 0 ? max : Utils.missingValue();
+  }
+
+  /**
+   * Converts the value of a field to the internal format
+   *
+   * @param att the attribute of the field
+   * @param value the value, not null
+   * @return the internal value
+   * @throws Exception if the value is invalid for the attribute
+   */
+  protected double parse(Attribute att, Object value) throws Exception {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+
+    String s = value.toString();
+    if (att.isNominal()) {
+      int index = att.indexOfValue(s);
+      if (index < 0) {
+        throw new WekaException("Unknown value of attribute " + att.name()
+          + ": " + s);
+      }
+      return index;
+    } else if (att.isString()) {
+      att.setStringValue(s);
+      return 0;
+    } else if (att.isDate()) {
+      return att.parseDate(s);
+    } else if (att.isNumeric()) {
+      return Double.parseDouble(s);
+    }
+
+    throw new WekaException("Can't convert " + s + " to a value of attribute "
+      + att.name());
+  }
+
+  /**
+   * Scores the row in the buffer
+   *
+   * @param result the array to write the distribution to
+   * @throws Exception if the row can't be scored
+   */
+  protected void score(double[] result) throws Exception {
+    if (result.length != numOutputs()) {
+      throw new WekaException("Expected an output array of length "
+        + numOutputs() + ", got " + result.length);
+    }
+
+    m_Buffer.values()[m_Header.classIndex()] = Utils.missingValue();
+    Instance inst = m_Buffer;
+    if (m_CopyRows) {
+      inst = new DenseInstance(1.0, m_Buffer.toDoubleArray());
+      inst.setDataset(m_Header);
+    }
+    for (Filter filter : m_Filters) {
+      if (filter.numPendingOutput() > 0) {
+        throw new WekaException("Filter output queue not empty!");
+      }
+      boolean available = filter.input(inst);
+      if (!available && !filter.mayRemoveInstanceAfterFirstBatchDone()) {
+        throw new WekaException(
+          "Filter didn't make the test instance immediately available!");
+      }
+      filter.batchFinished();
+      inst = available ? filter.output() : null;
+      if (inst == null) {
+        // the filter consumed the row, there is no prediction
+        for (int i = 0; i < result.length; i++) {
+          result[i] = result.length == 1 ? Utils.missingValue() : 0;
+        }
+        return;
+      }
+    }
+
+    double[] dist = m_Classifier.distributionForInstance(inst);
+    System.arraycopy(dist, 0, result, 0, result.length);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -20,16 +20,10 @@
 
 package weka.classifiers.bayes;
 
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
 import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
@@ -44,6 +38,7 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
+import weka.core.Vocabulary;
 import weka.core.WeightedInstancesHandler;
 import weka.core.stemmers.NullStemmer;
 import weka.core.stemmers.Stemmer;
@@ -116,32 +111,23 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
   /** For serialization */
   private static final long serialVersionUID = 2139025532014821394L;
 
-  private static class Count implements Serializable {
-
-    /**
-     * For serialization
-     */
-    private static final long serialVersionUID = 2104201532017340967L;
-
-    public double m_count;
-
-    public Count(double c) {
-      m_count = c;
-    }
-  }
-
   /** The header of the training data */
   protected Instances m_data;
 
   protected double[] m_probOfClass;
   protected double[] m_wordsPerClass;
-  protected Map<Integer, LinkedHashMap<String, Count>> m_probOfWordGivenClass;
+
+  /** Maps the words in the dictionary to ids */
+  protected Vocabulary m_vocabulary;
 
   /**
-   * Holds the current document vector (LinkedHashMap is more efficient when
-   * iterating over EntrySet than HashMap)
+   * The frequency of each word given each class, indexed by [class][word id].
+   * Zero means that the word is not in the dictionary for the class.
    */
-  protected transient LinkedHashMap<String, Count> m_inputVector;
+  protected double[][] m_probOfWordGivenClass;
+
+  /** Holds the current document vector (reused for each document) */
+  protected transient Vocabulary.Document m_inputVector;
 
   /** Stopword handler to use. */
   protected StopwordsHandler m_StopwordsHandler = new Null();
@@ -243,14 +229,11 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
 
     m_wordsPerClass = new double[data.numClasses()];
     m_probOfClass = new double[data.numClasses()];
-    m_probOfWordGivenClass =
-      new HashMap<Integer, LinkedHashMap<String, Count>>();
+    m_vocabulary = new Vocabulary(1000);
+    m_probOfWordGivenClass = new double[data.numClasses()][1000];
 
     double laplace = 1.0;
     for (int i = 0; i < data.numClasses(); i++) {
-      LinkedHashMap<String, Count> dict =
-        new LinkedHashMap<String, Count>(10000 / data.numClasses());
-      m_probOfWordGivenClass.put(i, dict);
       m_probOfClass[i] = laplace;
 
       // this needs to be updated for laplace correction every time we see a new
@@ -300,92 +283,67 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
   @Override
   public double[] distributionForInstance(Instance instance) throws Exception {
 
-    tokenizeInstance( instance, false );
+    tokenizeInstance(instance, false);
 
+    // holds the log probabilities until they are converted at the end
     double[] probOfClassGivenDoc = new double[m_data.numClasses()];
-
-    double[] logDocGivenClass = new double[m_data.numClasses()];
     for (int i = 0; i < m_data.numClasses(); i++) {
-      logDocGivenClass[i] += Math.log(m_probOfClass[i]);
-
-      LinkedHashMap<String, Count> dictForClass = m_probOfWordGivenClass.get(i);
-
-      int allWords = 0;
-      // for document normalization (if in use)
-      double iNorm = 0;
-      double fv = 0;
+      probOfClassGivenDoc[i] += Math.log(m_probOfClass[i]);
+    }
 
-      if (m_normalize) {
-        for (Map.Entry<String, Count> feature : m_inputVector.entrySet()) {
-          String word = feature.getKey();
-          Count c = feature.getValue();
-
-          // check the word against all the dictionaries (all classes)
-          boolean ok = false;
-          for (int clss = 0; clss < m_data.numClasses(); clss++) {
-            if (m_probOfWordGivenClass.get(clss).get(word) != null) {
-              ok = true;
-              break;
-            }
-          }
+    // for document normalization (if in use)
+    double iNorm = 0;
+    double fv = 0;
 
-          // only normalize with respect to those words that we've seen during
-          // training
-          // (i.e. dictionary over all classes)
-          if (ok) {
-            // word counts or bag-of-words?
-            fv = (m_wordFrequencies) ? c.m_count : 1.0;
-            iNorm += Math.pow(Math.abs(fv), m_lnorm);
-          }
+    if (m_normalize) {
+      for (int j = 0; j < m_inputVector.numTerms(); j++) {
+        // only normalize with respect to those words that we've seen during
+        // training (i.e. dictionary over all classes)
+        if (inDictionary(m_inputVector.id(j))) {
+          // word counts or bag-of-words?
+          fv = (m_wordFrequencies) ? m_inputVector.count(j) : 1.0;
+          iNorm += Math.pow(Math.abs(fv), m_lnorm);
         }
-        iNorm = Math.pow(iNorm, 1.0 / m_lnorm);
       }
+      iNorm = Math.pow(iNorm, 1.0 / m_lnorm);
+    }
 
-      // System.out.println("---- " + m_inputVector.size());
-      for (Map.Entry<String, Count> feature : m_inputVector.entrySet()) {
-        String word = feature.getKey();
-        Count dictCount = dictForClass.get(word);
-        // System.out.print(word + " ");
-        /*
-         * if (dictCount != null) { System.out.println(dictCount.m_count); }
-         * else { System.out.println("*1"); }
-         */
-        // check the word against all the dictionaries (all classes)
-        boolean ok = false;
-        for (int clss = 0; clss < m_data.numClasses(); clss++) {
-          if (m_probOfWordGivenClass.get(clss).get(word) != null) {
-            ok = true;
-            break;
-          }
-        }
+    int allWords = 0;
+    for (int j = 0; j < m_inputVector.numTerms(); j++) {
+      int id = m_inputVector.id(j);
 
-        // ignore words we haven't seen in the training data
-        if (ok) {
-          double freq = (m_wordFrequencies) ? feature.getValue().m_count : 1.0;
-          // double freq = (feature.getValue().m_count / iNorm * m_norm);
-          if (m_normalize) {
-            freq *= (m_norm / iNorm);
-          }
-          allWords += freq;
+      // ignore words we haven't seen in the training data
+      if (!inDictionary(id)) {
+        continue;
+      }
 
-          if (dictCount != null) {
-            logDocGivenClass[i] += freq * Math.log(dictCount.m_count);
-          } else {
-            // leplace for zero frequency
-            logDocGivenClass[i] += freq * Math.log(m_leplace);
-          }
+      double freq = (m_wordFrequencies) ? m_inputVector.count(j) : 1.0;
+      if (m_normalize) {
+        freq *= (m_norm / iNorm);
+      }
+      allWords += freq;
+
+      for (int i = 0; i < m_data.numClasses(); i++) {
+        double dictCount = wordCount(i, id);
+        if (dictCount != 0) {
+          probOfClassGivenDoc[i] += freq * Math.log(dictCount);
+        } else {
+          // leplace for zero frequency
+          probOfClassGivenDoc[i] += freq * Math.log(m_leplace);
         }
       }
+    }
 
+    for (int i = 0; i < m_data.numClasses(); i++) {
       if (m_wordsPerClass[i] > 0) {
-        logDocGivenClass[i] -= allWords * Math.log(m_wordsPerClass[i]);
+        probOfClassGivenDoc[i] -= allWords * Math.log(m_wordsPerClass[i]);
       }
     }
 
-    double max = logDocGivenClass[Utils.maxIndex(logDocGivenClass)];
+    double max = probOfClassGivenDoc[Utils.maxIndex(probOfClassGivenDoc)];
 
     for (int i = 0; i < m_data.numClasses(); i++) {
-      probOfClassGivenDoc[i] = Math.exp(logDocGivenClass[i] - max);
+      probOfClassGivenDoc[i] = Math.exp(probOfClassGivenDoc[i] - max);
     }
 
     Utils.normalize(probOfClassGivenDoc);
@@ -393,9 +351,54 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
     return probOfClassGivenDoc;
   }
 
+  /**
+   * Get the frequency of a word given a class
+   *
+   * @param classIndex the index of the class
+   * @param id the id of the word
+   * @return the frequency, or zero if the word is not in the dictionary for
+   *         the class
+   */
+  protected double wordCount(int classIndex, int id) {
+    double[] dictForClass = m_probOfWordGivenClass[classIndex];
+
+    return id < dictForClass.length ? dictForClass[id] : 0;
+  }
+
+  /**
+   * Returns true if a word is in the dictionary for at least one class
+   *
+   * @param id the id of the word
+   * @return true if the word is in the dictionary
+   */
+  protected boolean inDictionary(int id) {
+    for (int i = 0; i < m_probOfWordGivenClass.length; i++) {
+      if (wordCount(i, id) != 0) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Make sure that the per class frequency arrays can hold all the words in
+   * the vocabulary
+   */
+  protected void ensureCapacity() {
+    int size = m_vocabulary.size();
+    for (int i = 0; i < m_probOfWordGivenClass.length; i++) {
+      double[] dictForClass = m_probOfWordGivenClass[i];
+      if (dictForClass.length < size) {
+        m_probOfWordGivenClass[i] =
+          Arrays.copyOf(dictForClass, Math.max(size, dictForClass.length * 2));
+      }
+    }
+  }
+
   protected void tokenizeInstance(Instance instance, boolean updateDictionary) {
     if (m_inputVector == null) {
-      m_inputVector = new LinkedHashMap<String, Count>();
+      m_inputVector = new Vocabulary.Document();
     } else {
       m_inputVector.clear();
     }
@@ -416,11 +419,13 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
             continue;
           }
 
-          Count docCount = m_inputVector.get(word);
-          if (docCount == null) {
-            m_inputVector.put(word, new Count(instance.weight()));
-          } else {
-            docCount.m_count += instance.weight();
+          // words that are not in the vocabulary can't contribute to a
+          // prediction
+          int id =
+            updateDictionary ? m_vocabulary.addToken(word) : m_vocabulary
+              .getId(word);
+          if (id >= 0) {
+            m_inputVector.add(id, instance.weight());
           }
         }
       }
@@ -428,26 +433,25 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
 
     if (updateDictionary) {
       int classValue = (int) instance.classValue();
-      LinkedHashMap<String, Count> dictForClass =
-        m_probOfWordGivenClass.get(classValue);
+      ensureCapacity();
+      double[] dictForClass = m_probOfWordGivenClass[classValue];
 
       // document normalization
       double iNorm = 0;
       double fv = 0;
 
       if (m_normalize) {
-        for (Count c : m_inputVector.values()) {
+        for (int j = 0; j < m_inputVector.numTerms(); j++) {
           // word counts or bag-of-words?
-          fv = (m_wordFrequencies) ? c.m_count : 1.0;
+          fv = (m_wordFrequencies) ? m_inputVector.count(j) : 1.0;
           iNorm += Math.pow(Math.abs(fv), m_lnorm);
         }
         iNorm = Math.pow(iNorm, 1.0 / m_lnorm);
       }
 
-      for (Map.Entry<String, Count> feature : m_inputVector.entrySet()) {
-        String word = feature.getKey();
-        double freq = (m_wordFrequencies) ? feature.getValue().m_count : 1.0;
-        // double freq = (feature.getValue().m_count / iNorm * m_norm);
+      for (int j = 0; j < m_inputVector.numTerms(); j++) {
+        int id = m_inputVector.id(j);
+        double freq = (m_wordFrequencies) ? m_inputVector.count(j) : 1.0;
 
         if (m_normalize) {
           freq *= (m_norm / iNorm);
@@ -455,21 +459,14 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
 
         // check all classes
         for (int i = 0; i < m_data.numClasses(); i++) {
-          LinkedHashMap<String, Count> dict = m_probOfWordGivenClass.get(i);
-          if (dict.get(word) == null) {
-            dict.put(word, new Count(m_leplace));
+          if (m_probOfWordGivenClass[i][id] == 0) {
+            m_probOfWordGivenClass[i][id] = m_leplace;
             m_wordsPerClass[i] += m_leplace;
           }
         }
 
-        Count dictCount = dictForClass.get(word);
-        /*
-         * if (dictCount == null) { dictForClass.put(word, new Count(m_leplace +
-         * freq)); m_wordsPerClass[classValue] += (m_leplace + freq); } else {
-         */
-        dictCount.m_count += freq;
+        dictForClass[id] += freq;
         m_wordsPerClass[classValue] += freq;
-        // }
       }
 
       pruneDictionary(false);
@@ -481,19 +478,40 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
       return;
     }
 
-    Set<Integer> classesSet = m_probOfWordGivenClass.keySet();
-    for (Integer classIndex : classesSet) {
-      LinkedHashMap<String, Count> dictForClass =
-        m_probOfWordGivenClass.get(classIndex);
-
-      Iterator<Map.Entry<String, Count>> entries =
-        dictForClass.entrySet().iterator();
-      while (entries.hasNext()) {
-        Map.Entry<String, Count> entry = entries.next();
-        if (entry.getValue().m_count < m_minWordP) {
-          m_wordsPerClass[classIndex] -= entry.getValue().m_count;
-          entries.remove();
+    int size = m_vocabulary.size();
+    int numClasses = m_probOfWordGivenClass.length;
+    boolean[] live = new boolean[size];
+    int numLive = 0;
+    for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+      double[] dictForClass = m_probOfWordGivenClass[classIndex];
+
+      for (int id = 0; id < Math.min(size, dictForClass.length); id++) {
+        double count = dictForClass[id];
+        if (count != 0) {
+          if (count < m_minWordP) {
+            m_wordsPerClass[classIndex] -= count;
+            dictForClass[id] = 0;
+          } else if (!live[id]) {
+            live[id] = true;
+            numLive++;
+          }
+        }
+      }
+    }
+
+    // drop pruned words from the vocabulary once they make up most of it
+    if (m_vocabulary.isSparse(numLive)) {
+      m_vocabulary = m_vocabulary.compact(live);
+      for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+        double[] dictForClass = m_probOfWordGivenClass[classIndex];
+        double[] compacted = new double[Math.max(1000, numLive * 2)];
+        int next = 0;
+        for (int id = 0; id < size; id++) {
+          if (live[id]) {
+            compacted[next++] = dictForClass[id];
+          }
         }
+        m_probOfWordGivenClass[classIndex] = compacted;
       }
     }
   }
@@ -504,6 +522,7 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
   public void reset() {
     m_t = 1;
     m_wordsPerClass = null;
+    m_vocabulary = null;
     m_probOfWordGivenClass = null;
     m_probOfClass = null;
   }
@@ -1070,16 +1089,14 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
     StringBuffer result = new StringBuffer();
 
     // build a master dictionary over all classes
-    HashSet<String> master = new HashSet<String>();
-    for (int i = 0; i < m_data.numClasses(); i++) {
-      LinkedHashMap<String, Count> classDict = m_probOfWordGivenClass.get(i);
-
-      for (String key : classDict.keySet()) {
-        master.add(key);
+    int dictionarySize = 0;
+    for (int id = 0; id < m_vocabulary.size(); id++) {
+      if (inDictionary(id)) {
+        dictionarySize++;
       }
     }
 
-    result.append("Dictionary size: " + master.size()).append("\n\n");
+    result.append("Dictionary size: " + dictionarySize).append("\n\n");
 
     result.append("The independent frequency of a class\n");
     result.append("--------------------------------------\n");
@@ -1089,7 +1106,7 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
         .append(Double.toString(m_probOfClass[i])).append("\n");
     }
 
-    if (master.size() > 150000) {
+    if (dictionarySize > 150000) {
       result.append("\nFrequency table ommitted due to size\n");
       return result.toString();
     }
@@ -1104,21 +1121,20 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
 
     result.append("\n");
 
-    Iterator<String> masterIter = master.iterator();
-    while (masterIter.hasNext()) {
-      String word = masterIter.next();
+    for (int id = 0; id < m_vocabulary.size(); id++) {
+      if (!inDictionary(id)) {
+        continue;
+      }
 
       for (int i = 0; i < m_data.numClasses(); i++) {
-        LinkedHashMap<String, Count> classDict = m_probOfWordGivenClass.get(i);
-        Count c = classDict.get(word);
-        if (c == null) {
+        double c = wordCount(i, id);
+        if (c == 0) {
           result.append("<laplace=1>\t");
         } else {
-          result.append(Utils.padLeft(Double.toString(c.m_count), 11)).append(
-            "\t");
+          result.append(Utils.padLeft(Double.toString(c), 11)).append("\t");
         }
       }
-      result.append(word);
+      result.append(m_vocabulary.getToken(id));
       result.append("\n");
     }
 
@@ -1165,38 +1181,29 @@ public class NaiveBayesMultinomialText extends AbstractClassifier implements
       m_wordsPerClass[i] += toAggregate.m_wordsPerClass[i];
     }
 
-    Map<Integer, LinkedHashMap<String, Count>> dicts =
-      toAggregate.m_probOfWordGivenClass;
-    Iterator<Map.Entry<Integer, LinkedHashMap<String, Count>>> perClass =
-      dicts.entrySet().iterator();
-    while (perClass.hasNext()) {
-      Map.Entry<Integer, LinkedHashMap<String, Count>> currentClassDict =
-        perClass.next();
-
-      LinkedHashMap<String, Count> masterDict =
-        m_probOfWordGivenClass.get(currentClassDict.getKey());
-
-      if (masterDict == null) {
-        // we haven't seen this class during our training
-        masterDict = new LinkedHashMap<String, Count>();
-        m_probOfWordGivenClass.put(currentClassDict.getKey(), masterDict);
-      }
-
-      // now process words seen for this class
-      Iterator<Map.Entry<String, Count>> perClassEntries =
-        currentClassDict.getValue().entrySet().iterator();
-      while (perClassEntries.hasNext()) {
-        Map.Entry<String, Count> entry = perClassEntries.next();
+    // now process words seen by the other model, mapping them into our
+    // vocabulary
+    Vocabulary otherVocab = toAggregate.m_vocabulary;
+    for (int otherId = 0; otherId < otherVocab.size(); otherId++) {
+      int id = -1;
+      for (int i = 0; i < m_probOfClass.length; i++) {
+        double otherCount = toAggregate.wordCount(i, otherId);
+        if (otherCount == 0) {
+          continue;
+        }
 
-        Count masterCount = masterDict.get(entry.getKey());
+        if (id < 0) {
+          id = m_vocabulary.addToken(otherVocab.getToken(otherId));
+          ensureCapacity();
+        }
 
-        if (masterCount == null) {
+        double[] masterDict = m_probOfWordGivenClass[i];
+        if (masterDict[id] == 0) {
           // we haven't seen this entry (or its been pruned)
-          masterCount = new Count(entry.getValue().m_count);
-          masterDict.put(entry.getKey(), masterCount);
+          masterDict[id] = otherCount;
         } else {
           // add up
-          masterCount.m_count += entry.getValue().m_count - 1;
+          masterDict[id] += otherCount - 1;
         }
       }
     }
@@ -23,9 +23,10 @@ package weka.classifiers.functions;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
@@ -47,6 +48,7 @@ import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
 import weka.core.Tag;
 import weka.core.Utils;
+import weka.core.Vocabulary;
 import weka.core.WeightedInstancesHandler;
 import weka.core.stemmers.NullStemmer;
 import weka.core.stemmers.Stemmer;
@@ -191,8 +193,35 @@ public class SGDText extends RandomizableClassifier implements
   /** The L-norm to use */
   protected double m_lnorm = 2.0;
 
-  /** The dictionary (and term weights) */
-  protected LinkedHashMap<String, Count> m_dictionary;
+  /** Maps the words seen to ids */
+  protected Vocabulary m_vocabulary;
+
+  /** True for the ids of the words in the dictionary */
+  protected boolean[] m_inDictionary;
+
+  /** The frequency of each word in the dictionary, indexed by id */
+  protected double[] m_wordCounts;
+
+  /**
+   * The weight of each word in the dictionary, indexed by id. The actual
+   * weights are these values multiplied by m_weightScale, so that weight
+   * decay does not have to visit every word for each training instance.
+   */
+  protected double[] m_wordWeights;
+
+  /** The scale factor for m_wordWeights */
+  protected double m_weightScale = 1.0;
+
+  /** True if words have been pruned since the vocabulary was compacted */
+  protected transient boolean m_checkCompact;
+
+  /**
+   * The counts of the words of the current document that are not in the
+   * vocabulary. They only count towards the length of the document when
+   * normalizing, and are kept out of the vocabulary so that predicting does
+   * not change the model.
+   */
+  protected transient Map<String, Double> m_unknownWords;
 
   /** Stopword handler to use. */
   protected StopwordsHandler m_StopwordsHandler = new Null();
@@ -230,11 +259,8 @@ public class SGDText extends RandomizableClassifier implements
    */
   protected int m_epochs = 500;
 
-  /**
-   * Holds the current document vector (LinkedHashMap is more efficient when
-   * iterating over EntrySet than HashMap)
-   */
-  protected transient LinkedHashMap<String, Count> m_inputVector;
+  /** Holds the current document vector (reused for each document) */
+  protected transient Vocabulary.Document m_inputVector;
 
   /** the hinge loss function. */
   public static final int HINGE = 0;
@@ -1138,7 +1164,11 @@ public class SGDText extends RandomizableClassifier implements
   public void reset() {
     m_t = 1;
     m_bias = 0;
-    m_dictionary = null;
+    m_vocabulary = null;
+    m_inDictionary = null;
+    m_wordCounts = null;
+    m_wordWeights = null;
+    m_weightScale = 1.0;
   }
 
   /**
@@ -1163,7 +1193,11 @@ public class SGDText extends RandomizableClassifier implements
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    m_dictionary = new LinkedHashMap<String, Count>(10000);
+    m_vocabulary = new Vocabulary(10000);
+    m_inDictionary = new boolean[10000];
+    m_wordCounts = new double[10000];
+    m_wordWeights = new double[10000];
+    m_weightScale = 1.0;
 
     m_numInstances = data.numInstances();
     m_data = new Instances(data, 0);
@@ -1255,8 +1289,11 @@ public class SGDText extends RandomizableClassifier implements
         multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
       }
 
-      for (Map.Entry<String, Count> c : m_dictionary.entrySet()) {
-        c.getValue().m_weight *= multiplier;
+      // decay the weights of all words by way of the scale factor, folding
+      // it into the weights before it loses precision
+      m_weightScale *= multiplier;
+      if (Math.abs(m_weightScale) < 1e-9 || Math.abs(m_weightScale) > 1e9) {
+        foldWeightScale();
       }
 
       // Only need to do the following if the loss is non-zero
@@ -1266,13 +1303,12 @@ public class SGDText extends RandomizableClassifier implements
         double factor = m_learningRate * y * dloss;
 
         // Update coefficients for attributes
-        for (Map.Entry<String, Count> feature : m_inputVector.entrySet()) {
-          String word = feature.getKey();
-          double value = (m_wordFrequencies) ? feature.getValue().m_count : 1;
+        for (int j = 0; j < m_inputVector.numTerms(); j++) {
+          int id = m_inputVector.id(j);
+          double value = (m_wordFrequencies) ? m_inputVector.count(j) : 1;
 
-          Count c = m_dictionary.get(word);
-          if (c != null) {
-            c.m_weight += factor * value;
+          if (inDictionary(id)) {
+            m_wordWeights[id] += factor * value / m_weightScale;
           }
         }
 
@@ -1284,13 +1320,82 @@ public class SGDText extends RandomizableClassifier implements
     }
   }
 
+  /**
+   * Multiply the word weights by the scale factor and reset it to 1
+   */
+  protected void foldWeightScale() {
+    for (int id = 0; id < m_wordWeights.length; id++) {
+      m_wordWeights[id] *= m_weightScale;
+    }
+    m_weightScale = 1.0;
+  }
+
+  /**
+   * Returns true if a word is in the dictionary
+   * 
+   * @param id the id of the word
+   * @return true if the word is in the dictionary
+   */
+  protected boolean inDictionary(int id) {
+    return id < m_inDictionary.length && m_inDictionary[id];
+  }
+
+  /**
+   * Get the weight of a word in the dictionary
+   * 
+   * @param id the id of the word
+   * @return the weight
+   */
+  protected double wordWeight(int id) {
+    return m_wordWeights[id] * m_weightScale;
+  }
+
+  /**
+   * Returns true if a word is in the dictionary and frequent enough and with
+   * a large enough weight to be used for prediction
+   * 
+   * @param id the id of the word
+   * @return true if the word is used for prediction
+   */
+  protected boolean isPredictive(int id) {
+    return inDictionary(id) && m_wordCounts[id] >= m_minWordP
+      && Math.abs(wordWeight(id)) >= m_minAbsCoefficient;
+  }
+
+  /**
+   * Make sure that the dictionary arrays can hold all the words in the
+   * vocabulary
+   */
+  protected void ensureCapacity() {
+    int size = m_vocabulary.size();
+    if (m_inDictionary.length < size) {
+      int newSize = Math.max(size, m_inDictionary.length * 2);
+      m_inDictionary = Arrays.copyOf(m_inDictionary, newSize);
+      m_wordCounts = Arrays.copyOf(m_wordCounts, newSize);
+      m_wordWeights = Arrays.copyOf(m_wordWeights, newSize);
+    }
+  }
+
   protected void tokenizeInstance(Instance instance, boolean updateDictionary) {
     if (m_inputVector == null) {
-      m_inputVector = new LinkedHashMap<String, Count>();
+      m_inputVector = new Vocabulary.Document();
     } else {
       m_inputVector.clear();
     }
 
+    if (updateDictionary && m_checkCompact) {
+      // safe now that the previous document vector has been cleared
+      compactDictionary();
+    }
+
+    // all words count towards the length of a document when normalizing;
+    // those without an id are counted separately
+    if (m_unknownWords == null) {
+      m_unknownWords = new HashMap<String, Double>();
+    } else {
+      m_unknownWords.clear();
+    }
+
     for (int i = 0; i < instance.numAttributes(); i++) {
       if (instance.attribute(i).isString() && !instance.isMissing(i)) {
         m_tokenizer.tokenize(instance.stringValue(i));
@@ -1307,19 +1412,27 @@ public class SGDText extends RandomizableClassifier implements
             continue;
           }
 
-          Count docCount = m_inputVector.get(word);
-          if (docCount == null) {
-            m_inputVector.put(word, new Count(instance.weight()));
-          } else {
-            docCount.m_count += instance.weight();
+          int id =
+            updateDictionary ? m_vocabulary.addToken(word) : m_vocabulary
+              .getId(word);
+          if (id < 0) {
+            if (m_normalize) {
+              Double count = m_unknownWords.get(word);
+              m_unknownWords.put(word, count == null ? instance.weight()
+                : count + instance.weight());
+            }
+            continue;
           }
+          m_inputVector.add(id, instance.weight());
 
           if (updateDictionary) {
-            Count count = m_dictionary.get(word);
-            if (count == null) {
-              m_dictionary.put(word, new Count(instance.weight()));
+            ensureCapacity();
+            if (!m_inDictionary[id]) {
+              m_inDictionary[id] = true;
+              m_wordCounts[id] = instance.weight();
+              m_wordWeights[id] = 0;
             } else {
-              count.m_count += instance.weight();
+              m_wordCounts[id] += instance.weight();
             }
           }
 
@@ -1337,14 +1450,55 @@ public class SGDText extends RandomizableClassifier implements
       return;
     }
 
-    Iterator<Map.Entry<String, Count>> entries = m_dictionary.entrySet()
-      .iterator();
-    while (entries.hasNext()) {
-      Map.Entry<String, Count> entry = entries.next();
-      if (entry.getValue().m_count < m_minWordP
-        || Math.abs(entry.getValue().m_weight) < m_minAbsCoefficient) {
-        entries.remove();
+    for (int id = 0; id < m_inDictionary.length; id++) {
+      if (m_inDictionary[id]
+        && (m_wordCounts[id] < m_minWordP
+          || Math.abs(wordWeight(id)) < m_minAbsCoefficient)) {
+        m_inDictionary[id] = false;
+        m_wordCounts[id] = 0;
+        m_wordWeights[id] = 0;
+      }
+    }
+
+    if (force) {
+      compactDictionary();
+    } else {
+      // the ids in the current document vector are still needed
+      m_checkCompact = true;
+    }
+  }
+
+  /**
+   * Drop pruned words from the vocabulary once they make up most of it
+   */
+  protected void compactDictionary() {
+    m_checkCompact = false;
+
+    int size = Math.min(m_vocabulary.size(), m_inDictionary.length);
+    int numLive = 0;
+    for (int id = 0; id < size; id++) {
+      if (m_inDictionary[id]) {
+        numLive++;
+      }
+    }
+
+    if (m_vocabulary.isSparse(numLive)) {
+      m_vocabulary = m_vocabulary.compact(m_inDictionary);
+      int newSize = Math.max(10000, numLive * 2);
+      boolean[] inDictionary = new boolean[newSize];
+      double[] wordCounts = new double[newSize];
+      double[] wordWeights = new double[newSize];
+      int next = 0;
+      for (int id = 0; id < size; id++) {
+        if (m_inDictionary[id]) {
+          inDictionary[next] = true;
+          wordCounts[next] = m_wordCounts[id];
+          wordWeights[next++] = m_wordWeights[id];
+        }
       }
+      m_inDictionary = inDictionary;
+      m_wordCounts = wordCounts;
+      m_wordWeights = wordWeights;
     }
   }
 
@@ -1392,34 +1546,37 @@ public class SGDText extends RandomizableClassifier implements
     return result;
   }
 
-  protected double dotProd(Map<String, Count> document) {
+  protected double dotProd(Vocabulary.Document document) {
     double result = 0;
 
     // document normalization
     double iNorm = 0;
     double fv = 0;
     if (m_normalize) {
-      for (Count c : document.values()) {
+      for (int j = 0; j < document.numTerms(); j++) {
         // word counts or bag-of-words?
-        fv = (m_wordFrequencies) ? c.m_count : 1.0;
+        fv = (m_wordFrequencies) ? document.count(j) : 1.0;
         iNorm += Math.pow(Math.abs(fv), m_lnorm);
       }
+      if (m_unknownWords != null) {
+        for (double count : m_unknownWords.values()) {
+          fv = (m_wordFrequencies) ? count : 1.0;
+          iNorm += Math.pow(Math.abs(fv), m_lnorm);
+        }
+      }
       iNorm = Math.pow(iNorm, 1.0 / m_lnorm);
     }
 
-    for (Map.Entry<String, Count> feature : document.entrySet()) {
-      String word = feature.getKey();
-      double freq = (m_wordFrequencies) ? feature.getValue().m_count : 1.0;
+    for (int j = 0; j < document.numTerms(); j++) {
+      int id = document.id(j);
+      double freq = (m_wordFrequencies) ? document.count(j) : 1.0;
       // double freq = (feature.getValue().m_count / iNorm * m_norm);
       if (m_normalize) {
         freq *= (m_norm / iNorm);
       }
 
-      Count weight = m_dictionary.get(word);
-
-      if (weight != null && weight.m_count >= m_minWordP
-        && Math.abs(weight.m_weight) >= m_minAbsCoefficient) {
-        result += freq * weight.m_weight;
+      if (isPredictive(id)) {
+        result += freq * wordWeight(id);
       }
     }
 
@@ -1428,7 +1585,7 @@ public class SGDText extends RandomizableClassifier implements
 
   @Override
   public String toString() {
-    if (m_dictionary == null) {
+    if (m_vocabulary == null) {
       return "SGDText: No model built yet.\n";
     }
 
@@ -1441,36 +1598,23 @@ public class SGDText extends RandomizableClassifier implements
       buff.append("Log loss (logistic regression)\n\n");
     }
 
-    int dictSize = 0;
-    Iterator<Map.Entry<String, Count>> entries = m_dictionary.entrySet()
-      .iterator();
-    while (entries.hasNext()) {
-      Map.Entry<String, Count> entry = entries.next();
-      if (entry.getValue().m_count >= m_minWordP
-        && Math.abs(entry.getValue().m_weight) >= m_minAbsCoefficient) {
-        dictSize++;
-      }
-    }
+    int dictSize = getDictionarySize();
 
     buff.append("Dictionary size: " + dictSize + "\n\n");
 
     buff.append(m_data.classAttribute().name() + " = \n\n");
     int printed = 0;
 
-    entries = m_dictionary.entrySet().iterator();
-    while (entries.hasNext()) {
-      Map.Entry<String, Count> entry = entries.next();
-
-      if (entry.getValue().m_count >= m_minWordP
-        && Math.abs(entry.getValue().m_weight) >= m_minAbsCoefficient) {
+    for (int id = 0; id < m_vocabulary.size(); id++) {
+      if (isPredictive(id)) {
         if (printed > 0) {
           buff.append(" + ");
         } else {
           buff.append("   ");
         }
 
-        buff.append(Utils.doubleToString(entry.getValue().m_weight, 12, 4)
-          + " " + entry.getKey() + " " + entry.getValue().m_count + "\n");
+        buff.append(Utils.doubleToString(wordWeight(id), 12, 4) + " "
+          + m_vocabulary.getToken(id) + " " + m_wordCounts[id] + "\n");
         printed++;
       }
     }
@@ -1485,12 +1629,26 @@ public class SGDText extends RandomizableClassifier implements
   }
 
   /**
-   * Get this model's dictionary (including term weights).
+   * Get a copy of this model's dictionary (including term weights).
    * 
    * @return this model's dictionary.
    */
   public LinkedHashMap<String, Count> getDictionary() {
-    return m_dictionary;
+    if (m_vocabulary == null) {
+      return null;
+    }
+
+    LinkedHashMap<String, Count> dictionary =
+      new LinkedHashMap<String, Count>();
+    for (int id = 0; id < m_vocabulary.size(); id++) {
+      if (inDictionary(id)) {
+        Count c = new Count(m_wordCounts[id]);
+        c.m_weight = wordWeight(id);
+        dictionary.put(m_vocabulary.getToken(id), c);
+      }
+    }
+
+    return dictionary;
   }
 
   /**
@@ -1501,13 +1659,9 @@ public class SGDText extends RandomizableClassifier implements
    */
   public int getDictionarySize() {
     int size = 0;
-    if (m_dictionary != null) {
-      Iterator<Map.Entry<String, Count>> entries = m_dictionary.entrySet()
-        .iterator();
-      while (entries.hasNext()) {
-        Map.Entry<String, Count> entry = entries.next();
-        if (entry.getValue().m_count >= m_minWordP
-          && Math.abs(entry.getValue().m_weight) >= m_minAbsCoefficient) {
+    if (m_vocabulary != null) {
+      for (int id = 0; id < m_vocabulary.size(); id++) {
+        if (isPredictive(id)) {
           size++;
         }
       }
@@ -1547,27 +1701,28 @@ public class SGDText extends RandomizableClassifier implements
   @Override
   public SGDText aggregate(SGDText toAggregate) throws Exception {
 
-    if (m_dictionary == null) {
+    if (m_vocabulary == null) {
       throw new Exception("No model built yet, can't aggregate");
     }
-    LinkedHashMap<String, SGDText.Count> tempDict = toAggregate.getDictionary();
+    foldWeightScale();
 
-    Iterator<Map.Entry<String, SGDText.Count>> entries = tempDict.entrySet()
-      .iterator();
-    while (entries.hasNext()) {
-      Map.Entry<String, SGDText.Count> entry = entries.next();
+    Vocabulary otherVocab = toAggregate.m_vocabulary;
+    for (int otherId = 0; otherId < otherVocab.size(); otherId++) {
+      if (!toAggregate.inDictionary(otherId)) {
+        continue;
+      }
 
-      Count masterCount = m_dictionary.get(entry.getKey());
-      if (masterCount == null) {
+      int id = m_vocabulary.addToken(otherVocab.getToken(otherId));
+      ensureCapacity();
+      if (!m_inDictionary[id]) {
         // we havent seen this term (or it's been pruned)
-        masterCount = new Count(entry.getValue().m_count);
-        masterCount.m_weight = entry.getValue().m_weight;
-        m_dictionary.put(entry.getKey(), masterCount);
+        m_inDictionary[id] = true;
+        m_wordCounts[id] = toAggregate.m_wordCounts[otherId];
+        m_wordWeights[id] = toAggregate.wordWeight(otherId);
       } else {
         // add up
-        masterCount.m_count += entry.getValue().m_count;
-        masterCount.m_weight += entry.getValue().m_weight;
-
+        m_wordCounts[id] += toAggregate.m_wordCounts[otherId];
+        m_wordWeights[id] += toAggregate.wordWeight(otherId);
       }
     }
 
@@ -1594,13 +1749,11 @@ public class SGDText extends RandomizableClassifier implements
     
     pruneDictionary(true);
 
-    Iterator<Map.Entry<String, SGDText.Count>> entries = m_dictionary
-      .entrySet().iterator();
-
-    while (entries.hasNext()) {
-      Map.Entry<String, Count> entry = entries.next();
-      entry.getValue().m_count /= (m_numModels + 1); // plus one for us
-      entry.getValue().m_weight /= (m_numModels + 1);
+    for (int id = 0; id < m_inDictionary.length; id++) {
+      if (m_inDictionary[id]) {
+        m_wordCounts[id] /= (m_numModels + 1); // plus one for us
+        m_wordWeights[id] /= (m_numModels + 1);
+      }
     }
 
     m_bias /= (m_numModels + 1);
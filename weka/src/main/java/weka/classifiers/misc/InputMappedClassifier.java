@@ -22,9 +22,12 @@
 package weka.classifiers.misc;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.SingleClassifierEnhancer;
@@ -159,8 +162,134 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
    */
   protected boolean m_initialTestStructureKnown = false;
 
-  /** Holds values for instances constructed for prediction */
-  protected double[] m_vals;
+  /** The compiled mapping for the last incoming header */
+  protected transient volatile Mapping m_mapping;
+
+  /**
+   * The compiled mappings of the incoming headers seen so far, by header
+   * identity. Headers that are no longer used drop out.
+   */
+  protected transient Map<Instances, Mapping> m_mappings;
+
+  /**
+   * The mapping of the values of an incoming header to the model header,
+   * compiled into lookup tables so that instances can be mapped without any
+   * name or label matching
+   */
+  protected static class Mapping {
+
+    /**
+     * The incoming header the mapping was compiled for (by identity). Not a
+     * strong reference, so that the header can drop out of m_mappings.
+     */
+    protected WeakReference<Instances> m_header;
+
+    /** The map from model attributes to incoming attributes */
+    protected int[] m_attributeMap;
+
+    /** The status of each model attribute */
+    protected int[] m_attributeStatus;
+
+    /** The map of nominal values of each model attribute */
+    protected int[][] m_nominalValueMap;
+
+    /**
+     * For each model attribute, the index of the incoming attribute, or -1 if
+     * the value is always missing
+     */
+    protected int[] m_source;
+
+    /**
+     * For each nominal model attribute, the model index of each incoming
+     * nominal value (NO_MATCH if there is none)
+     */
+    protected int[][] m_values;
+
+    /** For each model attribute, whether the incoming value is copied */
+    protected boolean[] m_copy;
+
+    /** Used by forHeader() */
+    private Mapping() {
+    }
+
+    /**
+     * Compiles a mapping
+     *
+     * @param header the incoming header
+     * @param modelHeader the model header
+     * @param attributeMap the map from model attributes to incoming attributes
+     * @param attributeStatus the status of each model attribute
+     * @param nominalValueMap the map of nominal values of each model attribute
+     */
+    protected Mapping(Instances header, Instances modelHeader,
+      int[] attributeMap, int[] attributeStatus, int[][] nominalValueMap) {
+      m_header = new WeakReference<Instances>(header);
+      m_attributeMap = attributeMap;
+      m_attributeStatus = attributeStatus;
+      m_nominalValueMap = nominalValueMap;
+      int numAttributes = modelHeader.numAttributes();
+      m_source = new int[numAttributes];
+      m_values = new int[numAttributes][];
+      m_copy = new boolean[numAttributes];
+      for (int i = 0; i < numAttributes; i++) {
+        if (attributeStatus[i] != OK) {
+          m_source[i] = -1;
+          continue;
+        }
+        m_source[i] = attributeMap[i];
+        if (modelHeader.attribute(i).isNominal()) {
+          m_values[i] = nominalValueMap[i];
+        } else {
+          m_copy[i] = modelHeader.attribute(i).isNumeric();
+        }
+      }
+    }
+
+    /**
+     * Returns a mapping that uses the same tables for another header with the
+     * same structure
+     *
+     * @param header the other header
+     * @return the mapping
+     */
+    protected Mapping forHeader(Instances header) {
+      Mapping result = new Mapping();
+      result.m_header = new WeakReference<Instances>(header);
+      result.m_attributeMap = m_attributeMap;
+      result.m_attributeStatus = m_attributeStatus;
+      result.m_nominalValueMap = m_nominalValueMap;
+      result.m_source = m_source;
+      result.m_values = m_values;
+      result.m_copy = m_copy;
+      return result;
+    }
+
+    /**
+     * Maps the values of an incoming instance
+     *
+     * @param incoming the incoming instance
+     * @param result the array for the values in the model header
+     */
+    protected void map(Instance incoming, double[] result) {
+      for (int i = 0; i < m_source.length; i++) {
+        int j = m_source[i];
+        if (j < 0) {
+          result[i] = Utils.missingValue();
+          continue;
+        }
+
+        double value = incoming.value(j);
+        if (Utils.isMissingValue(value)) {
+          result[i] = Utils.missingValue();
+        } else if (m_values[i] != null) {
+          int mapVal = m_values[i][(int) value];
+          result[i] = mapVal == NO_MATCH ? Utils.missingValue() : mapVal;
+        } else {
+          result[i] = m_copy[i] ? value : 0;
+        }
+      }
+    }
+  }
 
   /**
    * Returns a string describing this classifier
@@ -206,6 +335,7 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
    */
   public void setIgnoreCaseForNames(boolean ignore) {
     m_ignoreCase = ignore;
+    clearMappings();
   }
 
   /**
@@ -236,6 +366,7 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
    */
   public void setTrim(boolean trim) {
     m_trim = trim;
+    clearMappings();
   }
 
   /**
@@ -544,6 +675,7 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
    */
   public void setModelHeader(Instances modelHeader) {
     m_modelHeader = modelHeader;
+    clearMappings();
   }
 
   private void loadModel(String modelPath) throws Exception {
@@ -589,6 +721,7 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
     }
 
     m_attributeMap = null;
+    clearMappings();
 
     if (m_modelPath != null && m_modelPath.length() > 0) {
       return; // Don't build a classifier if a path has been specified
@@ -794,75 +927,123 @@ public class InputMappedClassifier extends SingleClassifierEnhancer implements
     return m_attributeMap[m_modelHeader.classIndex()];
   }
 
-  public synchronized Instance constructMappedInstance(Instance incoming) throws Exception {
+  /**
+   * Maps an incoming instance to the structure of the model header. The
+   * mapping is compiled once for each incoming header and reused as long as
+   * the instances belong to the same header.
+   *
+   * @param incoming the incoming instance
+   * @return the mapped instance
+   * @throws Exception if the mapping can't be established
+   */
+  public Instance constructMappedInstance(Instance incoming) throws Exception {
+    Mapping mapping = getMapping(incoming.dataset());
+    double[] vals = new double[mapping.m_source.length];
+    mapping.map(incoming, vals);
 
-    boolean regenerateMapping = false;
+    Instance newInst = new DenseInstance(incoming.weight(), vals);
+    newInst.setDataset(m_modelHeader);
 
-    if (m_inputHeader == null) {
-      m_inputHeader = incoming.dataset();
-      regenerateMapping = true;
-      m_initialTestStructureKnown = false;
-    } else if (!m_inputHeader.equalHeaders(incoming.dataset())) {
-      /*
-       * System.out.println("[InputMappedClassifier] incoming data does not match "
-       * + "last known input format - regenerating mapping...");
-       * System.out.println("Incoming\n" + new Instances(incoming.dataset(),
-       * 0)); System.out.println("Stored input header\n" + new
-       * Instances(m_inputHeader, 0)); System.out.println("Model header\n" + new
-       * Instances(m_modelHeader, 0));
-       */
-      m_inputHeader = incoming.dataset();
+    return newInst;
+  }
 
-      regenerateMapping = true;
-      m_initialTestStructureKnown = false;
-    } else if (m_attributeMap == null) {
-      regenerateMapping = true;
-      m_initialTestStructureKnown = false;
+  /**
+   * Maps the values of an incoming instance to the structure of the model
+   * header, without creating any objects once the mapping for the header of
+   * the instance has been compiled.
+   *
+   * @param incoming the incoming instance
+   * @param result the array to write the values to, one for each attribute of
+   *          the model header
+   * @throws Exception if the mapping can't be established
+   */
+  public void mapValues(Instance incoming, double[] result) throws Exception {
+    Mapping mapping = getMapping(incoming.dataset());
+    if (result.length != mapping.m_source.length) {
+      throw new IllegalArgumentException("[InputMappedClassifier] expected "
+        + mapping.m_source.length + " values, got " + result.length);
     }
+    mapping.map(incoming, result);
+  }
 
-    if (regenerateMapping) {
-      regenerateMapping();
-      m_vals = null;
+  /**
+   * Discards the compiled mappings of all incoming headers
+   */
+  protected synchronized void clearMappings() {
+    m_mapping = null;
+    m_mappings = null;
+  }
 
-      if (!m_suppressMappingReport) {
-        StringBuffer result = createMappingReport();
-        System.out.println(result.toString());
-      }
+  /**
+   * Returns the mapping for an incoming header, compiling it if the header
+   * isn't the one the current mapping was compiled for
+   *
+   * @param header the incoming header
+   * @return the mapping
+   * @throws Exception if the mapping can't be established
+   */
+  protected Mapping getMapping(Instances header) throws Exception {
+    Mapping mapping = m_mapping;
+    if (mapping != null && mapping.m_header.get() == header) {
+      return mapping;
     }
 
-    m_vals = new double[m_modelHeader.numAttributes()];
-
-    for (int i = 0; i < m_modelHeader.numAttributes(); i++) {
-      if (m_attributeStatus[i] == OK) {
-        Attribute modelAtt = m_modelHeader.attribute(i);
-        m_inputHeader.attribute(m_attributeMap[i]);
+    return updateMapping(header);
+  }
 
-        if (Utils.isMissingValue(incoming.value(m_attributeMap[i]))) {
-          m_vals[i] = Utils.missingValue();
-          continue;
-        }
+  /**
+   * Looks up the mapping for an incoming header among the mappings compiled
+   * so far, and compiles it if the header is new. The tables of a header with
+   * the same structure as one seen before are reused, so the mapping is only
+   * regenerated, and the mapping report only printed, for a structurally new
+   * header.
+   *
+   * @param header the incoming header
+   * @return the mapping
+   * @throws Exception if the mapping can't be established
+   */
+  protected synchronized Mapping updateMapping(Instances header)
+    throws Exception {
 
-        if (modelAtt.isNumeric()) {
-          m_vals[i] = incoming.value(m_attributeMap[i]);
-        } else if (modelAtt.isNominal()) {
-          int mapVal = m_nominalValueMap[i][(int) incoming
-            .value(m_attributeMap[i])];
+    if (m_mappings == null) {
+      m_mappings = new WeakHashMap<Instances, Mapping>();
+    }
 
-          if (mapVal == NO_MATCH) {
-            m_vals[i] = Utils.missingValue();
-          } else {
-            m_vals[i] = mapVal;
-          }
+    Mapping mapping = m_mappings.get(header);
+    if (mapping == null) {
+      for (Map.Entry<Instances, Mapping> e : m_mappings.entrySet()) {
+        if (e.getKey().equalHeaders(header)) {
+          mapping = e.getValue().forHeader(header);
+          break;
         }
-      } else {
-        m_vals[i] = Utils.missingValue();
       }
     }
 
-    Instance newInst = new DenseInstance(incoming.weight(), m_vals);
-    newInst.setDataset(m_modelHeader);
+    if (mapping == null) {
+      m_inputHeader = header;
+      if (!regenerateMapping()) {
+        throw new Exception("[InputMappedClassifier] No model available!");
+      }
 
-    return newInst;
+      if (!m_suppressMappingReport) {
+        StringBuffer result = createMappingReport();
+        System.out.println(result.toString());
+      }
+
+      mapping = new Mapping(header, m_modelHeader, m_attributeMap,
+        m_attributeStatus, m_nominalValueMap);
+    } else if (m_attributeMap != mapping.m_attributeMap) {
+      // switch the report and getMappedClassIndex() to this header
+      m_inputHeader = header;
+      m_attributeMap = mapping.m_attributeMap;
+      m_attributeStatus = mapping.m_attributeStatus;
+      m_nominalValueMap = mapping.m_nominalValueMap;
+    }
+    m_initialTestStructureKnown = false;
+
+    m_mappings.put(header, mapping);
+    m_mapping = mapping;
+    return mapping;
   }
 
   @Override
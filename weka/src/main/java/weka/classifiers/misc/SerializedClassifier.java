@@ -31,6 +31,7 @@ import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.ModelRegistry;
 import weka.core.Option;
 import weka.core.RevisionUtils;
 import weka.core.SerializationHelper;
@@ -41,7 +42,11 @@ import weka.core.Utils;
  * This classifier loads a serialized models and uses it to make predictions.<br/>
  * <br/>
  * Warning: since the serialized model doesn't get changed, cross-validation
- * cannot bet used with this classifier.
+ * cannot bet used with this classifier.<br/>
+ * <br/>
+ * A shared model is used by everything in the JVM that refers to the same
+ * file, so it should only be shared if it can make predictions for several
+ * threads at once.
  * <p/>
  * <!-- globalinfo-end -->
  * 
@@ -60,6 +65,13 @@ import weka.core.Utils;
  *  (required)
  * </pre>
  * 
+ * <pre>
+ * -shared
+ *  Share the model with everything else in the JVM that uses
+ *  the same file, loading it in the background and reloading
+ *  it when the file changes.
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author fracpete (fracpete at waikato dot ac dot nz)
@@ -76,6 +88,12 @@ public class SerializedClassifier extends AbstractClassifier {
   /** the file where the serialized model is stored */
   protected File m_ModelFile = new File(System.getProperty("user.dir"));
 
+  /** whether to share the model via the JVM-wide ModelRegistry */
+  protected boolean m_ShareModel = false;
+
+  /** whether the current model was obtained from the ModelRegistry */
+  protected transient boolean m_ModelIsShared = false;
+
   /**
    * Returns a string describing classifier
    * 
@@ -86,7 +104,10 @@ public class SerializedClassifier extends AbstractClassifier {
     return "A wrapper around a serialized classifier model. This classifier loads "
       + "a serialized models and uses it to make predictions.\n\n"
       + "Warning: since the serialized model doesn't get changed, cross-validation "
-      + "cannot bet used with this classifier.";
+      + "cannot bet used with this classifier.\n\n"
+      + "A shared model is used by everything in the JVM that refers to the "
+      + "same file, so it should only be shared if it can make predictions "
+      + "for several threads at once.";
   }
 
   /**
@@ -103,6 +124,11 @@ public class SerializedClassifier extends AbstractClassifier {
       "\tThe file containing the serialized model.\n" + "\t(required)",
       "model", 1, "-model <filename>"));
 
+    result.addElement(new Option(
+      "\tShare the model with everything else in the JVM that uses\n"
+        + "\tthe same file, loading it in the background and reloading\n"
+        + "\tit when the file changes.", "shared", 0, "-shared"));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -121,6 +147,10 @@ public class SerializedClassifier extends AbstractClassifier {
     result.add("-model");
     result.add("" + getModelFile());
 
+    if (getShareModel()) {
+      result.add("-shared");
+    }
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -145,6 +175,13 @@ public class SerializedClassifier extends AbstractClassifier {
    *  (required)
    * </pre>
    * 
+   * <pre>
+   * -shared
+   *  Share the model with everything else in the JVM that uses
+   *  the same file, loading it in the background and reloading
+   *  it when the file changes.
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the options to use
@@ -156,6 +193,8 @@ public class SerializedClassifier extends AbstractClassifier {
 
     super.setOptions(options);
 
+    setShareModel(Utils.getFlag("shared", options));
+
     tmpStr = Utils.getOption("model", options);
     if (tmpStr.length() != 0) {
       setModelFile(new File(tmpStr));
@@ -190,8 +229,16 @@ public class SerializedClassifier extends AbstractClassifier {
    */
   public void setModelFile(File value) {
     m_ModelFile = value;
+    if (m_ModelIsShared) {
+      m_Model = null;
+      m_ModelIsShared = false;
+    }
 
     if (value.exists() && value.isFile()) {
+      if (m_ShareModel) {
+        ModelRegistry.getDefault().preload(value);
+        return;
+      }
       try {
         initModel();
       } catch (Exception e) {
@@ -210,6 +257,41 @@ public class SerializedClassifier extends AbstractClassifier {
    */
   public void setModel(Classifier value) {
     m_Model = value;
+    m_ModelIsShared = false;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String shareModelTipText() {
+    return "Whether to share the model with everything else in the JVM that "
+      + "uses the same file. The model is then loaded in the background and "
+      + "reloaded when the file changes.";
+  }
+
+  /**
+   * Gets whether the model is shared via the JVM-wide ModelRegistry.
+   * 
+   * @return true if the model is shared
+   */
+  public boolean getShareModel() {
+    return m_ShareModel;
+  }
+
+  /**
+   * Sets whether the model is shared via the JVM-wide ModelRegistry.
+   * 
+   * @param value true if the model is to be shared
+   */
+  public void setShareModel(boolean value) {
+    m_ShareModel = value;
+    if (m_ModelIsShared && !value) {
+      m_Model = null;
+      m_ModelIsShared = false;
+    }
   }
 
   /**
@@ -230,7 +312,12 @@ public class SerializedClassifier extends AbstractClassifier {
    * @throws Exception if deserialization fails
    */
   protected void initModel() throws Exception {
-    if (m_Model == null) {
+    // a shared model is fetched every time, so that changes of the file are
+    // picked up
+    if (m_ShareModel && (m_Model == null || m_ModelIsShared)) {
+      m_Model = (Classifier) ModelRegistry.getDefault().get(m_ModelFile);
+      m_ModelIsShared = true;
+    } else if (m_Model == null) {
       m_Model = (Classifier) SerializationHelper.read(m_ModelFile
         .getAbsolutePath());
     }
@@ -27,6 +27,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.UpdateableClassifier;
@@ -151,6 +154,12 @@ import weka.core.WeightedInstancesHandler;
  *  Print leaf models when using naive Bayes at the leaves.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of threads to use when evaluating split candidates.
+ *  (0 = number of cores, default = 1)
+ * </pre>
+ * 
  <!-- options-end -->
  * 
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
@@ -227,6 +236,15 @@ public class HoeffdingTree extends AbstractClassifier implements
    */
   protected boolean m_printLeafModels;
 
+  /**
+   * The number of threads to use when evaluating split candidates (0 = number
+   * of cores)
+   */
+  protected int m_numExecutionSlots = 1;
+
+  /** Thread pool for evaluating split candidates (created on demand) */
+  protected transient ExecutorService m_executorPool;
+
   /**
    * Returns a string describing classifier
    * 
@@ -340,6 +358,9 @@ public class HoeffdingTree extends AbstractClassifier implements
             "-N"));
     newVector.add(new Option("\tPrint leaf models when using naive Bayes "
         + "at the leaves.", "P", 0, "-P"));
+    newVector.add(new Option("\tNumber of threads to use when evaluating "
+        + "split candidates.\n\t(0 = number of cores, default = 1)",
+        "num-slots", 1, "-num-slots <num>"));
 
     return newVector.elements();
   }
@@ -399,6 +420,12 @@ public class HoeffdingTree extends AbstractClassifier implements
    *  Print leaf models when using naive Bayes at the leaves.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of threads to use when evaluating split candidates.
+   *  (0 = number of cores, default = 1)
+   * </pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -447,6 +474,11 @@ public class HoeffdingTree extends AbstractClassifier implements
     }
 
     m_printLeafModels = Utils.getFlag('P', options);
+
+    opt = Utils.getOption("num-slots", options);
+    if (opt.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(opt));
+    }
   }
 
   /**
@@ -483,6 +515,11 @@ public class HoeffdingTree extends AbstractClassifier implements
       options.add("-P");
     }
 
+    if (getNumExecutionSlots() != 1) {
+      options.add("-num-slots");
+      options.add("" + getNumExecutionSlots());
+    }
+
     return options.toArray(new String[1]);
   }
 
@@ -504,6 +541,70 @@ public class HoeffdingTree extends AbstractClassifier implements
     return m_printLeafModels;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use when evaluating split candidates "
+        + "(0 = use the number of available cores).";
+  }
+
+  /**
+   * Set the number of threads to use when evaluating split candidates
+   * 
+   * @param slots the number of threads (0 = number of cores)
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+
+    if (m_executorPool != null) {
+      m_executorPool.shutdown();
+      m_executorPool = null;
+    }
+  }
+
+  /**
+   * Get the number of threads to use when evaluating split candidates
+   * 
+   * @return the number of threads (0 = number of cores)
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Get the thread pool to evaluate split candidates with. The pool's threads
+   * are daemons, so an updateable model that is never finished with does not
+   * prevent the JVM from exiting.
+   * 
+   * @return the thread pool, or null if split candidates should be evaluated
+   *         in the calling thread
+   */
+  protected ExecutorService getExecutorPool() {
+    int slots = m_numExecutionSlots > 0 ? m_numExecutionSlots : Runtime
+        .getRuntime().availableProcessors();
+    if (slots < 2) {
+      return null;
+    }
+
+    if (m_executorPool == null) {
+      m_executorPool = Executors.newFixedThreadPool(slots,
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "HoeffdingTree split evaluation");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+
+    return m_executorPool;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -884,7 +985,8 @@ public class HoeffdingTree extends AbstractClassifier implements
 
     // non-pure?
     if (node.numEntriesInClassDistribution() > 1) {
-      List<SplitCandidate> bestSplits = node.getPossibleSplits(m_splitMetric);
+      List<SplitCandidate> bestSplits = node.getPossibleSplits(m_splitMetric,
+          m_header, getExecutorPool());
       Collections.sort(bestSplits);
 
       boolean doSplit = false;
@@ -917,26 +1019,32 @@ public class HoeffdingTree extends AbstractClassifier implements
           SplitNode newSplit = new SplitNode(node.m_classDistribution,
               best.m_splitTest);
 
+          Attribute splitAtt = m_header.attribute(best.m_splitTest
+              .splitAttributes().get(0));
+          int numChildren = 0;
           for (int i = 0; i < best.numSplits(); i++) {
-            ActiveHNode newChild = newLearningNode();
-            newChild.m_classDistribution = best.m_postSplitClassDistributions
-                .get(i);
-            newChild.m_weightSeenAtLastSplitEval = newChild.totalWeight();
+            double[] childDist = best.m_postSplitClassDistributions.get(i);
             String branchName = "";
-            if (m_header.attribute(best.m_splitTest.splitAttributes().get(0))
-                .isNumeric()) {
+            if (splitAtt.isNumeric()) {
               branchName = i == 0 ? "left" : "right";
             } else {
-              Attribute splitAtt = m_header.attribute(best.m_splitTest
-                  .splitAttributes().get(0));
+              if (SplitMetric.sum(childDist) == 0) {
+                // value not seen yet - a child is created for it if and
+                // when it turns up
+                continue;
+              }
               branchName = splitAtt.value(i);
             }
+            ActiveHNode newChild = newLearningNode();
+            newChild.m_classDistribution = childDist;
+            newChild.m_weightSeenAtLastSplitEval = newChild.totalWeight();
             newSplit.setChild(branchName, newChild);
+            numChildren++;
           }
 
           m_activeLeafCount--;
           m_decisionNodeCount++;
-          m_activeLeafCount += best.numSplits();
+          m_activeLeafCount += numChildren;
 
           if (parent == null) {
             m_root = newSplit;
@@ -980,7 +1088,7 @@ public class HoeffdingTree extends AbstractClassifier implements
       return "No model built yet!";
     }
 
-    return m_root.toString(m_printLeafModels);
+    return m_root.toString(m_printLeafModels, m_header.classAttribute());
   }
 
   /**
@@ -1010,7 +1118,7 @@ public class HoeffdingTree extends AbstractClassifier implements
     m_root.installNodeNums(0);
     StringBuffer buff = new StringBuffer();
     buff.append("digraph HoeffdingTree {\n");
-    m_root.graphTree(buff);
+    m_root.graphTree(buff, m_header.classAttribute());
     buff.append("}\n");
 
     return buff.toString();
@@ -23,12 +23,14 @@ package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Node that is "active" (i.e. growth can occur) in a Hoeffding tree
@@ -47,60 +49,103 @@ public class ActiveHNode extends LeafNode implements LearningNode, Serializable
   /** The weight of instances seen at the last split evaluation */
   public double m_weightSeenAtLastSplitEval = 0;
 
-  /** Statistics for nominal or numeric attributes conditioned on the class */
-  protected Map<String, ConditionalSufficientStats> m_nodeStats = new HashMap<String, ConditionalSufficientStats>();
+  /**
+   * Statistics for nominal or numeric attributes conditioned on the class,
+   * indexed by attribute. Null until the first update.
+   */
+  protected ConditionalSufficientStats[] m_nodeStats;
 
   @Override
   public void updateNode(Instance inst) throws Exception {
     super.updateDistribution(inst);
 
+    if (m_nodeStats == null) {
+      m_nodeStats = new ConditionalSufficientStats[inst.numAttributes()];
+    }
+
+    int classVal = (int) inst.classValue();
+    double weight = inst.weight();
     for (int i = 0; i < inst.numAttributes(); i++) {
-      Attribute a = inst.attribute(i);
       if (i != inst.classIndex()) {
-        ConditionalSufficientStats stats = m_nodeStats.get(a.name());
+        ConditionalSufficientStats stats = m_nodeStats[i];
         if (stats == null) {
+          Attribute a = inst.attribute(i);
           if (a.isNumeric()) {
-            stats = new GaussianConditionalSufficientStats();
+            stats = new GaussianConditionalSufficientStats(inst.numClasses());
           } else {
-            stats = new NominalConditionalSufficientStats();
+            stats = new NominalConditionalSufficientStats(a.numValues(),
+                inst.numClasses());
           }
-          m_nodeStats.put(a.name(), stats);
+          m_nodeStats[i] = stats;
         }
 
-        stats
-            .update(inst.value(a),
-                inst.classAttribute().value((int) inst.classValue()),
-                inst.weight());
+        stats.update(inst.value(i), classVal, weight);
       }
     }
   }
 
   /**
-   * Returns a list of split candidates
+   * Returns a list of split candidates. The null split comes first, followed
+   * by the best split for each attribute in attribute order.
    * 
    * @param splitMetric the splitting metric to use
+   * @param header the structure of the instances the tree is trained from
+   * @param executor the executor to evaluate the attributes with in parallel,
+   *          or null to evaluate them in the calling thread
    * @return a list of split candidates
+   * @throws Exception if a problem occurs
    */
-  public List<SplitCandidate> getPossibleSplits(SplitMetric splitMetric) {
+  public List<SplitCandidate> getPossibleSplits(final SplitMetric splitMetric,
+      Instances header, ExecutorService executor) throws Exception {
 
     List<SplitCandidate> splits = new ArrayList<SplitCandidate>();
 
     // null split
-    List<Map<String, WeightMass>> nullDist = new ArrayList<Map<String, WeightMass>>();
+    List<double[]> nullDist = new ArrayList<double[]>();
     nullDist.add(m_classDistribution);
     SplitCandidate nullSplit = new SplitCandidate(null, nullDist,
         splitMetric.evaluateSplit(m_classDistribution, nullDist));
     splits.add(nullSplit);
 
-    for (Map.Entry<String, ConditionalSufficientStats> e : m_nodeStats
-        .entrySet()) {
-      ConditionalSufficientStats stat = e.getValue();
+    if (m_nodeStats == null) {
+      return splits;
+    }
+
+    if (executor == null) {
+      for (int i = 0; i < m_nodeStats.length; i++) {
+        if (m_nodeStats[i] != null) {
+          SplitCandidate splitCandidate = m_nodeStats[i].bestSplit(
+              splitMetric, m_classDistribution, header.attribute(i).name());
 
-      SplitCandidate splitCandidate = stat.bestSplit(splitMetric,
-          m_classDistribution, e.getKey());
+          if (splitCandidate != null) {
+            splits.add(splitCandidate);
+          }
+        }
+      }
+    } else {
+      // futures are collected in attribute order so that the result does not
+      // depend on the order in which the tasks complete
+      List<Future<SplitCandidate>> results =
+        new ArrayList<Future<SplitCandidate>>();
+      for (int i = 0; i < m_nodeStats.length; i++) {
+        if (m_nodeStats[i] != null) {
+          final ConditionalSufficientStats stats = m_nodeStats[i];
+          final String attName = header.attribute(i).name();
+          results.add(executor.submit(new Callable<SplitCandidate>() {
+            @Override
+            public SplitCandidate call() {
+              return stats.bestSplit(splitMetric, m_classDistribution,
+                  attName);
+            }
+          }));
+        }
+      }
 
-      if (splitCandidate != null) {
-        splits.add(splitCandidate);
+      for (Future<SplitCandidate> f : results) {
+        SplitCandidate splitCandidate = f.get();
+        if (splitCandidate != null) {
+          splits.add(splitCandidate);
+        }
       }
     }
 
@@ -23,17 +23,17 @@ package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeSet;
 
+import weka.core.Statistics;
 import weka.core.Utils;
 import weka.estimators.UnivariateNormalEstimator;
 
 /**
  * Maintains sufficient stats for a Gaussian distribution for a numeric
- * attribute
+ * attribute. The weighted sums for each class are held in arrays indexed by
+ * class value.
  * 
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
@@ -47,58 +47,41 @@ public class GaussianConditionalSufficientStats extends
    */
   private static final long serialVersionUID = -1527915607201784762L;
 
-  /**
-   * Inner class that implements a Gaussian estimator
-   * 
-   * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
-   */
-  protected class GaussianEstimator extends UnivariateNormalEstimator implements
-      Serializable {
+  /** The minimum variance (as used by UnivariateNormalEstimator) */
+  protected static final double MIN_VAR = 1.0E-6 * 1.0E-6;
 
-    /**
-     * For serialization
-     */
-    private static final long serialVersionUID = 4756032800685001315L;
+  /** Sum of weights per class */
+  protected double[] m_sumOfWeights;
 
-    public double getSumOfWeights() {
-      return m_SumOfWeights;
-    }
+  /** Sum of weighted values per class */
+  protected double[] m_weightedSum;
 
-    public double probabilityDensity(double value) {
-      updateMeanAndVariance();
-
-      if (m_SumOfWeights > 0) {
-        double stdDev = Math.sqrt(m_Variance);
-        if (stdDev > 0) {
-          double diff = value - m_Mean;
-          return (1.0 / (CONST * stdDev))
-              * Math.exp(-(diff * diff / (2.0 * m_Variance)));
-        }
-        return value == m_Mean ? 1.0 : 0.0;
-      }
+  /** Sum of weighted squared values per class */
+  protected double[] m_weightedSumSquared;
 
-      return 0.0;
-    }
+  /** Minimum value observed per class (+infinity if class not seen) */
+  protected double[] m_minValObservedPerClass;
 
-    public double[] weightLessThanEqualAndGreaterThan(double value) {
-      double stdDev = Math.sqrt(m_Variance);
-      double equalW = probabilityDensity(value) * m_SumOfWeights;
+  /** Maximum value observed per class (-infinity if class not seen) */
+  protected double[] m_maxValObservedPerClass;
 
-      double lessW = (stdDev > 0) ? weka.core.Statistics
-          .normalProbability((value - m_Mean) / stdDev)
-          * m_SumOfWeights
-          - equalW : (value < m_Mean) ? m_SumOfWeights - equalW : 0.0;
-      double greaterW = m_SumOfWeights - equalW - lessW;
+  protected int m_numBins = 10;
 
-      return new double[] { lessW, equalW, greaterW };
-    }
+  /**
+   * Constructor
+   * 
+   * @param numClasses the number of class values
+   */
+  public GaussianConditionalSufficientStats(int numClasses) {
+    m_sumOfWeights = new double[numClasses];
+    m_weightedSum = new double[numClasses];
+    m_weightedSumSquared = new double[numClasses];
+    m_minValObservedPerClass = new double[numClasses];
+    m_maxValObservedPerClass = new double[numClasses];
+    Arrays.fill(m_minValObservedPerClass, Double.POSITIVE_INFINITY);
+    Arrays.fill(m_maxValObservedPerClass, Double.NEGATIVE_INFINITY);
   }
 
-  protected Map<String, Double> m_minValObservedPerClass = new HashMap<String, Double>();
-  protected Map<String, Double> m_maxValObservedPerClass = new HashMap<String, Double>();
-
-  protected int m_numBins = 10;
-
   public void setNumBins(int b) {
     m_numBins = b;
   }
@@ -108,113 +91,161 @@ public class GaussianConditionalSufficientStats extends
   }
 
   @Override
-  public void update(double attVal, String classVal, double weight) {
+  public void update(double attVal, int classVal, double weight) {
     if (!Utils.isMissingValue(attVal)) {
-      GaussianEstimator norm = (GaussianEstimator) m_classLookup.get(classVal);
-      if (norm == null) {
-        norm = new GaussianEstimator();
-        m_classLookup.put(classVal, norm);
-        m_minValObservedPerClass.put(classVal, attVal);
-        m_maxValObservedPerClass.put(classVal, attVal);
-      } else {
-        if (attVal < m_minValObservedPerClass.get(classVal)) {
-          m_minValObservedPerClass.put(classVal, attVal);
-        }
-
-        if (attVal > m_maxValObservedPerClass.get(classVal)) {
-          m_maxValObservedPerClass.put(classVal, attVal);
-        }
+      if (attVal < m_minValObservedPerClass[classVal]) {
+        m_minValObservedPerClass[classVal] = attVal;
+      }
+      if (attVal > m_maxValObservedPerClass[classVal]) {
+        m_maxValObservedPerClass[classVal] = attVal;
       }
-      norm.addValue(attVal, weight);
+
+      m_weightedSum[classVal] += attVal * weight;
+      m_weightedSumSquared[classVal] += attVal * attVal * weight;
+      m_sumOfWeights[classVal] += weight;
     }
   }
 
-  @Override
-  public double probabilityOfAttValConditionedOnClass(double attVal,
-      String classVal) {
-    GaussianEstimator norm = (GaussianEstimator) m_classLookup.get(classVal);
-    if (norm == null) {
-      return 0;
+  /**
+   * Get the mean for a class. Only valid if the sum of weights for the class
+   * is positive.
+   * 
+   * @param classVal the index of the class value
+   * @return the mean
+   */
+  protected double mean(int classVal) {
+    return m_weightedSum[classVal] / m_sumOfWeights[classVal];
+  }
+
+  /**
+   * Get the variance for a class, bounded below by MIN_VAR. Only valid if the
+   * sum of weights for the class is positive.
+   * 
+   * @param classVal the index of the class value
+   * @param mean the mean for the class
+   * @return the variance
+   */
+  protected double variance(int classVal, double mean) {
+    double var = m_weightedSumSquared[classVal] / m_sumOfWeights[classVal]
+        - mean * mean;
+
+    return var <= MIN_VAR ? MIN_VAR : var;
+  }
+
+  /**
+   * Density of the normal distribution for a class at the supplied value
+   * 
+   * @param classVal the index of the class value
+   * @param value the value
+   * @return the density
+   */
+  protected double probabilityDensity(int classVal, double value) {
+    if (m_sumOfWeights[classVal] > 0) {
+      double mean = mean(classVal);
+      double var = variance(classVal, mean);
+      double diff = value - mean;
+
+      return (1.0 / (UnivariateNormalEstimator.CONST * Math.sqrt(var)))
+          * Math.exp(-(diff * diff / (2.0 * var)));
+    }
+
+    return 0.0;
+  }
+
+  /**
+   * Estimate the weight for a class that is less than, equal to and greater
+   * than the supplied value
+   * 
+   * @param classVal the index of the class value
+   * @param value the value
+   * @return the weight less than, equal to and greater than the value
+   */
+  protected double[] weightLessThanEqualAndGreaterThan(int classVal,
+      double value) {
+    double sumOfWeights = m_sumOfWeights[classVal];
+    if (!(sumOfWeights > 0)) {
+      return new double[3];
     }
 
-    // return Utils.lo
-    return norm.probabilityDensity(attVal);
+    double mean = mean(classVal);
+    double stdDev = Math.sqrt(variance(classVal, mean));
+    double equalW = probabilityDensity(classVal, value) * sumOfWeights;
+    double lessW = Statistics.normalProbability((value - mean) / stdDev)
+        * sumOfWeights - equalW;
+    double greaterW = sumOfWeights - equalW - lessW;
+
+    return new double[] { lessW, equalW, greaterW };
+  }
+
+  @Override
+  public double probabilityOfAttValConditionedOnClass(double attVal,
+      int classVal) {
+    return probabilityDensity(classVal, attVal);
   }
 
-  protected TreeSet<Double> getSplitPointCandidates() {
-    TreeSet<Double> splits = new TreeSet<Double>();
+  /**
+   * Get the candidate split points - evenly spaced between the minimum and
+   * maximum value observed over all classes
+   * 
+   * @return the candidate split points in ascending order
+   */
+  protected double[] getSplitPointCandidates() {
     double min = Double.POSITIVE_INFINITY;
     double max = Double.NEGATIVE_INFINITY;
 
-    for (String classVal : m_classLookup.keySet()) {
-      if (m_minValObservedPerClass.containsKey(classVal)) {
-        if (m_minValObservedPerClass.get(classVal) < min) {
-          min = m_minValObservedPerClass.get(classVal);
-        }
-
-        if (m_maxValObservedPerClass.get(classVal) > max) {
-          max = m_maxValObservedPerClass.get(classVal);
-        }
+    for (int i = 0; i < m_minValObservedPerClass.length; i++) {
+      if (m_minValObservedPerClass[i] < min) {
+        min = m_minValObservedPerClass[i];
+      }
+      if (m_maxValObservedPerClass[i] > max) {
+        max = m_maxValObservedPerClass[i];
       }
     }
 
-    if (min < Double.POSITIVE_INFINITY) {
-      double bin = max - min;
-      bin /= (m_numBins + 1);
-      for (int i = 0; i < m_numBins; i++) {
-        double split = min + (bin * (i + 1));
+    if (min == Double.POSITIVE_INFINITY) {
+      return new double[0];
+    }
 
-        if (split > min && split < max) {
-          splits.add(split);
-        }
+    double[] splits = new double[m_numBins];
+    int count = 0;
+    double bin = max - min;
+    bin /= (m_numBins + 1);
+    for (int i = 0; i < m_numBins; i++) {
+      double split = min + (bin * (i + 1));
+
+      // skip duplicates caused by a very narrow range
+      if (split > min && split < max
+          && (count == 0 || split > splits[count - 1])) {
+        splits[count++] = split;
       }
     }
-    return splits;
+
+    return Arrays.copyOf(splits, count);
   }
 
-  protected List<Map<String, WeightMass>> classDistsAfterSplit(double splitVal) {
-    Map<String, WeightMass> lhsDist = new HashMap<String, WeightMass>();
-    Map<String, WeightMass> rhsDist = new HashMap<String, WeightMass>();
-
-    for (Map.Entry<String, Object> e : m_classLookup.entrySet()) {
-      String classVal = e.getKey();
-      GaussianEstimator attEst = (GaussianEstimator) e.getValue();
-
-      if (attEst != null) {
-        if (splitVal < m_minValObservedPerClass.get(classVal)) {
-          WeightMass mass = rhsDist.get(classVal);
-          if (mass == null) {
-            mass = new WeightMass();
-            rhsDist.put(classVal, mass);
-          }
-          mass.m_weight += attEst.getSumOfWeights();
-        } else if (splitVal > m_maxValObservedPerClass.get(classVal)) {
-          WeightMass mass = lhsDist.get(classVal);
-          if (mass == null) {
-            mass = new WeightMass();
-            lhsDist.put(classVal, mass);
-          }
-          mass.m_weight += attEst.getSumOfWeights();
-        } else {
-          double[] weights = attEst.weightLessThanEqualAndGreaterThan(splitVal);
-          WeightMass mass = lhsDist.get(classVal);
-          if (mass == null) {
-            mass = new WeightMass();
-            lhsDist.put(classVal, mass);
-          }
-          mass.m_weight += weights[0] + weights[1]; // <=
-
-          mass = rhsDist.get(classVal);
-          if (mass == null) {
-            mass = new WeightMass();
-            rhsDist.put(classVal, mass);
-          }
-          mass.m_weight += weights[2]; // >
-        }
+  protected List<double[]> classDistsAfterSplit(double splitVal) {
+    int numClasses = m_sumOfWeights.length;
+    double[] lhsDist = new double[numClasses];
+    double[] rhsDist = new double[numClasses];
+
+    for (int i = 0; i < numClasses; i++) {
+      if (m_minValObservedPerClass[i] == Double.POSITIVE_INFINITY) {
+        // class not seen
+        continue;
+      }
+
+      if (splitVal < m_minValObservedPerClass[i]) {
+        rhsDist[i] += m_sumOfWeights[i];
+      } else if (splitVal > m_maxValObservedPerClass[i]) {
+        lhsDist[i] += m_sumOfWeights[i];
+      } else {
+        double[] weights = weightLessThanEqualAndGreaterThan(i, splitVal);
+        lhsDist[i] += weights[0] + weights[1]; // <=
+        rhsDist[i] += weights[2]; // >
       }
     }
 
-    List<Map<String, WeightMass>> dists = new ArrayList<Map<String, WeightMass>>();
+    List<double[]> dists = new ArrayList<double[]>(2);
     dists.add(lhsDist);
     dists.add(rhsDist);
 
@@ -223,13 +254,12 @@ public class GaussianConditionalSufficientStats extends
 
   @Override
   public SplitCandidate bestSplit(SplitMetric splitMetric,
-      Map<String, WeightMass> preSplitDist, String attName) {
+      double[] preSplitDist, String attName) {
 
     SplitCandidate best = null;
 
-    TreeSet<Double> candidates = getSplitPointCandidates();
-    for (Double s : candidates) {
-      List<Map<String, WeightMass>> postSplitDists = classDistsAfterSplit(s);
+    for (double s : getSplitPointCandidates()) {
+      List<double[]> postSplitDists = classDistsAfterSplit(s);
 
       double splitMerit = splitMetric.evaluateSplit(preSplitDist,
           postSplitDists);
@@ -22,8 +22,6 @@
 package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 import weka.core.Attribute;
 import weka.core.Instance;
@@ -42,8 +40,12 @@ public abstract class HNode implements Serializable {
    */
   private static final long serialVersionUID = 197233928177240264L;
 
-  /** Class distribution at this node */
-  public Map<String, WeightMass> m_classDistribution = new LinkedHashMap<String, WeightMass>();
+  /**
+   * Class distribution at this node, indexed by class value. The weight of a
+   * class starts at 1 when it is first seen, so zero means that the class has
+   * not been seen at this node. Null until the first update.
+   */
+  public double[] m_classDistribution;
 
   /** Holds the leaf number (if this is a leaf) */
   protected int m_leafNum;
@@ -62,7 +64,7 @@ public abstract class HNode implements Serializable {
    * 
    * @param classDistrib
    */
-  public HNode(Map<String, WeightMass> classDistrib) {
+  public HNode(double[] classDistrib) {
     m_classDistribution = classDistrib;
   }
 
@@ -81,7 +83,16 @@ public abstract class HNode implements Serializable {
    * @return the number of entries in the class distribution
    */
   public int numEntriesInClassDistribution() {
-    return m_classDistribution.size();
+    int count = 0;
+    if (m_classDistribution != null) {
+      for (double w : m_classDistribution) {
+        if (w != 0) {
+          count++;
+        }
+      }
+    }
+
+    return count;
   }
 
   /**
@@ -91,12 +102,14 @@ public abstract class HNode implements Serializable {
    */
   public boolean classDistributionIsPure() {
     int count = 0;
-    for (Map.Entry<String, WeightMass> el : m_classDistribution.entrySet()) {
-      if (el.getValue().m_weight > 0) {
-        count++;
-
-        if (count > 1) {
-          break;
+    if (m_classDistribution != null) {
+      for (double w : m_classDistribution) {
+        if (w > 0) {
+          count++;
+
+          if (count > 1) {
+            break;
+          }
         }
       }
     }
@@ -113,16 +126,15 @@ public abstract class HNode implements Serializable {
     if (inst.classIsMissing()) {
       return;
     }
-    String classVal = inst.stringValue(inst.classAttribute());
+    int classVal = (int) inst.classValue();
 
-    WeightMass m = m_classDistribution.get(classVal);
-    if (m == null) {
-      m = new WeightMass();
-      m.m_weight = 1.0;
-
-      m_classDistribution.put(classVal, m);
+    if (m_classDistribution == null) {
+      m_classDistribution = new double[inst.numClasses()];
+    }
+    if (m_classDistribution[classVal] == 0) {
+      m_classDistribution[classVal] = 1.0;
     }
-    m.m_weight += inst.weight();
+    m_classDistribution[classVal] += inst.weight();
   }
 
   /**
@@ -139,9 +151,8 @@ public abstract class HNode implements Serializable {
     double[] dist = new double[classAtt.numValues()];
 
     for (int i = 0; i < classAtt.numValues(); i++) {
-      WeightMass w = m_classDistribution.get(classAtt.value(i));
-      if (w != null) {
-        dist[i] = w.m_weight;
+      if (m_classDistribution != null && m_classDistribution[i] != 0) {
+        dist[i] = m_classDistribution[i];
       } else {
         dist[i] = 1.0;
       }
@@ -158,17 +169,45 @@ public abstract class HNode implements Serializable {
     return nodeNum;
   }
 
-  protected int dumpTree(int depth, int leafCount, StringBuffer buff) {
-
+  /**
+   * Get the index of the class with the most weight at this node
+   * 
+   * @return the index of the majority class, or -1 if no classes have been
+   *         seen
+   */
+  public int majorityClass() {
     double max = -1;
-    String classVal = "";
-    for (Map.Entry<String, WeightMass> e : m_classDistribution.entrySet()) {
-      if (e.getValue().m_weight > max) {
-        max = e.getValue().m_weight;
-        classVal = e.getKey();
+    int maxIndex = -1;
+    if (m_classDistribution != null) {
+      for (int i = 0; i < m_classDistribution.length; i++) {
+        if (m_classDistribution[i] != 0 && m_classDistribution[i] > max) {
+          max = m_classDistribution[i];
+          maxIndex = i;
+        }
       }
     }
-    buff.append(classVal + " (" + String.format("%-9.3f", max).trim() + ")");
+
+    return maxIndex;
+  }
+
+  /**
+   * Get the label and weight of the majority class for output
+   * 
+   * @param classAtt the class attribute
+   * @return the label and weight of the majority class
+   */
+  protected String majorityClassLabel(Attribute classAtt) {
+    int majority = majorityClass();
+    String classVal = majority < 0 ? "" : classAtt.value(majority);
+    double max = majority < 0 ? -1 : m_classDistribution[majority];
+
+    return classVal + " (" + String.format("%-9.3f", max).trim() + ")";
+  }
+
+  protected int dumpTree(int depth, int leafCount, StringBuffer buff,
+      Attribute classAtt) {
+
+    buff.append(majorityClassLabel(classAtt));
     leafCount++;
     m_leafNum = leafCount;
 
@@ -178,34 +217,26 @@ public abstract class HNode implements Serializable {
   protected void printLeafModels(StringBuffer buff) {
   }
 
-  public void graphTree(StringBuffer text) {
-
-    double max = -1;
-    String classVal = "";
-    for (Map.Entry<String, WeightMass> e : m_classDistribution.entrySet()) {
-      if (e.getValue().m_weight > max) {
-        max = e.getValue().m_weight;
-        classVal = e.getKey();
-      }
-    }
+  public void graphTree(StringBuffer text, Attribute classAtt) {
 
-    text.append("N" + m_nodeNum + " [label=\"" + classVal + " ("
-        + String.format("%-9.3f", max).trim() + ")\" shape=box style=filled]\n");
+    text.append("N" + m_nodeNum + " [label=\"" + majorityClassLabel(classAtt)
+        + "\" shape=box style=filled]\n");
   }
 
   /**
    * Print a textual description of the tree
    * 
    * @param printLeaf true if leaf models (NB, NB adaptive) should be output
+   * @param classAtt the class attribute
    * @return a textual description of the tree
    */
-  public String toString(boolean printLeaf) {
+  public String toString(boolean printLeaf, Attribute classAtt) {
 
     installNodeNums(0);
 
     StringBuffer buff = new StringBuffer();
 
-    dumpTree(0, 0, buff);
+    dumpTree(0, 0, buff, classAtt);
 
     if (printLeaf) {
       buff.append("\n\n");
@@ -223,8 +254,10 @@ public abstract class HNode implements Serializable {
   public double totalWeight() {
     double tw = 0;
 
-    for (Map.Entry<String, WeightMass> e : m_classDistribution.entrySet()) {
-      tw += e.getValue().m_weight;
+    if (m_classDistribution != null) {
+      for (double w : m_classDistribution) {
+        tw += w;
+      }
     }
 
     return tw;
@@ -22,7 +22,6 @@
 package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
-import java.util.Map;
 
 import weka.core.Attribute;
 import weka.core.Instance;
@@ -63,27 +62,12 @@ public class NBNodeAdaptive extends NBNode implements LearningNode,
     super(header, nbWeightThreshold);
   }
 
-  protected String majorityClass() {
-    String mc = "";
-    double max = -1;
-
-    for (Map.Entry<String, WeightMass> e : m_classDistribution.entrySet()) {
-      if (e.getValue().m_weight > max) {
-        max = e.getValue().m_weight;
-        mc = e.getKey();
-      }
-    }
-
-    return mc;
-  }
-
   @Override
   public void updateNode(Instance inst) throws Exception {
 
-    String trueClass = inst.classAttribute().value((int) inst.classValue());
     int trueClassIndex = (int) inst.classValue();
 
-    if (majorityClass().equals(trueClass)) {
+    if (majorityClass() == trueClassIndex) {
       m_majClassCorrectWeight += inst.weight();
     }
 
@@ -106,8 +90,9 @@ public class NBNodeAdaptive extends NBNode implements LearningNode,
   }
 
   @Override
-  protected int dumpTree(int depth, int leafCount, StringBuffer buff) {
-    leafCount = super.dumpTree(depth, leafCount, buff);
+  protected int dumpTree(int depth, int leafCount, StringBuffer buff,
+      Attribute classAtt) {
+    leafCount = super.dumpTree(depth, leafCount, buff, classAtt);
 
     buff.append(" NB adaptive" + m_leafNum);
 
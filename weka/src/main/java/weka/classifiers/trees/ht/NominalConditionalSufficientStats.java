@@ -22,16 +22,14 @@
 package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import weka.core.Utils;
 
 /**
- * Maintains sufficient stats for the distribution of a nominal attribute
+ * Maintains sufficient stats for the distribution of a nominal attribute. The
+ * weights are held in a table indexed by attribute value and class value.
  * 
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
@@ -46,74 +44,41 @@ public class NominalConditionalSufficientStats extends
   private static final long serialVersionUID = -669902060601313488L;
 
   /**
-   * Inner class that implements a discrete distribution
-   * 
-   * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
-   * 
+   * Weight of each attribute value for each class, indexed by [value][class].
+   * The weight of a value starts at 1 when it is first seen with a class, so
+   * zero means that the combination has not been seen.
    */
-  protected class ValueDistribution implements Serializable {
-
-    /**
-     * For serialization
-     */
-    private static final long serialVersionUID = -61711544350888154L;
-
-    protected final Map<Integer, WeightMass> m_dist = new LinkedHashMap<Integer, WeightMass>();
-
-    private double m_sum;
-
-    public void add(int val, double weight) {
-      WeightMass count = m_dist.get(val);
-      if (count == null) {
-        count = new WeightMass();
-        count.m_weight = 1.0;
-        m_sum += 1.0;
-        m_dist.put(val, count);
-      }
-      count.m_weight += weight;
-      m_sum += weight;
-    }
-
-    public void delete(int val, double weight) {
-      WeightMass count = m_dist.get(val);
-      if (count != null) {
-        count.m_weight -= weight;
-        m_sum -= weight;
-      }
-    }
+  protected double[][] m_counts;
 
-    public double getWeight(int val) {
-      WeightMass count = m_dist.get(val);
-      if (count != null) {
-        return count.m_weight;
-      }
-
-      return 0.0;
-    }
-
-    public double sum() {
-      return m_sum;
-    }
-  }
+  /** Sum of the weights in m_counts for each class */
+  protected double[] m_classSums;
 
   protected double m_totalWeight;
   protected double m_missingWeight;
 
+  /**
+   * Constructor
+   * 
+   * @param numValues the number of values of the attribute
+   * @param numClasses the number of class values
+   */
+  public NominalConditionalSufficientStats(int numValues, int numClasses) {
+    m_counts = new double[numValues][numClasses];
+    m_classSums = new double[numClasses];
+  }
+
   @Override
-  public void update(double attVal, String classVal, double weight) {
+  public void update(double attVal, int classVal, double weight) {
     if (Utils.isMissingValue(attVal)) {
       m_missingWeight += weight;
     } else {
-      new Integer((int) attVal);
-      ValueDistribution valDist = (ValueDistribution) m_classLookup
-        .get(classVal);
-      if (valDist == null) {
-        valDist = new ValueDistribution();
-        valDist.add((int) attVal, weight);
-        m_classLookup.put(classVal, valDist);
-      } else {
-        valDist.add((int) attVal, weight);
+      double[] valCounts = m_counts[(int) attVal];
+      if (valCounts[classVal] == 0) {
+        valCounts[classVal] = 1.0;
+        m_classSums[classVal] += 1.0;
       }
+      valCounts[classVal] += weight;
+      m_classSums[classVal] += weight;
     }
 
     m_totalWeight += weight;
@@ -121,50 +86,25 @@ public class NominalConditionalSufficientStats extends
 
   @Override
   public double probabilityOfAttValConditionedOnClass(double attVal,
-    String classVal) {
-    ValueDistribution valDist = (ValueDistribution) m_classLookup.get(classVal);
-    if (valDist != null) {
-      double prob = valDist.getWeight((int) attVal) / valDist.sum();
-      return prob;
+    int classVal) {
+    if (m_classSums[classVal] != 0) {
+      return m_counts[(int) attVal][classVal] / m_classSums[classVal];
     }
 
     return 0;
   }
 
-  protected List<Map<String, WeightMass>> classDistsAfterSplit() {
-
-    // att index keys to class distribution
-    Map<Integer, Map<String, WeightMass>> splitDists = new HashMap<Integer, Map<String, WeightMass>>();
-
-    for (Map.Entry<String, Object> cls : m_classLookup.entrySet()) {
-      String classVal = cls.getKey();
-      ValueDistribution attDist = (ValueDistribution) cls.getValue();
-
-      for (Map.Entry<Integer, WeightMass> att : attDist.m_dist.entrySet()) {
-        Integer attVal = att.getKey();
-        WeightMass attCount = att.getValue();
-
-        Map<String, WeightMass> clsDist = splitDists.get(attVal);
-        if (clsDist == null) {
-          clsDist = new HashMap<String, WeightMass>();
-          splitDists.put(attVal, clsDist);
-        }
-
-        WeightMass clsCount = clsDist.get(classVal);
-
-        if (clsCount == null) {
-          clsCount = new WeightMass();
-          clsDist.put(classVal, clsCount);
-        }
-
-        clsCount.m_weight += attCount.m_weight;
-      }
-
-    }
-
-    List<Map<String, WeightMass>> result = new LinkedList<Map<String, WeightMass>>();
-    for (Map.Entry<Integer, Map<String, WeightMass>> v : splitDists.entrySet()) {
-      result.add(v.getValue());
+  /**
+   * Get the class distributions resulting from a multiway split. There is
+   * one distribution per attribute value (in value order); values that have
+   * not been seen yield empty distributions.
+   * 
+   * @return the class distributions after the split
+   */
+  protected List<double[]> classDistsAfterSplit() {
+    List<double[]> result = new ArrayList<double[]>(m_counts.length);
+    for (double[] valCounts : m_counts) {
+      result.add(valCounts.clone());
     }
 
     return result;
@@ -172,9 +112,9 @@ public class NominalConditionalSufficientStats extends
 
   @Override
   public SplitCandidate bestSplit(SplitMetric splitMetric,
-    Map<String, WeightMass> preSplitDist, String attName) {
+    double[] preSplitDist, String attName) {
 
-    List<Map<String, WeightMass>> postSplitDists = classDistsAfterSplit();
+    List<double[]> postSplitDists = classDistsAfterSplit();
     double merit = splitMetric.evaluateSplit(preSplitDist, postSplitDists);
     SplitCandidate candidate = new SplitCandidate(
       new UnivariateNominalMultiwaySplit(attName), postSplitDists, merit);
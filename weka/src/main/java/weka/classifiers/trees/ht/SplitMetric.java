@@ -23,7 +23,6 @@ package weka.classifiers.trees.ht;
 
 import java.io.Serializable;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Base class for split metrics
@@ -45,16 +44,35 @@ public abstract class SplitMetric implements Serializable {
    * @param dist the distribution
    * @return the sum of the weights contained in a distribution
    */
-  public static double sum(Map<String, WeightMass> dist) {
+  public static double sum(double[] dist) {
     double sum = 0;
 
-    for (Map.Entry<String, WeightMass> e : dist.entrySet()) {
-      sum += e.getValue().m_weight;
+    for (double w : dist) {
+      sum += w;
     }
 
     return sum;
   }
 
+  /**
+   * Utility method to return the number of classes that have been seen in a
+   * distribution
+   * 
+   * @param dist the distribution
+   * @return the number of non-zero entries in the distribution
+   */
+  public static int numSeen(double[] dist) {
+    int count = 0;
+
+    for (double w : dist) {
+      if (w != 0) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
   /**
    * Evaluate the merit of a split
    * 
@@ -62,8 +80,8 @@ public abstract class SplitMetric implements Serializable {
    * @param postDist the class distributions after the split
    * @return the merit of the split
    */
-  public abstract double evaluateSplit(Map<String, WeightMass> preDist,
-      List<Map<String, WeightMass>> postDist);
+  public abstract double evaluateSplit(double[] preDist,
+      List<double[]> postDist);
 
   /**
    * Get the range of the splitting metric
@@ -71,5 +89,5 @@ public abstract class SplitMetric implements Serializable {
    * @param preDist the pre-split class distribution
    * @return the range of the splitting metric
    */
-  public abstract double getMetricRange(Map<String, WeightMass> preDist);
+  public abstract double getMetricRange(double[] preDist);
 }
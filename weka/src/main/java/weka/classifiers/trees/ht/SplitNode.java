@@ -24,6 +24,7 @@ package weka.classifiers.trees.ht;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import weka.core.Attribute;
 import weka.core.Instance;
 
 /**
@@ -52,7 +53,7 @@ public class SplitNode extends HNode {
    * @param classDistrib the class distribution
    * @param split the split
    */
-  public SplitNode(Map<String, WeightMass> classDistrib, Split split) {
+  public SplitNode(double[] classDistrib, Split split) {
     super(classDistrib);
 
     m_split = split;
@@ -113,7 +114,8 @@ public class SplitNode extends HNode {
   }
 
   @Override
-  protected int dumpTree(int depth, int leafCount, StringBuffer buff) {
+  protected int dumpTree(int depth, int leafCount, StringBuffer buff,
+      Attribute classAtt) {
 
     for (Map.Entry<String, HNode> e : m_children.entrySet()) {
 
@@ -130,7 +132,7 @@ public class SplitNode extends HNode {
 
         buff.append(m_split.conditionForBranch(branch).trim());
         buff.append(": ");
-        leafCount = child.dumpTree(depth + 1, leafCount, buff);
+        leafCount = child.dumpTree(depth + 1, leafCount, buff, classAtt);
       }
     }
     return leafCount;
@@ -153,7 +155,7 @@ public class SplitNode extends HNode {
   }
 
   @Override
-  public void graphTree(StringBuffer buff) {
+  public void graphTree(StringBuffer buff, Attribute classAtt) {
     boolean first = true;
     for (Map.Entry<String, HNode> e : m_children.entrySet()) {
 
@@ -198,7 +200,7 @@ public class SplitNode extends HNode {
       HNode child = e.getValue();
 
       if (child != null) {
-        child.graphTree(buff);
+        child.graphTree(buff, classAtt);
       }
     }
   }
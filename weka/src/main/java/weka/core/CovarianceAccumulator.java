@@ -0,0 +1,457 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    CovarianceAccumulator.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Accumulates the means and co-moments (sums of products of deviations from
+ * the mean) of a set of numeric attributes, from which a covariance matrix
+ * can be obtained. Rows are buffered into blocks, stored column by column.
+ * Each full block is centred on its own means and its products are added to
+ * the lower triangle of the co-moment matrix a tile of attributes at a time,
+ * so that the columns involved stay in cache. The block is then merged with
+ * the running totals using the pairwise update of Chan et al., which is also
+ * used to merge accumulators built from different partitions of the data
+ * (e.g. by different threads).
+ * <p>
+ * Values must not be missing.
+ * <p>
+ * For more information see:<br/>
+ * T.F. Chan, G.H. Golub, R.J. LeVeque (1979). Updating Formulae and a
+ * Pairwise Algorithm for Computing Sample Variances. Technical Report
+ * STAN-CS-79-773, Stanford University.
+ *
+ * @version $Revision$
+ */
+public class CovarianceAccumulator implements Serializable, RevisionHandler {
+
+  /** For serialization */
+  private static final long serialVersionUID = -2541806137735522452L;
+
+  /** Number of rows buffered before they are added to the totals */
+  public static final int BLOCK_ROWS = 128;
+
+  /** Number of attributes in each tile of the co-moment matrix */
+  public static final int TILE_SIZE = 32;
+
+  /** Number of rows per thread below which compute() does not split */
+  protected static final int MIN_ROWS_PER_THREAD = 4 * BLOCK_ROWS;
+
+  /** The number of attributes */
+  protected int m_numAttributes;
+
+  /** The number of rows added to the totals */
+  protected long m_count;
+
+  /** The means of the attributes */
+  protected double[] m_means;
+
+  /** Lower triangle of the co-moment matrix (row i has i + 1 entries) */
+  protected double[][] m_coMoments;
+
+  /** The current block of rows, stored by column */
+  protected transient double[][] m_block;
+
+  /** The number of rows in the current block */
+  protected transient int m_blockRows;
+
+  /**
+   * Constructs a new accumulator
+   *
+   * @param numAttributes the number of attributes
+   */
+  public CovarianceAccumulator(int numAttributes) {
+    m_numAttributes = numAttributes;
+    m_means = new double[numAttributes];
+    m_coMoments = new double[numAttributes][];
+    for (int i = 0; i < numAttributes; i++) {
+      m_coMoments[i] = new double[i + 1];
+    }
+  }
+
+  /**
+   * Get the number of attributes
+   *
+   * @return the number of attributes
+   */
+  public int getNumAttributes() {
+    return m_numAttributes;
+  }
+
+  /**
+   * Add a row
+   *
+   * @param values the values of the attributes
+   */
+  public void update(double[] values) {
+    double[][] block = block();
+    for (int j = 0; j < m_numAttributes; j++) {
+      block[j][m_blockRows] = values[j];
+    }
+    if (++m_blockRows == BLOCK_ROWS) {
+      flush();
+    }
+  }
+
+  /**
+   * Add an instance. The first getNumAttributes() attributes are used.
+   *
+   * @param inst the instance to add
+   */
+  public void update(Instance inst) {
+    double[][] block = block();
+    for (int j = 0; j < m_numAttributes; j++) {
+      block[j][m_blockRows] = inst.value(j);
+    }
+    if (++m_blockRows == BLOCK_ROWS) {
+      flush();
+    }
+  }
+
+  /**
+   * Get the buffer for the current block, allocating it if necessary
+   *
+   * @return the buffer
+   */
+  protected double[][] block() {
+    if (m_block == null) {
+      m_block = new double[m_numAttributes][BLOCK_ROWS];
+    }
+    return m_block;
+  }
+
+  /**
+   * Add any buffered rows to the totals
+   */
+  public void flush() {
+    if (m_blockRows == 0) {
+      return;
+    }
+
+    int n = m_blockRows;
+    double[] blockMeans = new double[m_numAttributes];
+    for (int j = 0; j < m_numAttributes; j++) {
+      double[] col = m_block[j];
+      double sum = 0;
+      for (int r = 0; r < n; r++) {
+        sum += col[r];
+      }
+      blockMeans[j] = sum / n;
+      for (int r = 0; r < n; r++) {
+        col[r] -= blockMeans[j];
+      }
+    }
+
+    accumulateProducts(m_block, n, m_coMoments);
+    merge(n, blockMeans, null);
+    m_blockRows = 0;
+  }
+
+  /**
+   * Merge the means and co-moments of another set of rows into the totals.
+   *
+   * @param n the number of other rows
+   * @param means the means of the other rows
+   * @param coMoments the co-moments of the other rows, or null if they have
+   *          already been added to the totals
+   */
+  protected void merge(long n, double[] means, double[][] coMoments) {
+    if (n == 0) {
+      return;
+    }
+
+    double total = m_count + n;
+    double[] delta = new double[m_numAttributes];
+    for (int j = 0; j < m_numAttributes; j++) {
+      delta[j] = means[j] - m_means[j];
+    }
+
+    double coef = (double) m_count * n / total;
+    for (int i = 0; i < m_numAttributes; i++) {
+      double[] row = m_coMoments[i];
+      double di = delta[i] * coef;
+      if (coMoments != null) {
+        double[] other = coMoments[i];
+        for (int j = 0; j <= i; j++) {
+          row[j] += other[j] + di * delta[j];
+        }
+      } else if (coef != 0) {
+        for (int j = 0; j <= i; j++) {
+          row[j] += di * delta[j];
+        }
+      }
+    }
+
+    for (int j = 0; j < m_numAttributes; j++) {
+      m_means[j] += delta[j] * n / total;
+    }
+    m_count += n;
+  }
+
+  /**
+   * Merge another accumulator into this one. Any rows buffered by the other
+   * accumulator are added to its totals first.
+   *
+   * @param other the accumulator to merge
+   * @throws IllegalArgumentException if the number of attributes differs
+   */
+  public void merge(CovarianceAccumulator other) {
+    if (other.m_numAttributes != m_numAttributes) {
+      throw new IllegalArgumentException("Can't merge accumulators with "
+        + "different numbers of attributes!");
+    }
+    flush();
+    other.flush();
+    merge(other.m_count, other.m_means, other.m_coMoments);
+  }
+
+  /**
+   * Get the number of rows added
+   *
+   * @return the number of rows
+   */
+  public long getCount() {
+    return m_count + m_blockRows;
+  }
+
+  /**
+   * Get the means of the attributes
+   *
+   * @return the means
+   */
+  public double[] getMeans() {
+    flush();
+    return m_means;
+  }
+
+  /**
+   * Get the lower triangle of the co-moment matrix (the sums of products of
+   * deviations from the means). Row i has i + 1 entries.
+   *
+   * @return the co-moments
+   */
+  public double[][] getCoMoments() {
+    flush();
+    return m_coMoments;
+  }
+
+  /**
+   * Get the (sample) covariance matrix
+   *
+   * @return the full, symmetric covariance matrix
+   */
+  public double[][] getCovarianceMatrix() {
+    flush();
+    double denom = m_count - 1;
+    double[][] result = new double[m_numAttributes][m_numAttributes];
+    for (int i = 0; i < m_numAttributes; i++) {
+      for (int j = 0; j <= i; j++) {
+        result[i][j] = result[j][i] = m_coMoments[i][j] / denom;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the sums of products of the columns in a block of rows to the lower
+   * triangle of a matrix, i.e. lower[i][j] += sum_r cols[i][r] * cols[j][r]
+   * for j <= i. The matrix is processed in tiles of TILE_SIZE x TILE_SIZE so
+   * that the columns involved stay in cache.
+   *
+   * @param cols the block of rows, stored by column
+   * @param numRows the number of rows in the block
+   * @param lower the lower triangle to add to (row i has at least i + 1
+   *          entries)
+   */
+  public static void accumulateProducts(double[][] cols, int numRows,
+    double[][] lower) {
+    int p = cols.length;
+    for (int ib = 0; ib < p; ib += TILE_SIZE) {
+      int iEnd = Math.min(ib + TILE_SIZE, p);
+      for (int jb = 0; jb <= ib; jb += TILE_SIZE) {
+        int jEnd = Math.min(jb + TILE_SIZE, p);
+        for (int i = ib; i < iEnd; i++) {
+          double[] ci = cols[i];
+          double[] row = lower[i];
+          int jMax = Math.min(jEnd, i + 1);
+          int j = jb;
+          // two columns at a time to share the loads of column i
+          for (; j + 1 < jMax; j += 2) {
+            double[] cj0 = cols[j];
+            double[] cj1 = cols[j + 1];
+            double s0 = 0, s1 = 0;
+            for (int r = 0; r < numRows; r++) {
+              double v = ci[r];
+              s0 += v * cj0[r];
+              s1 += v * cj1[r];
+            }
+            row[j] += s0;
+            row[j + 1] += s1;
+          }
+          if (j < jMax) {
+            double[] cj = cols[j];
+            double s = 0;
+            for (int r = 0; r < numRows; r++) {
+              s += ci[r] * cj[r];
+            }
+            row[j] += s;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the number of rows in which both of each pair of columns are
+   * non-zero to the lower triangle of a matrix of counts. Used to count
+   * co-occurrences when the columns hold 0/1 indicators.
+   *
+   * @param cols the block of rows, stored by column
+   * @param numRows the number of rows in the block
+   * @param lower the lower triangle to add to (row i has at least i + 1
+   *          entries)
+   */
+  public static void accumulateCoOccurrences(double[][] cols, int numRows,
+    int[][] lower) {
+    int p = cols.length;
+    for (int ib = 0; ib < p; ib += TILE_SIZE) {
+      int iEnd = Math.min(ib + TILE_SIZE, p);
+      for (int jb = 0; jb <= ib; jb += TILE_SIZE) {
+        int jEnd = Math.min(jb + TILE_SIZE, p);
+        for (int i = ib; i < iEnd; i++) {
+          double[] ci = cols[i];
+          int[] row = lower[i];
+          int jMax = Math.min(jEnd, i + 1);
+          for (int j = jb; j < jMax; j++) {
+            double[] cj = cols[j];
+            int count = 0;
+            for (int r = 0; r < numRows; r++) {
+              if (ci[r] != 0 && cj[r] != 0) {
+                count++;
+              }
+            }
+            row[j] += count;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the means and co-moments of all the attributes in a set of
+   * instances, splitting the instances into contiguous partitions that are
+   * processed in parallel and then merged.
+   *
+   * @param data the instances (all attributes must be numeric and have no
+   *          missing values)
+   * @param numThreads the number of threads to use (0 or less to use the
+   *          number of available processors)
+   * @return the accumulated statistics
+   * @throws Exception if a problem occurs
+   */
+  public static CovarianceAccumulator compute(final Instances data,
+    int numThreads) throws Exception {
+    final int p = data.numAttributes();
+    int numRows = data.numInstances();
+
+    if (numThreads <= 0) {
+      numThreads = Runtime.getRuntime().availableProcessors();
+    }
+    numThreads =
+      Math.max(1, Math.min(numThreads, numRows / MIN_ROWS_PER_THREAD));
+
+    if (numThreads == 1) {
+      CovarianceAccumulator result = new CovarianceAccumulator(p);
+      for (int i = 0; i < numRows; i++) {
+        result.update(data.instance(i));
+      }
+      result.flush();
+      return result;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<CovarianceAccumulator>> results =
+        new ArrayList<Future<CovarianceAccumulator>>();
+      for (int t = 0; t < numThreads; t++) {
+        final int start = (int) ((long) numRows * t / numThreads);
+        final int end = (int) ((long) numRows * (t + 1) / numThreads);
+        results.add(pool.submit(new Callable<CovarianceAccumulator>() {
+          @Override
+          public CovarianceAccumulator call() {
+            CovarianceAccumulator partial = new CovarianceAccumulator(p);
+            for (int i = start; i < end; i++) {
+              partial.update(data.instance(i));
+            }
+            partial.flush();
+            return partial;
+          }
+        }));
+      }
+
+      CovarianceAccumulator result = results.get(0).get();
+      for (int t = 1; t < numThreads; t++) {
+        result.merge(results.get(t).get());
+      }
+      return result;
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw ex;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Adds any buffered rows to the totals before serializing
+   *
+   * @param out the stream to write to
+   * @throws IOException if a problem occurs
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    flush();
+    out.defaultWriteObject();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    HeavyHitterSketch.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mergeable, bounded memory sketch for finding the most frequent items
+ * (heavy hitters) in a stream, using the Space-Saving algorithm. At most
+ * capacity items are tracked. When an untracked item arrives and the sketch is
+ * full, the item with the smallest count is replaced, and the new item
+ * inherits that count as its (over-)estimate and error.
+ * <p>
+ * The estimated count of a tracked item is never less than its true count and
+ * overestimates it by at most getError(item), which is bounded by total
+ * weight / capacity. Any item whose true count exceeds total weight / capacity
+ * is guaranteed to be tracked. Sketches are merged with the algorithm of
+ * Cafaro et al., which preserves these guarantees.
+ * <p>
+ * For more information see:<br/>
+ * A. Metwally, D. Agrawal, A. El Abbadi (2005). Efficient Computation of
+ * Frequent and Top-k Elements in Data Streams. In: International Conference on
+ * Database Theory, 398-412.<br/>
+ * M. Cafaro, M. Pulimeno, P. Tempesta (2016). A parallel space saving
+ * algorithm for frequent items and the Hurwitz zeta distribution. Information
+ * Sciences 329:1-19.
+ *
+ * @version $Revision$
+ */
+public class HeavyHitterSketch implements Serializable, RevisionHandler {
+
+  /** For serialization */
+  private static final long serialVersionUID = 6870574005312520346L;
+
+  /** The default number of items to track */
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  /**
+   * A tracked item
+   */
+  protected static class Counter implements Serializable {
+
+    /** For serialization */
+    private static final long serialVersionUID = -6436212612810386024L;
+
+    /** The item */
+    protected String m_item;
+
+    /** Estimated count */
+    protected double m_count;
+
+    /** Maximum overestimation of the count */
+    protected double m_error;
+
+    /** Position in the heap */
+    protected int m_heapIndex;
+
+    protected Counter(String item, double count, double error) {
+      m_item = item;
+      m_count = count;
+      m_error = error;
+    }
+  }
+
+  /** Maximum number of items to track */
+  protected int m_capacity;
+
+  /** Counters keyed by item */
+  protected Map<String, Counter> m_counters;
+
+  /** Min-heap of counters, ordered by count */
+  protected Counter[] m_heap;
+
+  /** Number of counters in use */
+  protected int m_size;
+
+  /** Total weight seen */
+  protected double m_total;
+
+  /** True if no item has ever been evicted (counts are exact) */
+  protected boolean m_exact = true;
+
+  /**
+   * Constructs a sketch that tracks the default number of items
+   */
+  public HeavyHitterSketch() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a sketch
+   *
+   * @param capacity the maximum number of items to track
+   */
+  public HeavyHitterSketch(int capacity) {
+    m_capacity = Math.max(1, capacity);
+    m_counters = new HashMap<String, Counter>();
+    m_heap = new Counter[Math.min(m_capacity, 16)];
+  }
+
+  /**
+   * Get the maximum number of items tracked
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return m_capacity;
+  }
+
+  /**
+   * Get the total weight seen
+   *
+   * @return the total weight
+   */
+  public double getTotal() {
+    return m_total;
+  }
+
+  /**
+   * Get the number of items being tracked
+   *
+   * @return the number of items tracked
+   */
+  public int size() {
+    return m_size;
+  }
+
+  /**
+   * Returns true if no item has been evicted, in which case all items seen are
+   * tracked and their counts are exact
+   *
+   * @return true if the counts are exact
+   */
+  public boolean isExact() {
+    return m_exact;
+  }
+
+  /**
+   * Add an occurrence of an item
+   *
+   * @param item the item
+   */
+  public void add(String item) {
+    add(item, 1.0);
+  }
+
+  /**
+   * Add weight to an item
+   *
+   * @param item the item
+   * @param weight the weight to add
+   */
+  public void add(String item, double weight) {
+    m_total += weight;
+
+    Counter c = m_counters.get(item);
+    if (c != null) {
+      c.m_count += weight;
+      siftDown(c.m_heapIndex);
+    } else if (m_size < m_capacity) {
+      c = new Counter(item, weight, 0);
+      m_counters.put(item, c);
+      heapAdd(c);
+    } else {
+      // replace the item with the smallest count
+      c = m_heap[0];
+      m_counters.remove(c.m_item);
+      c.m_item = item;
+      c.m_error = c.m_count;
+      c.m_count += weight;
+      m_counters.put(item, c);
+      siftDown(0);
+      m_exact = false;
+    }
+  }
+
+  /**
+   * Get the estimated count of an item. This is an upper bound on the true
+   * count.
+   *
+   * @param item the item
+   * @return the estimated count. For an untracked item this is the smallest
+   *         tracked count if the sketch is full, otherwise 0.
+   */
+  public double getCount(String item) {
+    Counter c = m_counters.get(item);
+    if (c != null) {
+      return c.m_count;
+    }
+    return m_size < m_capacity ? 0 : m_heap[0].m_count;
+  }
+
+  /**
+   * Get the maximum overestimation of an item's count
+   *
+   * @param item the item
+   * @return the maximum error of getCount(item)
+   */
+  public double getError(String item) {
+    Counter c = m_counters.get(item);
+    if (c != null) {
+      return c.m_error;
+    }
+    return getCount(item);
+  }
+
+  /**
+   * Returns true if an item is being tracked
+   *
+   * @param item the item
+   * @return true if the item is tracked
+   */
+  public boolean contains(String item) {
+    return m_counters.containsKey(item);
+  }
+
+  /**
+   * Get the tracked items, most frequent first
+   *
+   * @return the tracked items
+   */
+  public List<String> getItems() {
+    return getTopItems(m_size);
+  }
+
+  /**
+   * Get the most frequent tracked items
+   *
+   * @param k the number of items to return
+   * @return up to k items, most frequent first
+   */
+  public List<String> getTopItems(int k) {
+    List<Counter> counters = new ArrayList<Counter>(m_counters.values());
+    Collections.sort(counters, new Comparator<Counter>() {
+      @Override
+      public int compare(Counter a, Counter b) {
+        int result = Double.compare(b.m_count, a.m_count);
+        return result != 0 ? result : a.m_item.compareTo(b.m_item);
+      }
+    });
+
+    List<String> result = new ArrayList<String>();
+    for (int i = 0; i < Math.min(k, counters.size()); i++) {
+      result.add(counters.get(i).m_item);
+    }
+    return result;
+  }
+
+  /**
+   * Merge another sketch into this one. The other sketch is not modified.
+   *
+   * @param other the sketch to merge
+   */
+  public void merge(HeavyHitterSketch other) {
+    if (other == null || other.m_size == 0) {
+      return;
+    }
+
+    // an item missing from a full sketch may have been seen up to that
+    // sketch's minimum count times
+    double minThis = m_size < m_capacity ? 0 : m_heap[0].m_count;
+    double minOther =
+      other.m_size < other.m_capacity ? 0 : other.m_heap[0].m_count;
+
+    List<Counter> merged = new ArrayList<Counter>();
+    for (Counter c : m_counters.values()) {
+      Counter o = other.m_counters.get(c.m_item);
+      if (o != null) {
+        merged.add(new Counter(c.m_item, c.m_count + o.m_count, c.m_error
+          + o.m_error));
+      } else {
+        merged.add(new Counter(c.m_item, c.m_count + minOther, c.m_error
+          + minOther));
+      }
+    }
+    for (Counter o : other.m_counters.values()) {
+      if (!m_counters.containsKey(o.m_item)) {
+        merged.add(new Counter(o.m_item, o.m_count + minThis, o.m_error
+          + minThis));
+      }
+    }
+
+    m_exact = m_exact && other.m_exact && merged.size() <= m_capacity;
+    m_total += other.m_total;
+    if (merged.size() > m_capacity) {
+      Collections.sort(merged, new Comparator<Counter>() {
+        @Override
+        public int compare(Counter a, Counter b) {
+          return Double.compare(b.m_count, a.m_count);
+        }
+      });
+      merged = merged.subList(0, m_capacity);
+    }
+
+    m_counters = new HashMap<String, Counter>();
+    m_heap = new Counter[Math.max(16, merged.size())];
+    m_size = 0;
+    for (Counter c : merged) {
+      m_counters.put(c.m_item, c);
+      heapAdd(c);
+    }
+  }
+
+  /**
+   * Add a counter to the heap
+   *
+   * @param c the counter to add
+   */
+  protected void heapAdd(Counter c) {
+    if (m_size == m_heap.length) {
+      Counter[] newHeap =
+        new Counter[Math.min(m_capacity, m_heap.length * 2 + 1)];
+      System.arraycopy(m_heap, 0, newHeap, 0, m_size);
+      m_heap = newHeap;
+    }
+    c.m_heapIndex = m_size;
+    m_heap[m_size++] = c;
+    siftUp(c.m_heapIndex);
+  }
+
+  /**
+   * Move a counter up the heap until its parent's count is no larger
+   *
+   * @param i the index of the counter
+   */
+  protected void siftUp(int i) {
+    Counter c = m_heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      Counter p = m_heap[parent];
+      if (p.m_count <= c.m_count) {
+        break;
+      }
+      m_heap[i] = p;
+      p.m_heapIndex = i;
+      i = parent;
+    }
+    m_heap[i] = c;
+    c.m_heapIndex = i;
+  }
+
+  /**
+   * Move a counter down the heap until its children's counts are no smaller
+   *
+   * @param i the index of the counter
+   */
+  protected void siftDown(int i) {
+    Counter c = m_heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= m_size) {
+        break;
+      }
+      if (child + 1 < m_size
+        && m_heap[child + 1].m_count < m_heap[child].m_count) {
+        child++;
+      }
+      if (c.m_count <= m_heap[child].m_count) {
+        break;
+      }
+      m_heap[i] = m_heap[child];
+      m_heap[i].m_heapIndex = i;
+      i = child;
+    }
+    m_heap[i] = c;
+    c.m_heapIndex = i;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -0,0 +1,485 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    InstancesCodec.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the instances of a dataset in a compact binary form, instead of the
+ * one object per instance of default serialization. The header (an empty copy
+ * of the dataset, whose attributes hold the dictionaries of the nominal,
+ * string and relational values) is serialized as usual. It is followed by the
+ * values in blocks of rows, without any per-instance object overhead. The
+ * encoding of each column is chosen once for the whole dataset: dictionary
+ * indices are written as bytes or ints, all other values as doubles. Datasets
+ * of sparse instances are written as index/value pairs. Only datasets that
+ * consist entirely of DenseInstance or entirely of SparseInstance objects can
+ * be encoded.
+ * <p>
+ * The codec is used explicitly, it is not the serialized form of Instances.
+ * An encoded dataset is stored as an object that writes the format version
+ * followed by the encoding, and that is replaced by the decoded dataset when
+ * it is deserialized. writeStream() writes a dataset this way, as do
+ * SerializationHelper.writeInstances() and SerializedInstancesSaver with its
+ * compact encoding option; any object stream of this version of Weka reads
+ * it back. Object streams can encode the datasets in an object graph with
+ * replaceObject().
+ * <p>
+ * The values are written row by row rather than column by column, because the
+ * dataset is built from one value array per instance: reading a block of rows
+ * fills each array in turn from consecutive bytes, while columns would have to
+ * be scattered across all arrays or be buffered in full before the instances
+ * can be created. The per-column encodings already give columns of nominal
+ * values their compact width.
+ *
+ * @version $Revision$
+ */
+public class InstancesCodec implements RevisionHandler {
+
+  /** The version of the format written */
+  public static final int VERSION = 1;
+
+  /** Row layout: all instances are DenseInstance objects */
+  protected static final int DENSE = 0;
+
+  /** Row layout: all instances are SparseInstance objects */
+  protected static final int SPARSE = 1;
+
+  /** Column encoding: doubles */
+  protected static final int DOUBLES = 0;
+
+  /** Column encoding: unsigned bytes, MISSING_BYTE for missing values */
+  protected static final int BYTES = 1;
+
+  /** Column encoding: ints, -1 for missing values */
+  protected static final int INTS = 2;
+
+  /** The byte that stands for a missing value in a column of bytes */
+  protected static final int MISSING_BYTE = 255;
+
+  /** The number of weights encoded at a time */
+  protected static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Returns the row layout of a dataset
+   *
+   * @param data the dataset
+   * @return DENSE or SPARSE, or -1 if the dataset can't be encoded
+   */
+  protected static int getLayout(Instances data) {
+    if (data.numInstances() == 0) {
+      return DENSE;
+    }
+
+    Class<?> c = data.instance(0).getClass();
+    if (c != DenseInstance.class && c != SparseInstance.class) {
+      return -1;
+    }
+    for (int i = 1; i < data.numInstances(); i++) {
+      if (data.instance(i).getClass() != c) {
+        return -1;
+      }
+    }
+
+    return c == DenseInstance.class ? DENSE : SPARSE;
+  }
+
+  /**
+   * Returns whether a dataset can be encoded
+   *
+   * @param data the dataset
+   * @return true if all instances are DenseInstance or all are SparseInstance
+   *         objects
+   */
+  public static boolean canEncode(Instances data) {
+    return getLayout(data) >= 0;
+  }
+
+  /**
+   * Chooses the encoding of a column of a dense dataset. Dictionary indices
+   * are stored as bytes or ints, unless a value isn't a valid index.
+   *
+   * @param data the dataset
+   * @param att the index of the attribute
+   * @return the encoding
+   */
+  protected static int getEncoding(Instances data, int att) {
+    Attribute attribute = data.attribute(att);
+    if (!attribute.isNominal() && !attribute.isString()
+      && !attribute.isRelationValued()) {
+      return DOUBLES;
+    }
+
+    int result = BYTES;
+    for (int i = 0; i < data.numInstances(); i++) {
+      double value = data.instance(i).value(att);
+      if (Utils.isMissingValue(value)) {
+        continue;
+      }
+      if (value < 0 || value > Integer.MAX_VALUE || value != (int) value) {
+        return DOUBLES;
+      }
+      if (value >= MISSING_BYTE) {
+        result = INTS;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes a dataset to a stream
+   *
+   * @param data the dataset, which must be encodable
+   * @param out the stream to write to
+   * @throws IOException if the dataset can't be written
+   */
+  public static void write(Instances data, ObjectOutputStream out)
+    throws IOException {
+
+    int layout = getLayout(data);
+    if (layout < 0) {
+      throw new IOException("Dataset must consist of either DenseInstance "
+        + "or SparseInstance objects only");
+    }
+
+    int numInstances = data.numInstances();
+    out.writeInt(VERSION);
+    out.writeObject(new Instances(data, 0));
+    out.writeInt(layout);
+    out.writeInt(numInstances);
+
+    boolean weighted = false;
+    for (int i = 0; i < numInstances && !weighted; i++) {
+      weighted = data.instance(i).weight() != 1.0;
+    }
+    out.writeBoolean(weighted);
+
+    ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE * 8);
+    if (weighted) {
+      for (int start = 0; start < numInstances; start += CHUNK_SIZE) {
+        int end = Math.min(start + CHUNK_SIZE, numInstances);
+        buffer.clear();
+        for (int i = start; i < end; i++) {
+          buffer.putDouble(data.instance(i).weight());
+        }
+        out.write(buffer.array(), 0, buffer.position());
+      }
+    }
+
+    if (layout == SPARSE) {
+      for (int i = 0; i < numInstances; i++) {
+        SparseInstance inst = (SparseInstance) data.instance(i);
+        out.writeInt(inst.m_Indices.length);
+        for (int j = 0; j < inst.m_Indices.length; j++) {
+          out.writeInt(inst.m_Indices[j]);
+          out.writeDouble(inst.m_AttValues[j]);
+        }
+      }
+      return;
+    }
+
+    int numAttributes = data.numAttributes();
+    int[] encodings = new int[numAttributes];
+    int rowWidth = 0;
+    for (int att = 0; att < numAttributes; att++) {
+      encodings[att] = getEncoding(data, att);
+      out.writeInt(encodings[att]);
+      rowWidth += getWidth(encodings[att]);
+    }
+    int rowsPerChunk = Math.max(1, buffer.capacity() / Math.max(1, rowWidth));
+    if (rowWidth > buffer.capacity()) {
+      buffer = ByteBuffer.allocate(rowWidth);
+    }
+    for (int start = 0; start < numInstances; start += rowsPerChunk) {
+      int end = Math.min(start + rowsPerChunk, numInstances);
+      buffer.clear();
+      for (int i = start; i < end; i++) {
+        double[] values = ((DenseInstance) data.instance(i)).m_AttValues;
+        for (int att = 0; att < numAttributes; att++) {
+          double value = values[att];
+          switch (encodings[att]) {
+          case BYTES:
+            buffer.put((byte) (Utils.isMissingValue(value) ? MISSING_BYTE
+              : (int) value));
+            break;
+          case INTS:
+            buffer.putInt(Utils.isMissingValue(value) ? -1 : (int) value);
+            break;
+          default:
+            buffer.putDouble(value);
+          }
+        }
+      }
+      out.write(buffer.array(), 0, buffer.position());
+    }
+  }
+
+  /**
+   * Returns the number of bytes a value takes up in an encoding
+   *
+   * @param encoding the encoding
+   * @return the number of bytes
+   */
+  protected static int getWidth(int encoding) {
+    switch (encoding) {
+    case BYTES:
+      return 1;
+    case INTS:
+      return 4;
+    default:
+      return 8;
+    }
+  }
+
+  /**
+   * Reads a dataset that was written by write()
+   *
+   * @param in the stream to read from
+   * @return the dataset
+   * @throws IOException if the dataset can't be read
+   * @throws ClassNotFoundException if a class of the header is unknown
+   */
+  public static Instances read(ObjectInputStream in) throws IOException,
+    ClassNotFoundException {
+
+    int version = in.readInt();
+    if (version > VERSION) {
+      throw new InvalidObjectException("Instances were written in format "
+        + version + ", only up to " + VERSION + " is supported");
+    }
+    Instances result = (Instances) in.readObject();
+    int layout = in.readInt();
+    int numInstances = in.readInt();
+    int numAttributes = result.numAttributes();
+
+    ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE * 8);
+    double[] weights = null;
+    if (in.readBoolean()) {
+      weights = new double[numInstances];
+      for (int start = 0; start < numInstances; start += CHUNK_SIZE) {
+        int end = Math.min(start + CHUNK_SIZE, numInstances);
+        in.readFully(buffer.array(), 0, (end - start) * 8);
+        buffer.clear();
+        for (int i = start; i < end; i++) {
+          weights[i] = buffer.getDouble();
+        }
+      }
+    }
+
+    result.m_Instances.ensureCapacity(numInstances);
+    if (layout == SPARSE) {
+      for (int i = 0; i < numInstances; i++) {
+        int numValues = in.readInt();
+        SparseInstance inst = new SparseInstance();
+        inst.m_Indices = new int[numValues];
+        inst.m_AttValues = new double[numValues];
+        for (int j = 0; j < numValues; j++) {
+          inst.m_Indices[j] = in.readInt();
+          inst.m_AttValues[j] = in.readDouble();
+        }
+        inst.m_NumAttributes = numAttributes;
+        inst.m_Weight = weights == null ? 1.0 : weights[i];
+        inst.m_Dataset = result;
+        result.m_Instances.add(inst);
+      }
+      return result;
+    } else if (layout != DENSE) {
+      throw new InvalidObjectException("Unknown row layout " + layout);
+    }
+
+    int[] encodings = new int[numAttributes];
+    int rowWidth = 0;
+    for (int att = 0; att < numAttributes; att++) {
+      encodings[att] = in.readInt();
+      rowWidth += getWidth(encodings[att]);
+    }
+    int rowsPerChunk = Math.max(1, buffer.capacity() / Math.max(1, rowWidth));
+    if (rowWidth > buffer.capacity()) {
+      buffer = ByteBuffer.allocate(rowWidth);
+    }
+    for (int start = 0; start < numInstances; start += rowsPerChunk) {
+      int end = Math.min(start + rowsPerChunk, numInstances);
+      in.readFully(buffer.array(), 0, (end - start) * rowWidth);
+      buffer.clear();
+      for (int i = start; i < end; i++) {
+        double[] values = new double[numAttributes];
+        for (int att = 0; att < numAttributes; att++) {
+          switch (encodings[att]) {
+          case BYTES:
+            int b = buffer.get() & 0xFF;
+            values[att] = b == MISSING_BYTE ? Utils.missingValue() : b;
+            break;
+          case INTS:
+            int index = buffer.getInt();
+            values[att] = index < 0 ? Utils.missingValue() : index;
+            break;
+          default:
+            values[att] = buffer.getDouble();
+          }
+        }
+        DenseInstance inst =
+          new DenseInstance(weights == null ? 1.0 : weights[i], values);
+        inst.m_Dataset = result;
+        result.m_Instances.add(inst);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes a dataset to a stream in encoded form. The stream is a Java
+   * serialization stream holding an object that is replaced by the decoded
+   * dataset when it is read, so it can be read with readStream(),
+   * SerializationHelper.read() or a plain ObjectInputStream. The stream is
+   * flushed but not closed.
+   *
+   * @param data the dataset, which must be encodable
+   * @param out the stream to write to
+   * @throws IOException if the dataset can't be written
+   */
+  public static void writeStream(Instances data, OutputStream out)
+    throws IOException {
+    if (!canEncode(data)) {
+      throw new IOException("Dataset must consist of either DenseInstance "
+        + "or SparseInstance objects only");
+    }
+
+    ObjectOutputStream oos = new ObjectOutputStream(out);
+    oos.writeObject(new SerialForm(data));
+    oos.flush();
+  }
+
+  /**
+   * Reads a dataset from a stream written by writeStream(), or from a stream
+   * that holds a serialized Instances object
+   *
+   * @param in the stream to read from
+   * @return the dataset
+   * @throws IOException if the dataset can't be read
+   * @throws ClassNotFoundException if a class of the dataset is unknown
+   */
+  public static Instances readStream(InputStream in) throws IOException,
+    ClassNotFoundException {
+    Object result = SerializationHelper.getObjectInputStream(in).readObject();
+    if (!(result instanceof Instances)) {
+      throw new InvalidObjectException("Stream does not contain a dataset");
+    }
+    return (Instances) result;
+  }
+
+  /**
+   * Returns the object to serialize in place of another one, for use in
+   * ObjectOutputStream.replaceObject(): a non-empty, encodable dataset of
+   * class Instances is replaced by an object that writes it in encoded form,
+   * and that is replaced by the decoded dataset when it is deserialized. All
+   * other objects, including the (empty) header that the encoding starts
+   * with, are returned unchanged.
+   *
+   * @param obj the object to serialize
+   * @return the object to serialize in its place
+   */
+  public static Object replaceObject(Object obj) {
+    if (obj != null && obj.getClass() == Instances.class) {
+      Instances data = (Instances) obj;
+      if (data.numInstances() > 0 && canEncode(data)) {
+        return new SerialForm(data);
+      }
+    }
+
+    return obj;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * The object that is serialized in place of a dataset (see
+   * replaceObject()). It is replaced by the decoded dataset when it
+   * is deserialized.
+   */
+  protected static class SerialForm implements Serializable {
+
+    /** For serialization */
+    private static final long serialVersionUID = 4212580637193457326L;
+
+    /** The dataset */
+    protected transient Instances m_Data;
+
+    /**
+     * Constructs the serial form of a dataset
+     *
+     * @param data the dataset, which must be encodable
+     */
+    protected SerialForm(Instances data) {
+      m_Data = data;
+    }
+
+    /**
+     * Writes the encoded dataset
+     *
+     * @param out the stream to write to
+     * @throws IOException if a problem occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+      write(m_Data, out);
+    }
+
+    /**
+     * Reads the encoded dataset
+     *
+     * @param in the stream to read from
+     * @throws IOException if a problem occurs
+     * @throws ClassNotFoundException if a class of the header is unknown
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+      in.defaultReadObject();
+      m_Data = read(in);
+    }
+
+    /**
+     * Returns the decoded dataset in place of this object
+     *
+     * @return the dataset
+     */
+    private Object readResolve() {
+      return m_Data;
+    }
+  }
+}
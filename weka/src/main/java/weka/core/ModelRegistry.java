@@ -0,0 +1,440 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ModelRegistry.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A JVM-wide cache of models deserialized from files, so that everything that
+ * uses the same model file shares one copy of the model instead of loading its
+ * own. The models must therefore not be modified by their users.
+ * <p>
+ * A file is deserialized at most once at a time, even if several threads ask
+ * for it concurrently. When the file changes (its length or modification time),
+ * the next request loads the new version; the file is checked at most once
+ * every checkInterval milliseconds. Up to maxCachedModels models are kept in a
+ * least-recently-used cache. A model that drops out of the cache is still
+ * shared for as long as anything else refers to it, unless it is pinned with
+ * acquire(), in which case it stays in the cache until it is released again.
+ * Models can be loaded in the background ahead of their first use with
+ * preload().
+ *
+ * @version $Revision$
+ */
+public class ModelRegistry implements RevisionHandler {
+
+  /** The registry shared by the JVM */
+  protected static ModelRegistry s_Default;
+
+  /**
+   * The state of a model file
+   */
+  protected static class Entry {
+
+    /** The file */
+    protected File m_File;
+
+    /** The modification time of the file when it was loaded */
+    protected long m_LastModified;
+
+    /** The length of the file when it was loaded */
+    protected long m_Length;
+
+    /** When the file was last checked for changes */
+    protected long m_LastChecked;
+
+    /** The loading of the model, null once it has completed */
+    protected FutureTask<Object> m_Task;
+
+    /** The model while it is cached */
+    protected Object m_Model;
+
+    /** The model, for as long as it is used by anything */
+    protected WeakReference<Object> m_WeakModel;
+
+    /**
+     * Creates the entry for a file
+     *
+     * @param file the file
+     */
+    protected Entry(File file) {
+      m_File = file;
+      m_LastModified = file.lastModified();
+      m_Length = file.length();
+      m_LastChecked = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the model if it is loaded and still in use
+     *
+     * @return the model, or null
+     */
+    protected Object getModel() {
+      if (m_Model != null) {
+        return m_Model;
+      }
+      return m_WeakModel == null ? null : m_WeakModel.get();
+    }
+
+    /**
+     * Returns whether the file has been changed since it was loaded. A file
+     * that has been deleted counts as unchanged.
+     *
+     * @return true if the file has changed
+     */
+    protected boolean hasChanged() {
+      return m_File.exists()
+        && (m_File.lastModified() != m_LastModified
+          || m_File.length() != m_Length);
+    }
+  }
+
+  /** The entries of all files that have been loaded, by canonical path */
+  protected Map<String, Entry> m_Entries = new HashMap<String, Entry>();
+
+  /** The cached entries, least recently used first */
+  protected LinkedHashMap<String, Entry> m_Cache =
+    new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /** The number of times each file is pinned */
+  protected Map<String, Integer> m_Pins = new HashMap<String, Integer>();
+
+  /** The maximum number of models to cache */
+  protected int m_MaxCachedModels = 100;
+
+  /** The number of milliseconds between checks of a file for changes */
+  protected long m_CheckInterval = 1000;
+
+  /** Loads models in the background */
+  protected ExecutorService m_Preloader;
+
+  /**
+   * Returns the registry shared by the JVM
+   *
+   * @return the registry
+   */
+  public static synchronized ModelRegistry getDefault() {
+    if (s_Default == null) {
+      s_Default = new ModelRegistry();
+    }
+
+    return s_Default;
+  }
+
+  /**
+   * Sets the maximum number of models to cache. Pinned models are cached in
+   * any case and don't count towards the maximum.
+   *
+   * @param value the maximum number of models
+   */
+  public synchronized void setMaxCachedModels(int value) {
+    m_MaxCachedModels = value;
+    evict();
+  }
+
+  /**
+   * Gets the maximum number of models to cache
+   *
+   * @return the maximum number of models
+   */
+  public synchronized int getMaxCachedModels() {
+    return m_MaxCachedModels;
+  }
+
+  /**
+   * Sets the minimum time between two checks of a file for changes
+   *
+   * @param value the time in milliseconds (0 to check on every request)
+   */
+  public synchronized void setCheckInterval(long value) {
+    m_CheckInterval = value;
+  }
+
+  /**
+   * Gets the minimum time between two checks of a file for changes
+   *
+   * @return the time in milliseconds
+   */
+  public synchronized long getCheckInterval() {
+    return m_CheckInterval;
+  }
+
+  /**
+   * Returns the key of a file
+   *
+   * @param file the file
+   * @return the canonical path of the file
+   * @throws IOException if the path can't be determined
+   */
+  protected static String getKey(File file) throws IOException {
+    return file.getCanonicalPath();
+  }
+
+  /**
+   * Gets the model stored in a file, loading it if it isn't loaded yet or the
+   * file has changed since it was loaded
+   *
+   * @param file the file containing the serialized model
+   * @return the model
+   * @throws Exception if the model can't be loaded
+   */
+  public Object get(File file) throws Exception {
+    String key = getKey(file);
+    Entry entry;
+    FutureTask<Object> task;
+    boolean load = false;
+
+    synchronized (this) {
+      entry = m_Entries.get(key);
+      if (entry != null && entry.m_Task == null) {
+        Object model = entry.getModel();
+        if (model != null) {
+          long now = System.currentTimeMillis();
+          if (now - entry.m_LastChecked < m_CheckInterval) {
+            cache(key, entry, model);
+            return model;
+          }
+          entry.m_LastChecked = now;
+          if (!entry.hasChanged()) {
+            cache(key, entry, model);
+            return model;
+          }
+        }
+        entry = null;
+      }
+
+      if (entry == null) {
+        purge();
+        final File f = new File(key);
+        entry = new Entry(f);
+        entry.m_Task = new FutureTask<Object>(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            return SerializationHelper.read(f.getAbsolutePath());
+          }
+        });
+        m_Entries.put(key, entry);
+        load = true;
+      }
+      task = entry.m_Task;
+    }
+
+    // load (or wait for another thread to load) outside the lock
+    Object model;
+    try {
+      if (load) {
+        task.run();
+      }
+      model = task.get();
+    } catch (ExecutionException e) {
+      synchronized (this) {
+        if (m_Entries.get(key) == entry) {
+          m_Entries.remove(key);
+        }
+      }
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+
+    synchronized (this) {
+      if (entry.m_Task != null) {
+        entry.m_Task = null;
+        entry.m_WeakModel = new WeakReference<Object>(model);
+      }
+      if (m_Entries.get(key) == entry) {
+        cache(key, entry, model);
+      }
+    }
+
+    return model;
+  }
+
+  /**
+   * Starts loading a model in the background
+   *
+   * @param file the file containing the serialized model
+   * @return the loading, which returns the model
+   */
+  public synchronized Future<Object> preload(final File file) {
+    if (m_Preloader == null) {
+      m_Preloader = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ModelRegistry preloader");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+
+    return m_Preloader.submit(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return get(file);
+      }
+    });
+  }
+
+  /**
+   * Gets a model and pins it, so that it stays cached until release() has
+   * been called as often as acquire()
+   *
+   * @param file the file containing the serialized model
+   * @return the model
+   * @throws Exception if the model can't be loaded
+   */
+  public Object acquire(File file) throws Exception {
+    String key = getKey(file);
+    synchronized (this) {
+      Integer count = m_Pins.get(key);
+      m_Pins.put(key, count == null ? 1 : count + 1);
+    }
+
+    try {
+      return get(file);
+    } catch (Exception e) {
+      release(file);
+      throw e;
+    }
+  }
+
+  /**
+   * Releases a model pinned with acquire()
+   *
+   * @param file the file containing the serialized model
+   * @throws IOException if the path of the file can't be determined
+   */
+  public void release(File file) throws IOException {
+    String key = getKey(file);
+    synchronized (this) {
+      Integer count = m_Pins.get(key);
+      if (count == null || count <= 1) {
+        m_Pins.remove(key);
+      } else {
+        m_Pins.put(key, count - 1);
+      }
+      evict();
+    }
+  }
+
+  /**
+   * Returns whether the model of a file is cached
+   *
+   * @param file the file
+   * @return true if the model is cached
+   * @throws IOException if the path of the file can't be determined
+   */
+  public synchronized boolean isCached(File file) throws IOException {
+    return m_Cache.containsKey(getKey(file));
+  }
+
+  /**
+   * Gets the number of models that are cached
+   *
+   * @return the number of models
+   */
+  public synchronized int numCachedModels() {
+    return m_Cache.size();
+  }
+
+  /**
+   * Removes all models from the registry. Pins are kept.
+   */
+  public synchronized void clear() {
+    m_Cache.clear();
+    m_Entries.clear();
+  }
+
+  /**
+   * Puts a loaded model into the cache, or marks it as recently used
+   *
+   * @param key the key of the file
+   * @param entry the entry of the file
+   * @param model the model
+   */
+  protected void cache(String key, Entry entry, Object model) {
+    entry.m_Model = model;
+    m_Cache.put(key, entry);
+    evict();
+  }
+
+  /**
+   * Removes the least recently used models that aren't pinned from the cache,
+   * until at most maxCachedModels models that aren't pinned are cached
+   */
+  protected void evict() {
+    int excess = m_Cache.size() - m_MaxCachedModels;
+    for (String key : m_Pins.keySet()) {
+      if (m_Cache.containsKey(key)) {
+        excess--;
+      }
+    }
+    Iterator<Map.Entry<String, Entry>> iter = m_Cache.entrySet().iterator();
+    while (excess > 0 && iter.hasNext()) {
+      Map.Entry<String, Entry> e = iter.next();
+      if (!m_Pins.containsKey(e.getKey())) {
+        e.getValue().m_Model = null;
+        iter.remove();
+        excess--;
+      }
+    }
+  }
+
+  /**
+   * Forgets files whose models are no longer in use
+   */
+  protected void purge() {
+    Iterator<Entry> iter = m_Entries.values().iterator();
+    while (iter.hasNext()) {
+      Entry entry = iter.next();
+      if (entry.m_Task == null && entry.getModel() == null) {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -0,0 +1,485 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    QuantileSketch.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A mergeable, bounded memory sketch for estimating quantiles of a stream of
+ * numbers, based on the KLL sketch. Values are held in a hierarchy of
+ * compactors: a value at level h stands for 2^h values of the stream. When a
+ * level fills up it is sorted and every other value (starting at a random
+ * offset) is promoted to the next level. The capacity of the levels decreases
+ * geometrically from the top, so the number of values retained is
+ * O(k log log n) and the rank error of a quantile estimate is roughly 1.7 / k
+ * for k = 200 (the default).
+ * <p>
+ * Sketches built on different parts of a data set can be merged, and the
+ * result has the same error guarantee as a sketch built on all of the data.
+ * Weighted updates with integer weights are supported. Until the first
+ * compaction (i.e. while fewer than about k values have been seen) estimates
+ * are exact.
+ * <p>
+ * For more information see:<br/>
+ * Z. Karnin, K. Lang, E. Liberty (2016). Optimal Quantile Approximation in
+ * Streams. In: IEEE 57th Annual Symposium on Foundations of Computer Science,
+ * 71-78.
+ *
+ * @version $Revision$
+ */
+public class QuantileSketch implements Serializable, RevisionHandler {
+
+  /** For serialization */
+  private static final long serialVersionUID = -4633013925962669463L;
+
+  /** The default accuracy parameter */
+  public static final int DEFAULT_K = 200;
+
+  /** The smallest accuracy parameter allowed */
+  public static final int MIN_K = 8;
+
+  /** The smallest capacity of a level */
+  protected static final int MIN_LEVEL_CAPACITY = 8;
+
+  /** Ratio of the capacity of a level to the level above */
+  protected static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+  /** The accuracy parameter (capacity of the top level) */
+  protected int m_k;
+
+  /** The values held at each level */
+  protected double[][] m_levels = new double[1][];
+
+  /** The number of values held at each level */
+  protected int[] m_sizes = new int[1];
+
+  /** Total number of values held */
+  protected int m_retained;
+
+  /** Total capacity of the current levels */
+  protected int m_totalCapacity;
+
+  /** Total weight of the values seen */
+  protected long m_n;
+
+  /** Smallest value seen */
+  protected double m_min = Double.NaN;
+
+  /** Largest value seen */
+  protected double m_max = Double.NaN;
+
+  /** Source of the random offsets used when compacting */
+  protected Random m_random = new Random(1);
+
+  /**
+   * Constructs a sketch with the default accuracy
+   */
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * Constructs a sketch
+   *
+   * @param k the accuracy parameter. Larger values give more accurate
+   *          estimates at the expense of more memory.
+   */
+  public QuantileSketch(int k) {
+    m_k = Math.max(MIN_K, k);
+    m_levels[0] = new double[16];
+    m_totalCapacity = computeTotalCapacity();
+  }
+
+  /**
+   * Get the accuracy parameter
+   *
+   * @return the accuracy parameter
+   */
+  public int getK() {
+    return m_k;
+  }
+
+  /**
+   * Get the total weight of the values seen
+   *
+   * @return the number of values seen
+   */
+  public long getN() {
+    return m_n;
+  }
+
+  /**
+   * Get the number of values held by the sketch
+   *
+   * @return the number of values retained
+   */
+  public int getNumRetained() {
+    return m_retained;
+  }
+
+  /**
+   * Get the smallest value seen
+   *
+   * @return the smallest value, or NaN if the sketch is empty
+   */
+  public double getMin() {
+    return m_min;
+  }
+
+  /**
+   * Get the largest value seen
+   *
+   * @return the largest value, or NaN if the sketch is empty
+   */
+  public double getMax() {
+    return m_max;
+  }
+
+  /**
+   * Returns true if no values have been seen
+   *
+   * @return true if the sketch is empty
+   */
+  public boolean isEmpty() {
+    return m_n == 0;
+  }
+
+  /**
+   * Update the sketch with a value
+   *
+   * @param value the value to add (NaN values are ignored)
+   */
+  public void update(double value) {
+    update(value, 1);
+  }
+
+  /**
+   * Update the sketch with a value that has an integer weight. The weight is
+   * split into powers of two, and a copy of the value is added at the level
+   * corresponding to each one.
+   *
+   * @param value the value to add (NaN values are ignored)
+   * @param weight the weight of the value (values <= 0 are ignored)
+   */
+  public void update(double value, long weight) {
+    if (Double.isNaN(value) || weight <= 0) {
+      return;
+    }
+
+    if (m_n == 0) {
+      m_min = m_max = value;
+    } else if (value < m_min) {
+      m_min = value;
+    } else if (value > m_max) {
+      m_max = value;
+    }
+    m_n += weight;
+
+    int level = 0;
+    while (weight != 0) {
+      if ((weight & 1) != 0) {
+        append(level, value);
+      }
+      weight >>>= 1;
+      level++;
+    }
+
+    while (m_retained > m_totalCapacity) {
+      compress();
+    }
+  }
+
+  /**
+   * Merge another sketch into this one. The other sketch is not modified.
+   *
+   * @param other the sketch to merge
+   */
+  public void merge(QuantileSketch other) {
+    if (other == null || other.m_n == 0) {
+      return;
+    }
+
+    if (m_n == 0) {
+      m_min = other.m_min;
+      m_max = other.m_max;
+    } else {
+      m_min = Math.min(m_min, other.m_min);
+      m_max = Math.max(m_max, other.m_max);
+    }
+    m_n += other.m_n;
+
+    for (int h = 0; h < other.m_sizes.length; h++) {
+      for (int i = 0; i < other.m_sizes[h]; i++) {
+        append(h, other.m_levels[h][i]);
+      }
+    }
+
+    while (m_retained > m_totalCapacity) {
+      compress();
+    }
+  }
+
+  /**
+   * Estimate a quantile
+   *
+   * @param q the quantile to estimate (between 0 and 1)
+   * @return the estimated quantile, or NaN if the sketch is empty
+   */
+  public double quantile(double q) {
+    if (m_n == 0) {
+      return Double.NaN;
+    }
+    if (q <= 0) {
+      return m_min;
+    }
+    if (q >= 1) {
+      return m_max;
+    }
+
+    double[] values = new double[m_retained];
+    long[] weights = new long[m_retained];
+    sortedValuesAndWeights(values, weights);
+
+    double target = q * m_n;
+    long cumulative = 0;
+    for (int i = 0; i < values.length; i++) {
+      cumulative += weights[i];
+      if (cumulative > target) {
+        return values[i];
+      }
+    }
+
+    return m_max;
+  }
+
+  /**
+   * Estimate the cumulative distribution function at a point
+   *
+   * @param x the point at which to evaluate the cdf
+   * @return the estimated fraction of the values that are <= x, or NaN if the
+   *         sketch is empty
+   */
+  public double cdf(double x) {
+    if (m_n == 0) {
+      return Double.NaN;
+    }
+
+    long weight = 0;
+    for (int h = 0; h < m_sizes.length; h++) {
+      double[] level = m_levels[h];
+      for (int i = 0; i < m_sizes[h]; i++) {
+        if (level[i] <= x) {
+          weight += 1L << h;
+        }
+      }
+    }
+
+    return (double) weight / m_n;
+  }
+
+  /**
+   * Get the number of bytes needed by toBytes()
+   *
+   * @return the number of bytes needed to encode this sketch
+   */
+  public int byteSize() {
+    return 4 + 8 + 8 + 8 + 4 + 4 * m_sizes.length + 8 * m_retained;
+  }
+
+  /**
+   * Encode this sketch into a buffer
+   *
+   * @param buff the buffer to write to
+   */
+  public void toBytes(ByteBuffer buff) {
+    buff.putInt(m_k);
+    buff.putLong(m_n);
+    buff.putDouble(m_min);
+    buff.putDouble(m_max);
+    buff.putInt(m_sizes.length);
+    for (int h = 0; h < m_sizes.length; h++) {
+      buff.putInt(m_sizes[h]);
+      for (int i = 0; i < m_sizes[h]; i++) {
+        buff.putDouble(m_levels[h][i]);
+      }
+    }
+  }
+
+  /**
+   * Decode a sketch written by toBytes()
+   *
+   * @param buff the buffer to read from
+   * @return the decoded sketch
+   */
+  public static QuantileSketch fromBytes(ByteBuffer buff) {
+    QuantileSketch result = new QuantileSketch(buff.getInt());
+    result.m_n = buff.getLong();
+    result.m_min = buff.getDouble();
+    result.m_max = buff.getDouble();
+    int numLevels = buff.getInt();
+    result.m_levels = new double[numLevels][];
+    result.m_sizes = new int[numLevels];
+    for (int h = 0; h < numLevels; h++) {
+      int size = buff.getInt();
+      result.m_levels[h] = new double[Math.max(16, size)];
+      for (int i = 0; i < size; i++) {
+        result.m_levels[h][i] = buff.getDouble();
+      }
+      result.m_sizes[h] = size;
+      result.m_retained += size;
+    }
+    result.m_totalCapacity = result.computeTotalCapacity();
+
+    return result;
+  }
+
+  /**
+   * Add a value to a level, creating the level if necessary
+   *
+   * @param level the level to add to
+   * @param value the value to add
+   */
+  protected void append(int level, double value) {
+    while (level >= m_levels.length) {
+      addLevel();
+    }
+    double[] l = m_levels[level];
+    if (m_sizes[level] == l.length) {
+      l = Arrays.copyOf(l, l.length * 2);
+      m_levels[level] = l;
+    }
+    l[m_sizes[level]++] = value;
+    m_retained++;
+  }
+
+  /**
+   * Add a new top level
+   */
+  protected void addLevel() {
+    int numLevels = m_levels.length + 1;
+    m_levels = Arrays.copyOf(m_levels, numLevels);
+    m_levels[numLevels - 1] = new double[16];
+    m_sizes = Arrays.copyOf(m_sizes, numLevels);
+    m_totalCapacity = computeTotalCapacity();
+  }
+
+  /**
+   * Capacity of a level
+   *
+   * @param level the level
+   * @return the capacity
+   */
+  protected int capacity(int level) {
+    int depth = m_levels.length - level - 1;
+    return Math.max(MIN_LEVEL_CAPACITY,
+      (int) Math.ceil(m_k * Math.pow(CAPACITY_RATIO, depth)));
+  }
+
+  /**
+   * Total capacity of all the levels
+   *
+   * @return the total capacity
+   */
+  protected int computeTotalCapacity() {
+    int total = 0;
+    for (int h = 0; h < m_levels.length; h++) {
+      total += capacity(h);
+    }
+    return total;
+  }
+
+  /**
+   * Compact the lowest level that is at (or over) its capacity, promoting half
+   * of its values to the level above
+   */
+  protected void compress() {
+    int h = 0;
+    while (h < m_sizes.length - 1 && m_sizes[h] < capacity(h)) {
+      h++;
+    }
+    if (h == m_sizes.length - 1) {
+      addLevel();
+    }
+
+    double[] level = m_levels[h];
+    int size = m_sizes[h];
+    // an odd value out stays at this level so that the total weight
+    // is preserved exactly
+    int start = size % 2;
+    Arrays.sort(level, start, size);
+    int offset = m_random.nextBoolean() ? 1 : 0;
+    for (int i = start + offset; i < size; i += 2) {
+      append(h + 1, level[i]);
+    }
+    m_sizes[h] = start;
+    m_retained -= size - start;
+  }
+
+  /**
+   * Fill arrays with all the values held, in sorted order, and their weights
+   *
+   * @param values the array to hold the values
+   * @param weights the array to hold the weights
+   */
+  protected void sortedValuesAndWeights(double[] values, long[] weights) {
+    int index = 0;
+    for (int h = 0; h < m_sizes.length; h++) {
+      for (int i = 0; i < m_sizes[h]; i++) {
+        values[index] = m_levels[h][i];
+        weights[index] = 1L << h;
+        index++;
+      }
+    }
+
+    // sort the values, carrying the weights along
+    Integer[] order = new Integer[values.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    final double[] v = values.clone();
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(v[a], v[b]);
+      }
+    });
+    long[] w = weights.clone();
+    for (int i = 0; i < order.length; i++) {
+      values[i] = v[order[i]];
+      weights[i] = w[order[i]];
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -281,6 +281,78 @@ public class SerializationHelper implements RevisionHandler {
     return result;
   }
 
+  /**
+   * serializes the given dataset to the specified file, in the compact
+   * encoding of InstancesCodec if the dataset can be encoded. Older versions
+   * of Weka can't read the encoded form.
+   * 
+   * @param filename the file to write the dataset to
+   * @param data the dataset to serialize
+   * @throws Exception if serialization fails
+   */
+  public static void writeInstances(String filename, Instances data)
+    throws Exception {
+    writeInstances(new FileOutputStream(filename), data);
+  }
+
+  /**
+   * serializes the given dataset to the specified stream, in the compact
+   * encoding of InstancesCodec if the dataset can be encoded. Older versions
+   * of Weka can't read the encoded form.
+   * 
+   * @param stream the stream to write the dataset to
+   * @param data the dataset to serialize
+   * @throws Exception if serialization fails
+   */
+  public static void writeInstances(OutputStream stream, Instances data)
+    throws Exception {
+    if (!InstancesCodec.canEncode(data)) {
+      write(stream, data);
+      return;
+    }
+
+    if (!(stream instanceof BufferedOutputStream)) {
+      stream = new BufferedOutputStream(stream);
+    }
+
+    InstancesCodec.writeStream(data, stream);
+    stream.close();
+  }
+
+  /**
+   * deserializes a dataset from the given file, written either by
+   * writeInstances() or as a plain serialized Instances object.
+   * 
+   * @param filename the file to deserialize from
+   * @return the dataset
+   * @throws Exception if deserialization fails or the file doesn't contain a
+   *           dataset
+   */
+  public static Instances readInstances(String filename) throws Exception {
+    return readInstances(new FileInputStream(filename));
+  }
+
+  /**
+   * deserializes a dataset from the given stream, written either by
+   * writeInstances() or as a plain serialized Instances object.
+   * 
+   * @param stream the stream to deserialize from
+   * @return the dataset
+   * @throws Exception if deserialization fails or the stream doesn't contain
+   *           a dataset
+   */
+  public static Instances readInstances(InputStream stream) throws Exception {
+    Instances result;
+
+    try {
+      result = InstancesCodec.readStream(stream);
+    } finally {
+      stream.close();
+    }
+
+    return result;
+  }
+
   /**
    * Get a (Weka package classloader aware) {@code ObjectInputStream} instance
    * for reading objects from the supplied input stream
@@ -0,0 +1,386 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    Vocabulary.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Maps tokens (e.g. words) to consecutive int ids, starting at 0, so that
+ * statistics for the tokens can be held in primitive arrays indexed by id.
+ * Ids are never reused or removed. Lookups are made in an open-addressing
+ * hash table and do not allocate or lock, so a vocabulary can be shared by
+ * several threads; adding new tokens is synchronized.
+ * <p>
+ * The nested Document class holds the bag of words for a single document as
+ * ids and counts, and can be reused for each document.
+ *
+ * @version $Revision$
+ */
+public class Vocabulary implements Serializable, RevisionHandler {
+
+  /** For serialization */
+  private static final long serialVersionUID = -2716620950883911455L;
+
+  /**
+   * A token and its id. Both fields are final, so an entry that is visible to
+   * a reading thread is always fully initialized.
+   */
+  protected static final class Entry implements Serializable {
+
+    /** For serialization */
+    private static final long serialVersionUID = 5384227342713012452L;
+
+    /** The token */
+    protected final String m_token;
+
+    /** The id of the token */
+    protected final int m_id;
+
+    protected Entry(String token, int id) {
+      m_token = token;
+      m_id = id;
+    }
+  }
+
+  /** The smallest vocabulary that isSparse() considers for compacting */
+  public static final int MIN_COMPACT_SIZE = 1024;
+
+  /** The hash table (linear probing, length is a power of two) */
+  protected volatile Entry[] m_table;
+
+  /** The tokens, indexed by id */
+  protected volatile String[] m_tokens;
+
+  /** The number of tokens */
+  protected volatile int m_size;
+
+  /**
+   * Constructs an empty vocabulary
+   */
+  public Vocabulary() {
+    this(16);
+  }
+
+  /**
+   * Constructs an empty vocabulary
+   *
+   * @param expectedSize the number of tokens expected
+   */
+  public Vocabulary(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    m_table = new Entry[capacity];
+    m_tokens = new String[Math.max(16, expectedSize)];
+  }
+
+  /**
+   * Get the number of tokens in the vocabulary. All ids are less than this.
+   *
+   * @return the number of tokens
+   */
+  public int size() {
+    return m_size;
+  }
+
+  /**
+   * Spreads the hash code of a token so that the low bits are well mixed
+   *
+   * @param token the token
+   * @return the hash
+   */
+  protected static int hash(String token) {
+    int h = token.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Look up the id of a token in a table
+   *
+   * @param table the table to search
+   * @param token the token
+   * @return the id of the token, or -1 if it is not in the table
+   */
+  protected static int lookup(Entry[] table, String token) {
+    int mask = table.length - 1;
+    int i = hash(token) & mask;
+    Entry e;
+    while ((e = table[i]) != null) {
+      if (e.m_token.equals(token)) {
+        return e.m_id;
+      }
+      i = (i + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Get the id of a token without adding it
+   *
+   * @param token the token
+   * @return the id of the token, or -1 if it is not in the vocabulary
+   */
+  public int getId(String token) {
+    return lookup(m_table, token);
+  }
+
+  /**
+   * Get the id of a token, adding the token if necessary
+   *
+   * @param token the token
+   * @return the id of the token
+   */
+  public int addToken(String token) {
+    int id = lookup(m_table, token);
+    if (id >= 0) {
+      return id;
+    }
+
+    synchronized (this) {
+      // another thread may have added it in the meantime
+      Entry[] table = m_table;
+      id = lookup(table, token);
+      if (id >= 0) {
+        return id;
+      }
+
+      id = m_size;
+      if ((id + 1) * 2 > table.length) {
+        table = rehash(table, table.length * 2);
+      }
+      insert(table, new Entry(token, id));
+
+      String[] tokens = m_tokens;
+      if (id == tokens.length) {
+        tokens = Arrays.copyOf(tokens, tokens.length * 2);
+      }
+      tokens[id] = token;
+
+      m_tokens = tokens;
+      m_table = table;
+      m_size = id + 1;
+    }
+
+    return id;
+  }
+
+  /**
+   * Insert an entry into a table that has room for it
+   *
+   * @param table the table
+   * @param e the entry to insert
+   */
+  protected static void insert(Entry[] table, Entry e) {
+    int mask = table.length - 1;
+    int i = hash(e.m_token) & mask;
+    while (table[i] != null) {
+      i = (i + 1) & mask;
+    }
+    table[i] = e;
+  }
+
+  /**
+   * Copy the entries of a table into a new, larger table
+   *
+   * @param table the table to copy
+   * @param capacity the capacity of the new table (a power of two)
+   * @return the new table
+   */
+  protected static Entry[] rehash(Entry[] table, int capacity) {
+    Entry[] newTable = new Entry[capacity];
+    for (Entry e : table) {
+      if (e != null) {
+        insert(newTable, e);
+      }
+    }
+
+    return newTable;
+  }
+
+  /**
+   * Get the token with the given id
+   *
+   * @param id the id of the token
+   * @return the token
+   * @throws IndexOutOfBoundsException if there is no token with the id
+   */
+  public String getToken(int id) {
+    if (id < 0 || id >= m_size) {
+      throw new IndexOutOfBoundsException("No token with id " + id);
+    }
+
+    return m_tokens[id];
+  }
+
+  /**
+   * Returns true if the vocabulary is large and less than half of its tokens
+   * are still in use, in which case it is worth compacting
+   *
+   * @param numLive the number of tokens still in use
+   * @return true if the vocabulary should be compacted
+   */
+  public boolean isSparse(int numLive) {
+    return m_size >= MIN_COMPACT_SIZE && numLive * 2 < m_size;
+  }
+
+  /**
+   * Create a new vocabulary that holds just the tokens that are still in use.
+   * The tokens keep their relative order, so the new id of a token is the
+   * number of kept tokens with smaller ids. This vocabulary is not modified.
+   *
+   * @param keep true for the ids of the tokens to keep
+   * @return the new vocabulary
+   */
+  public Vocabulary compact(boolean[] keep) {
+    int numKept = 0;
+    for (int id = 0; id < Math.min(keep.length, m_size); id++) {
+      if (keep[id]) {
+        numKept++;
+      }
+    }
+
+    Vocabulary result = new Vocabulary(numKept);
+    String[] tokens = m_tokens;
+    for (int id = 0; id < Math.min(keep.length, m_size); id++) {
+      if (keep[id]) {
+        result.addToken(tokens[id]);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Serialize a consistent snapshot of the vocabulary
+   *
+   * @param out the stream to write to
+   * @throws IOException if a problem occurs
+   */
+  private synchronized void writeObject(ObjectOutputStream out)
+    throws IOException {
+    out.defaultWriteObject();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * The bag of words for a single document, held as the ids of the distinct
+   * tokens (in the order they first occur) and their counts. Intended to be
+   * reused for each document so that tokenizing does not allocate once the
+   * buffers have grown. Not thread-safe.
+   */
+  public static class Document implements Serializable {
+
+    /** For serialization */
+    private static final long serialVersionUID = -3410587962913011958L;
+
+    /** The ids of the tokens in the document */
+    protected int[] m_ids = new int[16];
+
+    /** The counts of the tokens in the document */
+    protected double[] m_counts = new double[16];
+
+    /** The number of distinct tokens in the document */
+    protected int m_numTerms;
+
+    /** One plus the position of each token in m_ids, indexed by id */
+    protected int[] m_positions = new int[16];
+
+    /**
+     * Remove all tokens
+     */
+    public void clear() {
+      for (int i = 0; i < m_numTerms; i++) {
+        m_positions[m_ids[i]] = 0;
+      }
+      m_numTerms = 0;
+    }
+
+    /**
+     * Add a count for a token
+     *
+     * @param id the id of the token
+     * @param count the count to add
+     */
+    public void add(int id, double count) {
+      if (id >= m_positions.length) {
+        m_positions =
+          Arrays.copyOf(m_positions, Math.max(id + 1, m_positions.length * 2));
+      }
+
+      int pos = m_positions[id] - 1;
+      if (pos >= 0) {
+        m_counts[pos] += count;
+      } else {
+        if (m_numTerms == m_ids.length) {
+          m_ids = Arrays.copyOf(m_ids, m_numTerms * 2);
+          m_counts = Arrays.copyOf(m_counts, m_numTerms * 2);
+        }
+        m_ids[m_numTerms] = id;
+        m_counts[m_numTerms] = count;
+        m_positions[id] = ++m_numTerms;
+      }
+    }
+
+    /**
+     * Get the number of distinct tokens in the document
+     *
+     * @return the number of distinct tokens
+     */
+    public int numTerms() {
+      return m_numTerms;
+    }
+
+    /**
+     * Get the id of a token in the document
+     *
+     * @param i the position of the token (0 to numTerms() - 1)
+     * @return the id of the token
+     */
+    public int id(int i) {
+      return m_ids[i];
+    }
+
+    /**
+     * Get the count of a token in the document
+     *
+     * @param i the position of the token (0 to numTerms() - 1)
+     * @return the count of the token
+     */
+    public double count(int i) {
+      return m_counts[i];
+    }
+  }
+}
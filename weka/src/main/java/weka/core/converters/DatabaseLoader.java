@@ -40,6 +40,8 @@ import weka.gui.PasswordProperty;
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.DatabaseMetaData;
 import java.sql.Date;
 import java.sql.ResultSet;
@@ -49,8 +51,13 @@ import java.sql.Time;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * <!-- globalinfo-start --> Reads Instances from a Database. Can read a
@@ -76,7 +83,11 @@ import java.util.Vector;
  * In addition, for incremental loading, you can define in the DatabaseUtils
  * file how many distinct values a nominal attribute is allowed to have. If this
  * number is exceeded, the column will become a string attribute.<br/>
- * In batch mode no string attributes will be created.
+ * In batch mode no string attributes will be created.<br/>
+ * If a fetch size is set, incremental loading reads all rows through a single
+ * cursor instead, which needs neither a LIMIT clause nor a key. If a partition
+ * column is set, a batch is loaded in parallel by splitting the range of that
+ * numeric column across several connections.
  * <p/>
  * <!-- globalinfo-end -->
  * 
@@ -124,6 +135,26 @@ import java.util.Vector;
  *  Sets incremental loading
  * </pre>
  * 
+ * <pre>
+ * -fetch-size &lt;num&gt;
+ *  The number of rows to fetch at a time when loading
+ *  incrementally through a single cursor.
+ *  (default: 0 = one LIMIT query per row)
+ * </pre>
+ * 
+ * <pre>
+ * -partition-column &lt;column&gt;
+ *  Numeric column whose range is split across several
+ *  connections to load a batch in parallel.
+ *  (default: none)
+ * </pre>
+ * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  The number of connections for a parallel batch load.
+ *  (default: 0 = number of cores)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Stefan Mutter (mutter@cs.waikato.ac.nz)
@@ -245,6 +276,24 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
   /** Environment variables */
   protected transient Environment m_env;
 
+  /**
+   * The number of rows fetched at a time when loading incrementally through a
+   * single cursor. 0 means that one LIMIT query is run per row instead.
+   */
+  protected int m_fetchSize = 0;
+
+  /**
+   * The numeric column whose range is split up for loading a batch in
+   * parallel. Empty for loading with a single query.
+   */
+  protected String m_partitionColumn = "";
+
+  /** The number of partitions/connections for a parallel batch load */
+  protected int m_numSlots = 0;
+
+  /** The cursor that is read from when loading incrementally with a cursor */
+  protected transient ResultSet m_cursor;
+
   /**
    * Constructor
    * 
@@ -274,7 +323,12 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
       + "If you use the DatabaseSaver and save instances by generating automatically a primary key (its name is defined in DtabaseUtils), this primary key will "
       + "be used for ordering but will not be part of the output. The user defined SQL query to extract the instances should not contain LIMIT and ORDER BY clauses (see -Q option).\n"
       + "In addition, for incremental loading,  you can define in the DatabaseUtils file how many distinct values a nominal attribute is allowed to have. If this number is exceeded, the column will become a string attribute.\n"
-      + "In batch mode no string attributes will be created.";
+      + "In batch mode no string attributes will be created.\n"
+      + "If a fetch size is set, incremental loading reads all rows through a "
+      + "single cursor instead, which needs neither a LIMIT clause nor a key. "
+      + "If a partition column is set, a batch is loaded in parallel by "
+      + "splitting the range of that numeric column across several "
+      + "connections.";
   }
 
   /**
@@ -428,6 +482,10 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
     m_counter = 0;
     m_choice = 0;
     m_firstTime = true;
+    if (m_cursor != null) {
+      m_DataBaseConnection.close(m_cursor);
+      m_cursor = null;
+    }
     setRetrieval(NONE);
   }
 
@@ -709,6 +767,104 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
     return m_CreateSparseData;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String fetchSizeTipText() {
+    return "The number of rows to fetch at a time when loading incrementally "
+      + "through a single cursor (0 = run one LIMIT query per row instead). "
+      + "MySQL needs useCursorFetch=true in the URL to honour it.";
+  }
+
+  /**
+   * Sets the number of rows to fetch at a time in incremental mode
+   * 
+   * @param size the fetch size, 0 to run one query per row
+   */
+  public void setFetchSize(int size) {
+    m_fetchSize = size;
+  }
+
+  /**
+   * Gets the number of rows to fetch at a time in incremental mode
+   * 
+   * @return the fetch size, 0 if one query is run per row
+   */
+  @OptionMetadata(displayName = "Fetch size", description = "The number of "
+    + "rows to fetch at a time when loading incrementally through a cursor "
+    + "(0 = one LIMIT query per row)", displayOrder = 9)
+  public int getFetchSize() {
+    return m_fetchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String partitionColumnTipText() {
+    return "The numeric column whose range is split across several "
+      + "connections to load a batch in parallel (empty = single query).";
+  }
+
+  /**
+   * Sets the column to partition a batch load on
+   * 
+   * @param column the numeric column, empty for loading with a single query
+   */
+  public void setPartitionColumn(String column) {
+    m_partitionColumn = column;
+  }
+
+  /**
+   * Gets the column to partition a batch load on
+   * 
+   * @return the numeric column, empty if loading with a single query
+   */
+  @OptionMetadata(displayName = "Partition column", description = "The "
+    + "numeric column to split across connections for a parallel batch load",
+    displayOrder = 10)
+  public String getPartitionColumn() {
+    return m_partitionColumn;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of connections to use when loading a batch in "
+      + "parallel (0 = use the number of available cores).";
+  }
+
+  /**
+   * Sets the number of connections for a parallel batch load
+   * 
+   * @param slots the number of connections, 0 for the number of cores
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numSlots = slots;
+  }
+
+  /**
+   * Gets the number of connections for a parallel batch load
+   * 
+   * @return the number of connections, 0 for the number of cores
+   */
+  @OptionMetadata(displayName = "Number of execution slots",
+    description = "The number of connections for a parallel batch load "
+      + "(0 = number of cores)",
+    displayOrder = 11)
+  public int getNumExecutionSlots() {
+    return m_numSlots;
+  }
+
   /**
    * Sets the database url, user and pw
    * 
@@ -879,20 +1035,13 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
   }
 
   /**
-   * Used in incremental loading. Modifies the SQL statement, so that only one
-   * instance per time is tretieved and the instances are ordered uniquely.
+   * Returns the ORDER BY clause for the key columns, if any.
    * 
-   * @param query the query to modify for incremental loading
-   * @param offset sets which tuple out of the uniquely ordered ones should be
-   *          returned
-   * @param choice the kind of query that is suitable for the used DBMS
-   * @return the modified query that returns only one result tuple.
+   * @return the clause (with a leading space), or an empty string
    */
-  private String limitQuery(String query, int offset, int choice) {
+  private String orderByClause() {
 
-    String limitedQuery;
     StringBuffer order = new StringBuffer();
-    String orderByString = "";
 
     if (m_orderBy.size() != 0) {
       order.append(" ORDER BY ");
@@ -909,8 +1058,26 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
       } else {
         order.append(m_orderBy.get(m_orderBy.size() - 1));
       }
-      orderByString = order.toString();
     }
+
+    return order.toString();
+  }
+
+  /**
+   * Used in incremental loading. Modifies the SQL statement, so that only one
+   * instance per time is tretieved and the instances are ordered uniquely.
+   * 
+   * @param query the query to modify for incremental loading
+   * @param offset sets which tuple out of the uniquely ordered ones should be
+   *          returned
+   * @param choice the kind of query that is suitable for the used DBMS
+   * @return the modified query that returns only one result tuple.
+   */
+  private String limitQuery(String query, int offset, int choice) {
+
+    String limitedQuery;
+    String orderByString = orderByClause();
+
     if (choice == 0) {
       limitedQuery =
         query.replaceFirst("SELECT", "SELECT LIMIT " + offset + " 1");
@@ -982,31 +1149,38 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
           }
         }
 
-        // finds out which SQL statement to use for the DBMS to limit the number
-        // of resulting rows to one
-        int choice = 0;
-        boolean rightChoice = false;
-        while (!rightChoice) {
-          try {
-            String limitQ = limitQuery(m_query, 0, choice);
-            if (m_DataBaseConnection.execute(limitQ) == false) {
-              throw new IOException("Query didn't produce results");
-            }
-            m_choice = choice;
-            rightChoice = true;
-          } catch (SQLException ex) {
-            choice++;
-            if (choice == 3) {
-              System.out
-                .println("Incremental loading not supported for that DBMS. Pseudoincremental mode is used if you use incremental loading.\nAll rows are loaded into memory once and retrieved incrementally from memory instead of from the database.");
-              m_pseudoIncremental = true;
-              break pseudo;
+        ResultSet rs;
+        if (m_fetchSize > 0) {
+          // reading through a cursor needs no LIMIT clause, only the
+          // metadata of the query
+          rs = m_DataBaseConnection.openCursor(m_query, m_fetchSize, 1);
+        } else {
+          // finds out which SQL statement to use for the DBMS to limit the
+          // number of resulting rows to one
+          int choice = 0;
+          boolean rightChoice = false;
+          while (!rightChoice) {
+            try {
+              String limitQ = limitQuery(m_query, 0, choice);
+              if (m_DataBaseConnection.execute(limitQ) == false) {
+                throw new IOException("Query didn't produce results");
+              }
+              m_choice = choice;
+              rightChoice = true;
+            } catch (SQLException ex) {
+              choice++;
+              if (choice == 3) {
+                System.out
+                  .println("Incremental loading not supported for that DBMS. Pseudoincremental mode is used if you use incremental loading.\nAll rows are loaded into memory once and retrieved incrementally from memory instead of from the database.");
+                m_pseudoIncremental = true;
+                break pseudo;
+              }
             }
           }
+          rs = m_DataBaseConnection.getResultSet();
         }
 
         String end = endOfQuery(false);
-        ResultSet rs = m_DataBaseConnection.getResultSet();
 
         ResultSetMetaData md = rs.getMetaData();
         // rs.close();
@@ -1173,7 +1347,9 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
           m_oldStructure = new Instances(m_structure, 0);
         }
 
-        if (m_DataBaseConnection.getResultSet() != null) {
+        if (m_fetchSize > 0) {
+          m_DataBaseConnection.close(rs);
+        } else if (m_DataBaseConnection.getResultSet() != null) {
           rs.close();
         }
       } else {
@@ -1211,35 +1387,19 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
     Instances result = null;
     checkEnv();
     try {
-      InstanceQuery iq = new InstanceQuery();
-      iq.initialize(m_CustomPropsFile);
-      String realURL = m_URL;
-      try {
-        realURL = m_env.substitute(realURL);
-      } catch (Exception ex) {
-      }
-      iq.setDatabaseURL(realURL);
-      String realUser = m_User;
-      try {
-        realUser = m_env.substitute(realUser);
-      } catch (Exception ex) {
-      }
-      iq.setUsername(realUser);
-      String realPass = m_Password;
-      try {
-        realPass = m_env.substitute(realPass);
-      } catch (Exception ex) {
-      }
-      iq.setPassword(realPass);
+      InstanceQuery iq = newInstanceQuery();
       String realQuery = m_query;
       try {
         realQuery = m_env.substitute(realQuery);
       } catch (Exception ex) {
       }
       iq.setQuery(realQuery);
-      iq.setSparseData(m_CreateSparseData);
 
-      result = iq.retrieveInstances();
+      if (m_partitionColumn.length() > 0) {
+        result = retrievePartitioned(iq, realQuery);
+      } else {
+        result = iq.retrieveInstances();
+      }
 
       if (m_DataBaseConnection.getUpperCase()) {
         m_idColumn = m_idColumn.toUpperCase();
@@ -1271,6 +1431,223 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
     return result;
   }
 
+  /**
+   * Creates an InstanceQuery for the database, with environment variables in
+   * the connection settings resolved.
+   * 
+   * @return the InstanceQuery, not yet connected
+   * @throws Exception if the query cannot be created
+   */
+  protected InstanceQuery newInstanceQuery() throws Exception {
+    InstanceQuery iq = new InstanceQuery();
+    iq.initialize(m_CustomPropsFile);
+    String realURL = m_URL;
+    try {
+      realURL = m_env.substitute(realURL);
+    } catch (Exception ex) {
+    }
+    iq.setDatabaseURL(realURL);
+    String realUser = m_User;
+    try {
+      realUser = m_env.substitute(realUser);
+    } catch (Exception ex) {
+    }
+    iq.setUsername(realUser);
+    String realPass = m_Password;
+    try {
+      realPass = m_env.substitute(realPass);
+    } catch (Exception ex) {
+    }
+    iq.setPassword(realPass);
+    iq.setSparseData(m_CreateSparseData);
+
+    return iq;
+  }
+
+  /**
+   * Loads the result of a query in parallel. The range of the partition column
+   * is split into one interval per execution slot and each interval is loaded
+   * through its own connection. The nominal and string values found by the
+   * partitions are then merged into a single header.
+   * 
+   * @param iq the connection to determine the range with
+   * @param query the query to load
+   * @return the instances
+   * @throws Exception if the query fails
+   */
+  protected Instances retrievePartitioned(InstanceQuery iq, String query)
+    throws Exception {
+
+    String column = m_partitionColumn;
+    if (m_DataBaseConnection.getUpperCase()) {
+      column = column.toUpperCase();
+    }
+    String table = "(" + query + ") weka_partition";
+
+    iq.connectToDatabase();
+    ResultSet rs =
+      iq.select("SELECT MIN(" + column + "), MAX(" + column + ") FROM "
+        + table);
+    rs.next();
+    BigDecimal min = rs.getBigDecimal(1);
+    BigDecimal max = rs.getBigDecimal(2);
+    iq.close(rs);
+
+    int numSlots = m_numSlots;
+    if (numSlots <= 0) {
+      numSlots = Runtime.getRuntime().availableProcessors();
+    }
+    if (min == null || numSlots == 1) {
+      return iq.retrieveInstances(query);
+    }
+
+    // the boundaries between the partitions. The first partition also gets
+    // the rows where the column is NULL
+    List<String> bounds = new ArrayList<String>();
+    boolean integral = min.scale() <= 0 && max.scale() <= 0;
+    BigDecimal width = max.subtract(min);
+    for (int i = 1; i < numSlots; i++) {
+      BigDecimal bound =
+        min.add(width.multiply(new BigDecimal(i)).divide(
+          new BigDecimal(numSlots), 10, RoundingMode.FLOOR));
+      if (integral) {
+        bound = bound.setScale(0, RoundingMode.FLOOR);
+      }
+      String b = bound.stripTrailingZeros().toPlainString();
+      if (bound.compareTo(min) > 0 && !bounds.contains(b)) {
+        bounds.add(b);
+      }
+    }
+    List<String> queries = new ArrayList<String>();
+    for (int i = 0; i <= bounds.size(); i++) {
+      StringBuffer where = new StringBuffer();
+      if (i == 0) {
+        where.append("(" + column + " IS NULL OR ");
+      } else {
+        where.append("(" + column + " >= " + bounds.get(i - 1));
+        if (i < bounds.size()) {
+          where.append(" AND ");
+        }
+      }
+      if (i < bounds.size()) {
+        where.append(column + " < " + bounds.get(i));
+      }
+      where.append(")");
+      queries.add("SELECT * FROM " + table + " WHERE " + where);
+    }
+    if (queries.size() == 1) {
+      return iq.retrieveInstances(query);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(queries.size());
+    try {
+      List<Future<Instances>> futures = new ArrayList<Future<Instances>>();
+      for (final String partitionQuery : queries) {
+        futures.add(executor.submit(new Callable<Instances>() {
+          @Override
+          public Instances call() throws Exception {
+            InstanceQuery partition = newInstanceQuery();
+            try {
+              partition.connectToDatabase();
+              ResultSet partitionRows =
+                partition.openCursor(partitionQuery, m_fetchSize, 0);
+              Instances result =
+                InstanceQuery.retrieveInstances(partition, partitionRows);
+              partition.close(partitionRows);
+              return result;
+            } finally {
+              partition.disconnectFromDatabase();
+            }
+          }
+        }));
+      }
+      List<Instances> partitions = new ArrayList<Instances>();
+      for (Future<Instances> future : futures) {
+        partitions.add(future.get());
+      }
+      return mergePartitions(partitions);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Merges the instances loaded for several partitions of a query. The values
+   * of a nominal or string attribute are added to the merged header in the
+   * order in which the partitions first contain them, so a single query would
+   * give the same header if it returned the partitions' rows in order.
+   * 
+   * @param partitions the instances of each partition, all from the same
+   *          columns
+   * @return the merged instances
+   */
+  protected Instances mergePartitions(List<Instances> partitions) {
+    Instances first = partitions.get(0);
+    int numAttributes = first.numAttributes();
+    int numInstances = 0;
+    for (Instances partition : partitions) {
+      numInstances += partition.numInstances();
+    }
+
+    ArrayList<Attribute> attribInfo = new ArrayList<Attribute>();
+    // the merged index of each value of each partition's attributes
+    int[][][] indexes = new int[partitions.size()][numAttributes][];
+    for (int i = 0; i < numAttributes; i++) {
+      Attribute att = first.attribute(i);
+      if (att.isNominal()) {
+        ArrayList<String> values = new ArrayList<String>();
+        Hashtable<String, Integer> valueIndexes =
+          new Hashtable<String, Integer>();
+        for (int p = 0; p < partitions.size(); p++) {
+          Attribute partAtt = partitions.get(p).attribute(i);
+          indexes[p][i] = new int[partAtt.numValues()];
+          for (int v = 0; v < partAtt.numValues(); v++) {
+            Integer index = valueIndexes.get(partAtt.value(v));
+            if (index == null) {
+              index = values.size();
+              valueIndexes.put(partAtt.value(v), index);
+              values.add(partAtt.value(v));
+            }
+            indexes[p][i][v] = index;
+          }
+        }
+        attribInfo.add(new Attribute(att.name(), values));
+      } else if (att.isString()) {
+        Attribute merged = new Attribute(att.name(), (ArrayList<String>) null);
+        for (int p = 0; p < partitions.size(); p++) {
+          Attribute partAtt = partitions.get(p).attribute(i);
+          indexes[p][i] = new int[partAtt.numValues()];
+          for (int v = 0; v < partAtt.numValues(); v++) {
+            indexes[p][i][v] = merged.addStringValue(partAtt.value(v));
+          }
+        }
+        attribInfo.add(merged);
+      } else {
+        attribInfo.add(att.copy(att.name()));
+      }
+    }
+
+    Instances result =
+      new Instances(first.relationName(), attribInfo, numInstances);
+    for (int p = 0; p < partitions.size(); p++) {
+      for (Instance inst : partitions.get(p)) {
+        double[] vals = inst.toDoubleArray();
+        for (int i = 0; i < numAttributes; i++) {
+          if (indexes[p][i] != null && !Utils.isMissingValue(vals[i])) {
+            vals[i] = indexes[p][i][(int) vals[i]];
+          }
+        }
+        if (m_CreateSparseData) {
+          result.add(new SparseInstance(1.0, vals));
+        } else {
+          result.add(new DenseInstance(1.0, vals));
+        }
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Reads an instance from a database.
    * 
@@ -1464,6 +1841,21 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
       if (!m_DataBaseConnection.isConnected()) {
         connectToDatabase();
       }
+      // cursor mode: a single query whose rows are fetched in chunks of
+      // m_fetchSize, so neither LIMIT nor a key is needed
+      if (m_fetchSize > 0) {
+        if (m_cursor == null) {
+          m_cursor =
+            m_DataBaseConnection.openCursor(m_query + orderByClause(),
+              m_fetchSize, 0);
+        }
+        if (m_cursor.next()) {
+          return readInstance(m_cursor);
+        }
+        resetStructure();
+        m_DataBaseConnection.disconnectFromDatabase();
+        return null;
+      }
       // if no key columns specified by user, try to detect automatically
       if (m_firstTime && m_orderBy.size() == 0) {
         if (!checkForKey()) {
@@ -1548,6 +1940,19 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
       options.add(m_CustomPropsFile.toString());
     }
 
+    if (m_fetchSize > 0) {
+      options.add("-fetch-size");
+      options.add("" + m_fetchSize);
+    }
+
+    if (m_partitionColumn.length() > 0) {
+      options.add("-partition-column");
+      options.add(m_partitionColumn);
+    }
+
+    options.add("-num-slots");
+    options.add("" + m_numSlots);
+
     return options.toArray(new String[options.size()]);
   }
 
@@ -1595,6 +2000,22 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
         + "\tcontaining the database parameters.\n" + "\t(default: none)",
       "custom-props", 1, "-custom-props <file>"));
 
+    newVector.add(new Option(
+      "\tThe number of rows to fetch at a time when loading\n"
+        + "\tincrementally through a single cursor.\n"
+        + "\t(default: 0 = one LIMIT query per row)", "fetch-size", 1,
+      "-fetch-size <num>"));
+
+    newVector.add(new Option(
+      "\tNumeric column whose range is split across several\n"
+        + "\tconnections to load a batch in parallel.\n" + "\t(default: none)",
+      "partition-column", 1, "-partition-column <column>"));
+
+    newVector.add(new Option(
+      "\tThe number of connections for a parallel batch load.\n"
+        + "\t(default: 0 = number of cores)", "num-slots", 1,
+      "-num-slots <num>"));
+
     return newVector.elements();
   }
 
@@ -1645,6 +2066,26 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
    *  Sets incremental loading
    * </pre>
    * 
+   * <pre>
+   * -fetch-size &lt;num&gt;
+   *  The number of rows to fetch at a time when loading
+   *  incrementally through a single cursor.
+   *  (default: 0 = one LIMIT query per row)
+   * </pre>
+   * 
+   * <pre>
+   * -partition-column &lt;column&gt;
+   *  Numeric column whose range is split across several
+   *  connections to load a batch in parallel.
+   *  (default: none)
+   * </pre>
+   * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  The number of connections for a parallel batch load.
+   *  (default: 0 = number of cores)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the options
@@ -1699,6 +2140,22 @@ public class DatabaseLoader extends AbstractLoader implements BatchConverter,
     } else {
       setCustomPropsFile(new File(tmpStr));
     }
+
+    tmpStr = Utils.getOption("fetch-size", options);
+    if (tmpStr.length() == 0) {
+      setFetchSize(0);
+    } else {
+      setFetchSize(Integer.parseInt(tmpStr));
+    }
+
+    setPartitionColumn(Utils.getOption("partition-column", options));
+
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() == 0) {
+      setNumExecutionSlots(0);
+    } else {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    }
   }
 
   /**
@@ -39,8 +39,10 @@ import weka.gui.PasswordProperty;
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.text.SimpleDateFormat;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -351,6 +353,7 @@ public class DatabaseSaver extends AbstractSaver implements BatchConverter,
 
     if (getWriteMode() == CANCEL) {
       try {
+        m_DataBaseConnection.finishInserts();
         m_DataBaseConnection.update("DROP TABLE " + m_resolvedTableName);
         if (m_DataBaseConnection.tableExists(m_resolvedTableName)) {
           System.err.println("Table cannot be dropped.");
@@ -869,49 +872,39 @@ public class DatabaseSaver extends AbstractSaver implements BatchConverter,
   }
 
   /**
-   * inserts the given instance into the table.
+   * inserts the given instance into the table. Rows are sent to the database
+   * in batches, see DatabaseUtils.prepareInsert().
    *
    * @param inst the instance to insert
    * @throws Exception if something goes wrong
    */
   private void writeInstance(Instance inst) throws Exception {
 
-    StringBuffer insert = new StringBuffer();
-    insert.append("INSERT INTO ");
-    insert.append(m_resolvedTableName);
-    insert.append(" VALUES ( ");
+    int offset = m_id ? 1 : 0;
+    PreparedStatement insert =
+      m_DataBaseConnection.prepareInsert(m_resolvedTableName,
+        inst.numAttributes() + offset);
     if (m_id) {
-      insert.append(m_count);
-      insert.append(", ");
+      insert.setInt(1, m_count);
       m_count++;
     }
     for (int j = 0; j < inst.numAttributes(); j++) {
+      Attribute att = inst.attribute(j);
       if (inst.isMissing(j)) {
-        insert.append("NULL");
+        insert.setNull(j + offset + 1, att.isNumeric() && !att.isDate()
+          ? Types.DOUBLE : Types.VARCHAR);
       } else {
-        if ((inst.attribute(j)).isDate()) {
-          insert.append("'" + m_DateFormat.format((long) inst.value(j)) + "'");
-        } else if ((inst.attribute(j)).isNumeric()) {
-          insert.append(inst.value(j));
+        if (att.isDate()) {
+          insert.setString(j + offset + 1,
+            m_DateFormat.format((long) inst.value(j)));
+        } else if (att.isNumeric()) {
+          insert.setDouble(j + offset + 1, inst.value(j));
         } else {
-          String stringInsert = "'" + inst.stringValue(j) + "'";
-          if (stringInsert.length() > 2) {
-            stringInsert = stringInsert.replaceAll("''", "'");
-          }
-          insert.append(stringInsert);
+          insert.setString(j + offset + 1, inst.stringValue(j));
         }
       }
-      if (j != inst.numAttributes() - 1) {
-        insert.append(", ");
-      }
-    }
-    insert.append(" )");
-    // System.out.println(insert.toString());
-    if (m_DataBaseConnection.update(insert.toString()) < 1) {
-      throw new IOException("Tuple cannot be inserted.");
-    } else {
-      m_DataBaseConnection.close();
     }
+    m_DataBaseConnection.addInsert();
   }
 
   /**
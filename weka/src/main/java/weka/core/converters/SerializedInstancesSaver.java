@@ -21,12 +21,15 @@
 
 package weka.core.converters;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.InstancesCodec;
+import weka.core.OptionMetadata;
 import weka.core.RevisionUtils;
 
 /**
@@ -38,6 +41,10 @@ import weka.core.RevisionUtils;
  <!-- options-start -->
  * Valid options are: <p/>
  * 
+ * <pre> -compact
+ *  Write the instances in the compact encoding of InstancesCodec, which
+ *  older versions of Weka can't read</pre>
+ * 
  * <pre> -i &lt;the input file&gt;
  * The input file</pre>
  * 
@@ -59,6 +66,9 @@ public class SerializedInstancesSaver
   
   /** the output stream. */
   protected ObjectOutputStream m_objectstream;
+
+  /** whether to write the instances in the compact encoding. */
+  protected boolean m_compactEncoding = false;
   
   /** Constructor. */  
   public SerializedInstancesSaver(){
@@ -75,6 +85,41 @@ public class SerializedInstancesSaver
     return "Serializes the instances to a file with extension bsi.";
   }
  
+  /**
+   * Sets whether to write the instances in the compact encoding of
+   * InstancesCodec rather than with plain Java serialization.
+   * 
+   * @param value true to use the compact encoding
+   */
+  @OptionMetadata(displayName = "Compact encoding",
+    description = "Write the instances in the compact encoding of "
+      + "InstancesCodec, which\nolder versions of Weka can't read",
+    commandLineParamName = "compact", commandLineParamSynopsis = "-compact",
+    commandLineParamIsFlag = true, displayOrder = 1)
+  public void setCompactEncoding(boolean value) {
+    m_compactEncoding = value;
+  }
+
+  /**
+   * Gets whether the instances are written in the compact encoding.
+   * 
+   * @return true if the compact encoding is used
+   */
+  public boolean getCompactEncoding() {
+    return m_compactEncoding;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String compactEncodingTipText() {
+    return "Write the instances in the compact encoding of InstancesCodec "
+      + "(faster and smaller, but older versions of Weka can't read it).";
+  }
+
   /**
    * Returns a description of the file type.
    *
@@ -132,7 +177,7 @@ public class SerializedInstancesSaver
   public void setDestination(OutputStream output) throws IOException {
     super.setDestination(output);
     
-    m_objectstream = new ObjectOutputStream(output);
+    m_objectstream = new ObjectOutputStream(new BufferedOutputStream(output));
   }
   
   /** 
@@ -153,7 +198,12 @@ public class SerializedInstancesSaver
       throw new IOException("No output for serialization.");
 
     setWriteMode(WRITE);
-    m_objectstream.writeObject(getInstances());
+    if (getCompactEncoding()) {
+      // datasets the codec can't encode are serialized as usual
+      m_objectstream.writeObject(InstancesCodec.replaceObject(getInstances()));
+    } else {
+      m_objectstream.writeObject(getInstances());
+    }
     m_objectstream.flush();
     m_objectstream.close();
     setWriteMode(WAIT);
@@ -0,0 +1,202 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ApproximatePerformanceStats.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Vector;
+
+import weka.core.RevisionUtils;
+
+/**
+ * The class that measures the performance of an approximate
+ * nearest neighbour search algorithm. In addition to the point
+ * and coordinate counts, it keeps track of the recall of the
+ * queries that were checked against an exact search.
+ *
+ * @version $Revision$
+ */
+public class ApproximatePerformanceStats
+  extends PerformanceStats {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 3516807339417806342L;
+
+  /** The number of queries that were checked against an exact search. */
+  protected int m_NumRecallChecks;
+
+  /** The sum of the recall values of the checked queries. */
+  protected double m_SumRecall;
+
+  /** The squared sum of the recall values of the checked queries. */
+  protected double m_SumSqRecall;
+
+  /** The min and max recall of the checked queries. */
+  protected double m_MinRecall, m_MaxRecall;
+
+  /**
+   * Default constructor.
+   */
+  public ApproximatePerformanceStats() {
+    reset();
+  }
+
+  /**
+   * Resets all internal fields/counters.
+   */
+  public void reset() {
+    super.reset();
+    m_NumRecallChecks = 0;
+    m_SumRecall = m_SumSqRecall = 0;
+    m_MinRecall = m_MaxRecall = Double.NaN;
+  }
+
+  /**
+   * Adds the recall of a query that was checked against an exact
+   * search.
+   *
+   * @param recall	the recall, between 0 and 1
+   */
+  public void addRecall(double recall) {
+    m_NumRecallChecks++;
+    m_SumRecall += recall;
+    m_SumSqRecall += recall*recall;
+    if (Double.isNaN(m_MinRecall) || (recall < m_MinRecall))
+      m_MinRecall = recall;
+    if (Double.isNaN(m_MaxRecall) || (recall > m_MaxRecall))
+      m_MaxRecall = recall;
+  }
+
+  /**
+   * Returns the number of queries that were checked against an exact
+   * search.
+   *
+   * @return The number of checked queries.
+   */
+  public int getNumRecallChecks() {
+    return m_NumRecallChecks;
+  }
+
+  /**
+   * Returns the mean recall of the checked queries.
+   *
+   * @return The mean recall, NaN if no queries were checked.
+   */
+  public double getMeanRecall() {
+    if (m_NumRecallChecks == 0)
+      return Double.NaN;
+    return m_SumRecall/(double)m_NumRecallChecks;
+  }
+
+  /**
+   * Returns the standard deviation of the recall of the checked queries.
+   *
+   * @return The standard deviation of the recall.
+   */
+  public double getStdDevRecall() {
+    return Math.sqrt((m_SumSqRecall - (m_SumRecall*m_SumRecall)/(double)m_NumRecallChecks)/(m_NumRecallChecks-1));
+  }
+
+  /**
+   * Returns the minimum recall of the checked queries.
+   *
+   * @return The minimum recall, NaN if no queries were checked.
+   */
+  public double getMinRecall() {
+    return m_MinRecall;
+  }
+
+  /**
+   * Returns the maximum recall of the checked queries.
+   *
+   * @return The maximum recall, NaN if no queries were checked.
+   */
+  public double getMaxRecall() {
+    return m_MaxRecall;
+  }
+
+  /**
+   * Returns an enumeration of the additional measure names.
+   *
+   * @return An enumeration of the measure names.
+   */
+  public Enumeration<String> enumerateMeasures() {
+    Vector<String> newVector = new Vector<String>();
+
+    newVector.addAll(Collections.list(super.enumerateMeasures()));
+
+    newVector.addElement("measureNumRecallChecks");
+    newVector.addElement("measureMeanRecall");
+    newVector.addElement("measureStdDevRecall");
+    newVector.addElement("measureMinRecall");
+    newVector.addElement("measureMaxRecall");
+
+    return newVector.elements();
+  }
+
+  /**
+   * Returns the value of the named measure.
+   *
+   * @param additionalMeasureName The name of the measure to query for
+   * its value.
+   * @return The value of the named measure.
+   * @throws IllegalArgumentException If the named measure is not
+   * supported.
+   */
+  public double getMeasure(String additionalMeasureName) throws IllegalArgumentException {
+    if (additionalMeasureName.compareToIgnoreCase("measureNumRecallChecks") == 0) {
+      return (double) getNumRecallChecks();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureMeanRecall") == 0) {
+      return getMeanRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureStdDevRecall") == 0) {
+      return getStdDevRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureMinRecall") == 0) {
+      return getMinRecall();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureMaxRecall") == 0) {
+      return getMaxRecall();
+    } else {
+      return super.getMeasure(additionalMeasureName);
+    }
+  }
+
+  /**
+   * Returns a string representation of the statistics.
+   *
+   * @return The statistics as string.
+   */
+  public String getStats() {
+    StringBuffer buf = new StringBuffer(super.getStats());
+
+    buf.append("Recall:    "+getMinRecall()+", "+getMaxRecall()+
+	       ","+getNumRecallChecks()+","+getMeanRecall()+", "+getStdDevRecall()+"\n");
+
+    return buf.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
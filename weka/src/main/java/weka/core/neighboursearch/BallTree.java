@@ -85,6 +85,10 @@ import weka.core.neighboursearch.balltrees.TopDownConstructor;
  *  The construction method to employ. Either TopDown or BottomUp
  *  (default: weka.core.TopDownConstructor)</pre>
  * 
+ * <pre> -U
+ *  Use the logarithmic method for incremental updates
+ *  (static trees that get merged and rebuilt as they grow).</pre>
+ * 
  <!-- options-end --> 
  *
  * @author Ashraf M. Kibriya (amk14[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -117,6 +121,20 @@ public class BallTree
   
   /** The constructor method to use to build the tree. */
   protected BallTreeConstructor m_TreeConstructor = new TopDownConstructor();
+
+  /** Whether to use the logarithmic method for incremental updates. */
+  protected boolean m_LogarithmicUpdates = false;
+
+  /**
+   * The roots of the static trees holding the instances that were added
+   * with the logarithmic method since the last full build. Each tree covers
+   * a contiguous portion of the index list after the one of the main tree,
+   * the trees get smaller towards the end of the list.
+   */
+  protected Vector<BallNode> m_Forest = new Vector<BallNode>();
+
+  /** The stats of the main tree, as reported by the constructor. */
+  protected int m_NumNodes, m_NumLeaves, m_MaxDepth;
   
   /** Array holding the distances of the nearest neighbours. It is filled up
    *  both by nearestNeighbour() and kNearestNeighbours(). 
@@ -224,6 +242,10 @@ public class BallTree
                       (EuclideanDistance)m_DistanceFunction);
     
     m_Root = m_TreeConstructor.buildTree();
+    m_NumNodes = m_TreeConstructor.getNumNodes();
+    m_NumLeaves = m_TreeConstructor.getNumLeaves();
+    m_MaxDepth = m_TreeConstructor.getMaxDepth();
+    m_Forest = new Vector<BallNode>();
   }
    
   /**
@@ -246,6 +268,10 @@ public class BallTree
       m_Stats.searchStart();
     
     nearestNeighbours(heap, m_Root, target, k);
+    if (m_Forest != null) {
+      for (BallNode root : m_Forest)
+        nearestNeighbours(heap, root, target, k);
+    }
     
     if(m_Stats!=null)
       m_Stats.searchFinish();
@@ -408,7 +434,56 @@ public class BallTree
    */
   public void update(Instance ins) throws Exception {
     addInstanceInfo(ins);
-    m_InstList = m_TreeConstructor.addInstance(m_Root, ins);    
+    if (m_LogarithmicUpdates)
+      addInstanceToForest(ins);
+    else if (m_Forest != null && m_Forest.size() > 0)
+      buildTree();
+    else
+      m_InstList = m_TreeConstructor.addInstance(m_Root, ins);    
+  }
+
+  /**
+   * Adds an instance using the logarithmic method: the instance becomes a
+   * static tree of its own, which gets merged with the trailing trees that
+   * are not larger than it by rebuilding them as a single tree. Once the
+   * merged tree is as large as the main tree, the whole BallTree is rebuilt.
+   * This way every instance takes part in O(log n) rebuilds, instead of the
+   * main tree degrading with the insertions.
+   * NOTE: This should not be called by outside classes, outside classes 
+   * should instead call update(Instance) method.
+   * 
+   * @param ins The instance to add, which has to be the last instance of
+   * the training set.
+   * @throws Exception If the instance cannot be added to the tree.
+   */
+  protected void addInstanceToForest(Instance ins) throws Exception {
+    int index = m_Instances.numInstances() - 1;
+    int start;
+
+    if (m_Forest == null)
+      m_Forest = new Vector<BallNode>();
+
+    // the index list keeps some spare room to avoid copying it every time
+    if (index >= m_InstList.length) {
+      int[] instList = new int[Math.max(index + 1, m_InstList.length * 3 / 2)];
+      System.arraycopy(m_InstList, 0, instList, 0, m_InstList.length);
+      m_InstList = instList;
+    }
+    m_InstList[index] = index;
+
+    start = index;
+    while (m_Forest.size() > 0
+        && m_Forest.lastElement().numInstances() <= index - start + 1) {
+      start = m_Forest.lastElement().m_Start;
+      m_Forest.remove(m_Forest.size() - 1);
+    }
+
+    if (m_Forest.size() == 0 && index - start + 1 >= m_Root.numInstances()) {
+      buildTree();
+    } else {
+      m_TreeConstructor.setInstanceList(m_InstList);
+      m_Forest.add(m_TreeConstructor.buildTree(start, index));
+    }
   }
   
   /** 
@@ -463,13 +538,47 @@ public class BallTree
     m_TreeConstructor = constructor;
   }
   
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String logarithmicUpdatesTipText() {
+    return "Whether to use the logarithmic method for incremental updates: "
+      + "new instances are stored in a number of static trees that get "
+      + "merged and rebuilt as they grow, rather than being inserted into "
+      + "the existing tree, which gets unbalanced and costs time linear "
+      + "in the number of instances for each insertion.";
+  }
+
+  /**
+   * Sets whether to use the logarithmic method for incremental updates.
+   * 
+   * @param value 	true to use the logarithmic method
+   */
+  public void setLogarithmicUpdates(boolean value) {
+    m_LogarithmicUpdates = value;
+  }
+
+  /**
+   * Gets whether to use the logarithmic method for incremental updates.
+   * 
+   * @return 		true if the logarithmic method is used
+   */
+  public boolean getLogarithmicUpdates() {
+    return m_LogarithmicUpdates;
+  }
+
   /**
    * Returns the size of the tree.
    * 
    * @return 		the size of the tree
    */
   public double measureTreeSize() {
-    return m_TreeConstructor.getNumNodes();
+    if (m_Forest == null || m_Forest.size() == 0)
+      return m_TreeConstructor.getNumNodes();
+    return m_NumNodes + countForest()[0];
   }
   
   /**
@@ -478,7 +587,9 @@ public class BallTree
    * @return 		the number of leaves
    */
   public double measureNumLeaves() {
-    return m_TreeConstructor.getNumLeaves();
+    if (m_Forest == null || m_Forest.size() == 0)
+      return m_TreeConstructor.getNumLeaves();
+    return m_NumLeaves + countForest()[1];
   }
   
   /**
@@ -487,7 +598,44 @@ public class BallTree
    * @return 		the number of rules
    */
   public double measureMaxDepth() {
-    return m_TreeConstructor.getMaxDepth();
+    if (m_Forest == null || m_Forest.size() == 0)
+      return m_TreeConstructor.getMaxDepth();
+    return Math.max(m_MaxDepth, countForest()[2]);
+  }
+
+  /**
+   * Counts the nodes of the static trees from incremental updates.
+   * 
+   * @return The number of nodes, the number of leaves and the maximum depth
+   * of the trees.
+   */
+  protected int[] countForest() {
+    int[] result = new int[3];
+
+    for (BallNode root : m_Forest)
+      countNodes(root, 0, result);
+
+    return result;
+  }
+
+  /**
+   * Recursively counts the nodes of a (sub)tree.
+   * 
+   * @param node The node to start counting from.
+   * @param depth The depth of the supplied node.
+   * @param counts The number of nodes, the number of leaves and the maximum
+   * depth found so far.
+   */
+  protected void countNodes(BallNode node, int depth, int[] counts) {
+    counts[0]++;
+    if (depth > counts[2])
+      counts[2] = depth;
+    if (node.m_Left != null && node.m_Right != null) {
+      countNodes(node.m_Left, depth + 1, counts);
+      countNodes(node.m_Right, depth + 1, counts);
+    } else {
+      counts[1]++;
+    }
   }
     
   /**
@@ -556,6 +704,11 @@ public class BallTree
 	+ "\t(default: weka.core.TopDownConstructor)",
 	"C", 1, "-C <classname and options>"));
 
+    newVector.addElement(new Option(
+	"\tUse the logarithmic method for incremental updates\n"
+	+ "\t(static trees that get merged and rebuilt as they grow).",
+	"U", 0, "-U"));
+
     newVector.addAll(Collections.list(super.listOptions()));
     
     return newVector.elements();
@@ -571,6 +724,10 @@ public class BallTree
    *  The construction method to employ. Either TopDown or BottomUp
    *  (default: weka.core.TopDownConstructor)</pre>
    * 
+   * <pre> -U
+   *  Use the logarithmic method for incremental updates
+   *  (static trees that get merged and rebuilt as they grow).</pre>
+   * 
    <!-- options-end --> 
    * 
    * @param options 	the list of options as an array of strings
@@ -597,6 +754,8 @@ public class BallTree
     else {
       setBallTreeConstructor(new TopDownConstructor());  
     }
+
+    setLogarithmicUpdates(Utils.getFlag('U', options));
     
     Utils.checkForRemainingOptions(options);
   }
@@ -616,6 +775,9 @@ public class BallTree
 	(m_TreeConstructor.getClass().getName() + " " +
 	 Utils.joinOptions(m_TreeConstructor.getOptions())).trim());
 
+    if (getLogarithmicUpdates())
+      result.add("-U");
+
     return result.toArray(new String[result.size()]);
   }
   
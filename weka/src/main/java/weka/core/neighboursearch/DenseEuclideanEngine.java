@@ -0,0 +1,500 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    DenseEuclideanEngine.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.NormalizableDistance;
+import weka.core.Range;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Brute force distance engine for the EuclideanDistance function. The
+ * training data is normalized once into a contiguous, row-major matrix that
+ * only holds the attributes that take part in the distance calculation, so
+ * that computing the (squared) distance of a query to every training
+ * instance becomes a tight loop over primitive doubles instead of a sequence
+ * of Instance.value() calls, attribute type look-ups and range
+ * normalizations. <p/>
+ *
+ * Missing values are stored as NaN and flagged per row, so rows (and queries)
+ * without any missing values take a branch-free path. The attributes are
+ * visited in the same order and normalized in the same way as
+ * NormalizableDistance does, hence the distances are identical to the ones
+ * returned by EuclideanDistance.distance(Instance, Instance, double). <p/>
+ *
+ * The engine tracks the ranges of the distance function as well as the
+ * number of instances in the dataset: new instances get appended, changed
+ * ranges trigger a re-normalization of the matrix. Tracking the ranges can be
+ * turned off, in which case the matrix only gets re-normalized by an explicit
+ * call to rebuild().
+ *
+ * @version $Revision$
+ */
+public class DenseEuclideanEngine
+  implements Serializable, RevisionHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3462870416935411452L;
+
+  /** the cut-off value gets checked every 16 columns. */
+  protected static final int CUTOFF_CHECK_MASK = 15;
+
+  /** the distance function the engine mirrors. */
+  protected EuclideanDistance m_DistanceFunction;
+
+  /** the dataset the matrix is based on. */
+  protected Instances m_Data;
+
+  /** the attribute indices that make up the columns of the matrix. */
+  protected int[] m_Columns;
+
+  /** whether a column is nominal (otherwise numeric). */
+  protected boolean[] m_Nominal;
+
+  /** whether there are any nominal columns at all. */
+  protected boolean m_HasNominal;
+
+  /** whether to normalize the numeric columns. */
+  protected boolean m_Normalize;
+
+  /** the minimum of each column (numeric columns only). */
+  protected double[] m_Min;
+
+  /** the maximum of each column (numeric columns only). */
+  protected double[] m_Max;
+
+  /** the width of each column (numeric columns only). */
+  protected double[] m_Width;
+
+  /** the ranges the matrix was normalized with. */
+  protected double[][] m_Ranges;
+
+  /** the (normalized) values, row-major. */
+  protected double[] m_Matrix;
+
+  /** whether a row contains missing values. */
+  protected boolean[] m_RowMissing;
+
+  /** the number of rows in the matrix. */
+  protected int m_NumRows;
+
+  /** the normalized values of the current query. */
+  protected double[] m_Query;
+
+  /** whether the current query contains missing values. */
+  protected boolean m_QueryMissing;
+
+  /** whether to re-normalize the matrix whenever the ranges change. */
+  protected boolean m_TrackRanges = true;
+
+  /**
+   * Initializes the engine.
+   *
+   * @param df the distance function to mirror
+   */
+  public DenseEuclideanEngine(EuclideanDistance df) {
+    m_DistanceFunction = df;
+  }
+
+  /**
+   * Returns whether the engine can be used for the given distance function.
+   * Only the plain EuclideanDistance is supported, since sub-classes may
+   * change the way the distance gets computed.
+   *
+   * @param df the distance function to check
+   * @return true if the engine supports the distance function
+   */
+  public static boolean isSupported(Object df) {
+    return (df != null) && (df.getClass() == EuclideanDistance.class);
+  }
+
+  /**
+   * Sets the dataset to use and (re-)builds the matrix.
+   *
+   * @param data the dataset, must be the same as used by the distance
+   *          function
+   * @throws Exception if the ranges of the distance function cannot be
+   *           obtained
+   */
+  public void setInstances(Instances data) throws Exception {
+    Range range;
+    ArrayList<Integer> columns;
+    int i;
+    int type;
+
+    m_Data = data;
+
+    range = new Range(m_DistanceFunction.getAttributeIndices());
+    range.setInvert(m_DistanceFunction.getInvertSelection());
+    range.setUpper(data.numAttributes() - 1);
+    columns = new ArrayList<Integer>();
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (i == data.classIndex() || !range.isInRange(i)) {
+        continue;
+      }
+      type = data.attribute(i).type();
+      if ((type == Attribute.NUMERIC) || (type == Attribute.NOMINAL)) {
+        columns.add(i);
+      }
+    }
+
+    m_Columns = new int[columns.size()];
+    m_Nominal = new boolean[columns.size()];
+    m_HasNominal = false;
+    for (i = 0; i < m_Columns.length; i++) {
+      m_Columns[i] = columns.get(i);
+      m_Nominal[i] = data.attribute(m_Columns[i]).isNominal();
+      m_HasNominal = m_HasNominal || m_Nominal[i];
+    }
+    m_Query = new double[m_Columns.length];
+
+    rebuild();
+  }
+
+  /**
+   * Sets whether to re-normalize the matrix whenever the ranges of the
+   * distance function change.
+   *
+   * @param value if true, the ranges get tracked
+   */
+  public void setTrackRanges(boolean value) {
+    m_TrackRanges = value;
+  }
+
+  /**
+   * Returns whether the matrix gets re-normalized whenever the ranges of the
+   * distance function change.
+   *
+   * @return true if the ranges get tracked
+   */
+  public boolean getTrackRanges() {
+    return m_TrackRanges;
+  }
+
+  /**
+   * Copies the current ranges of the distance function and re-normalizes all
+   * the rows.
+   *
+   * @throws Exception if the ranges cannot be obtained
+   */
+  public void rebuild() throws Exception {
+    double[][] ranges;
+    int i;
+    int n;
+
+    m_Normalize = !m_DistanceFunction.getDontNormalize();
+    ranges = m_DistanceFunction.getRanges();
+    m_Ranges = new double[ranges.length][];
+    for (i = 0; i < ranges.length; i++) {
+      m_Ranges[i] = ranges[i].clone();
+    }
+
+    m_Min = new double[m_Columns.length];
+    m_Max = new double[m_Columns.length];
+    m_Width = new double[m_Columns.length];
+    for (i = 0; i < m_Columns.length; i++) {
+      n = m_Columns[i];
+      m_Min[i] = m_Ranges[n][NormalizableDistance.R_MIN];
+      m_Max[i] = m_Ranges[n][NormalizableDistance.R_MAX];
+      m_Width[i] = m_Ranges[n][NormalizableDistance.R_WIDTH];
+    }
+
+    m_NumRows = 0;
+    m_Matrix = new double[Math.max(1, m_Data.numInstances())
+      * m_Columns.length];
+    m_RowMissing = new boolean[Math.max(1, m_Data.numInstances())];
+    appendRows();
+  }
+
+  /**
+   * Appends all the instances of the dataset that are not yet part of the
+   * matrix.
+   */
+  protected void appendRows() {
+    int numRows;
+    double[] matrix;
+    boolean[] missing;
+
+    numRows = m_Data.numInstances();
+    if (numRows * m_Columns.length > m_Matrix.length) {
+      matrix = new double[Math.max(numRows, m_NumRows * 3 / 2)
+        * m_Columns.length];
+      System.arraycopy(m_Matrix, 0, matrix, 0, m_NumRows * m_Columns.length);
+      m_Matrix = matrix;
+    }
+    if (numRows > m_RowMissing.length) {
+      missing = new boolean[Math.max(numRows, m_NumRows * 3 / 2)];
+      System.arraycopy(m_RowMissing, 0, missing, 0, m_NumRows);
+      m_RowMissing = missing;
+    }
+
+    while (m_NumRows < numRows) {
+      m_RowMissing[m_NumRows] = normalize(m_Data.instance(m_NumRows),
+        m_Matrix, m_NumRows * m_Columns.length);
+      m_NumRows++;
+    }
+  }
+
+  /**
+   * Makes sure that the matrix reflects the current state of the dataset and
+   * (if tracked) of the ranges of the distance function.
+   *
+   * @throws Exception if the ranges cannot be obtained
+   */
+  public void synchronize() throws Exception {
+    double[][] ranges;
+    boolean changed;
+    int i;
+
+    if (!m_TrackRanges) {
+      if (m_Data.numInstances() < m_NumRows) {
+        rebuild();
+      } else if (m_Data.numInstances() > m_NumRows) {
+        appendRows();
+      }
+      return;
+    }
+
+    ranges = m_DistanceFunction.getRanges();
+    changed = (m_Normalize == m_DistanceFunction.getDontNormalize())
+      || (ranges.length != m_Ranges.length);
+    for (i = 0; !changed && (i < m_Columns.length); i++) {
+      changed = !Arrays.equals(ranges[m_Columns[i]],
+        m_Ranges[m_Columns[i]]);
+    }
+
+    if (changed || (m_Data.numInstances() < m_NumRows)) {
+      rebuild();
+    } else if (m_Data.numInstances() > m_NumRows) {
+      appendRows();
+    }
+  }
+
+  /**
+   * Normalizes the instance and stores the values in the given array.
+   *
+   * @param inst the instance to normalize
+   * @param values the array to store the values in
+   * @param offset the offset in the array
+   * @return true if the instance has missing values in any of the columns
+   */
+  protected boolean normalize(Instance inst, double[] values, int offset) {
+    boolean result;
+    double value;
+    int i;
+
+    result = false;
+    for (i = 0; i < m_Columns.length; i++) {
+      value = inst.value(m_Columns[i]);
+      if (Utils.isMissingValue(value)) {
+        result = true;
+        value = Double.NaN;
+      } else if (!m_Nominal[i] && m_Normalize) {
+        if (Double.isNaN(m_Min[i]) || (m_Max[i] == m_Min[i])) {
+          value = 0;
+        } else {
+          value = (value - m_Min[i]) / m_Width[i];
+        }
+      }
+      values[offset + i] = value;
+    }
+
+    return result;
+  }
+
+  /**
+   * Prepares the engine for computing the distances to the given query.
+   *
+   * @param query the query instance
+   * @throws Exception if the ranges cannot be obtained
+   */
+  public void setQuery(Instance query) throws Exception {
+    synchronize();
+    m_QueryMissing = normalize(query, m_Query, 0);
+  }
+
+  /**
+   * Returns the distance function the engine mirrors.
+   *
+   * @return the distance function
+   */
+  public EuclideanDistance getDistanceFunction() {
+    return m_DistanceFunction;
+  }
+
+  /**
+   * Returns the dataset the engine is based on.
+   *
+   * @return the dataset, null if not yet set
+   */
+  public Instances getInstances() {
+    return m_Data;
+  }
+
+  /**
+   * Returns the number of columns used in the distance calculation.
+   *
+   * @return the number of columns
+   */
+  public int numColumns() {
+    return m_Columns.length;
+  }
+
+  /**
+   * Calculates the squared distance between the current query and the
+   * specified row, the same way EuclideanDistance.distance(Instance,
+   * Instance, double) does.
+   *
+   * @param row the index of the training instance
+   * @param cutOffValue if the distance becomes larger than this value,
+   *          Double.POSITIVE_INFINITY is returned
+   * @return the squared distance or Double.POSITIVE_INFINITY
+   */
+  public double distance(int row, double cutOffValue) {
+    return distance(m_Query, 0, m_QueryMissing, m_Matrix, row
+      * m_Columns.length, m_RowMissing[row], cutOffValue);
+  }
+
+  /**
+   * Calculates the squared distance between two rows of the matrix.
+   *
+   * @param row1 the index of the first training instance
+   * @param row2 the index of the second training instance
+   * @param cutOffValue if the distance becomes larger than this value,
+   *          Double.POSITIVE_INFINITY is returned
+   * @return the squared distance or Double.POSITIVE_INFINITY
+   */
+  public double distance(int row1, int row2, double cutOffValue) {
+    return distance(m_Matrix, row1 * m_Columns.length, m_RowMissing[row1],
+      m_Matrix, row2 * m_Columns.length, m_RowMissing[row2], cutOffValue);
+  }
+
+  /**
+   * Calculates the squared distance between two vectors of normalized
+   * values.
+   *
+   * @param values1 the array with the first vector
+   * @param offset1 the offset of the first vector
+   * @param missing1 whether the first vector has missing values
+   * @param values2 the array with the second vector
+   * @param offset2 the offset of the second vector
+   * @param missing2 whether the second vector has missing values
+   * @param cutOffValue if the distance becomes larger than this value,
+   *          Double.POSITIVE_INFINITY is returned
+   * @return the squared distance or Double.POSITIVE_INFINITY
+   */
+  protected double distance(double[] values1, int offset1, boolean missing1,
+    double[] values2, int offset2, boolean missing2, double cutOffValue) {
+    double distance;
+    double diff;
+    int numCols;
+    int i;
+
+    numCols = m_Columns.length;
+    distance = 0;
+
+    if (!m_HasNominal && !missing1 && !missing2) {
+      for (i = 0; i < numCols; i++) {
+        diff = values1[offset1 + i] - values2[offset2 + i];
+        distance += diff * diff;
+        if (((i & CUTOFF_CHECK_MASK) == 0) && (distance > cutOffValue)) {
+          return Double.POSITIVE_INFINITY;
+        }
+      }
+    } else {
+      for (i = 0; i < numCols; i++) {
+        diff = difference(i, values1[offset1 + i], values2[offset2 + i]);
+        distance += diff * diff;
+        if (((i & CUTOFF_CHECK_MASK) == 0) && (distance > cutOffValue)) {
+          return Double.POSITIVE_INFINITY;
+        }
+      }
+    }
+
+    if (distance > cutOffValue) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    return distance;
+  }
+
+  /**
+   * Computes the difference between two (already normalized) values of a
+   * column, taking nominal columns and missing values into account.
+   *
+   * @param col the column index
+   * @param val1 the first value
+   * @param val2 the second value
+   * @return the difference
+   */
+  protected double difference(int col, double val1, double val2) {
+    boolean missing1;
+    boolean missing2;
+    double diff;
+
+    missing1 = Double.isNaN(val1);
+    missing2 = Double.isNaN(val2);
+
+    if (m_Nominal[col]) {
+      if (missing1 || missing2 || ((int) val1 != (int) val2)) {
+        return 1;
+      } else {
+        return 0;
+      }
+    }
+
+    if (!missing1 && !missing2) {
+      return val1 - val2;
+    }
+
+    if (missing1 && missing2) {
+      return m_Normalize ? 1 : (m_Max[col] - m_Min[col]);
+    }
+
+    diff = missing2 ? val1 : val2;
+    if (m_Normalize) {
+      return (diff < 0.5) ? 1.0 - diff : diff;
+    } else if ((m_Max[col] - diff) > (diff - m_Min[col])) {
+      return m_Max[col] - diff;
+    } else {
+      return diff - m_Min[col];
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
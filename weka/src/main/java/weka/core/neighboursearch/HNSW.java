@@ -0,0 +1,1412 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    HNSW.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+
+/**
+ <!-- globalinfo-start -->
+ * Class implementing approximate nearest neighbour search with a Hierarchical Navigable Small World (HNSW) graph. The instances are organized in a hierarchy of proximity graphs; a search starts at the sparse top layer and greedily descends to the bottom layer, which contains all the instances. The neighbours returned are not guaranteed to be the exact nearest ones; the trade-off between speed and accuracy is controlled by the size of the dynamic candidate lists used at construction (efConstruction) and search time (efSearch). New instances are inserted incrementally. For the EuclideanDistance, the graph is navigated with a dense, normalized copy of the data (normalized with the ranges at the time the copy was last refreshed, which happens whenever the data has doubled in size); the neighbours returned are ranked by the actual distance function.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * Yu. A. Malkov, D. A. Yashunin (2016). Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs. CoRR. abs/1603.09320.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;article{Malkov2016,
+ *    author = {Yu. A. Malkov and D. A. Yashunin},
+ *    journal = {CoRR},
+ *    title = {Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs},
+ *    volume = {abs/1603.09320},
+ *    year = {2016},
+ *    URL = {http://arxiv.org/abs/1603.09320}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -M &lt;num&gt;
+ *  The maximum number of connections per instance and layer
+ *  (twice as many on the bottom layer).
+ *  (default: 16)</pre>
+ *
+ * <pre> -C &lt;num&gt;
+ *  The size of the candidate list used during construction.
+ *  (default: 100)</pre>
+ *
+ * <pre> -E &lt;num&gt;
+ *  The size of the candidate list used during search.
+ *  (default: 50)</pre>
+ *
+ * <pre> -R &lt;num&gt;
+ *  Checks every n-th query against a linear search to
+ *  compute the recall, if performance statistics are
+ *  calculated (0 turns the check off).
+ *  (default: 0)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  The seed for choosing the layers of the instances.
+ *  (default: 1)</pre>
+ *
+ * <pre> -D
+ *  Does not use a dense copy of the data for the EuclideanDistance.</pre>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Distance function to use.
+ *  (default: weka.core.EuclideanDistance)</pre>
+ *
+ * <pre> -P
+ *  Calculate performance statistics.</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class HNSW
+  extends NearestNeighbourSearch
+  implements TechnicalInformationHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -1813373582627411683L;
+
+  /**
+   * A binary heap of (distance, index) pairs backed by primitive arrays.
+   * Depending on the ordering, the root is either the smallest or the
+   * largest distance.
+   */
+  protected static class DistanceHeap
+    implements Serializable, RevisionHandler {
+
+    /** for serialization. */
+    private static final long serialVersionUID = 1880624398853716624L;
+
+    /** the distances. */
+    protected double[] m_Keys;
+
+    /** the instance indices. */
+    protected int[] m_Values;
+
+    /** the number of elements in the heap. */
+    protected int m_Size;
+
+    /** whether the root holds the largest distance. */
+    protected boolean m_Max;
+
+    /**
+     * Initializes the heap.
+     *
+     * @param capacity the initial capacity
+     * @param max whether the root holds the largest distance
+     */
+    public DistanceHeap(int capacity, boolean max) {
+      m_Keys = new double[Math.max(capacity, 2)];
+      m_Values = new int[m_Keys.length];
+      m_Max = max;
+    }
+
+    /**
+     * Returns whether the element at position i belongs above the one at
+     * position j.
+     *
+     * @param i the first position
+     * @param j the second position
+     * @return true if i is closer to the root than j
+     */
+    protected boolean above(int i, int j) {
+      return m_Max ? (m_Keys[i] > m_Keys[j]) : (m_Keys[i] < m_Keys[j]);
+    }
+
+    /**
+     * Swaps the elements at the two positions.
+     *
+     * @param i the first position
+     * @param j the second position
+     */
+    protected void swap(int i, int j) {
+      double key;
+      int value;
+
+      key = m_Keys[i];
+      m_Keys[i] = m_Keys[j];
+      m_Keys[j] = key;
+      value = m_Values[i];
+      m_Values[i] = m_Values[j];
+      m_Values[j] = value;
+    }
+
+    /**
+     * Adds the pair to the heap.
+     *
+     * @param key the distance
+     * @param value the instance index
+     */
+    public void push(double key, int value) {
+      int i;
+
+      if (m_Size == m_Keys.length) {
+        m_Keys = Arrays.copyOf(m_Keys, m_Size * 2);
+        m_Values = Arrays.copyOf(m_Values, m_Size * 2);
+      }
+      i = m_Size++;
+      m_Keys[i] = key;
+      m_Values[i] = value;
+      while ((i > 0) && above(i, (i - 1) / 2)) {
+        swap(i, (i - 1) / 2);
+        i = (i - 1) / 2;
+      }
+    }
+
+    /**
+     * Removes the root of the heap.
+     *
+     * @return the instance index of the root
+     */
+    public int pop() {
+      int result;
+      int i;
+      int child;
+
+      result = m_Values[0];
+      m_Size--;
+      m_Keys[0] = m_Keys[m_Size];
+      m_Values[0] = m_Values[m_Size];
+      i = 0;
+      while ((child = 2 * i + 1) < m_Size) {
+        if ((child + 1 < m_Size) && above(child + 1, child)) {
+          child++;
+        }
+        if (!above(child, i)) {
+          break;
+        }
+        swap(i, child);
+        i = child;
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the distance of the root.
+     *
+     * @return the distance
+     */
+    public double peekKey() {
+      return m_Keys[0];
+    }
+
+    /**
+     * Returns the instance index of the root.
+     *
+     * @return the index
+     */
+    public int peekValue() {
+      return m_Values[0];
+    }
+
+    /**
+     * Returns the number of elements in the heap.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+      return m_Size;
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+      m_Size = 0;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    @Override
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
+  /**
+   * Array holding the distances of the nearest neighbours. It is filled up
+   * both by nearestNeighbour() and kNearestNeighbours().
+   */
+  protected double[] m_Distances;
+
+  /** The maximum number of connections per instance and (upper) layer. */
+  protected int m_MaxConnections = 16;
+
+  /** The size of the candidate list during construction. */
+  protected int m_EfConstruction = 100;
+
+  /** The size of the candidate list during search. */
+  protected int m_EfSearch = 50;
+
+  /** Every n-th query gets checked against a linear search (0 = off). */
+  protected int m_RecallCheckInterval = 0;
+
+  /** The seed for choosing the layers. */
+  protected int m_Seed = 1;
+
+  /** Whether to use the dense engine for the EuclideanDistance. */
+  protected boolean m_UseDenseEngine = true;
+
+  /** The dense engine, null if not used. */
+  protected transient DenseEuclideanEngine m_Engine;
+
+  /** The number of instances when the engine was last refreshed. */
+  protected transient int m_EngineRows;
+
+  /**
+   * The links of the graph: instance, layer, then the number of links
+   * followed by the indices of the linked instances.
+   */
+  protected int[][][] m_Links;
+
+  /** The number of instances in the graph. */
+  protected int m_NumNodes;
+
+  /** The instance that every search starts from. */
+  protected int m_EntryPoint;
+
+  /** The top layer of the graph. */
+  protected int m_MaxLevel;
+
+  /** For choosing the layers of the instances. */
+  protected Random m_Random;
+
+  /** The stats for approximate search. */
+  protected ApproximatePerformanceStats m_ApproxStats = null;
+
+  /** Marks the instances visited by the current search. */
+  protected transient int[] m_Visited;
+
+  /** The mark of the current search. */
+  protected transient int m_VisitedTag;
+
+  /**
+   * Constructor. Needs setInstances(Instances) to be called before the class
+   * is usable.
+   */
+  public HNSW() {
+    super();
+    if (getMeasurePerformance())
+      m_Stats = m_ApproxStats = new ApproximatePerformanceStats();
+  }
+
+  /**
+   * Constructor that uses the supplied set of instances.
+   *
+   * @param insts the instances to use
+   * @throws Exception if the graph cannot be built
+   */
+  public HNSW(Instances insts) throws Exception {
+    this();
+    setInstances(insts);
+  }
+
+  /**
+   * Returns a string describing this nearest neighbour search algorithm.
+   *
+   * @return a description of the algorithm for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Class implementing approximate nearest neighbour search with a "
+      + "Hierarchical Navigable Small World (HNSW) graph. The instances are "
+      + "organized in a hierarchy of proximity graphs; a search starts at the "
+      + "sparse top layer and greedily descends to the bottom layer, which "
+      + "contains all the instances. The neighbours returned are not "
+      + "guaranteed to be the exact nearest ones; the trade-off between speed "
+      + "and accuracy is controlled by the size of the dynamic candidate lists "
+      + "used at construction (efConstruction) and search time (efSearch). "
+      + "New instances are inserted incrementally. For the EuclideanDistance, "
+      + "the graph is navigated with a dense, normalized copy of the data "
+      + "(normalized with the ranges at the time the copy was last refreshed, "
+      + "which happens whenever the data has doubled in size); the neighbours "
+      + "returned are ranked by the actual distance function.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing detailed
+   * information about the technical background of this class, e.g., paper
+   * reference or book this class is based on.
+   *
+   * @return the technical information about this class
+   */
+  @Override
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation result;
+
+    result = new TechnicalInformation(Type.ARTICLE);
+    result.setValue(Field.AUTHOR, "Yu. A. Malkov and D. A. Yashunin");
+    result.setValue(Field.TITLE, "Efficient and robust approximate nearest "
+      + "neighbor search using Hierarchical Navigable Small World graphs");
+    result.setValue(Field.JOURNAL, "CoRR");
+    result.setValue(Field.VOLUME, "abs/1603.09320");
+    result.setValue(Field.YEAR, "2016");
+    result.setValue(Field.URL, "http://arxiv.org/abs/1603.09320");
+
+    return result;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.add(new Option(
+      "\tThe maximum number of connections per instance and layer\n"
+        + "\t(twice as many on the bottom layer).\n" + "\t(default: 16)", "M",
+      1, "-M <num>"));
+
+    result.add(new Option(
+      "\tThe size of the candidate list used during construction.\n"
+        + "\t(default: 100)", "C", 1, "-C <num>"));
+
+    result.add(new Option("\tThe size of the candidate list used during search.\n"
+      + "\t(default: 50)", "E", 1, "-E <num>"));
+
+    result.add(new Option(
+      "\tChecks every n-th query against a linear search to\n"
+        + "\tcompute the recall, if performance statistics are\n"
+        + "\tcalculated (0 turns the check off).\n" + "\t(default: 0)", "R",
+      1, "-R <num>"));
+
+    result.add(new Option(
+      "\tThe seed for choosing the layers of the instances.\n"
+        + "\t(default: 1)", "S", 1, "-S <num>"));
+
+    result.add(new Option(
+      "\tDoes not use a dense copy of the data for the EuclideanDistance.",
+      "D", 0, "-D"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   * <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -M &lt;num&gt;
+   *  The maximum number of connections per instance and layer
+   *  (twice as many on the bottom layer).
+   *  (default: 16)</pre>
+   *
+   * <pre> -C &lt;num&gt;
+   *  The size of the candidate list used during construction.
+   *  (default: 100)</pre>
+   *
+   * <pre> -E &lt;num&gt;
+   *  The size of the candidate list used during search.
+   *  (default: 50)</pre>
+   *
+   * <pre> -R &lt;num&gt;
+   *  Checks every n-th query against a linear search to
+   *  compute the recall, if performance statistics are
+   *  calculated (0 turns the check off).
+   *  (default: 0)</pre>
+   *
+   * <pre> -S &lt;num&gt;
+   *  The seed for choosing the layers of the instances.
+   *  (default: 1)</pre>
+   *
+   * <pre> -D
+   *  Does not use a dense copy of the data for the EuclideanDistance.</pre>
+   *
+   * <pre> -A &lt;classname and options&gt;
+   *  Distance function to use.
+   *  (default: weka.core.EuclideanDistance)</pre>
+   *
+   * <pre> -P
+   *  Calculate performance statistics.</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String tmpStr;
+
+    super.setOptions(options);
+
+    tmpStr = Utils.getOption('M', options);
+    if (tmpStr.length() != 0)
+      setMaxConnections(Integer.parseInt(tmpStr));
+    else
+      setMaxConnections(16);
+
+    tmpStr = Utils.getOption('C', options);
+    if (tmpStr.length() != 0)
+      setEfConstruction(Integer.parseInt(tmpStr));
+    else
+      setEfConstruction(100);
+
+    tmpStr = Utils.getOption('E', options);
+    if (tmpStr.length() != 0)
+      setEfSearch(Integer.parseInt(tmpStr));
+    else
+      setEfSearch(50);
+
+    tmpStr = Utils.getOption('R', options);
+    if (tmpStr.length() != 0)
+      setRecallCheckInterval(Integer.parseInt(tmpStr));
+    else
+      setRecallCheckInterval(0);
+
+    tmpStr = Utils.getOption('S', options);
+    if (tmpStr.length() != 0)
+      setSeed(Integer.parseInt(tmpStr));
+    else
+      setSeed(1);
+
+    setUseDenseEngine(!Utils.getFlag('D', options));
+
+    Utils.checkForRemainingOptions(options);
+  }
+
+  /**
+   * Gets the current settings.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  @Override
+  public String[] getOptions() {
+    Vector<String> result = new Vector<String>();
+
+    Collections.addAll(result, super.getOptions());
+
+    result.add("-M");
+    result.add("" + getMaxConnections());
+
+    result.add("-C");
+    result.add("" + getEfConstruction());
+
+    result.add("-E");
+    result.add("" + getEfSearch());
+
+    result.add("-R");
+    result.add("" + getRecallCheckInterval());
+
+    result.add("-S");
+    result.add("" + getSeed());
+
+    if (!getUseDenseEngine())
+      result.add("-D");
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxConnectionsTipText() {
+    return "The maximum number of connections per instance and layer (twice "
+      + "as many on the bottom layer); higher values improve the recall on "
+      + "high-dimensional data at the expense of memory and build time.";
+  }
+
+  /**
+   * Sets the maximum number of connections per instance and layer.
+   *
+   * @param value the maximum number of connections (at least 2)
+   */
+  public void setMaxConnections(int value) {
+    if (value >= 2)
+      m_MaxConnections = value;
+    else
+      System.err.println("Maximum number of connections must be at least 2!");
+  }
+
+  /**
+   * Returns the maximum number of connections per instance and layer.
+   *
+   * @return the maximum number of connections
+   */
+  public int getMaxConnections() {
+    return m_MaxConnections;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String efConstructionTipText() {
+    return "The size of the candidate list used when inserting instances; "
+      + "higher values give a better graph but take longer to build.";
+  }
+
+  /**
+   * Sets the size of the candidate list used during construction.
+   *
+   * @param value the size (at least 1)
+   */
+  public void setEfConstruction(int value) {
+    if (value >= 1)
+      m_EfConstruction = value;
+    else
+      System.err.println("efConstruction must be at least 1!");
+  }
+
+  /**
+   * Returns the size of the candidate list used during construction.
+   *
+   * @return the size
+   */
+  public int getEfConstruction() {
+    return m_EfConstruction;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String efSearchTipText() {
+    return "The size of the candidate list used during search (at least the "
+      + "number of neighbours is used); higher values improve the recall but "
+      + "slow down the search.";
+  }
+
+  /**
+   * Sets the size of the candidate list used during search.
+   *
+   * @param value the size (at least 1)
+   */
+  public void setEfSearch(int value) {
+    if (value >= 1)
+      m_EfSearch = value;
+    else
+      System.err.println("efSearch must be at least 1!");
+  }
+
+  /**
+   * Returns the size of the candidate list used during search.
+   *
+   * @return the size
+   */
+  public int getEfSearch() {
+    return m_EfSearch;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String recallCheckIntervalTipText() {
+    return "If performance statistics are calculated, every n-th query is "
+      + "also run as a linear search in order to compute the recall of the "
+      + "approximate search (0 turns the check off).";
+  }
+
+  /**
+   * Sets the interval for checking queries against a linear search.
+   *
+   * @param value the interval, 0 to turn the check off
+   */
+  public void setRecallCheckInterval(int value) {
+    if (value >= 0)
+      m_RecallCheckInterval = value;
+    else
+      System.err.println("Recall check interval must be at least 0!");
+  }
+
+  /**
+   * Returns the interval for checking queries against a linear search.
+   *
+   * @return the interval, 0 if turned off
+   */
+  public int getRecallCheckInterval() {
+    return m_RecallCheckInterval;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for choosing the layers of the instances.";
+  }
+
+  /**
+   * Sets the seed for choosing the layers.
+   *
+   * @param value the seed
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Returns the seed for choosing the layers.
+   *
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String useDenseEngineTipText() {
+    return "Whether to navigate the graph with a dense, normalized copy of the "
+      + "data (only used with the EuclideanDistance); much faster, but needs "
+      + "memory for a dense matrix.";
+  }
+
+  /**
+   * Sets whether to use the dense engine for the EuclideanDistance.
+   *
+   * @param value if true, the dense engine is used
+   */
+  public void setUseDenseEngine(boolean value) {
+    m_UseDenseEngine = value;
+  }
+
+  /**
+   * Returns whether the dense engine is used for the EuclideanDistance.
+   *
+   * @return true if the dense engine is used
+   */
+  public boolean getUseDenseEngine() {
+    return m_UseDenseEngine;
+  }
+
+  /**
+   * Returns the maximum number of links of an instance on the given layer.
+   *
+   * @param level the layer
+   * @return the maximum number of links
+   */
+  protected int maxLinks(int level) {
+    return (level == 0) ? 2 * m_MaxConnections : m_MaxConnections;
+  }
+
+  /**
+   * Returns the number of links an instance on the given layer may hold
+   * before they get pruned back to the maximum. Pruning a batch of surplus
+   * links at once is much cheaper than pruning on every new link.
+   *
+   * @param level the layer
+   * @return the capacity
+   */
+  protected int linkCapacity(int level) {
+    return maxLinks(level) + Math.max(1, maxLinks(level) / 4);
+  }
+
+  /**
+   * Returns the distance between the instance and the specified instance of
+   * the graph. If the dense engine is used, the instance must have been set
+   * as its query.
+   *
+   * @param target the instance
+   * @param index the index of the instance in the graph
+   * @param cutOffValue the cut-off value for the distance
+   * @param stats the stats to update, can be null
+   * @return the distance, Double.POSITIVE_INFINITY if larger than the cut-off
+   *         value
+   */
+  protected double distance(Instance target, int index, double cutOffValue,
+    PerformanceStats stats) {
+    if (stats != null)
+      stats.incrPointCount();
+    if (m_Engine == null)
+      return m_DistanceFunction.distance(target, m_Instances.instance(index),
+        cutOffValue, stats);
+    if (stats != null)
+      stats.incrCoordCount(m_Engine.numColumns());
+    return m_Engine.distance(index, cutOffValue);
+  }
+
+  /**
+   * Returns the distance between two instances of the graph.
+   *
+   * @param index1 the index of the first instance
+   * @param index2 the index of the second instance
+   * @param cutOffValue the cut-off value for the distance
+   * @return the distance, Double.POSITIVE_INFINITY if larger than the cut-off
+   *         value
+   */
+  protected double distance(int index1, int index2, double cutOffValue) {
+    if (m_Engine == null)
+      return m_DistanceFunction.distance(m_Instances.instance(index1),
+        m_Instances.instance(index2), cutOffValue);
+    return m_Engine.distance(index1, index2, cutOffValue);
+  }
+
+  /**
+   * Starts a new search, i.e., clears the visited marks.
+   */
+  protected void newVisit() {
+    if ((m_Visited == null) || (m_Visited.length < m_Links.length)) {
+      m_Visited = new int[m_Links.length];
+      m_VisitedTag = 0;
+    }
+    m_VisitedTag++;
+    if (m_VisitedTag == Integer.MAX_VALUE) {
+      Arrays.fill(m_Visited, 0);
+      m_VisitedTag = 1;
+    }
+  }
+
+  /**
+   * Greedily moves to the closest instance on the given layer, starting from
+   * the entry point.
+   *
+   * @param target the instance to find the closest instance for
+   * @param entry the index of the entry point
+   * @param entryDist the distance of the entry point
+   * @param level the layer
+   * @param dist returns the distance of the closest instance
+   * @param stats the stats to update, can be null
+   * @return the index of the closest instance
+   */
+  protected int searchGreedy(Instance target, int entry, double entryDist,
+    int level, double[] dist, PerformanceStats stats) {
+    boolean changed;
+    int[] links;
+    double d;
+    int i;
+
+    changed = true;
+    while (changed) {
+      changed = false;
+      links = m_Links[entry][level];
+      for (i = 1; i <= links[0]; i++) {
+        d = distance(target, links[i], entryDist, stats);
+        if (d < entryDist) {
+          entryDist = d;
+          entry = links[i];
+          changed = true;
+        }
+      }
+    }
+    dist[0] = entryDist;
+
+    return entry;
+  }
+
+  /**
+   * Searches the given layer for the ef closest instances, starting from the
+   * entry point.
+   *
+   * @param target the instance to find the closest instances for
+   * @param entry the index of the entry point
+   * @param entryDist the distance of the entry point
+   * @param ef the size of the candidate list
+   * @param level the layer
+   * @param stats the stats to update, can be null
+   * @return the closest instances found, the root being the farthest one
+   */
+  protected DistanceHeap searchLayer(Instance target, int entry,
+    double entryDist, int ef, int level, PerformanceStats stats) {
+    DistanceHeap candidates;
+    DistanceHeap result;
+    int[] links;
+    int current;
+    int next;
+    double bound;
+    double d;
+    int i;
+
+    newVisit();
+    candidates = new DistanceHeap(ef, false);
+    result = new DistanceHeap(ef + 1, true);
+    m_Visited[entry] = m_VisitedTag;
+    candidates.push(entryDist, entry);
+    result.push(entryDist, entry);
+
+    while (candidates.size() > 0) {
+      if ((result.size() >= ef) && (candidates.peekKey() > result.peekKey()))
+        break;
+      current = candidates.pop();
+      links = m_Links[current][level];
+      for (i = 1; i <= links[0]; i++) {
+        next = links[i];
+        if (m_Visited[next] == m_VisitedTag)
+          continue;
+        m_Visited[next] = m_VisitedTag;
+        bound = (result.size() < ef) ? Double.POSITIVE_INFINITY : result.peekKey();
+        d = distance(target, next, bound, stats);
+        if ((result.size() < ef) || (d < bound)) {
+          candidates.push(d, next);
+          result.push(d, next);
+          if (result.size() > ef)
+            result.pop();
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Empties the heap into the arrays, closest instance first.
+   *
+   * @param heap the heap to empty
+   * @param indices the array for the indices
+   * @param dists the array for the distances
+   * @return the number of instances
+   */
+  protected int sorted(DistanceHeap heap, int[] indices, double[] dists) {
+    int result;
+    int i;
+
+    result = heap.size();
+    for (i = result - 1; i >= 0; i--) {
+      dists[i] = heap.peekKey();
+      indices[i] = heap.pop();
+    }
+
+    return result;
+  }
+
+  /**
+   * Selects the links among the candidates (sorted by distance to the base
+   * instance) with the heuristic of Malkov and Yashunin: a candidate is only
+   * selected if it is closer to the base instance than to any of the already
+   * selected ones. Slots that remain are filled with the closest discarded
+   * candidates.
+   *
+   * @param indices the indices of the candidates
+   * @param dists the distances of the candidates to the base instance
+   * @param num the number of candidates
+   * @param max the maximum number of links to select
+   * @param links the array to store the number of links and the links in
+   */
+  protected void selectLinks(int[] indices, double[] dists, int num, int max,
+    int[] links) {
+    boolean[] discarded;
+    boolean keep;
+    int count;
+    int i;
+    int n;
+
+    discarded = new boolean[num];
+    count = 0;
+    for (i = 0; (i < num) && (count < max); i++) {
+      keep = true;
+      for (n = 1; n <= count; n++) {
+        if (distance(indices[i], links[n], dists[i]) < dists[i]) {
+          keep = false;
+          break;
+        }
+      }
+      if (keep)
+        links[++count] = indices[i];
+      else
+        discarded[i] = true;
+    }
+    for (i = 0; (i < num) && (count < max); i++) {
+      if (discarded[i])
+        links[++count] = indices[i];
+    }
+    links[0] = count;
+  }
+
+  /**
+   * Adds a link from one instance to another, pruning the links of the former
+   * back to the maximum number of links if it exceeds its capacity.
+   *
+   * @param from the index of the instance to add the link to
+   * @param to the index of the linked instance
+   * @param level the layer
+   */
+  protected void addLink(int from, int to, int level) {
+    int[] links;
+    int[] indices;
+    double[] dists;
+    DistanceHeap heap;
+    int i;
+
+    links = m_Links[from][level];
+    if (links[0] < links.length - 1) {
+      links[++links[0]] = to;
+      return;
+    }
+
+    heap = new DistanceHeap(links[0] + 1, true);
+    for (i = 1; i <= links[0]; i++)
+      heap.push(distance(from, links[i], Double.POSITIVE_INFINITY), links[i]);
+    heap.push(distance(from, to, Double.POSITIVE_INFINITY), to);
+    indices = new int[heap.size()];
+    dists = new double[heap.size()];
+    sorted(heap, indices, dists);
+    selectLinks(indices, dists, indices.length, maxLinks(level), links);
+  }
+
+  /**
+   * Inserts the specified instance into the graph.
+   *
+   * @param index the index of the instance in the dataset
+   * @throws Exception if the dense engine fails
+   */
+  protected void insert(int index) throws Exception {
+    Instance inst;
+    DistanceHeap heap;
+    int[] indices;
+    double[] dists;
+    double[] dist;
+    int level;
+    int entry;
+    int num;
+    int i;
+    int n;
+
+    if (index >= m_Links.length)
+      m_Links = Arrays.copyOf(m_Links, Math.max(index + 1, m_Links.length * 3 / 2));
+
+    level = (int) (-Math.log(1.0 - m_Random.nextDouble()) / Math.log(m_MaxConnections));
+    m_Links[index] = new int[level + 1][];
+    for (i = 0; i <= level; i++)
+      m_Links[index][i] = new int[linkCapacity(i) + 1];
+    m_NumNodes++;
+
+    if (m_EntryPoint == -1) {
+      m_EntryPoint = index;
+      m_MaxLevel = level;
+      return;
+    }
+
+    inst = m_Instances.instance(index);
+    if (m_Engine != null)
+      m_Engine.setQuery(inst);
+    dist = new double[]{distance(inst, m_EntryPoint, Double.POSITIVE_INFINITY, null)};
+    entry = m_EntryPoint;
+    for (i = m_MaxLevel; i > level; i--)
+      entry = searchGreedy(inst, entry, dist[0], i, dist, null);
+
+    indices = new int[m_EfConstruction + 1];
+    dists = new double[m_EfConstruction + 1];
+    for (i = Math.min(level, m_MaxLevel); i >= 0; i--) {
+      heap = searchLayer(inst, entry, dist[0], m_EfConstruction, i, null);
+      num = sorted(heap, indices, dists);
+      selectLinks(indices, dists, num, m_MaxConnections, m_Links[index][i]);
+      for (n = 1; n <= m_Links[index][i][0]; n++)
+        addLink(m_Links[index][i][n], index, i);
+      entry = indices[0];
+      dist[0] = dists[0];
+    }
+
+    if (level > m_MaxLevel) {
+      m_MaxLevel = level;
+      m_EntryPoint = index;
+    }
+  }
+
+  /**
+   * Initializes the dense engine if it is to be used and refreshes its
+   * normalization whenever the data has doubled in size.
+   *
+   * @throws Exception if the engine cannot be initialized
+   */
+  protected void synchronizeEngine() throws Exception {
+    if (!m_UseDenseEngine || !DenseEuclideanEngine.isSupported(m_DistanceFunction)) {
+      m_Engine = null;
+      return;
+    }
+
+    if ((m_Engine == null) || (m_Engine.getInstances() != m_Instances)
+      || (m_Engine.getDistanceFunction() != m_DistanceFunction)) {
+      m_Engine = new DenseEuclideanEngine((EuclideanDistance) m_DistanceFunction);
+      m_Engine.setTrackRanges(false);
+      m_Engine.setInstances(m_Instances);
+      m_EngineRows = m_Instances.numInstances();
+    } else if (m_Instances.numInstances() >= 2 * m_EngineRows) {
+      m_Engine.rebuild();
+      m_EngineRows = m_Instances.numInstances();
+    }
+  }
+
+  /**
+   * Inserts all the instances of the dataset that are not part of the graph
+   * yet. Rebuilds the graph if instances got removed.
+   *
+   * @throws Exception if the dense engine fails
+   */
+  protected void synchronize() throws Exception {
+    if (m_Instances.numInstances() < m_NumNodes) {
+      buildGraph();
+      return;
+    }
+    synchronizeEngine();
+    while (m_NumNodes < m_Instances.numInstances())
+      insert(m_NumNodes);
+  }
+
+  /**
+   * Builds the graph from scratch.
+   *
+   * @throws Exception if the dense engine fails
+   */
+  protected void buildGraph() throws Exception {
+    m_Links = new int[Math.max(1, m_Instances.numInstances())][][];
+    m_NumNodes = 0;
+    m_EntryPoint = -1;
+    m_MaxLevel = -1;
+    m_Random = new Random(m_Seed);
+    m_Visited = null;
+    m_Engine = null;
+    synchronize();
+  }
+
+  /**
+   * Returns the nearest instance in the current neighbourhood to the supplied
+   * instance.
+   *
+   * @param target The instance to find the nearest neighbour for.
+   * @return the nearest instance
+   * @throws Exception if the nearest neighbour could not be found.
+   */
+  @Override
+  public Instance nearestNeighbour(Instance target) throws Exception {
+    return (kNearestNeighbours(target, 1)).instance(0);
+  }
+
+  /**
+   * Returns (approximately) the k nearest instances in the current
+   * neighbourhood to the supplied instance.
+   *
+   * @param target The instance to find the k nearest neighbours for.
+   * @param kNN The number of nearest neighbours to find.
+   * @return the k nearest neighbors
+   * @throws Exception if the neighbours could not be found.
+   */
+  @Override
+  public Instances kNearestNeighbours(Instance target, int kNN)
+    throws Exception {
+    DistanceHeap found;
+    DistanceHeap exact;
+    MyHeap heap;
+    MyHeapElement h;
+    double[] dist;
+    int[] indices;
+    int entry;
+    int index;
+    int i;
+
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Have to call "
+        + "setInstances(instances) with a set of Instances " + "first.");
+
+    synchronize();
+
+    if (m_Stats != null)
+      m_Stats.searchStart();
+
+    heap = new MyHeap(kNN);
+    if (m_EntryPoint != -1) {
+      if (m_Engine != null)
+        m_Engine.setQuery(target);
+      dist = new double[]{distance(target, m_EntryPoint, Double.POSITIVE_INFINITY, m_Stats)};
+      entry = m_EntryPoint;
+      for (i = m_MaxLevel; i > 0; i--)
+        entry = searchGreedy(target, entry, dist[0], i, dist, m_Stats);
+      // one more candidate, as the target itself is skipped (hold-one-out)
+      found = searchLayer(target, entry, dist[0], Math.max(m_EfSearch, kNN + 1), 0, m_Stats);
+      indices = new int[found.size()];
+      dist = new double[found.size()];
+      if (m_Engine != null) {
+        // rank the candidates by the actual distance function
+        exact = new DistanceHeap(found.size(), true);
+        while (found.size() > 0) {
+          index = found.pop();
+          exact.push(m_DistanceFunction.distance(target,
+            m_Instances.instance(index), Double.POSITIVE_INFINITY), index);
+        }
+        found = exact;
+      }
+      sorted(found, indices, dist);
+      for (i = 0; i < indices.length; i++) {
+        index = indices[i];
+        if (target == m_Instances.instance(index))
+          continue;
+        if (heap.size() < kNN)
+          heap.put(index, dist[i]);
+        else if (dist[i] == heap.peek().distance)
+          heap.putKthNearest(index, dist[i]);
+        else
+          break;
+      }
+    }
+
+    if (m_Stats != null)
+      m_Stats.searchFinish();
+
+    Instances neighbours = new Instances(m_Instances, (heap.size() + heap.noOfKthNearest()));
+    m_Distances = new double[heap.size() + heap.noOfKthNearest()];
+    indices = new int[heap.size() + heap.noOfKthNearest()];
+    i = indices.length - 1;
+    while (heap.noOfKthNearest() > 0) {
+      h = heap.getKthNearest();
+      indices[i] = h.index;
+      m_Distances[i] = h.distance;
+      i--;
+    }
+    while (heap.size() > 0) {
+      h = heap.get();
+      indices[i] = h.index;
+      m_Distances[i] = h.distance;
+      i--;
+    }
+
+    if ((m_ApproxStats != null) && (m_RecallCheckInterval > 0)
+      && ((m_ApproxStats.getNumQueries() - 1) % m_RecallCheckInterval == 0))
+      m_ApproxStats.addRecall(recall(target, Math.min(kNN, m_Distances.length)));
+
+    m_DistanceFunction.postProcessDistances(m_Distances);
+
+    for (i = 0; i < indices.length; i++)
+      neighbours.add(m_Instances.instance(indices[i]));
+
+    return neighbours;
+  }
+
+  /**
+   * Computes the recall of the neighbours found last, by comparing their
+   * distances with the ones from a linear search. Neighbours that are as close
+   * as the k-th nearest neighbour count as hits.
+   *
+   * @param target the target instance
+   * @param k the number of neighbours that were found
+   * @return the recall
+   */
+  protected double recall(Instance target, int k) {
+    double[] exact;
+    int count;
+    int hits;
+    int i;
+
+    if (k == 0)
+      return 1.0;
+
+    exact = new double[m_Instances.numInstances()];
+    count = 0;
+    for (i = 0; i < m_Instances.numInstances(); i++) {
+      if (target != m_Instances.instance(i))
+        exact[count++] = m_DistanceFunction.distance(target,
+          m_Instances.instance(i), Double.POSITIVE_INFINITY);
+    }
+    Arrays.sort(exact, 0, count);
+
+    hits = 0;
+    for (i = 0; i < k; i++) {
+      if (m_Distances[i] <= exact[k - 1])
+        hits++;
+    }
+
+    return (double) hits / (double) k;
+  }
+
+  /**
+   * Returns the distances of the k nearest neighbours. The kNearestNeighbours
+   * or nearestNeighbour must always be called before calling this function.
+   *
+   * @return array containing the distances of the nearestNeighbours. The
+   *         length and ordering of the array is the same as that of the
+   *         instances returned by nearestNeighbour functions.
+   * @throws Exception if called before calling kNearestNeighbours or
+   *           nearestNeighbours.
+   */
+  @Override
+  public double[] getDistances() throws Exception {
+    if (m_Distances == null)
+      throw new Exception("No distances available. Please call either "
+        + "kNearestNeighbours or nearestNeighbours first.");
+    return m_Distances;
+  }
+
+  /**
+   * Sets the instances comprising the current neighbourhood and builds the
+   * graph.
+   *
+   * @param insts The set of instances on which the nearest neighbour search
+   *          is carried out. Usually this set is the training set.
+   * @throws Exception if setting of instances fails
+   */
+  @Override
+  public void setInstances(Instances insts) throws Exception {
+    super.setInstances(insts);
+    m_DistanceFunction.setInstances(insts);
+    buildGraph();
+  }
+
+  /**
+   * Inserts the newly added instance into the graph. The instance must
+   * already have been added to the dataset.
+   *
+   * @param ins The instance to add. Usually this is the instance that is added
+   *          to our neighbourhood i.e. the training instances.
+   * @throws Exception if the given instances are null
+   */
+  @Override
+  public void update(Instance ins) throws Exception {
+    if (m_Instances == null)
+      throw new Exception("No instances supplied yet. Cannot update without"
+        + "supplying a set of instances first.");
+    m_DistanceFunction.update(ins);
+    synchronize();
+  }
+
+  /**
+   * Returns the top layer of the graph.
+   *
+   * @return the top layer
+   */
+  public double measureMaxLevel() {
+    return m_MaxLevel;
+  }
+
+  /**
+   * Returns the average number of links on the bottom layer.
+   *
+   * @return the average number of links
+   */
+  public double measureMeanLinks() {
+    double sum;
+    int i;
+
+    if (m_NumNodes == 0)
+      return 0;
+    sum = 0;
+    for (i = 0; i < m_NumNodes; i++)
+      sum += m_Links[i][0][0];
+
+    return sum / m_NumNodes;
+  }
+
+  /**
+   * Returns an enumeration of the additional measure names.
+   *
+   * @return an enumeration of the measure names
+   */
+  @Override
+  public Enumeration<String> enumerateMeasures() {
+    Vector<String> newVector = new Vector<String>();
+    newVector.addElement("measureMaxLevel");
+    newVector.addElement("measureMeanLinks");
+    if (m_Stats != null)
+      newVector.addAll(Collections.list(m_Stats.enumerateMeasures()));
+    return newVector.elements();
+  }
+
+  /**
+   * Returns the value of the named measure.
+   *
+   * @param additionalMeasureName the name of the measure to query for its
+   *          value.
+   * @return The value of the named measure
+   * @throws IllegalArgumentException If the named measure is not supported.
+   */
+  @Override
+  public double getMeasure(String additionalMeasureName) {
+    if (additionalMeasureName.compareToIgnoreCase("measureMaxLevel") == 0)
+      return measureMaxLevel();
+    else if (additionalMeasureName.compareToIgnoreCase("measureMeanLinks") == 0)
+      return measureMeanLinks();
+    else if (m_Stats != null)
+      return m_Stats.getMeasure(additionalMeasureName);
+    else
+      throw new IllegalArgumentException(additionalMeasureName
+        + " not supported (HNSW)");
+  }
+
+  /**
+   * Sets whether to calculate the performance statistics or not.
+   *
+   * @param measurePerformance Should be true if performance statistics are to
+   *          be measured.
+   */
+  @Override
+  public void setMeasurePerformance(boolean measurePerformance) {
+    m_MeasurePerformance = measurePerformance;
+    if (m_MeasurePerformance) {
+      if (m_Stats == null)
+        m_Stats = m_ApproxStats = new ApproximatePerformanceStats();
+    } else
+      m_Stats = m_ApproxStats = null;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -24,6 +24,9 @@ package weka.core.neighboursearch;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import weka.core.DistanceFunction;
 import weka.core.EuclideanDistance;
@@ -101,6 +104,14 @@ import weka.core.neighboursearch.kdtrees.SlidingMidPointOfWidestSide;
  *  Normalizing will be done
  *  (Select dimension for split, with normalising to universe).</pre>
  * 
+ * <pre> -U
+ *  Use the logarithmic method for incremental updates
+ *  (static trees that get merged and rebuilt as they grow).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for building the tree.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end --> 
  * 
  * @author Gabi Schmidberger (gabi[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -137,6 +148,14 @@ public class KDTree
   /** Tree stats. */
   protected int m_NumNodes, m_NumLeaves, m_MaxDepth;
 
+  /**
+   * The roots of the static trees holding the instances that were added
+   * with the logarithmic method since the last full build. Each tree covers
+   * a contiguous portion of the index list after the one of the main tree,
+   * the trees get smaller towards the end of the list.
+   */
+  protected Vector<KDTreeNode> m_Forest = new Vector<KDTreeNode>();
+
   /** Tree Stats variables. */
   protected TreePerformanceStats m_TreeStats = null;
 
@@ -150,6 +169,10 @@ public class KDTree
   /** The index of WIDTH (MAX-MIN) value in attributes' range array. */
   public static final int WIDTH = EuclideanDistance.R_WIDTH;
 
+  /** The minimum number of instances in a node for splitting its children
+   * in parallel. */
+  public static final int PARALLEL_SPLIT_THRESHOLD = 256;
+
   /**
    * Returns an instance of a TechnicalInformation object, containing detailed
    * information about the technical background of this class, e.g., paper
@@ -246,8 +269,17 @@ public class KDTree
     m_MaxDepth = 0;
     m_Root = new KDTreeNode(m_NumNodes, 0, m_Instances.numInstances() - 1,
         universe);
-
-    splitNodes(m_Root, universe, m_MaxDepth + 1);
+    m_Forest = new Vector<KDTreeNode>();
+
+    if (m_NumExecutionSlots > 1 && numInst >= PARALLEL_SPLIT_THRESHOLD) {
+      splitSubtreeInParallel(m_Root, universe);
+      int[] counts = countNodes(m_Root);
+      m_NumNodes = counts[0];
+      m_NumLeaves = counts[1];
+      m_MaxDepth = counts[2];
+    } else {
+      splitNodes(m_Root, universe, m_MaxDepth + 1);
+    }
   }
 
   /** 
@@ -286,6 +318,171 @@ public class KDTree
     splitNodes(node.m_Right, universe, depth + 1);
   }
 
+  /**
+   * Recursively splits the nodes of the subtree starting from the supplied
+   * node, with the same stopping criteria as splitNodes(KDTreeNode,
+   * double[][], int). Unlike splitNodes, it does not maintain the node
+   * numbers and tree stats, which allows the two halves of a node to be
+   * split concurrently: they occupy disjoint portions of the index list.
+   * If called from within a fork/join pool, the children of nodes with at
+   * least PARALLEL_SPLIT_THRESHOLD instances are split in parallel. The
+   * nodes need to be numbered with countNodes(KDTreeNode) afterwards.
+   * 
+   * @param node The node to start splitting from.
+   * @param universe The attribute ranges of the whole dataset.
+   * @throws Exception If there is some problem splitting.
+   */
+  protected void splitSubtree(KDTreeNode node, double[][] universe)
+    throws Exception {
+    double[][] nodeRanges = m_EuclideanDistance.initializeRanges(m_InstList,
+                                                 node.m_Start, node.m_End);
+    if (node.numInstances() <= m_MaxInstInLeaf
+        || getMaxRelativeNodeWidth(nodeRanges, universe) <= m_MinBoxRelWidth)
+      return;
+
+    m_Splitter.splitNode(node, node.m_NodeNumber, nodeRanges, universe);
+
+    if (node.numInstances() >= PARALLEL_SPLIT_THRESHOLD
+        && ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(new SplitSubtreeTask(node.m_Left, universe),
+          new SplitSubtreeTask(node.m_Right, universe));
+    } else {
+      splitSubtree(node.m_Left, universe);
+      splitSubtree(node.m_Right, universe);
+    }
+  }
+
+  /**
+   * Splits the subtree starting from the supplied node using a fork/join
+   * pool with the number of execution slots as parallelism.
+   * 
+   * @param node The node to start splitting from.
+   * @param universe The attribute ranges of the whole dataset.
+   * @throws Exception If there is some problem splitting.
+   */
+  protected void splitSubtreeInParallel(KDTreeNode node, double[][] universe)
+    throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(m_NumExecutionSlots);
+    try {
+      pool.invoke(new SplitSubtreeTask(node, universe));
+    } catch (RuntimeException ex) {
+      // unwrap the exception thrown by the splitter
+      Throwable cause = ex;
+      while (cause instanceof RuntimeException && cause.getCause() != null)
+        cause = cause.getCause();
+      if (cause instanceof Exception)
+        throw (Exception) cause;
+      throw ex;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Numbers the nodes of the given (sub)tree in the same order as
+   * splitNodes(KDTreeNode, double[][], int) would have, and counts them.
+   * 
+   * @param node The root of the (sub)tree, numbered 1.
+   * @return The number of nodes, the number of leaves and the depth of the
+   * (sub)tree.
+   */
+  protected int[] countNodes(KDTreeNode node) {
+    int[] counts = new int[]{1, 1, 0};
+
+    node.m_NodeNumber = 1;
+    countNodes(node, 1, counts);
+
+    return counts;
+  }
+
+  /**
+   * Recursively numbers and counts the nodes below the supplied node.
+   * 
+   * @param node The node to continue from.
+   * @param depth The depth of the supplied node.
+   * @param counts The number of nodes, the number of leaves and the depth
+   * found so far.
+   */
+  protected void countNodes(KDTreeNode node, int depth, int[] counts) {
+    if (node.isALeaf())
+      return;
+
+    counts[1]++;
+    if (depth > counts[2])
+      counts[2] = depth;
+
+    node.m_Left.m_NodeNumber = counts[0] + 1;
+    node.m_Right.m_NodeNumber = counts[0] + 2;
+    counts[0] += 2;
+
+    countNodes(node.m_Left, depth + 1, counts);
+    countNodes(node.m_Right, depth + 1, counts);
+  }
+
+  /**
+   * Builds a static tree on the given portion of the index list, as used by
+   * the logarithmic method for incremental updates.
+   * 
+   * @param start The start of the portion of the index list.
+   * @param end The end of the portion of the index list.
+   * @return The root of the tree.
+   * @throws Exception If there is some problem building the tree.
+   */
+  protected KDTreeNode buildSubtree(int start, int end) throws Exception {
+    double[][] universe = m_EuclideanDistance.getRanges();
+    KDTreeNode root = new KDTreeNode(1, start, end,
+        m_EuclideanDistance.initializeRanges(m_InstList, start, end));
+
+    if (m_NumExecutionSlots > 1 && end - start + 1 >= PARALLEL_SPLIT_THRESHOLD)
+      splitSubtreeInParallel(root, universe);
+    else
+      splitSubtree(root, universe);
+    countNodes(root);
+
+    return root;
+  }
+
+  /**
+   * The task for splitting the subtree of a node within a fork/join pool.
+   */
+  protected class SplitSubtreeTask
+    extends RecursiveAction {
+
+    /** For serialization. */
+    private static final long serialVersionUID = -2474850209474853413L;
+
+    /** The node to start splitting from. */
+    protected KDTreeNode m_Node;
+
+    /** The attribute ranges of the whole dataset. */
+    protected double[][] m_Universe;
+
+    /**
+     * Initializes the task.
+     * 
+     * @param node The node to start splitting from.
+     * @param universe The attribute ranges of the whole dataset.
+     */
+    public SplitSubtreeTask(KDTreeNode node, double[][] universe) {
+      m_Node = node;
+      m_Universe = universe;
+    }
+
+    /**
+     * Splits the subtree.
+     */
+    @Override
+    protected void compute() {
+      try {
+        splitSubtree(m_Node, m_Universe);
+      } catch (RuntimeException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+
   /**
    * Returns (in the supplied heap object) the k nearest 
    * neighbours of the given instance starting from the give 
@@ -388,6 +585,10 @@ public class KDTree
 
     MyHeap heap = new MyHeap(k);
     findNearestNeighbours(target, m_Root, k, heap, 0.0);
+    if (m_Forest != null) {
+      for (KDTreeNode root : m_Forest)
+        findNearestNeighbours(target, root, k, heap, 0.0);
+    }
 
     if (m_Stats != null)
       m_Stats.searchFinish();
@@ -481,7 +682,56 @@ public class KDTree
           + "setInstances(instances) with a set of Instances " + "first.");
 
     addInstanceInfo(instance);
-    addInstanceToTree(instance, m_Root);
+    if (m_LogarithmicUpdates)
+      addInstanceToForest(instance);
+    else if (m_Forest != null && m_Forest.size() > 0)
+      buildKDTree(m_Instances);
+    else
+      addInstanceToTree(instance, m_Root);
+  }
+
+  /**
+   * Adds an instance using the logarithmic method: the instance becomes a
+   * static tree of its own, which gets merged with the trailing trees that
+   * are not larger than it by rebuilding them as a single tree. Once the
+   * merged tree is as large as the main tree, the whole KDTree is rebuilt.
+   * This way every instance takes part in O(log n) rebuilds of balanced
+   * trees, instead of the main tree degrading with the insertions.
+   * NOTE: This should not be called by outside classes, outside classes
+   * should instead call update(Instance) method.
+   * 
+   * @param inst The instance to add, which has to be the last instance of
+   * the training set.
+   * @throws Exception If some error occurs while adding the instance.
+   */
+  protected void addInstanceToForest(Instance inst) throws Exception {
+    int index = m_Instances.numInstances() - 1;
+    int start;
+
+    checkMissing(inst);
+    if (m_Forest == null)
+      m_Forest = new Vector<KDTreeNode>();
+
+    // the index list keeps some spare room to avoid copying it every time
+    if (index >= m_InstList.length) {
+      int[] instList = new int[Math.max(index + 1, m_InstList.length * 3 / 2)];
+      System.arraycopy(m_InstList, 0, instList, 0, m_InstList.length);
+      m_InstList = instList;
+      m_Splitter.setInstanceList(m_InstList);
+    }
+    m_InstList[index] = index;
+
+    start = index;
+    while (m_Forest.size() > 0
+        && m_Forest.lastElement().numInstances() <= index - start + 1) {
+      start = m_Forest.lastElement().m_Start;
+      m_Forest.remove(m_Forest.size() - 1);
+    }
+
+    if (m_Forest.size() == 0 && index - start + 1 >= m_Root.numInstances())
+      buildKDTree(m_Instances);
+    else
+      m_Forest.add(buildSubtree(start, index));
   }
 
   /**
@@ -685,7 +935,7 @@ public class KDTree
    * @return 		the size of the tree
    */
   public double measureTreeSize() {
-    return m_NumNodes;
+    return m_NumNodes + countForest()[0];
   }
 
   /**
@@ -694,7 +944,7 @@ public class KDTree
    * @return 		the number of leaves
    */
   public double measureNumLeaves() {
-    return m_NumLeaves;
+    return m_NumLeaves + countForest()[1];
   }
 
   /**
@@ -703,7 +953,29 @@ public class KDTree
    * @return The depth of the tree
    */
   public double measureMaxDepth() {
-    return m_MaxDepth;
+    return Math.max(m_MaxDepth, countForest()[2]);
+  }
+
+  /**
+   * Counts the nodes of the static trees from incremental updates.
+   * 
+   * @return The number of nodes, the number of leaves and the maximum depth
+   * of the trees.
+   */
+  protected int[] countForest() {
+    int[] result = new int[3];
+    int[] counts;
+
+    if (m_Forest != null) {
+      for (KDTreeNode root : m_Forest) {
+        counts = countNodes(root);
+        result[0] += counts[0];
+        result[1] += counts[1];
+        result[2] = Math.max(result[2], counts[2]);
+      }
+    }
+
+    return result;
   }
 
   /**
@@ -772,6 +1044,10 @@ public class KDTree
   public void centerInstances(Instances centers, int[] assignments, double pc)
       throws Exception {
 
+    // the static trees from incremental updates need to be merged first
+    if (m_Forest != null && m_Forest.size() > 0)
+      buildKDTree(m_Instances);
+
     int[] centList = new int[centers.numInstances()];
     for (int i = 0; i < centers.numInstances(); i++)
       centList[i] = i;
@@ -1025,6 +1301,12 @@ public class KDTree
   /** maximal number of instances in a leaf. */
   protected int m_MaxInstInLeaf = 40;
 
+  /** whether to use the logarithmic method for incremental updates. */
+  protected boolean m_LogarithmicUpdates = false;
+
+  /** the number of execution slots for building the tree. */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * the GET and SET - functions ===============================================
    */
@@ -1119,6 +1401,65 @@ public class KDTree
     return m_NormalizeNodeWidth;
   }
 
+  /**
+   * Tip text for this property.
+   * 
+   * @return 		the tip text for this property
+   */
+  public String logarithmicUpdatesTipText() {
+    return "Whether to use the logarithmic method for incremental updates: "
+        + "new instances are stored in a number of static trees that get "
+        + "merged and rebuilt as they grow, rather than being inserted into "
+        + "the existing tree, which gets unbalanced and costs time linear "
+        + "in the number of instances for each insertion.";
+  }
+
+  /**
+   * Sets whether to use the logarithmic method for incremental updates.
+   * 
+   * @param value	true to use the logarithmic method
+   */
+  public void setLogarithmicUpdates(boolean value) {
+    m_LogarithmicUpdates = value;
+  }
+
+  /**
+   * Gets whether to use the logarithmic method for incremental updates.
+   * 
+   * @return 		true if the logarithmic method is used
+   */
+  public boolean getLogarithmicUpdates() {
+    return m_LogarithmicUpdates;
+  }
+
+  /**
+   * Tip text for this property.
+   * 
+   * @return 		the tip text for this property
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building "
+        + "the tree. Set equal to the number of available cpu/cores.";
+  }
+
+  /**
+   * Sets the number of execution slots for building the tree.
+   * 
+   * @param value	the number of slots
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Gets the number of execution slots for building the tree.
+   * 
+   * @return 		the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * returns the distance function currently in use.
    * 
@@ -1223,6 +1564,16 @@ public class KDTree
         + "\t(Select dimension for split, with normalising to universe).",
         "N", 0, "-N"));
     
+    newVector.addElement(new Option(
+	"\tUse the logarithmic method for incremental updates\n"
+        + "\t(static trees that get merged and rebuilt as they grow).",
+        "U", 0, "-U"));
+    
+    newVector.addElement(new Option(
+	"\tNumber of execution slots for building the tree.\n"
+        + "\t(default 1 - i.e. no parallelism)",
+        "num-slots", 1, "-num-slots <num>"));
+    
     newVector.addAll(Collections.list(super.listOptions()));
     
     return newVector.elements();
@@ -1250,6 +1601,14 @@ public class KDTree
    *  Normalizing will be done
    *  (Select dimension for split, with normalising to universe).</pre>
    * 
+   * <pre> -U
+   *  Use the logarithmic method for incremental updates
+   *  (static trees that get merged and rebuilt as they grow).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for building the tree.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options	the list of options as an array of strings
@@ -1287,6 +1646,14 @@ public class KDTree
       setMaxInstInLeaf(40);
 
     setNormalizeNodeWidth(Utils.getFlag('N', options));
+
+    setLogarithmicUpdates(Utils.getFlag('U', options));
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    else
+      setNumExecutionSlots(1);
     
     Utils.checkForRemainingOptions(options);
   }
@@ -1321,6 +1688,12 @@ public class KDTree
     if (getNormalizeNodeWidth())
       result.add("-N");
 
+    if (getLogarithmicUpdates())
+      result.add("-U");
+
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
     return result.toArray(new String[result.size()]);
   }
   
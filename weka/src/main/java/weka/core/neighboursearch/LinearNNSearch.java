@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import weka.core.EuclideanDistance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -43,6 +44,11 @@ import weka.core.Utils;
  *  Skip identical instances (distances equal to zero).
  * </pre>
  * 
+ * <pre> -E
+ *  Use the dense engine for computing Euclidean distances
+ *  (keeps a normalized copy of the data in memory).
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author Ashraf M. Kibriya (amk14[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -62,6 +68,12 @@ public class LinearNNSearch
   /** Whether to skip instances from the neighbours that are identical to the query instance. */
   protected boolean m_SkipIdentical = false;
 
+  /** Whether to use the dense engine for Euclidean distances. */
+  protected boolean m_UseDenseEngine = false;
+
+  /** The dense engine, built lazily on the first search. */
+  protected transient DenseEuclideanEngine m_Engine;
+
   /**
    * Constructor. Needs setInstances(Instances) 
    * to be called before the class is usable.
@@ -105,6 +117,11 @@ public class LinearNNSearch
 	"\tSkip identical instances (distances equal to zero).\n",
 	"S", 1,"-S"));
     
+    result.add(new Option(
+	"\tUse the dense engine for computing Euclidean distances\n"
+	+ "\t(keeps a normalized copy of the data in memory).\n",
+	"E", 0,"-E"));
+    
     result.addAll(Collections.list(super.listOptions()));
     
     return result.elements();
@@ -120,6 +137,11 @@ public class LinearNNSearch
    *  Skip identical instances (distances equal to zero).
    * </pre>
    * 
+   * <pre> -E
+   *  Use the dense engine for computing Euclidean distances
+   *  (keeps a normalized copy of the data in memory).
+   * </pre>
+   * 
    <!-- options-end -->
    *
    * @param options 	the list of options as an array of strings
@@ -129,6 +151,7 @@ public class LinearNNSearch
     super.setOptions(options);
 
     setSkipIdentical(Utils.getFlag('S', options));
+    setUseDenseEngine(Utils.getFlag('E', options));
     
     Utils.checkForRemainingOptions(options);
   }
@@ -146,6 +169,9 @@ public class LinearNNSearch
     if (getSkipIdentical())
       result.add("-S");
 
+    if (getUseDenseEngine())
+      result.add("-E");
+
     return result.toArray(new String[result.size()]);
   }
 
@@ -178,6 +204,58 @@ public class LinearNNSearch
     return m_SkipIdentical;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String useDenseEngineTipText() {
+    return 
+        "Whether to compute Euclidean distances with an engine that keeps a "
+      + "normalized, dense copy of the data in memory (faster, but needs "
+      + "memory for a dense matrix; only used with the EuclideanDistance).";
+  }
+
+  /**
+   * Sets whether to use the dense engine for computing Euclidean distances.
+   * 
+   * @param value 	if true, the dense engine is used
+   */
+  public void setUseDenseEngine(boolean value) {
+    m_UseDenseEngine = value;
+    m_Engine         = null;
+  }
+
+  /**
+   * Gets whether the dense engine is used for computing Euclidean distances.
+   * 
+   * @return 		true if the dense engine is used
+   */
+  public boolean getUseDenseEngine() {
+    return m_UseDenseEngine;
+  }
+
+  /**
+   * Returns the dense engine, if enabled and applicable to the current
+   * distance function. Initializes the engine if necessary.
+   * 
+   * @return 		the engine, null if not used
+   * @throws Exception 	if the engine cannot be initialized
+   */
+  protected DenseEuclideanEngine getEngine() throws Exception {
+    if (!m_UseDenseEngine || !DenseEuclideanEngine.isSupported(m_DistanceFunction))
+      return null;
+
+    if ((m_Engine == null) || (m_Engine.getInstances() != m_Instances)
+        || (m_Engine.getDistanceFunction() != m_DistanceFunction)) {
+      m_Engine = new DenseEuclideanEngine((EuclideanDistance) m_DistanceFunction);
+      m_Engine.setInstances(m_Instances);
+    }
+
+    return m_Engine;
+  }
+
   
   /** 
    * Returns the nearest instance in the current neighbourhood to the supplied
@@ -208,6 +286,10 @@ public class LinearNNSearch
     if(m_Stats!=null)
       m_Stats.searchStart();
  
+    DenseEuclideanEngine engine = getEngine();
+    if(engine!=null)
+      engine.setQuery(target);
+ 
     MyHeap heap = new MyHeap(kNN);
     double distance; int firstkNN=0;
     for(int i=0; i<m_Instances.numInstances(); i++) {
@@ -218,7 +300,7 @@ public class LinearNNSearch
       if(firstkNN<kNN) {
         if(print)
           System.out.println("K(a): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
+        distance = distance(engine, target, i, Double.POSITIVE_INFINITY);
         if(distance == 0.0 && m_SkipIdentical)
           if(i<m_Instances.numInstances()-1)
             continue;
@@ -231,7 +313,7 @@ public class LinearNNSearch
         MyHeapElement temp = heap.peek();
         if(print)
           System.out.println("K(b): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, m_Stats);
+        distance = distance(engine, target, i, temp.distance);
         if(distance == 0.0 && m_SkipIdentical)
           continue;
         if(distance < temp.distance) {
@@ -273,6 +355,27 @@ public class LinearNNSearch
     return neighbours;    
   }
   
+  /**
+   * Computes the distance between the target and the specified training
+   * instance, either with the dense engine or the distance function.
+   * 
+   * @param engine	the engine to use, null for the distance function
+   * @param target	the target instance
+   * @param index	the index of the training instance
+   * @param cutOffValue	the cut-off value for the distance
+   * @return		the distance, Double.POSITIVE_INFINITY if larger
+   * 			than the cut-off value
+   */
+  protected double distance(DenseEuclideanEngine engine, Instance target, 
+      int index, double cutOffValue) {
+    if(engine==null)
+      return m_DistanceFunction.distance(target, m_Instances.instance(index), cutOffValue, m_Stats);
+
+    if(m_Stats!=null)
+      m_Stats.incrCoordCount(engine.numColumns());
+    return engine.distance(index, cutOffValue);
+  }
+  
   /** 
    * Returns the distances of the k nearest neighbours. The kNearestNeighbours
    * or nearestNeighbour must always be called before calling this function. If
@@ -308,6 +411,7 @@ public class LinearNNSearch
   public void setInstances(Instances insts) throws Exception {
     m_Instances = insts;
     m_DistanceFunction.setInstances(insts);
+    m_Engine = null;
   }
   
   /** 
@@ -143,6 +143,16 @@ public class PerformanceStats
   public void incrCoordCount() {
     m_CoordCount++;
   }
+
+  /**
+   * Increments the coordinate count by the given number
+   * (number of coordinates/attributes looked at).
+   * 
+   * @param num		the number of coordinates looked at
+   */
+  public void incrCoordCount(int num) {
+    m_CoordCount += num;
+  }
   
   /**
    * adds the given number to the point count.
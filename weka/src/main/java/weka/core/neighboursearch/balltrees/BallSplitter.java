@@ -89,7 +89,7 @@ public abstract class BallSplitter implements Serializable, OptionHandler,
       throw new Exception("No instance list supplied.");
     } else if (m_DistanceFunction == null) {
       throw new Exception("No Euclidean distance function supplied.");
-    } else if (m_Instances.numInstances() != m_Instlist.length) {
+    } else if (m_Instances.numInstances() > m_Instlist.length) {
       throw new Exception("The supplied instance list doesn't seem to match "
         + "the supplied instances");
     }
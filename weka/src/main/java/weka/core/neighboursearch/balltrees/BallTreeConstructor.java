@@ -95,6 +95,51 @@ public abstract class BallTreeConstructor implements OptionHandler,
    */
   public abstract BallNode buildTree() throws Exception;
 
+  /**
+   * Builds a ball tree on the given portion of the master index array only,
+   * as used by the logarithmic method for incremental updates. The default
+   * implementation builds the tree with buildTree() on a copy of that portion
+   * and shifts the nodes' indices afterwards. Subclasses that can work on a
+   * portion of the master index array directly should override this method.
+   * 
+   * @param start The start of the portion of the master index array.
+   * @param end The end of the portion of the master index array.
+   * @return The root node of the tree.
+   * @throws Exception If there is problem building the tree.
+   */
+  public BallNode buildTree(int start, int end) throws Exception {
+    int[] instList = m_InstList;
+    int[] portion = new int[end - start + 1];
+    BallNode root;
+
+    System.arraycopy(instList, start, portion, 0, portion.length);
+    setInstanceList(portion);
+    try {
+      root = buildTree();
+    } finally {
+      setInstanceList(instList);
+    }
+    System.arraycopy(portion, 0, instList, start, portion.length);
+    shiftNodes(root, start);
+
+    return root;
+  }
+
+  /**
+   * Shifts the start and end indices of all the nodes of a (sub)tree.
+   * 
+   * @param node The node to start from.
+   * @param offset The offset to add to the indices.
+   */
+  protected void shiftNodes(BallNode node, int offset) {
+    node.m_Start += offset;
+    node.m_End += offset;
+    if (node.m_Left != null)
+      shiftNodes(node.m_Left, offset);
+    if (node.m_Right != null)
+      shiftNodes(node.m_Right, offset);
+  }
+
   /**
    * Adds an instance to the ball tree.
    * 
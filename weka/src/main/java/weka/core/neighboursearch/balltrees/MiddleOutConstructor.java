@@ -204,6 +204,24 @@ public class MiddleOutConstructor extends BallTreeConstructor implements
     return root;
   }
 
+  /**
+   * Builds a ball tree middle out on the given portion of the master index
+   * array only.
+   * 
+   * @param start The start of the portion of the master index array.
+   * @param end The end of the portion of the master index array.
+   * @return The root node of the tree.
+   * @throws Exception If there is problem building the tree.
+   */
+  @Override
+  public BallNode buildTree(int start, int end) throws Exception {
+    m_NumNodes = m_MaxDepth = m_NumLeaves = 0;
+    rootRadius = BallNode.calcRadius(start, end, m_InstList, m_Instances,
+      BallNode.calcCentroidPivot(start, end, m_InstList, m_Instances),
+      m_DistanceFunction);
+    return buildTreeMiddleOut(start, end);
+  }
+
   /**
    * Builds a ball tree middle out from the portion of the master index array
    * given by supplied start and end index.
@@ -23,6 +23,9 @@ package weka.core.neighboursearch.balltrees;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import weka.core.EuclideanDistance;
 import weka.core.Instance;
@@ -68,6 +71,12 @@ import weka.core.Utils;
  *  Ball splitting algorithm to use.
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of execution slots for building the tree.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Ashraf M. Kibriya (amk14[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -85,6 +94,15 @@ public class TopDownConstructor extends BallTreeConstructor implements
    */
   protected BallSplitter m_Splitter = new PointsClosestToFurthestChildren();
 
+  /** The number of execution slots for building the tree. */
+  protected int m_NumExecutionSlots = 1;
+
+  /**
+   * The minimum number of instances in a node for splitting its children in
+   * parallel.
+   */
+  public static final int PARALLEL_SPLIT_THRESHOLD = 256;
+
   /**
    * Creates a new instance of TopDownConstructor.
    */
@@ -136,6 +154,21 @@ public class TopDownConstructor extends BallTreeConstructor implements
    */
   @Override
   public BallNode buildTree() throws Exception {
+    return buildTree(0, m_InstList.length - 1);
+  }
+
+  /**
+   * Builds the ball tree top down on the given portion of the master index
+   * array only. With more than one execution slot, the two halves of the
+   * larger nodes are split in parallel.
+   * 
+   * @param start The start of the portion of the master index array.
+   * @param end The end of the portion of the master index array.
+   * @return The root node of the tree.
+   * @throws Exception If there is problem building the tree.
+   */
+  @Override
+  public BallNode buildTree(int start, int end) throws Exception {
     BallNode root;
 
     m_NumNodes = m_MaxDepth = 0;
@@ -146,12 +179,19 @@ public class TopDownConstructor extends BallTreeConstructor implements
     m_Splitter
       .setEuclideanDistanceFunction((EuclideanDistance) m_DistanceFunction);
 
-    root = new BallNode(0, m_InstList.length - 1, 0);
-    root.setPivot(BallNode.calcCentroidPivot(m_InstList, m_Instances));
-    root.setRadius(BallNode.calcRadius(m_InstList, m_Instances,
+    root = new BallNode(start, end, 0);
+    root.setPivot(BallNode.calcCentroidPivot(start, end, m_InstList,
+      m_Instances));
+    root.setRadius(BallNode.calcRadius(start, end, m_InstList, m_Instances,
       root.getPivot(), m_DistanceFunction));
 
-    splitNodes(root, m_MaxDepth + 1, root.m_Radius);
+    if (m_NumExecutionSlots > 1
+      && root.m_NumInstances >= PARALLEL_SPLIT_THRESHOLD) {
+      splitSubtreeInParallel(root, root.m_Radius);
+      countNodes(root, m_MaxDepth + 1);
+    } else {
+      splitNodes(root, m_MaxDepth + 1, root.m_Radius);
+    }
 
     return root;
   }
@@ -207,6 +247,139 @@ public class TopDownConstructor extends BallTreeConstructor implements
     }
   }
 
+  /**
+   * Recursively splits the nodes of the subtree starting from the supplied
+   * node, with the same stopping criteria as splitNodes(BallNode, int,
+   * double). Unlike splitNodes, it does not maintain the node numbers and
+   * tree stats, which allows the two halves of a node to be split
+   * concurrently: they occupy disjoint portions of the master index array.
+   * If called from within a fork/join pool, the children of nodes with at
+   * least PARALLEL_SPLIT_THRESHOLD instances are split in parallel.
+   * 
+   * @param node The node to split.
+   * @param rootRadius The smallest ball enclosing all the data points.
+   * @throws Exception If there is some problem in splitting.
+   */
+  protected void splitSubtree(BallNode node, final double rootRadius)
+    throws Exception {
+
+    if (node.m_NumInstances <= m_MaxInstancesInLeaf
+      || (rootRadius == 0 ? true
+        : node.m_Radius / rootRadius < m_MaxRelLeafRadius)) {
+      return;
+    }
+
+    m_Splitter.splitNode(node, node.m_NodeNumber);
+
+    if (node.m_NumInstances >= PARALLEL_SPLIT_THRESHOLD
+      && ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(new SplitSubtreeTask(node.m_Left, rootRadius),
+        new SplitSubtreeTask(node.m_Right, rootRadius));
+    } else {
+      splitSubtree(node.m_Left, rootRadius);
+      splitSubtree(node.m_Right, rootRadius);
+    }
+
+    if (m_FullyContainChildBalls) {
+      node.setRadius(BallNode.calcRadius(node.m_Left, node.m_Right,
+        node.getPivot(), m_DistanceFunction));
+    }
+  }
+
+  /**
+   * Splits the subtree starting from the supplied node using a fork/join pool
+   * with the number of execution slots as parallelism.
+   * 
+   * @param node The node to split.
+   * @param rootRadius The smallest ball enclosing all the data points.
+   * @throws Exception If there is some problem in splitting.
+   */
+  protected void splitSubtreeInParallel(BallNode node, final double rootRadius)
+    throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(m_NumExecutionSlots);
+    try {
+      pool.invoke(new SplitSubtreeTask(node, rootRadius));
+    } catch (RuntimeException ex) {
+      // unwrap the exception thrown by the splitter
+      Throwable cause = ex;
+      while (cause instanceof RuntimeException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw ex;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Numbers the nodes below the supplied node in the same order as
+   * splitNodes(BallNode, int, double) would have, and updates the tree stats
+   * accordingly.
+   * 
+   * @param node The node to continue from.
+   * @param depth The depth of the supplied node.
+   */
+  protected void countNodes(BallNode node, int depth) {
+    if (node.m_Left == null || node.m_Right == null) {
+      return;
+    }
+
+    m_NumLeaves++;
+    if (m_MaxDepth < depth) {
+      m_MaxDepth = depth;
+    }
+
+    node.m_Left.m_NodeNumber = m_NumNodes + 1;
+    node.m_Right.m_NodeNumber = m_NumNodes + 2;
+    m_NumNodes += 2;
+
+    countNodes(node.m_Left, depth + 1);
+    countNodes(node.m_Right, depth + 1);
+  }
+
+  /**
+   * The task for splitting the subtree of a node within a fork/join pool.
+   */
+  protected class SplitSubtreeTask extends RecursiveAction {
+
+    /** for serialization. */
+    private static final long serialVersionUID = 6094728352405518723L;
+
+    /** The node to split. */
+    protected BallNode m_Node;
+
+    /** The smallest ball enclosing all the data points. */
+    protected double m_RootRadius;
+
+    /**
+     * Initializes the task.
+     * 
+     * @param node The node to split.
+     * @param rootRadius The smallest ball enclosing all the data points.
+     */
+    public SplitSubtreeTask(BallNode node, double rootRadius) {
+      m_Node = node;
+      m_RootRadius = rootRadius;
+    }
+
+    /**
+     * Splits the subtree.
+     */
+    @Override
+    protected void compute() {
+      try {
+        splitSubtree(m_Node, m_RootRadius);
+      } catch (RuntimeException ex) {
+        throw ex;
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+  }
+
   /**
    * Adds an instance to the ball tree.
    * 
@@ -247,7 +420,7 @@ public class TopDownConstructor extends BallTreeConstructor implements
       int instList[] = new int[m_Instances.numInstances()];
       System.arraycopy(m_InstList, 0, instList, 0, node.m_End + 1);
       if (node.m_End < m_InstList.length - 1) {
-        System.arraycopy(m_InstList, node.m_End + 2, instList, node.m_End + 2,
+        System.arraycopy(m_InstList, node.m_End + 1, instList, node.m_End + 2,
           m_InstList.length - node.m_End - 1);
       }
       instList[node.m_End + 1] = index;
@@ -312,6 +485,37 @@ public class TopDownConstructor extends BallTreeConstructor implements
     m_Splitter = splitter;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building the "
+      + "tree. Set equal to the number of available cpu/cores. Note that "
+      + "the result of randomized splitting methods can depend on the order "
+      + "in which the nodes get split.";
+  }
+
+  /**
+   * Sets the number of execution slots for building the tree.
+   * 
+   * @param slots the number of slots
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_NumExecutionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots for building the tree.
+   * 
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Returns an enumeration describing the available options.
    * 
@@ -324,6 +528,11 @@ public class TopDownConstructor extends BallTreeConstructor implements
     newVector.addElement(new Option("\tBall splitting algorithm to use.", "S",
       1, "-S <classname and options>"));
 
+    newVector.addElement(new Option(
+      "\tNumber of execution slots for building the tree.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+      "-num-slots <num>"));
+
     newVector.addAll(Collections.list(super.listOptions()));
 
     return newVector.elements();
@@ -340,6 +549,12 @@ public class TopDownConstructor extends BallTreeConstructor implements
    *  Ball splitting algorithm to use.
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of execution slots for building the tree.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -363,6 +578,13 @@ public class TopDownConstructor extends BallTreeConstructor implements
       setBallSplitter(new PointsClosestToFurthestChildren());
     }
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
 
   }
@@ -379,6 +601,9 @@ public class TopDownConstructor extends BallTreeConstructor implements
     result.add("-S");
     result.add(m_Splitter.getClass().getName());
 
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[result.size()]);
@@ -133,7 +133,7 @@ public abstract class KDTreeNodeSplitter implements Serializable,
       throw new Exception("No instance list supplied.");
     } else if (m_EuclideanDistance == null) {
       throw new Exception("No Euclidean distance function supplied.");
-    } else if (m_Instances.numInstances() != m_InstList.length) {
+    } else if (m_Instances.numInstances() > m_InstList.length) {
       throw new Exception("The supplied instance list doesn't seem to match "
         + "the supplied instances");
     }
@@ -24,6 +24,7 @@ package weka.experiment;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import weka.core.RevisionUtils;
 
@@ -33,6 +34,11 @@ import weka.core.RevisionUtils;
  * <p/>
  * <!-- globalinfo-end -->
  * 
+ * Results are inserted in batches (see DatabaseUtils.prepareInsert()). Unless
+ * a cache key name is set, the keys of all results already in the results
+ * table are read with a single query the first time isResultRequired() is
+ * called, rather than querying the table for each key.
+ * 
  * @author Len Trigg (trigg@cs.waikato.ac.nz)
  * @version $Revision$
  */
@@ -60,6 +66,9 @@ public class DatabaseResultListener extends DatabaseUtils implements
   /** Stores the cached values */
   protected ArrayList<String> m_Cache = new ArrayList<String>();
 
+  /** The keys of the results in the table, or null if not loaded yet */
+  protected transient HashSet<String> m_KeySet;
+
   /**
    * Returns a string describing this result listener
    * 
@@ -183,6 +192,9 @@ public class DatabaseResultListener extends DatabaseUtils implements
     // null result could occur from a chain of doRunKeys calls
     if (result != null) {
       putResultInTable(m_ResultsTableName, rp, key, result);
+      if ((m_KeySet != null) && isStringKey(key)) {
+        m_KeySet.add(keyToString(key));
+      }
     }
   }
 
@@ -217,6 +229,11 @@ public class DatabaseResultListener extends DatabaseUtils implements
         loadCache(rp, key);
       }
       retval = !isKeyInCache(rp, key);
+    } else if (isStringKey(key)) {
+      if (m_KeySet == null) {
+        loadKeySet(rp);
+      }
+      retval = !m_KeySet.contains(keyToString(key));
     } else {
       // Ask whether the results are needed
       retval = !isKeyInTable(m_ResultsTableName, rp, key);
@@ -240,6 +257,7 @@ public class DatabaseResultListener extends DatabaseUtils implements
    */
   protected void updateResultsTableName(ResultProducer rp) throws Exception {
 
+    m_KeySet = null;
     if (!isConnected()) {
       connectToDatabase();
     }
@@ -388,6 +406,79 @@ public class DatabaseResultListener extends DatabaseUtils implements
     m_CacheKey = key.clone();
   }
 
+  /**
+   * Returns true if all fields of a key are strings, in which case the key
+   * can be looked up in the key set.
+   * 
+   * @param key the result key
+   * @return true if all fields are strings
+   */
+  protected boolean isStringKey(Object[] key) {
+
+    for (Object element : key) {
+      if (!(element instanceof String)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a string that identifies a key in the key set.
+   * 
+   * @param key the result key (all fields non-null strings)
+   * @return the string
+   */
+  protected String keyToString(Object[] key) {
+
+    StringBuilder result = new StringBuilder();
+    for (Object element : key) {
+      result.append(DatabaseUtils.processKeyValue((String) element));
+      result.append('\0');
+    }
+    return result.toString();
+  }
+
+  /**
+   * Executes a single database query to fill the key set with the keys of all
+   * results in the results table
+   * 
+   * @param rp the ResultProducer the keys belong to
+   * @throws Exception if an error occurs
+   */
+  protected void loadKeySet(ResultProducer rp) throws Exception {
+
+    String[] keyNames = rp.getKeyNames();
+    String query = "SELECT ";
+    for (int i = 0; i < keyNames.length; i++) {
+      if (i != 0) {
+        query += ", ";
+      }
+      query += "Key_" + keyNames[i];
+    }
+    query += " FROM " + m_ResultsTableName;
+
+    m_KeySet = new HashSet<String>();
+    ResultSet rs = select(query);
+    while (rs.next()) {
+      StringBuilder keyString = new StringBuilder();
+      boolean complete = true;
+      for (int i = 1; i <= keyNames.length; i++) {
+        String keyVal = rs.getString(i);
+        if (rs.wasNull()) {
+          complete = false;
+          break;
+        }
+        keyString.append(keyVal).append('\0');
+      }
+      // a key with a NULL field can't match a key that is all strings
+      if (complete) {
+        m_KeySet.add(keyString.toString());
+      }
+    }
+    close(rs);
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -162,6 +162,27 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
   /** create index on the database? */
   protected boolean m_createIndex = false;
 
+  /** The number of rows to send to the database in one JDBC batch. */
+  protected int m_batchSize = 100;
+
+  /** The number of rows to insert before committing (0 = at the end). */
+  protected int m_commitInterval = 1000;
+
+  /** The statement that rows are inserted with (see prepareInsert()). */
+  protected transient PreparedStatement m_InsertStatement;
+
+  /** The SQL of the insert statement. */
+  protected transient String m_InsertQuery;
+
+  /** The number of rows added to the current batch. */
+  protected transient int m_numBatched;
+
+  /** The number of rows inserted since the last commit. */
+  protected transient int m_numUncommitted;
+
+  /** Whether the insert statement uses JDBC batches. */
+  protected transient boolean m_useBatches;
+
   /** the keywords for the current database type. */
   protected HashSet<String> m_Keywords = new HashSet<String>();
 
@@ -277,6 +298,9 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
       PROPERTIES.getProperty("setAutoCommit", "true").equals("true");
     m_createIndex =
       PROPERTIES.getProperty("createIndex", "false").equals("true");
+    m_batchSize = Integer.parseInt(PROPERTIES.getProperty("batchSize", "100"));
+    m_commitInterval =
+      Integer.parseInt(PROPERTIES.getProperty("commitInterval", "1000"));
     setKeywords(PROPERTIES.getProperty("Keywords",
       "AND,ASC,BY,DESC,FROM,GROUP,INSERT,ORDER,SELECT,UPDATE,WHERE"));
     setKeywordsMaskChar(PROPERTIES.getProperty("KeywordsMaskChar", "_"));
@@ -542,6 +566,64 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
     return m_password;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The number of rows to send to the database in one batch when "
+      + "inserting (1 = one statement per row).";
+  }
+
+  /**
+   * Set the number of rows to send to the database in one batch.
+   * 
+   * @param size the batch size
+   */
+  public void setBatchSize(int size) {
+    m_batchSize = size;
+  }
+
+  /**
+   * Get the number of rows to send to the database in one batch.
+   * 
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return m_batchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String commitIntervalTipText() {
+    return "The number of rows to insert before committing the transaction "
+      + "(0 = commit once all rows have been inserted).";
+  }
+
+  /**
+   * Set the number of rows to insert before committing.
+   * 
+   * @param interval the number of rows (0 = commit at the end)
+   */
+  public void setCommitInterval(int interval) {
+    m_commitInterval = interval;
+  }
+
+  /**
+   * Get the number of rows to insert before committing.
+   * 
+   * @return the number of rows (0 = commit at the end)
+   */
+  public int getCommitInterval() {
+    return m_commitInterval;
+  }
+
   /**
    * Opens a connection to the database.
    * 
@@ -669,8 +751,12 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
       System.err.println("Disconnecting from " + m_DatabaseURL);
     }
     if (m_Connection != null) {
-      m_Connection.close();
-      m_Connection = null;
+      try {
+        finishInserts();
+      } finally {
+        m_Connection.close();
+        m_Connection = null;
+      }
     }
   }
 
@@ -858,6 +944,45 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
     return result;
   }
 
+  /**
+   * Executes a SQL SELECT query and returns a forward-only cursor over its
+   * rows, which the driver fetches fetchSize rows at a time rather than all at
+   * once. Auto-commit is switched off for a positive fetch size, because some
+   * drivers (e.g. PostgreSQL) only use a server-side cursor inside a
+   * transaction; MySQL needs "useCursorFetch=true" in the URL. Note: the
+   * ResultSet object must be closed by the caller with
+   * <code>close(ResultSet)</code>.
+   *
+   * @param query the SQL query
+   * @param fetchSize the number of rows to fetch at a time (0 for the driver's
+   *          default)
+   * @param maxRows the maximum number of rows to return (0 for no limit)
+   * @return the generated ResultSet
+   * @throws SQLException if an error occurs
+   * @see #close(ResultSet)
+   */
+  public ResultSet openCursor(String query, int fetchSize, int maxRows)
+    throws SQLException {
+    if (!isConnected()) {
+      throw new IllegalStateException("Not connected, please connect first!");
+    }
+
+    if (fetchSize > 0 && m_Connection.getAutoCommit()) {
+      m_Connection.setAutoCommit(false);
+    }
+    Statement statement =
+      m_Connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY);
+    if (fetchSize > 0) {
+      statement.setFetchSize(fetchSize);
+    }
+    if (maxRows > 0) {
+      statement.setMaxRows(maxRows);
+    }
+
+    return statement.executeQuery(query);
+  }
+
   /**
    * closes the ResultSet and the statement that generated the ResultSet to
    * avoid memory leaks in JDBC drivers - in contrast to the JDBC specs, a lot
@@ -891,6 +1016,131 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
     }
   }
 
+  /**
+   * Gets the statement for inserting rows into a table, with one parameter
+   * per column. The statement is kept open and reused for as long as rows are
+   * inserted into the same table. Once its parameters are set, a row is
+   * inserted with addInsert(). Rows are sent to the database in batches of
+   * batchSize rows and are committed every commitInterval rows, and when
+   * finishInserts() is called (which disconnectFromDatabase() does).
+   * 
+   * @param tableName the table to insert rows into
+   * @param numColumns the number of columns of the table
+   * @return the statement
+   * @throws SQLException if the statement can't be prepared
+   */
+  public PreparedStatement prepareInsert(String tableName, int numColumns)
+    throws SQLException {
+    if (!isConnected()) {
+      throw new IllegalStateException("Not connected, please connect first!");
+    }
+
+    StringBuilder query = new StringBuilder("INSERT INTO ");
+    query.append(tableName).append(" VALUES ( ");
+    for (int i = 0; i < numColumns; i++) {
+      query.append(i == 0 ? "?" : ", ?");
+    }
+    query.append(" )");
+
+    if (m_InsertStatement != null) {
+      if (query.toString().equals(m_InsertQuery)) {
+        return m_InsertStatement;
+      }
+      finishInserts();
+    }
+
+    m_Connection.setAutoCommit(false);
+    m_InsertQuery = query.toString();
+    m_InsertStatement = m_Connection.prepareStatement(m_InsertQuery);
+    m_useBatches = m_batchSize > 1
+      && m_Connection.getMetaData().supportsBatchUpdates();
+    m_numBatched = 0;
+    m_numUncommitted = 0;
+
+    return m_InsertStatement;
+  }
+
+  /**
+   * Inserts a row with the current parameters of the statement returned by
+   * prepareInsert(). The row may not be sent to the database until the batch
+   * is full.
+   * 
+   * @throws SQLException if an error occurs
+   */
+  public void addInsert() throws SQLException {
+    if (m_InsertStatement == null) {
+      throw new IllegalStateException("No insert statement prepared!");
+    }
+
+    if (m_useBatches) {
+      m_InsertStatement.addBatch();
+      m_numBatched++;
+      if (m_numBatched >= m_batchSize) {
+        executeInsertBatch();
+      }
+    } else {
+      if (m_InsertStatement.executeUpdate() < 1) {
+        throw new SQLException("Row cannot be inserted.");
+      }
+      m_numUncommitted++;
+      if ((m_commitInterval > 0) && (m_numUncommitted >= m_commitInterval)) {
+        m_Connection.commit();
+        m_numUncommitted = 0;
+      }
+    }
+  }
+
+  /**
+   * Sends the rows of the current batch to the database, and commits if
+   * enough rows have been inserted since the last commit.
+   * 
+   * @throws SQLException if an error occurs
+   */
+  protected void executeInsertBatch() throws SQLException {
+    if (m_numBatched > 0) {
+      int[] counts = m_InsertStatement.executeBatch();
+      for (int count : counts) {
+        if (count == 0 || count == Statement.EXECUTE_FAILED) {
+          throw new SQLException("Row cannot be inserted.");
+        }
+      }
+      m_numUncommitted += m_numBatched;
+      m_numBatched = 0;
+    }
+    if ((m_commitInterval > 0) && (m_numUncommitted >= m_commitInterval)) {
+      m_Connection.commit();
+      m_numUncommitted = 0;
+    }
+  }
+
+  /**
+   * Sends any rows that are still batched to the database, commits them and
+   * closes the insert statement. Does nothing if no insert statement is open.
+   * 
+   * @throws SQLException if an error occurs
+   */
+  public void finishInserts() throws SQLException {
+    if (m_InsertStatement == null) {
+      return;
+    }
+
+    try {
+      executeInsertBatch();
+      m_Connection.commit();
+    } finally {
+      try {
+        m_InsertStatement.close();
+      } catch (Exception e) {
+        // ignored
+      }
+      m_InsertStatement = null;
+      m_InsertQuery = null;
+      m_numBatched = 0;
+      m_numUncommitted = 0;
+      m_Connection.setAutoCommit(m_setAutoCommit);
+    }
+  }
+
   /**
    * Checks that a given table exists.
    * 
@@ -1069,8 +1319,8 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
   }
 
   /**
-   * Executes a database query to insert a result for the supplied key into the
-   * database.
+   * Inserts a result for the supplied key into the database. The insert may
+   * be batched, see prepareInsert().
    * 
    * @param tableName the name of the table where the result is stored
    * @param rp the ResultProducer who will generate the result if required
@@ -1081,71 +1331,74 @@ public class DatabaseUtils implements Serializable, RevisionHandler {
   public void putResultInTable(String tableName, ResultProducer rp,
     Object[] key, Object[] result) throws Exception {
 
-    String query = "INSERT INTO " + tableName + " VALUES ( ";
-    // Add the results to the table
+    if (m_Debug) {
+      System.err.println("Submitting result: " + arrayToString(key) + " "
+        + arrayToString(result));
+    }
+
+    PreparedStatement insert =
+      prepareInsert(tableName, key.length + result.length);
+    Object[] keyTypes = null;
     for (int i = 0; i < key.length; i++) {
-      if (i != 0) {
-        query += ',';
-      }
-      if (key[i] != null) {
-        if (key[i] instanceof String) {
-          query += "'" + processKeyString(key[i].toString()) + "'";
-        } else if (key[i] instanceof Double) {
-          query += safeDoubleToString((Double) key[i]);
-        } else {
-          query += key[i].toString();
+      if (key[i] == null) {
+        if (keyTypes == null) {
+          keyTypes = rp.getKeyTypes();
         }
+        setParameter(insert, i + 1, null, keyTypes[i]);
+      } else if (key[i] instanceof String) {
+        setParameter(insert, i + 1, processKeyValue((String) key[i]), null);
       } else {
-        query += "NULL";
+        setParameter(insert, i + 1, key[i], null);
       }
     }
-    for (Object element : result) {
-      query += ',';
-      if (element != null) {
-        if (element instanceof String) {
-          query += "'" + element.toString() + "'";
-        } else if (element instanceof Double) {
-          query += safeDoubleToString((Double) element);
-        } else {
-          query += element.toString();
-          // !!
-          // System.err.println("res: "+ result[i].toString());
-        }
-      } else {
-        query += "NULL";
+    Object[] resultTypes = null;
+    for (int i = 0; i < result.length; i++) {
+      if ((result[i] == null) && (resultTypes == null)) {
+        resultTypes = rp.getResultTypes();
       }
+      setParameter(insert, key.length + i + 1, result[i],
+        (resultTypes != null) ? resultTypes[i] : null);
     }
-    query += ')';
-
-    if (m_Debug) {
-      System.err.println("Submitting result: " + query);
-    }
-    update(query);
-    close();
+    addInsert();
   }
 
   /**
-   * Inserts a + if the double is in scientific notation. MySQL doesn't
-   * understand the number otherwise.
+   * Processes a key value in the same way as processKeyString(), except that
+   * quotes are left alone as the value is not embedded in an SQL string.
    * 
-   * @param number the number to convert
-   * @return the number as string
+   * @param s the key value
+   * @return the value to store
    */
-  private String safeDoubleToString(Double number) {
-    // NaN is treated as NULL
-    if (number.isNaN()) {
-      return "NULL";
-    }
-
-    String orig = number.toString();
+  public static String processKeyValue(String s) {
+    return s.replaceAll("\\\\", "/");
+  }
 
-    int pos = orig.indexOf('E');
-    if ((pos == -1) || (orig.charAt(pos + 1) == '-')) {
-      return orig;
+  /**
+   * Sets a parameter of a prepared statement. NaN is stored as NULL.
+   * 
+   * @param statement the statement
+   * @param index the index of the parameter (starting at 1)
+   * @param value the value, may be null
+   * @param type an object of the type of the column (Double or String), used
+   *          for null values
+   * @throws SQLException if the parameter can't be set
+   */
+  protected static void setParameter(PreparedStatement statement, int index,
+    Object value, Object type) throws SQLException {
+    if (value instanceof Double) {
+      if (((Double) value).isNaN()) {
+        statement.setNull(index, Types.DOUBLE);
+      } else {
+        statement.setDouble(index, (Double) value);
+      }
+    } else if (value instanceof String) {
+      statement.setString(index, (String) value);
+    } else if (value != null) {
+      statement.setObject(index, value);
+    } else if (type instanceof Double) {
+      statement.setNull(index, Types.DOUBLE);
     } else {
-      StringBuffer buff = new StringBuffer(orig);
-      buff.insert(pos + 1, '+');
-      return new String(buff);
+      statement.setNull(index, Types.VARCHAR);
     }
   }
 
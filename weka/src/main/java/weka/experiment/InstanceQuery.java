@@ -493,10 +493,7 @@ public class InstanceQuery extends DatabaseUtils implements OptionHandler,
           } else {
             Double index = nominalIndexes[i - 1].get(txt);
             if (index == null) {
-
-              // Need to add one because first value in
-              // string attribute is dummy value.
-              index = new Double(nominalStrings[i - 1].size()) + 1;
+              index = new Double(nominalStrings[i - 1].size());
               nominalIndexes[i - 1].put(txt, index);
               nominalStrings[i - 1].add(txt);
             }
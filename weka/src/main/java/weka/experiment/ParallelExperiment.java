@@ -0,0 +1,764 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ParallelExperiment.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.experiment;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.DefaultListModel;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+import weka.core.converters.AbstractFileLoader;
+import weka.core.converters.ConverterUtils;
+import weka.core.xml.XMLOptions;
+
+/**
+ * Runs an experiment on a pool of threads in the current JVM, as an
+ * alternative to RemoteExperiment that needs no RMI registry or remote
+ * engines.
+ * <p>
+ *
+ * The experiment is split into units of work, one for each combination of
+ * custom property value, dataset and run (i.e. one call to the
+ * ResultProducer's doRun() method, which covers all folds of a cross
+ * validation). The units are executed concurrently, each on its own copy of
+ * the result producer. Datasets are loaded only once and are cached for the
+ * lifetime of the JVM, for as long as memory permits and the file is not
+ * modified. Before a unit is run, its keys are checked with the result
+ * listener and the unit is skipped if none of its results are required.
+ * <p>
+ *
+ * Results are buffered per unit and passed on to the result listener by the
+ * thread that runs the experiment, in the same order as Experiment would
+ * produce them, so CSVResultListener, InstancesResultListener and
+ * DatabaseResultListener can be used unchanged.
+ * <p>
+ *
+ * <!-- options-start --> Valid options are:
+ * <p/>
+ *
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of threads to use for running the experiment.
+ *  (0 = number of cores, default = 0)
+ * </pre>
+ *
+ * <pre>
+ * -L &lt;num&gt;
+ *  The lower run number to start the experiment from.
+ *  (default 1)
+ * </pre>
+ *
+ * <pre>
+ * -U &lt;num&gt;
+ *  The upper run number to end the experiment at (inclusive).
+ *  (default 10)
+ * </pre>
+ *
+ * <pre>
+ * -T &lt;arff file&gt;
+ *  The dataset to run the experiment on.
+ *  (required, may be specified multiple times)
+ * </pre>
+ *
+ * <pre>
+ * -P &lt;class name&gt;
+ *  The full class name of a ResultProducer (required).
+ *  eg: weka.experiment.RandomSplitResultProducer
+ * </pre>
+ *
+ * <pre>
+ * -D &lt;class name&gt;
+ *  The full class name of a ResultListener (required).
+ *  eg: weka.experiment.CSVResultListener
+ * </pre>
+ *
+ * <pre>
+ * -N &lt;string&gt;
+ *  A string containing any notes about the experiment.
+ *  (default none)
+ * </pre>
+ *
+ * <!-- options-end -->
+ *
+ * All options after -- will be passed to the result producer.
+ * <p>
+ *
+ * @version $Revision$
+ */
+public class ParallelExperiment extends Experiment {
+
+  /** For serialization */
+  private static final long serialVersionUID = -6404436962651437018L;
+
+  /** Datasets loaded so far, keyed by file, size and modification time */
+  protected static final Map<String, SoftReference<Instances>> DATASET_CACHE =
+    new HashMap<String, SoftReference<Instances>>();
+
+  /** The number of threads to use (0 = the number of available cores) */
+  protected int m_numExecutionSlots = 0;
+
+  /**
+   * Construct a new ParallelExperiment
+   */
+  public ParallelExperiment() {
+    super();
+  }
+
+  /**
+   * Construct a new ParallelExperiment with the same configuration as an
+   * existing experiment
+   *
+   * @param base the experiment to copy the configuration from
+   */
+  public ParallelExperiment(Experiment base) {
+    setRunLower(base.getRunLower());
+    setRunUpper(base.getRunUpper());
+    setResultListener(base.getResultListener());
+    setResultProducer(base.getResultProducer());
+    setDatasets(base.getDatasets());
+    setUsePropertyIterator(base.getUsePropertyIterator());
+    setPropertyPath(base.getPropertyPath());
+    setPropertyArray(base.getPropertyArray());
+    setNotes(base.getNotes());
+    m_ClassFirst = base.m_ClassFirst;
+    m_AdvanceDataSetFirst = base.m_AdvanceDataSetFirst;
+  }
+
+  /**
+   * Set the number of threads to use for running the experiment
+   *
+   * @param slots the number of threads to use (0 = the number of available
+   *          cores)
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = slots;
+  }
+
+  /**
+   * Get the number of threads to use for running the experiment
+   *
+   * @return the number of threads to use (0 = the number of available cores)
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use when running the experiment "
+      + "(0 = use the number of available cores).";
+  }
+
+  /**
+   * Returns an enumeration describing the available options..
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+
+    Vector<Option> newVector = new Vector<Option>();
+
+    newVector.addElement(new Option("\tNumber of threads to use for "
+      + "running the experiment.\n\t(0 = number of cores, default = 0)",
+      "num-slots", 1, "-num-slots <num>"));
+
+    newVector.addAll(Collections.list(super.listOptions()));
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   * <p/>
+   *
+   * <!-- options-start --> Valid options are:
+   * <p/>
+   *
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of threads to use for running the experiment.
+   *  (0 = number of cores, default = 0)
+   * </pre>
+   *
+   * <pre>
+   * -L &lt;num&gt;
+   *  The lower run number to start the experiment from.
+   *  (default 1)
+   * </pre>
+   *
+   * <pre>
+   * -U &lt;num&gt;
+   *  The upper run number to end the experiment at (inclusive).
+   *  (default 10)
+   * </pre>
+   *
+   * <pre>
+   * -T &lt;arff file&gt;
+   *  The dataset to run the experiment on.
+   *  (required, may be specified multiple times)
+   * </pre>
+   *
+   * <pre>
+   * -P &lt;class name&gt;
+   *  The full class name of a ResultProducer (required).
+   *  eg: weka.experiment.RandomSplitResultProducer
+   * </pre>
+   *
+   * <pre>
+   * -D &lt;class name&gt;
+   *  The full class name of a ResultListener (required).
+   *  eg: weka.experiment.CSVResultListener
+   * </pre>
+   *
+   * <pre>
+   * -N &lt;string&gt;
+   *  A string containing any notes about the experiment.
+   *  (default none)
+   * </pre>
+   *
+   * <!-- options-end -->
+   *
+   * All options after -- will be passed to the result producer.
+   * <p>
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+
+    String slots = Utils.getOption("num-slots", options);
+    if (slots.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(slots));
+    } else {
+      setNumExecutionSlots(0);
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the experiment.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+
+    List<String> options = new ArrayList<String>();
+
+    options.add("-num-slots");
+    options.add("" + getNumExecutionSlots());
+    Collections.addAll(options, super.getOptions());
+
+    return options.toArray(new String[0]);
+  }
+
+  /**
+   * Get a dataset from the cache, loading it if it has not been loaded yet
+   * (or if the file has changed since it was loaded). The returned dataset is
+   * shared and must not be modified.
+   *
+   * @param file the file to load the dataset from
+   * @return the dataset
+   * @throws Exception if the dataset can't be loaded
+   */
+  protected static Instances getDataset(File file) throws Exception {
+
+    String key = file.getAbsolutePath() + File.pathSeparator + file.length()
+      + File.pathSeparator + file.lastModified();
+
+    synchronized (DATASET_CACHE) {
+      SoftReference<Instances> ref = DATASET_CACHE.get(key);
+      Instances data = (ref != null) ? ref.get() : null;
+      if (data == null) {
+        AbstractFileLoader loader = ConverterUtils.getLoaderForFile(file);
+        loader.setFile(file);
+        data = loader.getDataSet();
+        DATASET_CACHE.put(key, new SoftReference<Instances>(data));
+      }
+
+      return data;
+    }
+  }
+
+  /**
+   * Get a copy of one of the experiment's datasets, with the class attribute
+   * set
+   *
+   * @param datasetNumber the index of the dataset
+   * @return the dataset
+   * @throws Exception if the dataset can't be loaded
+   */
+  protected Instances getInstances(int datasetNumber) throws Exception {
+
+    File currentFile = (File) getDatasets().elementAt(datasetNumber);
+    Instances data = new Instances(getDataset(currentFile));
+    // only set class attribute if not already done by loader
+    if (data.classIndex() == -1) {
+      if (m_ClassFirst) {
+        data.setClassIndex(0);
+      } else {
+        data.setClassIndex(data.numAttributes() - 1);
+      }
+    }
+
+    return data;
+  }
+
+  /**
+   * Get the description of the current iteration that is printed in verbose
+   * mode
+   *
+   * @return the description
+   */
+  protected String getIterationDescription() {
+
+    String current = "Iteration:";
+    if (getUsePropertyIterator()) {
+      int cnum = getCurrentPropertyNumber();
+      String ctype = getPropertyArray().getClass().getComponentType()
+        .getName();
+      int lastDot = ctype.lastIndexOf('.');
+      if (lastDot != -1) {
+        ctype = ctype.substring(lastDot + 1);
+      }
+      current += " " + ctype + "=" + (cnum + 1) + ":"
+        + getPropertyArrayValue(cnum).getClass().getName();
+    }
+    String dname = ((File) getDatasets().elementAt(getCurrentDatasetNumber()))
+      .getName();
+    current += " Dataset=" + dname + " Run=" + (getCurrentRunNumber());
+
+    return current;
+  }
+
+  /**
+   * Runs all iterations of the experiment on a pool of threads, continuing
+   * past errors. Must be preceded by a call to initialize().
+   *
+   * @param verbose true if progress is to be printed to standard out
+   */
+  @Override
+  public void runExperiment(boolean verbose) {
+
+    if (!hasMoreIterations()) {
+      return;
+    }
+
+    int slots = m_numExecutionSlots > 0 ? m_numExecutionSlots : Runtime
+      .getRuntime().availableProcessors();
+
+    // each unit gets its own copy of the result producer. The listener is
+    // left out of the copy, as the units pass their results on through
+    // their own buffer
+    SerializedObject producer;
+    try {
+      m_ResultProducer.setResultListener(null);
+      producer = new SerializedObject(m_ResultProducer);
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.err.println(ex.getMessage());
+      return;
+    } finally {
+      m_ResultProducer.setResultListener(m_ResultListener);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(slots,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "ParallelExperiment unit");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+
+    // results are passed on in the order the units were submitted. The
+    // number of units in flight is bounded so that only a few datasets and
+    // buffers are held at any one time
+    LinkedList<Future<ResultBuffer>> pending =
+      new LinkedList<Future<ResultBuffer>>();
+    try {
+      while (hasMoreIterations()) {
+        try {
+          String description = verbose ? getIterationDescription() : null;
+          ResultProducer unitProducer = (ResultProducer) producer.getObject();
+          if (m_UsePropertyIterator) {
+            setProperty(0, unitProducer);
+          }
+          pending.add(executor.submit(new ExperimentUnit(unitProducer,
+            getInstances(m_DatasetNumber), m_RunNumber, description)));
+        } catch (Exception ex) {
+          ex.printStackTrace();
+          System.err.println(ex.getMessage());
+        }
+        advanceCounters();
+
+        while (pending.size() > 0
+          && (pending.size() >= 2 * slots || !hasMoreIterations())) {
+          finishUnit(pending.removeFirst());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      m_Finished = true;
+    }
+  }
+
+  /**
+   * Waits for a unit to complete and passes its results on to the result
+   * listener, continuing past errors.
+   *
+   * @param unit the unit
+   */
+  protected void finishUnit(Future<ResultBuffer> unit) {
+    try {
+      unit.get().flush();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.err.println(ex.getMessage());
+    }
+  }
+
+  /**
+   * Carries out one unit of the experiment: all results for one run on one
+   * dataset with one setting of the custom property.
+   */
+  protected class ExperimentUnit implements Callable<ResultBuffer> {
+
+    /** The unit's own copy of the result producer */
+    protected ResultProducer m_producer;
+
+    /** The dataset */
+    protected Instances m_data;
+
+    /** The run number */
+    protected int m_run;
+
+    /** The description to print when the unit starts (null for none) */
+    protected String m_description;
+
+    /**
+     * Constructor
+     *
+     * @param producer the unit's own copy of the result producer
+     * @param data the dataset (not shared with other units)
+     * @param run the run number
+     * @param description the description to print when the unit starts, or
+     *          null
+     */
+    public ExperimentUnit(ResultProducer producer, Instances data, int run,
+      String description) {
+      m_producer = producer;
+      m_data = data;
+      m_run = run;
+      m_description = description;
+    }
+
+    @Override
+    public ResultBuffer call() {
+
+      ResultBuffer buffer = new ResultBuffer(m_ResultListener,
+        m_ResultProducer);
+      try {
+        m_producer.setResultListener(buffer);
+        m_producer.setInstances(m_data);
+        m_producer.preProcess();
+
+        // skip the unit if all of its results are already present
+        m_producer.doRunKeys(m_run);
+        if (buffer.isRequired()) {
+          if (m_description != null) {
+            System.out.println(m_description);
+          }
+          m_producer.doRun(m_run);
+        }
+        m_producer.postProcess();
+      } catch (Exception ex) {
+        buffer.setException(ex);
+      }
+
+      return buffer;
+    }
+  }
+
+  /**
+   * Collects the results of one unit of the experiment, so that they can be
+   * passed on to the experiment's result listener later, and from a single
+   * thread. Queries about whether results are required are passed on to the
+   * listener straight away, synchronized on the listener. Results are passed
+   * on with the experiment's own result producer as the source, as that is
+   * the producer that the listener was set up with.
+   */
+  protected static class ResultBuffer implements ResultListener {
+
+    /** For serialization */
+    private static final long serialVersionUID = 2866180914305611925L;
+
+    /** The experiment's result listener */
+    protected ResultListener m_listener;
+
+    /** The experiment's result producer */
+    protected ResultProducer m_producer;
+
+    /** The keys and results received so far */
+    protected List<Object[][]> m_results = new ArrayList<Object[][]>();
+
+    /** True if the listener has asked for any of the unit's results */
+    protected boolean m_required;
+
+    /** The exception that stopped the unit, if any */
+    protected Exception m_exception;
+
+    /**
+     * Constructor
+     *
+     * @param listener the experiment's result listener
+     * @param producer the experiment's result producer
+     */
+    public ResultBuffer(ResultListener listener, ResultProducer producer) {
+      m_listener = listener;
+      m_producer = producer;
+    }
+
+    /**
+     * Returns true if the listener has asked for any of the unit's results.
+     *
+     * @return true if results are required
+     */
+    public boolean isRequired() {
+      return m_required;
+    }
+
+    /**
+     * Record the exception that stopped the unit
+     *
+     * @param ex the exception
+     */
+    public void setException(Exception ex) {
+      m_exception = ex;
+    }
+
+    /**
+     * Pass the buffered results on to the listener, then report the
+     * exception that stopped the unit, if any.
+     *
+     * @throws Exception if the listener can't accept a result
+     */
+    public void flush() throws Exception {
+      synchronized (m_listener) {
+        for (Object[][] keyAndResult : m_results) {
+          m_listener.acceptResult(m_producer, keyAndResult[0],
+            keyAndResult[1]);
+        }
+      }
+      m_results.clear();
+
+      if (m_exception != null) {
+        m_exception.printStackTrace();
+        System.err.println(m_exception.getMessage());
+      }
+    }
+
+    @Override
+    public String[] determineColumnConstraints(ResultProducer rp)
+      throws Exception {
+      synchronized (m_listener) {
+        return m_listener.determineColumnConstraints(m_producer);
+      }
+    }
+
+    /**
+     * Does nothing, as the listener is prepared by the experiment.
+     *
+     * @param rp the ResultProducer that will generate the results
+     */
+    @Override
+    public void preProcess(ResultProducer rp) {
+    }
+
+    /**
+     * Does nothing, as the listener is finished off by the experiment.
+     *
+     * @param rp the ResultProducer that generated the results
+     */
+    @Override
+    public void postProcess(ResultProducer rp) {
+    }
+
+    /**
+     * Buffers a result. A null result (as sent for each required key by
+     * doRunKeys) just notes that the unit needs to be run.
+     *
+     * @param rp the ResultProducer that generated the result
+     * @param key The key for the results.
+     * @param result The actual results.
+     */
+    @Override
+    public void acceptResult(ResultProducer rp, Object[] key, Object[] result) {
+      if (result == null) {
+        m_required = true;
+      } else {
+        m_results.add(new Object[][] { key, result });
+      }
+    }
+
+    @Override
+    public boolean isResultRequired(ResultProducer rp, Object[] key)
+      throws Exception {
+      synchronized (m_listener) {
+        return m_listener.isResultRequired(m_producer, key);
+      }
+    }
+  }
+
+  /**
+   * Configures/Runs the ParallelExperiment from the command line.
+   *
+   * @param args command line arguments to the ParallelExperiment.
+   */
+  public static void main(String[] args) {
+
+    try {
+      weka.core.WekaPackageManager.loadPackages(false, true, false);
+      ParallelExperiment exp = null;
+      // get options from XML?
+      String xmlOption = Utils.getOption("xml", args);
+      if (!xmlOption.equals("")) {
+        args = new XMLOptions(xmlOption).toArray();
+      }
+
+      String expFile = Utils.getOption('l', args);
+      String saveFile = Utils.getOption('s', args);
+      boolean runExp = Utils.getFlag('r', args);
+      boolean verbose = Utils.getFlag("verbose", args);
+      if (expFile.length() == 0) {
+        exp = new ParallelExperiment();
+        try {
+          exp.setOptions(args);
+          Utils.checkForRemainingOptions(args);
+        } catch (Exception ex) {
+          ex.printStackTrace();
+          String result = "Usage:\n\n" + "-l <exp|xml file>\n"
+            + "\tLoad experiment from file (default use cli options).\n"
+            + "\tThe type is determined, based on the extension ("
+            + FILE_EXTENSION + " or .xml)\n" + "-s <exp|xml file>\n"
+            + "\tSave experiment to file after setting other options.\n"
+            + "\tThe type is determined, based on the extension ("
+            + FILE_EXTENSION + " or .xml)\n" + "\t(default don't save)\n"
+            + "-r\n" + "\tRun experiment (default don't run)\n"
+            + "-xml <filename | xml-string>\n"
+            + "\tget options from XML-Data instead from parameters.\n"
+            + "-verbose\n" + "\toutput progress information to std out." + "\n";
+          Enumeration<Option> enm = ((OptionHandler) exp).listOptions();
+          while (enm.hasMoreElements()) {
+            Option option = enm.nextElement();
+            result += option.synopsis() + "\n";
+            result += option.description() + "\n";
+          }
+          throw new Exception(result + "\n" + ex.getMessage());
+        }
+      } else {
+        Experiment base = read(expFile);
+        if (base instanceof RemoteExperiment) {
+          base = ((RemoteExperiment) base).getBaseExperiment();
+        }
+        if (base instanceof ParallelExperiment) {
+          exp = (ParallelExperiment) base;
+        } else {
+          exp = new ParallelExperiment(base);
+        }
+
+        String slots = Utils.getOption("num-slots", args);
+        if (slots.length() != 0) {
+          exp.setNumExecutionSlots(Integer.parseInt(slots));
+        }
+
+        // allow extra datasets to be added to pre-loaded experiment from
+        // command line
+        DefaultListModel<File> datasets = new DefaultListModel<File>();
+        for (int i = 0; i < exp.getDatasets().size(); i++) {
+          datasets.addElement((File) exp.getDatasets().elementAt(i));
+        }
+        String dataName;
+        do {
+          dataName = Utils.getOption('T', args);
+          if (dataName.length() != 0) {
+            datasets.addElement(new File(dataName));
+          }
+        } while (dataName.length() != 0);
+        exp.setDatasets(datasets);
+      }
+      System.err.println("Experiment:\n" + exp.toString());
+
+      if (saveFile.length() != 0) {
+        write(saveFile, exp);
+      }
+
+      if (runExp) {
+        System.err.println("Initializing...");
+        exp.initialize();
+        System.err.println("Iterating...");
+        exp.runExperiment(verbose);
+        System.err.println("Postprocessing...");
+        exp.postProcess();
+      }
+
+    } catch (Exception ex) {
+      System.err.println(ex.getMessage());
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
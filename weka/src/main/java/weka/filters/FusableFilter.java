@@ -0,0 +1,55 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FusableFilter.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.filters;
+
+/**
+ * Interface for filters that, once their output format is known and any
+ * statistics have been gathered from the first batch, turn each dense input
+ * instance into exactly one dense output instance whose values depend on the
+ * input values only. Such filters can be fused by MultiFilter into a single
+ * pass over the values of a row, without intermediate instances.
+ *
+ * @version $Revision$
+ */
+public interface FusableFilter {
+
+  /**
+   * Returns whether the filter is currently able to transform rows with
+   * transformValues(), i.e., whether the input format has been set and the
+   * filter has been initialized with the first batch (if it needs one).
+   *
+   * @return true if transformValues() can be called
+   */
+  boolean canTransformValues();
+
+  /**
+   * Transforms the values of a row. The result is the same as the values of
+   * the instance that input() would output for a dense instance with the given
+   * values. Unless documented otherwise by the filter, the two arrays must be
+   * different.
+   *
+   * @param in the values in the input format, which are not changed
+   * @param out the array for the values in the output format
+   * @throws Exception if the row can't be transformed
+   */
+  void transformValues(double[] in, double[] out) throws Exception;
+}
@@ -25,7 +25,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
 
+import weka.core.Attribute;
 import weka.core.Capabilities;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -36,6 +38,8 @@ import weka.core.Utils;
 /**
  * <!-- globalinfo-start --> Applies several filters successively. In case all
  * supplied filters are StreamableFilters, it will act as a streamable one, too.
+ * Once initialized, consecutive FusableFilters are applied to dense instances
+ * in a single pass over their values, without intermediate instances.
  * <p/>
  * <!-- globalinfo-end -->
  * 
@@ -58,7 +62,7 @@ import weka.core.Utils;
  * @version $Revision$
  * @see weka.filters.StreamableFilter
  */
-public class MultiFilter extends SimpleStreamFilter {
+public class MultiFilter extends SimpleStreamFilter implements FusableFilter {
 
   /** for serialization */
   private static final long serialVersionUID = -6293720886005713120L;
@@ -72,6 +76,16 @@ public class MultiFilter extends SimpleStreamFilter {
   /** whether we already checked the streamable state */
   protected boolean m_StreamableChecked = false;
 
+  /**
+   * For each filter, the index of the last filter of the run of fusable
+   * filters starting with it, or -1 if the filter can't be fused (null if not
+   * determined yet)
+   */
+  protected transient int[] m_FusedRunEnd;
+
+  /** the values between fused filters, the output of each filter */
+  protected transient double[][] m_FusionBuffers;
+
   /**
    * Returns a string describing this filter
    * 
@@ -81,7 +95,10 @@ public class MultiFilter extends SimpleStreamFilter {
   @Override
   public String globalInfo() {
     return "Applies several filters successively. In case all supplied filters "
-      + "are StreamableFilters, it will act as a streamable one, too.";
+      + "are StreamableFilters, it will act as a streamable one, too. Once "
+      + "initialized, consecutive FusableFilters are applied to dense "
+      + "instances in a single pass over their values, without intermediate "
+      + "instances.";
   }
 
   /**
@@ -203,6 +220,7 @@ public class MultiFilter extends SimpleStreamFilter {
   protected void reset() {
     super.reset();
     m_StreamableChecked = false;
+    m_FusedRunEnd = null;
   }
 
   /**
@@ -363,12 +381,19 @@ public class MultiFilter extends SimpleStreamFilter {
   protected Instance process(Instance instance) throws Exception {
     Instance result;
     int i;
+    int end;
 
     result = (Instance) instance.copy();
 
-    for (i = 0; i < getFilters().length; i++) {
-      if (getFilter(i).input(result)) {
+    i = 0;
+    while (i < getFilters().length) {
+      end = getFusedRunEnd(i);
+      if ((end >= 0) && (result instanceof DenseInstance)) {
+        result = fuse(i, end, result);
+        i = end + 1;
+      } else if (getFilter(i).input(result)) {
         result = getFilter(i).output();
+        i++;
       } else {
         // if a filter says nothing to collect then terminate
         result = null;
@@ -379,6 +404,128 @@ public class MultiFilter extends SimpleStreamFilter {
     return result;
   }
 
+  /**
+   * Returns whether a format can be passed through fused filters, i.e., it
+   * doesn't have string or relational attributes, whose values need to be
+   * copied between formats.
+   * 
+   * @param format the format to check
+   * @return true if the format can be used by fused filters
+   */
+  protected boolean isFusable(Instances format) {
+    return (format != null) && !format.checkForStringAttributes()
+      && !format.checkForAttributeType(Attribute.RELATIONAL);
+  }
+
+  /**
+   * Returns the index of the last filter of the run of fusable filters that
+   * starts with the given one. Determines the runs if necessary.
+   * 
+   * @param index the index of the first filter
+   * @return the index of the last filter, or -1 if the given filter can't be
+   *         fused
+   */
+  protected int getFusedRunEnd(int index) {
+    int i;
+    boolean fusable;
+
+    if (m_FusedRunEnd == null) {
+      int[] runEnd = new int[getFilters().length];
+      double[][] buffers = new double[getFilters().length][];
+      for (i = runEnd.length - 1; i >= 0; i--) {
+        fusable = (getFilter(i) instanceof FusableFilter)
+          && ((FusableFilter) getFilter(i)).canTransformValues()
+          && isFusable(getFilter(i).getInputFormat())
+          && isFusable(getFilter(i).outputFormatPeek());
+        if (!fusable) {
+          runEnd[i] = -1;
+          continue;
+        }
+        runEnd[i] = ((i < runEnd.length - 1) && (runEnd[i + 1] >= 0))
+          ? runEnd[i + 1] : i;
+        buffers[i] = new double[getFilter(i).outputFormatPeek()
+          .numAttributes()];
+      }
+      m_FusionBuffers = buffers;
+      m_FusedRunEnd = runEnd;
+
+      if (getDebug()) {
+        System.out.println("Fused runs: " + Utils.arrayToString(runEnd));
+      }
+    }
+
+    return m_FusedRunEnd[index];
+  }
+
+  /**
+   * Applies a run of fusable filters to the values of an instance.
+   * 
+   * @param first the index of the first filter
+   * @param last the index of the last filter
+   * @param in the values in the input format of the first filter
+   * @param out the array for the values in the output format of the last
+   *          filter
+   * @throws Exception if the values can't be transformed
+   */
+  protected void fuse(int first, int last, double[] in, double[] out)
+    throws Exception {
+    double[] current;
+    double[] next;
+    int i;
+
+    current = in;
+    for (i = first; i <= last; i++) {
+      next = (i == last) ? out : m_FusionBuffers[i];
+      ((FusableFilter) getFilter(i)).transformValues(current, next);
+      current = next;
+    }
+  }
+
+  /**
+   * Applies a run of fusable filters to a dense instance.
+   * 
+   * @param first the index of the first filter
+   * @param last the index of the last filter
+   * @param instance the instance in the input format of the first filter
+   * @return the instance in the output format of the last filter
+   * @throws Exception if the instance can't be transformed
+   */
+  protected Instance fuse(int first, int last, Instance instance)
+    throws Exception {
+    double[] values;
+    Instance result;
+
+    values = new double[m_FusionBuffers[last].length];
+    fuse(first, last, instance.toDoubleArray(), values);
+    result = new DenseInstance(instance.weight(), values);
+    result.setDataset(getFilter(last).outputFormatPeek());
+
+    return result;
+  }
+
+  /**
+   * Returns whether all filters can currently be fused.
+   * 
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getFilters().length > 0)
+      && (getFusedRunEnd(0) == getFilters().length - 1);
+  }
+
+  /**
+   * Applies all filters to the values of a row in a single pass.
+   * 
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   * @throws Exception if the values can't be transformed
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) throws Exception {
+    fuse(0, getFilters().length - 1, in, out);
+  }
+
   /**
    * Processes the given data (may change the provided dataset) and returns the
    * modified version. This method is called in batchFinished(). This
@@ -394,8 +541,21 @@ public class MultiFilter extends SimpleStreamFilter {
   @Override
   protected Instances process(Instances instances) throws Exception {
     Instances result;
+    Instance processed;
     int i;
 
+    // once initialized, fused filters don't need intermediate datasets
+    if (isFirstBatchDone() && canTransformValues()) {
+      result = new Instances(outputFormatPeek(), instances.numInstances());
+      for (i = 0; i < instances.numInstances(); i++) {
+        processed = process(instances.instance(i));
+        if (processed != null) {
+          result.add(processed);
+        }
+      }
+      return result;
+    }
+
     result = instances;
 
     for (i = 0; i < getFilters().length; i++) {
@@ -426,6 +586,9 @@ public class MultiFilter extends SimpleStreamFilter {
       getFilter(i).batchFinished();
     }
 
+    // the filters may have been initialized by this batch
+    m_FusedRunEnd = null;
+
     return (numPendingOutput() != 0);
   }
 
@@ -29,6 +29,7 @@ import weka.core.Instances;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.filters.FusableFilter;
 import weka.filters.Sourcable;
 import weka.filters.UnsupervisedFilter;
 
@@ -54,7 +55,7 @@ import weka.filters.UnsupervisedFilter;
  */
 public class Center 
   extends PotentialClassIgnorer 
-  implements UnsupervisedFilter, Sourcable {
+  implements UnsupervisedFilter, Sourcable, FusableFilter {
 
   /** for serialization */
   private static final long serialVersionUID = -9101338448900581023L;
@@ -220,13 +221,7 @@ public class Center
     } 
     else {
       double[] vals = instance.toDoubleArray();
-      for (int j = 0; j < getInputFormat().numAttributes(); j++) {
-	if (instance.attribute(j).isNumeric() &&
-	    (!Utils.isMissingValue(vals[j])) &&
-	    (getInputFormat().classIndex() != j)) {
-	  vals[j] = (vals[j] - m_Means[j]);
-	}
-      }	
+      transformValues(vals, vals);
       inst = new DenseInstance(instance.weight(), vals);
     }
     
@@ -235,6 +230,35 @@ public class Center
     push(inst, false); // No need to copy instance
   }
   
+  /**
+   * Returns whether the means have been computed.
+   *
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (m_Means != null);
+  }
+
+  /**
+   * Centers the values of a row. The two arrays may be the same.
+   *
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) {
+    Instances format = getInputFormat();
+    for (int j = 0; j < in.length; j++) {
+      if (format.attribute(j).isNumeric() && (!Utils.isMissingValue(in[j]))
+        && (format.classIndex() != j)) {
+        out[j] = (in[j] - m_Means[j]);
+      } else {
+        out[j] = in[j];
+      }
+    }
+  }
+
   /**
    * Returns a string that describes the filter as source. The
    * filter will be contained in a class with the given name (there may
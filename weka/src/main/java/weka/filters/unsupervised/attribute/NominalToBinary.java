@@ -38,6 +38,7 @@ import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
 import weka.filters.Filter;
+import weka.filters.FusableFilter;
 import weka.filters.StreamableFilter;
 import weka.filters.UnsupervisedFilter;
 
@@ -83,7 +84,7 @@ import weka.filters.UnsupervisedFilter;
  * @version $Revision$
  */
 public class NominalToBinary extends Filter implements UnsupervisedFilter,
-  OptionHandler, StreamableFilter {
+  OptionHandler, StreamableFilter, FusableFilter {
 
   /** for serialization */
   static final long serialVersionUID = -1130642825710549138L;
@@ -523,29 +524,66 @@ public class NominalToBinary extends Filter implements UnsupervisedFilter,
     }
 
     double[] vals = new double[outputFormatPeek().numAttributes()];
+    transformValues(instance.toDoubleArray(), vals);
+    Instance inst = null;
+    if (instance instanceof SparseInstance) {
+      inst = new SparseInstance(instance.weight(), vals);
+    } else {
+      inst = new DenseInstance(instance.weight(), vals);
+    }
+
+    copyValues(inst, false, instance.dataset(), getOutputFormat());
+
+    push(inst); // No need to copy instance
+  }
+
+  /**
+   * Returns whether the output format has been determined.
+   * 
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (outputFormatPeek() != null);
+  }
+
+  /**
+   * Converts the nominal values of a row to binary ones.
+   * 
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) {
+
+    if (!m_needToTransform) {
+      System.arraycopy(in, 0, out, 0, in.length);
+      return;
+    }
+
     int attSoFar = 0;
 
     for (int j = 0; j < getInputFormat().numAttributes(); j++) {
       Attribute att = getInputFormat().attribute(j);
       if (!att.isNominal() || (j == getInputFormat().classIndex())
         || !m_Columns.isInRange(j)) {
-        vals[attSoFar] = instance.value(j);
+        out[attSoFar] = in[j];
         attSoFar++;
       } else {
         if ((att.numValues() <= 2) && (!m_TransformAll)) {
-          vals[attSoFar] = instance.value(j);
+          out[attSoFar] = in[j];
           attSoFar++;
         } else {
-          if (instance.isMissing(j)) {
+          if (Utils.isMissingValue(in[j])) {
             for (int k = 0; k < att.numValues(); k++) {
-              vals[attSoFar + k] = instance.value(j);
+              out[attSoFar + k] = in[j];
             }
           } else {
             for (int k = 0; k < att.numValues(); k++) {
-              if (k == (int) instance.value(j)) {
-                vals[attSoFar + k] = 1;
+              if (k == (int) in[j]) {
+                out[attSoFar + k] = 1;
               } else {
-                vals[attSoFar + k] = 0;
+                out[attSoFar + k] = 0;
               }
             }
           }
@@ -553,16 +591,6 @@ public class NominalToBinary extends Filter implements UnsupervisedFilter,
         }
       }
     }
-    Instance inst = null;
-    if (instance instanceof SparseInstance) {
-      inst = new SparseInstance(instance.weight(), vals);
-    } else {
-      inst = new DenseInstance(instance.weight(), vals);
-    }
-
-    copyValues(inst, false, instance.dataset(), getOutputFormat());
-
-    push(inst); // No need to copy instance
   }
 
   /**
@@ -35,6 +35,7 @@ import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.filters.FusableFilter;
 import weka.filters.Sourcable;
 import weka.filters.UnsupervisedFilter;
 
@@ -76,7 +77,7 @@ import weka.filters.UnsupervisedFilter;
  * @version $Revision$
  */
 public class Normalize extends PotentialClassIgnorer implements
-  UnsupervisedFilter, Sourcable, OptionHandler {
+  UnsupervisedFilter, Sourcable, OptionHandler, FusableFilter {
 
   /** for serialization. */
   static final long serialVersionUID = -8158531150984362898L;
@@ -383,28 +384,52 @@ public class Normalize extends PotentialClassIgnorer implements
         instance.numAttributes());
     } else {
       double[] vals = instance.toDoubleArray();
-      for (int j = 0; j < getInputFormat().numAttributes(); j++) {
-        if (instance.attribute(j).isNumeric()
-          && (!Utils.isMissingValue(vals[j]))
-          && (getInputFormat().classIndex() != j)) {
-          if (Double.isNaN(m_MinArray[j]) || (m_MaxArray[j] == m_MinArray[j])) {
-            vals[j] = 0;
-          } else {
-            vals[j] = (vals[j] - m_MinArray[j])
-              / (m_MaxArray[j] - m_MinArray[j]) * m_Scale + m_Translation;
-            if (Double.isNaN(vals[j])) {
-              throw new Exception("A NaN value was generated "
-                + "while normalizing " + instance.attribute(j).name());
-            }
-          }
-        }
-      }
+      transformValues(vals, vals);
       inst = new DenseInstance(instance.weight(), vals);
     }
     inst.setDataset(instance.dataset());
     push(inst, false); // No need to copy
   }
 
+  /**
+   * Returns whether the normalization intervals have been computed.
+   * 
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (m_MinArray != null);
+  }
+
+  /**
+   * Normalizes the values of a row. The two arrays may be the same.
+   * 
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   * @throws Exception if a NaN value is generated
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) throws Exception {
+    Instances format = getInputFormat();
+    for (int j = 0; j < in.length; j++) {
+      if (format.attribute(j).isNumeric() && (!Utils.isMissingValue(in[j]))
+        && (format.classIndex() != j)) {
+        if (Double.isNaN(m_MinArray[j]) || (m_MaxArray[j] == m_MinArray[j])) {
+          out[j] = 0;
+        } else {
+          out[j] = (in[j] - m_MinArray[j]) / (m_MaxArray[j] - m_MinArray[j])
+            * m_Scale + m_Translation;
+          if (Double.isNaN(out[j])) {
+            throw new Exception("A NaN value was generated "
+              + "while normalizing " + format.attribute(j).name());
+          }
+        }
+      } else {
+        out[j] = in[j];
+      }
+    }
+  }
+
   /**
    * Returns a string that describes the filter as source. The filter will be
    * contained in a class with the given name (there may be auxiliary classes),
@@ -29,6 +29,7 @@ import no.uib.cipr.matrix.*;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.CovarianceAccumulator;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -81,6 +82,12 @@ import weka.filters.UnsupervisedFilter;
  *  (-1 = include all, default: -1)
  * </pre>
  * 
+ * <pre>
+ * -num-slots &lt;num&gt;
+ *  Number of threads to use when computing the covariance
+ *  matrix. (0 = number of cores, default: 1)
+ * </pre>
+ * 
  * <!-- options-end -->
  * 
  * @author Mark Hall (mhall@cs.waikato.ac.nz) -- attribute selection code
@@ -169,6 +176,9 @@ public class PrincipalComponents extends Filter implements OptionHandler,
   /** maximum number of attributes in the transformed data (-1 for all). */
   protected int m_MaxAttributes = -1;
 
+  /** number of threads to use when computing the covariance matrix. */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * Returns a string describing this filter.
    * 
@@ -212,6 +222,11 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       "\tMaximum number of PC attributes to retain.\n"
         + "\t(-1 = include all, default: -1)", "M", 1, "-M <num>"));
 
+    result.addElement(new Option(
+      "\tNumber of threads to use when computing the covariance\n"
+        + "\tmatrix. (0 = number of cores, default: 1)", "num-slots", 1,
+      "-num-slots <num>"));
+
     return result.elements();
   }
 
@@ -249,6 +264,12 @@ public class PrincipalComponents extends Filter implements OptionHandler,
    *  (-1 = include all, default: -1)
    * </pre>
    * 
+   * <pre>
+   * -num-slots &lt;num&gt;
+   *  Number of threads to use when computing the covariance
+   *  matrix. (0 = number of cores, default: 1)
+   * </pre>
+   * 
    * <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -278,6 +299,13 @@ public class PrincipalComponents extends Filter implements OptionHandler,
       setMaximumAttributes(-1);
     }
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     setCenterData(Utils.getFlag('C', options));
 
     Utils.checkForRemainingOptions(options);
@@ -302,6 +330,11 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     result.add("-M");
     result.add("" + getMaximumAttributes());
 
+    if (getNumExecutionSlots() != 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     if (getCenterData()) {
       result.add("-C");
     }
@@ -428,6 +461,35 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     return m_MaxAttributes;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use when computing the covariance "
+      + "matrix (0 = use the number of available cores).";
+  }
+
+  /**
+   * Sets the number of threads to use when computing the covariance matrix.
+   * 
+   * @param value the number of threads (0 = number of available cores)
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Gets the number of threads to use when computing the covariance matrix.
+   * 
+   * @return the number of threads (0 = number of available cores)
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Returns the capabilities of this evaluator.
    * 
@@ -569,18 +631,15 @@ public class PrincipalComponents extends Filter implements OptionHandler,
     }
 
     // now compute the covariance matrix
+    double[][] coMoments =
+      CovarianceAccumulator.compute(m_TrainInstances, m_NumExecutionSlots)
+        .getCoMoments();
     m_Correlation = new UpperSymmDenseMatrix(m_NumAttribs);
 
     for (int i = 0; i < m_NumAttribs; i++) {
-      for (int j = i; j < m_NumAttribs; j++) {
-
-        double cov = 0;
-        for (Instance inst: m_TrainInstances) {
-          cov += inst.value(i) * inst.value(j);
-        }
-
-        cov /= m_TrainInstances.numInstances() - 1;
-        m_Correlation.set(i, j, cov);
+      for (int j = 0; j <= i; j++) {
+        m_Correlation.set(j, i,
+          coMoments[i][j] / (m_TrainInstances.numInstances() - 1));
       }
     }
   }
@@ -38,6 +38,7 @@ import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
 import weka.filters.Filter;
+import weka.filters.FusableFilter;
 import weka.filters.StreamableFilter;
 import weka.filters.UnsupervisedFilter;
 
@@ -69,7 +70,7 @@ import weka.filters.UnsupervisedFilter;
  * @version $Revision$
  */
 public class Remove extends Filter implements UnsupervisedFilter,
-  StreamableFilter, OptionHandler {
+  StreamableFilter, OptionHandler, FusableFilter {
 
   /** for serialization */
   static final long serialVersionUID = 5011337331921522847L;
@@ -373,6 +374,31 @@ public class Remove extends Filter implements UnsupervisedFilter,
     setAttributeIndices(Range.indicesToRangeList(attributes));
   }
 
+  /**
+   * Returns whether the output format has been determined and has any
+   * attributes.
+   * 
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (outputFormatPeek() != null)
+      && (outputFormatPeek().numAttributes() > 0);
+  }
+
+  /**
+   * Selects the values of the attributes that are kept.
+   * 
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) {
+    for (int i = 0; i < m_SelectedAttributes.length; i++) {
+      out[i] = in[m_SelectedAttributes[i]];
+    }
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -30,6 +30,7 @@ import weka.core.Instances;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.filters.FusableFilter;
 import weka.filters.Sourcable;
 import weka.filters.UnsupervisedFilter;
 
@@ -54,7 +55,7 @@ import weka.filters.UnsupervisedFilter;
  */
 public class ReplaceMissingValues 
   extends PotentialClassIgnorer
-  implements UnsupervisedFilter, Sourcable {
+  implements UnsupervisedFilter, Sourcable, FusableFilter {
 
   /** for serialization */
   static final long serialVersionUID = 8349568310991609867L;
@@ -263,23 +264,44 @@ public class ReplaceMissingValues
                                   instance.numAttributes());
       }
     } else {
-      double []vals = new double[getInputFormat().numAttributes()];
-      for (int j = 0; j < instance.numAttributes(); j++) {
-	if (instance.isMissing(j) &&
-	    (getInputFormat().classIndex() != j) &&
-	    (getInputFormat().attribute(j).isNominal() ||
-	     getInputFormat().attribute(j).isNumeric())) {
-	  vals[j] = m_ModesAndMeans[j]; 
-	} else {
-	  vals[j] = instance.value(j);
-	}
-      } 
+      double []vals = instance.toDoubleArray();
+      transformValues(vals, vals);
       inst = new DenseInstance(instance.weight(), vals);
     } 
     inst.setDataset(instance.dataset());
     push(inst, false); // No need to copy
   }
   
+  /**
+   * Returns whether the modes and means have been computed.
+   *
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (m_ModesAndMeans != null);
+  }
+
+  /**
+   * Replaces the missing values of a row. The two arrays may be the same.
+   *
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) {
+    Instances format = getInputFormat();
+    for (int j = 0; j < in.length; j++) {
+      if (Utils.isMissingValue(in[j]) && (format.classIndex() != j)
+        && (format.attribute(j).isNominal()
+          || format.attribute(j).isNumeric())) {
+        out[j] = m_ModesAndMeans[j];
+      } else {
+        out[j] = in[j];
+      }
+    }
+  }
+
   /**
    * Returns a string that describes the filter as source. The
    * filter will be contained in a class with the given name (there may
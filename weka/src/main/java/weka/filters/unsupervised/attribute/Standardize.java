@@ -29,6 +29,7 @@ import weka.core.Instances;
 import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.filters.FusableFilter;
 import weka.filters.Sourcable;
 import weka.filters.UnsupervisedFilter;
 
@@ -53,7 +54,7 @@ import weka.filters.UnsupervisedFilter;
  */
 public class Standardize 
   extends PotentialClassIgnorer 
-  implements UnsupervisedFilter, Sourcable {
+  implements UnsupervisedFilter, Sourcable, FusableFilter {
   
   /** for serialization */
   static final long serialVersionUID = -6830769026855053281L;
@@ -236,30 +237,53 @@ public class Standardize
                                 instance.numAttributes());
     } else {
       double[] vals = instance.toDoubleArray();
-      for (int j = 0; j < getInputFormat().numAttributes(); j++) {
-	if (instance.attribute(j).isNumeric() &&
-	    (!Utils.isMissingValue(vals[j])) &&
-	    (getInputFormat().classIndex() != j)) {
-	  
-	  // Just subtract the mean if the standard deviation is zero
-	  if (m_StdDevs[j] > 0) { 
-	    vals[j] = (vals[j] - m_Means[j]) / m_StdDevs[j];
-	  } else {
-	    vals[j] = (vals[j] - m_Means[j]);
-	  }
-          if (Double.isNaN(vals[j])) {
-            throw new Exception("A NaN value was generated "
-                                + "while standardizing attribute " 
-                                + instance.attribute(j).name());
-          }
-	}
-      }	
+      transformValues(vals, vals);
       inst = new DenseInstance(instance.weight(), vals);
     }
     inst.setDataset(instance.dataset());
     push(inst, false); // No need to copy
   }
   
+  /**
+   * Returns whether the means and standard deviations have been computed.
+   *
+   * @return true if rows can be transformed
+   */
+  @Override
+  public boolean canTransformValues() {
+    return (getInputFormat() != null) && (m_Means != null);
+  }
+
+  /**
+   * Standardizes the values of a row. The two arrays may be the same.
+   *
+   * @param in the values in the input format
+   * @param out the array for the values in the output format
+   * @throws Exception if a NaN value is generated
+   */
+  @Override
+  public void transformValues(double[] in, double[] out) throws Exception {
+    Instances format = getInputFormat();
+    for (int j = 0; j < in.length; j++) {
+      if (format.attribute(j).isNumeric() && (!Utils.isMissingValue(in[j]))
+        && (format.classIndex() != j)) {
+
+        // Just subtract the mean if the standard deviation is zero
+        if (m_StdDevs[j] > 0) {
+          out[j] = (in[j] - m_Means[j]) / m_StdDevs[j];
+        } else {
+          out[j] = (in[j] - m_Means[j]);
+        }
+        if (Double.isNaN(out[j])) {
+          throw new Exception("A NaN value was generated "
+            + "while standardizing attribute " + format.attribute(j).name());
+        }
+      } else {
+        out[j] = in[j];
+      }
+    }
+  }
+
   /**
    * Returns a string that describes the filter as source. The
    * filter will be contained in a class with the given name (there may
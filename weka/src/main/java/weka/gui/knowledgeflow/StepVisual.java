@@ -80,6 +80,12 @@ public class StepVisual extends JPanel {
   /** Current connector dot colour */
   protected Color m_connectorColor = Color.blue;
 
+  /**
+   * Fraction of the processing time of the slowest step used by this step in
+   * the last execution of the flow (0 if not known)
+   */
+  protected double m_loadFraction;
+
   /**
    * The step manager for the step this visual represents
    */
@@ -466,6 +472,28 @@ public class StepVisual extends JPanel {
     m_connectorColor = c;
   }
 
+  /**
+   * Set the fraction of the processing time of the slowest step in the flow
+   * that this step used in the last execution. Busy steps are highlighted with
+   * a border that goes from yellow to red as the fraction increases.
+   *
+   * @param fraction a value between 0 and 1 (0 turns highlighting off)
+   */
+  public void setLoadFraction(double fraction) {
+    m_loadFraction = Math.max(0, Math.min(1, fraction));
+    repaint();
+  }
+
+  /**
+   * Get the fraction of the processing time of the slowest step in the flow
+   * that this step used in the last execution
+   *
+   * @return a value between 0 and 1
+   */
+  public double getLoadFraction() {
+    return m_loadFraction;
+  }
+
   /**
    * Returns true if the step label is to be displayed. Subclasses can override
    * to change this.
@@ -482,6 +510,12 @@ public class StepVisual extends JPanel {
       RenderingHints.VALUE_ANTIALIAS_ON);
 
     super.paintComponent(gx);
+    if (m_loadFraction >= 0.05) {
+      // yellow for lightly loaded steps through to red for the slowest
+      gx.setColor(new Color(255, (int) (255 * (1.0 - m_loadFraction)), 0));
+      gx.drawRoundRect(1, 1, getWidth() - 3, getHeight() - 3, 8, 8);
+      gx.drawRoundRect(2, 2, getWidth() - 5, getHeight() - 5, 8, 8);
+    }
     if (m_displayConnectors) {
       gx.setColor(m_connectorColor);
 
@@ -31,6 +31,7 @@ import weka.knowledgeflow.BaseExecutionEnvironment;
 import weka.knowledgeflow.ExecutionFinishedCallback;
 import weka.knowledgeflow.Flow;
 import weka.knowledgeflow.FlowExecutor;
+import weka.knowledgeflow.FlowMetrics;
 import weka.knowledgeflow.FlowRunner;
 import weka.knowledgeflow.JSONFlowUtils;
 import weka.knowledgeflow.KFDefaults;
@@ -765,6 +766,7 @@ public class VisibleLayout extends JPanel {
           @Override
           public void executionFinished() {
             m_isExecuting = false;
+            showStepLoad(m_flowExecutor.getFlowMetrics());
             m_logPanel.statusMessage("@!@[KnowledgeFlow]|OK.");
             if (m_flowExecutor.wasStopped()) {
               m_logPanel.setMessageOnAll(false, "Stopped.");
@@ -791,6 +793,7 @@ public class VisibleLayout extends JPanel {
       .setGraphicalEnvironmentCommandHandler(
         new KFGraphicalEnvironmentCommandHandler(m_mainPerspective));
     m_isExecuting = true;
+    showStepLoad(null);
 
     // Flow toRun = m_flow.copyFlow();
     m_flowExecutor.setFlow(m_flow);
@@ -803,6 +806,28 @@ public class VisibleLayout extends JPanel {
     }
   }
 
+  /**
+   * Highlight steps according to how much of the flow's processing time they
+   * used
+   *
+   * @param metrics the metrics from the last execution, or null to clear the
+   *          highlighting
+   */
+  protected void showStepLoad(FlowMetrics metrics) {
+    for (StepVisual v : m_renderGraph) {
+      double fraction = 0;
+      if (metrics != null) {
+        try {
+          fraction = metrics.getLoadFraction(v.getStepName());
+        } catch (IllegalArgumentException ex) {
+          // step was added/renamed after the flow was started
+        }
+      }
+      v.setLoadFraction(fraction);
+    }
+    repaint();
+  }
+
   /**
    * Stop the flow from executing
    */
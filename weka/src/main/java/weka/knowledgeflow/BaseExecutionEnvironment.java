@@ -290,6 +290,19 @@ public class BaseExecutionEnvironment implements ExecutionEnvironment {
     }
   }
 
+  /**
+   * Returns true if the execution environment is holding data that has not
+   * been processed by the receiving step yet (e.g. queued data). The default
+   * execution environment passes data on directly, so this always returns
+   * false.
+   *
+   * @return true if there is outstanding work held by the execution
+   *         environment
+   */
+  public boolean hasPendingWork() {
+    return false;
+  }
+
   /**
    * Gets a new instance of the default flow executor suitable for use with this
    * execution environment
@@ -529,6 +542,28 @@ public class BaseExecutionEnvironment implements ExecutionEnvironment {
 
     /** Default (0) means use as many threads as there are cpu processors */
     public static final int RESOURCE_INTENSIVE_EXECUTOR_SERVICE_NUM_THREADS = 0;
+
+    public static final Settings.SettingKey INSTANCE_BLOCK_SIZE_KEY =
+      new Settings.SettingKey(KFDefaults.APP_ID + ".instanceBlockSize",
+        "Number of instances per block in streaming connections",
+        "<html>Streaming data sources send blocks of this many instances<br>"
+          + "between steps rather than one instance at a time. 1 = send<br>"
+          + "single instances.</html>");
+    public static final int INSTANCE_BLOCK_SIZE = 1;
+
+    public static final Settings.SettingKey INSTANCE_BLOCK_MAX_LATENCY_KEY =
+      new Settings.SettingKey(KFDefaults.APP_ID + ".instanceBlockMaxLatency",
+        "Maximum time (ms) to hold a partially filled block of instances",
+        "<html>A partially filled block is sent on once its first instance<br>"
+          + "has been waiting for this many milliseconds.</html>");
+    public static final int INSTANCE_BLOCK_MAX_LATENCY = 500;
+
+    public static final Settings.SettingKey STEP_RESOURCE_USAGE_KEY =
+      new Settings.SettingKey(KFDefaults.APP_ID + ".stepResourceUsage",
+        "Record CPU time and heap allocation for each step",
+        "<html>Adds CPU time and heap allocation estimates to the step<br>"
+          + "metrics. This has some overhead when streaming.</html>");
+    public static final boolean STEP_RESOURCE_USAGE = false;
     private static final long serialVersionUID = -3386792058002464330L;
 
     public BaseExecutionEnvironmentDefaults() {
@@ -538,6 +573,9 @@ public class BaseExecutionEnvironment implements ExecutionEnvironment {
         STEP_EXECUTOR_SERVICE_NUM_THREADS);
       m_defaults.put(RESOURCE_INTENSIVE_EXECUTOR_SERVICE_NUM_THREADS_KEY,
         RESOURCE_INTENSIVE_EXECUTOR_SERVICE_NUM_THREADS);
+      m_defaults.put(INSTANCE_BLOCK_SIZE_KEY, INSTANCE_BLOCK_SIZE);
+      m_defaults.put(INSTANCE_BLOCK_MAX_LATENCY_KEY, INSTANCE_BLOCK_MAX_LATENCY);
+      m_defaults.put(STEP_RESOURCE_USAGE_KEY, STEP_RESOURCE_USAGE);
     }
   }
 }
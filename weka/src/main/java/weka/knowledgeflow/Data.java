@@ -21,11 +21,16 @@
 
 package weka.knowledgeflow;
 
+import weka.core.Instance;
 import weka.knowledgeflow.steps.Step;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * <p>Class for encapsulating data to be transferred between Knowledge Flow steps
@@ -202,6 +207,97 @@ public class Data implements Serializable {
     m_payloadMap.clear();
   }
 
+  /**
+   * Turn this Data object into a block of streaming instances. A block stands
+   * in for a sequence of Data objects that would otherwise be sent one row at
+   * a time, each carrying one of the instances under the supplied row element
+   * name (e.g. StepManager.CON_INSTANCE). All other payload elements are
+   * shared by the rows of the block. The row element itself is set to the
+   * first instance of the block, so that steps can determine the structure of
+   * the stream in the same way as they do for single rows.
+   *
+   * @param rowElementName the name of the payload element that holds the
+   *          instance in a single row
+   * @param block the instances in the block (must not be empty)
+   */
+  public void setInstanceBlock(String rowElementName, List<Instance> block) {
+    setPayloadElement(StepManager.CON_AUX_DATA_INSTANCE_BLOCK, block);
+    setPayloadElement(StepManager.CON_AUX_DATA_INSTANCE_BLOCK_ELEMENT,
+      rowElementName);
+    setPayloadElement(rowElementName, block.get(0));
+  }
+
+  /**
+   * Get the block of instances encapsulated in this Data object
+   *
+   * @return the block of instances, or null if this Data object is not a block
+   */
+  public List<Instance> getInstanceBlock() {
+    return getPayloadElement(StepManager.CON_AUX_DATA_INSTANCE_BLOCK);
+  }
+
+  /**
+   * Return true if this Data object contains a block of instances rather than
+   * a single row
+   *
+   * @return true if this Data object is a block of instances
+   */
+  public boolean isInstanceBlock() {
+    return m_payloadMap.containsKey(StepManager.CON_AUX_DATA_INSTANCE_BLOCK);
+  }
+
+  /**
+   * Get the rows of an instance block as individual Data objects. For
+   * efficiency, the same Data object is returned (with the row element updated)
+   * for each row, so it should not be retained by the caller. If this Data
+   * object is not a block, then it is returned as the only row.
+   *
+   * @return the rows of the block
+   */
+  public Iterable<Data> instanceBlockRows() {
+    if (!isInstanceBlock()) {
+      return Collections.singletonList(this);
+    }
+
+    final List<Instance> block = getInstanceBlock();
+    final String rowElement =
+      getPayloadElement(StepManager.CON_AUX_DATA_INSTANCE_BLOCK_ELEMENT);
+    final Data row = new Data();
+    row.m_connectionName = m_connectionName;
+    row.m_sourceStep = m_sourceStep;
+    row.m_payloadMap.putAll(m_payloadMap);
+    row.m_payloadMap.remove(StepManager.CON_AUX_DATA_INSTANCE_BLOCK);
+    row.m_payloadMap.remove(StepManager.CON_AUX_DATA_INSTANCE_BLOCK_ELEMENT);
+
+    return new Iterable<Data>() {
+      @Override
+      public Iterator<Data> iterator() {
+        return new Iterator<Data>() {
+          protected int m_index;
+
+          @Override
+          public boolean hasNext() {
+            return m_index < block.size();
+          }
+
+          @Override
+          public Data next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            row.setPayloadElement(rowElement, block.get(m_index++));
+            return row;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
   /**
    * Return true if the connection specified for this data object is incremental
    *
@@ -106,6 +106,14 @@ public interface FlowExecutor {
    */
   BaseExecutionEnvironment getExecutionEnvironment();
 
+  /**
+   * Get the metrics of the steps in the flow for the current (or most recent)
+   * execution
+   *
+   * @return the flow metrics, or null if the flow has not been executed yet
+   */
+  FlowMetrics getFlowMetrics();
+
   /**
    * Run the flow sequentially (i.e. launch start points sequentially rather
    * than in parallel)
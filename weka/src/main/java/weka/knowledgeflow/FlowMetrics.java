@@ -0,0 +1,316 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FlowMetrics.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import weka.core.Utils;
+
+/**
+ * Collects the metrics of the steps in a flow. The metrics are live, so an
+ * instance can be queried while the flow is running (e.g. via JMX after
+ * calling register()) as well as once it has finished.
+ *
+ * @version $Revision: $
+ */
+public class FlowMetrics implements FlowMetricsMBean {
+
+  /** The JMX domain that flow metrics are registered under */
+  public static final String JMX_DOMAIN = "weka.knowledgeflow";
+
+  /** The name of the flow */
+  protected String m_flowName;
+
+  /** Metrics of the steps in the flow, keyed by step name */
+  protected Map<String, StepMetrics> m_stepMetrics =
+    new LinkedHashMap<String, StepMetrics>();
+
+  /** The time (System.nanoTime()) at which the flow was started */
+  protected long m_startTime = System.nanoTime();
+
+  /** The time at which the flow finished (or -1 if still running) */
+  protected long m_finishTime = -1;
+
+  /** The name that this object is registered under with JMX */
+  protected transient ObjectName m_objectName;
+
+  /**
+   * Constructor
+   *
+   * @param flow the flow to collect metrics for
+   */
+  public FlowMetrics(Flow flow) {
+    m_flowName = flow.getFlowName();
+    Iterator<StepManagerImpl> iter = flow.iterator();
+    while (iter.hasNext()) {
+      StepManagerImpl s = iter.next();
+      m_stepMetrics.put(s.getName(), s.getMetrics());
+    }
+  }
+
+  /**
+   * Mark the flow as finished. This stops the elapsed time clock.
+   */
+  public void finished() {
+    if (m_finishTime < 0) {
+      m_finishTime = System.nanoTime();
+    }
+  }
+
+  /**
+   * Register this object with the platform MBean server
+   *
+   * @throws Exception if registration fails
+   */
+  public synchronized void register() throws Exception {
+    if (m_objectName != null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name =
+      new ObjectName(JMX_DOMAIN + ":type=FlowMetrics,name="
+        + ObjectName.quote(m_flowName == null ? "" : m_flowName) + ",id="
+        + Integer.toHexString(System.identityHashCode(this)));
+    server.registerMBean(this, name);
+    m_objectName = name;
+  }
+
+  /**
+   * Unregister this object from the platform MBean server (if registered)
+   *
+   * @throws Exception if a problem occurs
+   */
+  public synchronized void unregister() throws Exception {
+    if (m_objectName != null) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_objectName);
+      m_objectName = null;
+    }
+  }
+
+  /**
+   * Get the metrics for a named step
+   *
+   * @param stepName the name of the step
+   * @return the metrics of the step
+   * @throws IllegalArgumentException if the flow has no such step
+   */
+  public StepMetrics getStepMetrics(String stepName) {
+    StepMetrics m = m_stepMetrics.get(stepName);
+    if (m == null) {
+      throw new IllegalArgumentException("Unknown step: " + stepName);
+    }
+    return m;
+  }
+
+  @Override
+  public String getFlowName() {
+    return m_flowName;
+  }
+
+  @Override
+  public String[] getStepNames() {
+    return m_stepMetrics.keySet().toArray(new String[m_stepMetrics.size()]);
+  }
+
+  @Override
+  public long getElapsedTimeMillis() {
+    long end = m_finishTime < 0 ? System.nanoTime() : m_finishTime;
+    return (end - m_startTime) / 1000000L;
+  }
+
+  @Override
+  public long getTotalProcessingTimeMillis() {
+    long total = 0;
+    for (StepMetrics m : m_stepMetrics.values()) {
+      total += m.getProcessingNanos();
+    }
+    return total / 1000000L;
+  }
+
+  @Override
+  public String getSlowestStep() {
+    String slowest = null;
+    long max = 0;
+    for (Map.Entry<String, StepMetrics> e : m_stepMetrics.entrySet()) {
+      long t = e.getValue().getProcessingNanos();
+      if (t > max) {
+        max = t;
+        slowest = e.getKey();
+      }
+    }
+    return slowest;
+  }
+
+  @Override
+  public long getRowsIn(String stepName) {
+    return getStepMetrics(stepName).getRowsIn();
+  }
+
+  @Override
+  public long getRowsOut(String stepName) {
+    return getStepMetrics(stepName).getRowsOut();
+  }
+
+  @Override
+  public long getProcessingTimeMillis(String stepName) {
+    return getStepMetrics(stepName).getProcessingNanos() / 1000000L;
+  }
+
+  @Override
+  public double getMeanProcessingTimeMicros(String stepName) {
+    return getStepMetrics(stepName).getMeanProcessingNanos() / 1000.0;
+  }
+
+  @Override
+  public double getProcessingTimePercentileMicros(String stepName,
+    double percentile) {
+    return getStepMetrics(stepName).getProcessingNanosPercentile(percentile)
+      / 1000.0;
+  }
+
+  @Override
+  public long getQueueWaitMillis(String stepName) {
+    return getStepMetrics(stepName).getQueueWaitNanos() / 1000000L;
+  }
+
+  @Override
+  public double getMeanQueueWaitMicros(String stepName) {
+    StepMetrics m = getStepMetrics(stepName);
+    long queued = m.getNumQueued();
+    return queued == 0 ? 0 : m.getQueueWaitNanos() / 1000.0 / queued;
+  }
+
+  @Override
+  public long getBlockedMillis(String stepName) {
+    return getStepMetrics(stepName).getBlockedNanos() / 1000000L;
+  }
+
+  @Override
+  public long getCpuTimeMillis(String stepName) {
+    return getStepMetrics(stepName).getCpuNanos() / 1000000L;
+  }
+
+  @Override
+  public long getAllocatedBytes(String stepName) {
+    return getStepMetrics(stepName).getAllocatedBytes();
+  }
+
+  @Override
+  public int getNumThreads(String stepName) {
+    return getStepMetrics(stepName).getNumThreads();
+  }
+
+  @Override
+  public double getLoadFraction(String stepName) {
+    long max = 0;
+    for (StepMetrics m : m_stepMetrics.values()) {
+      max = Math.max(max, m.getProcessingNanos());
+    }
+    if (max == 0) {
+      return 0;
+    }
+    return (double) getStepMetrics(stepName).getProcessingNanos() / max;
+  }
+
+  @Override
+  public String getReport() {
+    boolean resources = false;
+    int nameWidth = 4;
+    for (Map.Entry<String, StepMetrics> e : m_stepMetrics.entrySet()) {
+      nameWidth = Math.max(nameWidth, e.getKey().length());
+      resources |= e.getValue().getRecordResourceUsage();
+    }
+
+    StringBuilder b = new StringBuilder();
+    b.append("=== Step metrics");
+    if (m_flowName != null && m_flowName.length() > 0) {
+      b.append(" (").append(m_flowName).append(")");
+    }
+    b.append(" ===\n\nElapsed time: ")
+      .append(Utils.doubleToString(getElapsedTimeMillis() / 1000.0, 3))
+      .append(" s\n\n");
+
+    b.append(Utils.padRight("Step", nameWidth))
+      .append(Utils.padLeft("Rows in", 12))
+      .append(Utils.padLeft("Rows out", 12))
+      .append(Utils.padLeft("Calls", 12))
+      .append(Utils.padLeft("Time (ms)", 12))
+      .append(Utils.padLeft("Load", 7))
+      .append(Utils.padLeft("Mean (us)", 11))
+      .append(Utils.padLeft("p99 (us)", 11))
+      .append(Utils.padLeft("Queued (us)", 13))
+      .append(Utils.padLeft("Blocked (ms)", 14))
+      .append(Utils.padLeft("Threads", 9));
+    if (resources) {
+      b.append(Utils.padLeft("CPU (ms)", 11)).append(
+        Utils.padLeft("Alloc (MB)", 12));
+    }
+    b.append("\n");
+
+    for (Map.Entry<String, StepMetrics> e : m_stepMetrics.entrySet()) {
+      String name = e.getKey();
+      StepMetrics m = e.getValue();
+      b.append(Utils.padRight(name, nameWidth))
+        .append(Utils.padLeft("" + m.getRowsIn(), 12))
+        .append(Utils.padLeft("" + m.getRowsOut(), 12))
+        .append(Utils.padLeft("" + m.getNumCalls(), 12))
+        .append(Utils.padLeft("" + getProcessingTimeMillis(name), 12))
+        .append(
+          Utils.padLeft(
+            Utils.doubleToString(getLoadFraction(name) * 100.0, 1) + "%", 7))
+        .append(
+          Utils.padLeft(
+            Utils.doubleToString(getMeanProcessingTimeMicros(name), 1), 11))
+        .append(
+          Utils.padLeft(Utils.doubleToString(
+            getProcessingTimePercentileMicros(name, 99), 1), 11))
+        .append(
+          Utils.padLeft(
+            Utils.doubleToString(getMeanQueueWaitMicros(name), 1), 13))
+        .append(Utils.padLeft("" + getBlockedMillis(name), 14))
+        .append(Utils.padLeft("" + m.getNumThreads(), 9));
+      if (resources) {
+        if (m.getRecordResourceUsage()) {
+          b.append(Utils.padLeft("" + getCpuTimeMillis(name), 11)).append(
+            Utils.padLeft(Utils.doubleToString(
+              m.getAllocatedBytes() / (1024.0 * 1024.0), 1), 12));
+        } else {
+          b.append(Utils.padLeft("-", 11)).append(Utils.padLeft("-", 12));
+        }
+      }
+      b.append("\n");
+    }
+
+    String slowest = getSlowestStep();
+    if (slowest != null) {
+      b.append("\nSlowest step: ").append(slowest).append("\n");
+    }
+
+    return b.toString();
+  }
+}
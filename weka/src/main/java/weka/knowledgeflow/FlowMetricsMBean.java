@@ -0,0 +1,176 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FlowMetricsMBean.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow;
+
+/**
+ * JMX management interface for the per-step metrics of a running flow. All
+ * times are self times, i.e. they do not include the time spent in
+ * downstream steps that were invoked synchronously.
+ *
+ * @version $Revision: $
+ */
+public interface FlowMetricsMBean {
+
+  /**
+   * Get the name of the flow
+   *
+   * @return the name of the flow
+   */
+  String getFlowName();
+
+  /**
+   * Get the names of the steps in the flow
+   *
+   * @return the names of the steps
+   */
+  String[] getStepNames();
+
+  /**
+   * Get the wall clock time since the flow was started
+   *
+   * @return the elapsed time in milliseconds
+   */
+  long getElapsedTimeMillis();
+
+  /**
+   * Get the total processing time of all steps
+   *
+   * @return the total processing time in milliseconds
+   */
+  long getTotalProcessingTimeMillis();
+
+  /**
+   * Get the name of the step with the largest processing time
+   *
+   * @return the name of the slowest step, or null if no step has done any
+   *         work yet
+   */
+  String getSlowestStep();
+
+  /**
+   * Get a textual report of the metrics of all steps
+   *
+   * @return the report
+   */
+  String getReport();
+
+  /**
+   * Get the number of rows (instances) received by a step
+   *
+   * @param stepName the name of the step
+   * @return the number of rows received
+   */
+  long getRowsIn(String stepName);
+
+  /**
+   * Get the number of rows (instances) output by a step
+   *
+   * @param stepName the name of the step
+   * @return the number of rows output
+   */
+  long getRowsOut(String stepName);
+
+  /**
+   * Get the processing time of a step
+   *
+   * @param stepName the name of the step
+   * @return the processing time in milliseconds
+   */
+  long getProcessingTimeMillis(String stepName);
+
+  /**
+   * Get the mean time per call of a step
+   *
+   * @param stepName the name of the step
+   * @return the mean time per call in microseconds
+   */
+  double getMeanProcessingTimeMicros(String stepName);
+
+  /**
+   * Get a percentile of the time per call of a step
+   *
+   * @param stepName the name of the step
+   * @param percentile the percentile (0 - 100)
+   * @return the (approximate) percentile in microseconds
+   */
+  double getProcessingTimePercentileMicros(String stepName, double percentile);
+
+  /**
+   * Get the total time that data spent waiting in the input queue of a step
+   * (summed over all queued items)
+   *
+   * @param stepName the name of the step
+   * @return the queue wait time in milliseconds
+   */
+  long getQueueWaitMillis(String stepName);
+
+  /**
+   * Get the mean time that data spent waiting in the input queue of a step
+   *
+   * @param stepName the name of the step
+   * @return the mean queue wait time per queued item in microseconds
+   */
+  double getMeanQueueWaitMicros(String stepName);
+
+  /**
+   * Get the time a step spent blocked on a full downstream queue
+   *
+   * @param stepName the name of the step
+   * @return the blocked time in milliseconds
+   */
+  long getBlockedMillis(String stepName);
+
+  /**
+   * Get the CPU time used by a step. Only available when resource usage
+   * recording is turned on in the settings.
+   *
+   * @param stepName the name of the step
+   * @return the CPU time in milliseconds
+   */
+  long getCpuTimeMillis(String stepName);
+
+  /**
+   * Get an estimate of the heap allocated by a step. Only available when
+   * resource usage recording is turned on in the settings.
+   *
+   * @param stepName the name of the step
+   * @return the number of bytes allocated
+   */
+  long getAllocatedBytes(String stepName);
+
+  /**
+   * Get the number of distinct threads that have executed a step
+   *
+   * @param stepName the name of the step
+   * @return the number of threads
+   */
+  int getNumThreads(String stepName);
+
+  /**
+   * Get the fraction of the processing time of the slowest step that a step
+   * has used
+   *
+   * @param stepName the name of the step
+   * @return a value between 0 and 1
+   */
+  double getLoadFraction(String stepName);
+}
@@ -84,6 +84,15 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
   /** Gets set to true if the stopProcessing() method is called */
   protected boolean m_wasStopped;
 
+  /** Metrics of the steps for the current (or last) execution */
+  protected transient FlowMetrics m_flowMetrics;
+
+  /** True if the metrics report should be printed when the flow finishes */
+  protected boolean m_printMetrics;
+
+  /** The thread that shuts down the executor service once the flow is done */
+  protected transient Thread m_shutdownThread;
+
   /**
    * Constructor
    */
@@ -197,9 +206,10 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
     }
 
     if (args.length < 1) {
-      System.err.println("Usage:\n\nFlowRunner <json flow file> [-s]\n\n"
+      System.err.println("Usage:\n\nFlowRunner <json flow file> [-s] [-m]\n\n"
         + "\tUse -s to launch start points sequentially (default launches "
-        + "in parallel).");
+        + "in parallel).\n"
+        + "\tUse -m to print per-step metrics when the flow finishes.");
     } else {
       Settings settings = new Settings("weka", KFDefaults.APP_ID);
       settings.loadSettings();
@@ -210,12 +220,18 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
       String fileName = args[0];
       args[0] = "";
       fr.setLaunchStartPointsSequentially(Utils.getFlag("s", args));
+      fr.setPrintMetrics(Utils.getFlag("m", args));
 
       Flow flowToRun = Flow.loadFlow(new File(fileName), new SimpleLogger());
 
       fr.setFlow(flowToRun);
       fr.run();
       fr.waitUntilFinished();
+      // the metrics report is produced by the shutdown thread, so wait for
+      // it before exiting
+      if (fr.m_shutdownThread != null) {
+        fr.m_shutdownThread.join();
+      }
       fr.m_logHandler.logLow("FlowRunner: Finished all flows.");
       System.exit(0);
     }
@@ -343,6 +359,37 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
     m_execEnv = env;
   }
 
+  /**
+   * Set whether to print the per-step metrics report to standard out when the
+   * flow finishes
+   *
+   * @param print true to print the metrics report
+   */
+  public void setPrintMetrics(boolean print) {
+    m_printMetrics = print;
+  }
+
+  /**
+   * Get whether to print the per-step metrics report to standard out when the
+   * flow finishes
+   *
+   * @return true if the metrics report is to be printed
+   */
+  public boolean getPrintMetrics() {
+    return m_printMetrics;
+  }
+
+  /**
+   * Get the metrics of the steps in the flow for the current (or most recent)
+   * execution
+   *
+   * @return the flow metrics, or null if the flow has not been executed yet
+   */
+  @Override
+  public FlowMetrics getFlowMetrics() {
+    return m_flowMetrics;
+  }
+
   /**
    * Execute the flow
    *
@@ -409,6 +456,14 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
         "Flow did not initializeFlow properly - check log.");
     }
 
+    m_flowMetrics = new FlowMetrics(m_flow);
+    try {
+      m_flowMetrics.register();
+    } catch (Exception ex) {
+      m_logHandler.logDebug("FlowRunner: unable to register flow metrics "
+        + "with JMX: " + ex.getMessage());
+    }
+
     return startPoints;
   }
 
@@ -546,18 +601,41 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
    */
   protected void launchExecutorShutdownThread() {
     if (m_execEnv != null) {
-      Thread shutdownThread = new Thread() {
+      m_shutdownThread = new Thread() {
         @Override
         public void run() {
           waitUntilFinished();
           m_logHandler.logDebug("FlowRunner: Shutting down executor service");
           m_execEnv.stopClientExecutionService();
+          finishMetrics();
           for (ExecutionFinishedCallback c : m_callbacks) {
             c.executionFinished();
           }
         }
       };
-      shutdownThread.start();
+      m_shutdownThread.start();
+    }
+  }
+
+  /**
+   * Stop the metrics clock, report the metrics and unregister them from JMX
+   */
+  protected void finishMetrics() {
+    FlowMetrics metrics = m_flowMetrics;
+    if (metrics == null) {
+      return;
+    }
+    metrics.finished();
+    String report = metrics.getReport();
+    m_logHandler.logDetailed("FlowRunner: " + report);
+    if (m_printMetrics) {
+      System.out.println(report);
+    }
+    try {
+      metrics.unregister();
+    } catch (Exception ex) {
+      m_logHandler.logDebug("FlowRunner: unable to unregister flow metrics "
+        + "from JMX: " + ex.getMessage());
     }
   }
 
@@ -596,6 +674,10 @@ public class FlowRunner implements FlowExecutor, CommandlineRunnable {
         busy = true;
       }
     }
+    if (!busy && m_execEnv.hasPendingWork()) {
+      m_logHandler.logDebug("Execution environment has pending work.");
+      busy = true;
+    }
 
     return busy;
   }
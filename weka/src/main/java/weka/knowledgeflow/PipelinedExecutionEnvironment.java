@@ -0,0 +1,548 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    PipelinedExecutionEnvironment.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow;
+
+import weka.core.Defaults;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.PluginManager;
+import weka.core.Settings;
+import weka.core.WekaException;
+import weka.knowledgeflow.steps.ConcurrentStreamHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Execution environment that runs streaming flows as a pipeline. Each step that
+ * receives instances over an instance connection runs as its own pipeline
+ * stage, with a dedicated thread that takes incoming data from a bounded queue.
+ * When a queue is full, the upstream step blocks until there is space
+ * (backpressure), so a fast data source can't swamp a slow downstream step with
+ * data. Steps that implement {@code ConcurrentStreamHandler} can be run with
+ * several replicas (threads) per stage.<br>
+ * <br>
+ * Only instance connections are pipelined. Other incremental connections (e.g.
+ * incremental classifier and chart connections) are delivered synchronously, as
+ * in the default execution environment, because the receiving steps rely on the
+ * data not changing until they have processed it (e.g. an incremental
+ * classifier is updated straight after the test instance has been output).
+ * Rows with string attributes are also delivered synchronously, as string
+ * values are held in the (shared) header in the streaming case. Batch
+ * connections are handled by the default execution environment.
+ *
+ * @version $Revision: $
+ */
+public class PipelinedExecutionEnvironment extends BaseExecutionEnvironment {
+
+  /** Description of this execution environment */
+  public static final String DESCRIPTION = "Pipelined execution environment";
+
+  static {
+    PluginManager.addPlugin(BaseExecutionEnvironment.class.getCanonicalName(),
+      DESCRIPTION, PipelinedExecutionEnvironment.class.getCanonicalName());
+    PluginManager.addPlugin(ExecutionEnvironment.class.getCanonicalName(),
+      DESCRIPTION, PipelinedExecutionEnvironment.class.getCanonicalName());
+  }
+
+  /** Pipeline stages, keyed by the step that they run */
+  protected transient Map<StepManagerImpl, PipelineStage> m_stages =
+    new LinkedHashMap<StepManagerImpl, PipelineStage>();
+
+  /** Runs the worker threads of the pipeline stages */
+  protected transient ExecutorService m_stageService;
+
+  /** Remembers which stream headers contain string attributes */
+  protected transient Map<Instances, Boolean> m_stringHeaders = Collections
+    .synchronizedMap(new WeakHashMap<Instances, Boolean>());
+
+  /** Capacity of the queue in front of each pipeline stage */
+  protected int m_queueCapacity =
+    PipelinedExecutionEnvironmentDefaults.QUEUE_CAPACITY;
+
+  /** Maximum number of replicas per stage */
+  protected int m_numReplicas = PipelinedExecutionEnvironmentDefaults.REPLICAS;
+
+  /**
+   * Get a description of this execution environment
+   *
+   * @return a description of this execution environment
+   */
+  @Override
+  public String getDescription() {
+    return DESCRIPTION;
+  }
+
+  /**
+   * Start the executor services. Also reads the queue capacity and number of
+   * replicas from the settings and clears any stages from a previous run.
+   *
+   * @param numThreadsMain the number of threads to use (level of parallelism).
+   *          <= 0 indicates no limit on parallelism
+   * @param numThreadsHighLoad the number of threads to use for the high cpu
+   *          load executor service (executes {@code StepTask} instances)
+   */
+  @Override
+  protected void startClientExecutionService(int numThreadsMain,
+    int numThreadsHighLoad) {
+    super.startClientExecutionService(numThreadsMain, numThreadsHighLoad);
+
+    m_queueCapacity =
+      getSettings().getSetting(KFDefaults.APP_ID,
+        PipelinedExecutionEnvironmentDefaults.QUEUE_CAPACITY_KEY,
+        PipelinedExecutionEnvironmentDefaults.QUEUE_CAPACITY);
+    m_numReplicas =
+      getSettings().getSetting(KFDefaults.APP_ID,
+        PipelinedExecutionEnvironmentDefaults.REPLICAS_KEY,
+        PipelinedExecutionEnvironmentDefaults.REPLICAS);
+    if (m_queueCapacity < 1) {
+      m_queueCapacity = 1;
+    }
+    if (m_numReplicas < 1) {
+      m_numReplicas = 1;
+    }
+
+    synchronized (m_stages) {
+      if (m_stageService != null) {
+        m_stageService.shutdownNow();
+      }
+      m_stages.clear();
+      m_stageService = Executors.newCachedThreadPool();
+    }
+    m_logHandler.logDebug("Pipeline queue capacity: " + m_queueCapacity
+      + ", max replicas per stage: " + m_numReplicas);
+  }
+
+  /**
+   * Stop the executor services, including the threads running the pipeline
+   * stages
+   */
+  @Override
+  protected void stopClientExecutionService() {
+    super.stopClientExecutionService();
+    shutdownStages();
+  }
+
+  /**
+   * Request that the flow stops processing
+   */
+  @Override
+  public void stopProcessing() {
+    super.stopProcessing();
+    shutdownStages();
+  }
+
+  /**
+   * Returns true if any of the pipeline stages has data waiting in its queue
+   * or is currently processing data.
+   *
+   * @return true if there is pipelined work that has not been completed yet
+   */
+  @Override
+  public boolean hasPendingWork() {
+    synchronized (m_stages) {
+      for (PipelineStage s : m_stages.values()) {
+        if (!s.m_stopped && s.m_pending.get() > 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Send the supplied data to the specified step. Instance data is put into
+   * the queue of the step's pipeline stage (blocking if the queue is full);
+   * everything else is handled by the default execution environment.
+   *
+   * @param step the step to receive data
+   * @param data the data to input to the target step
+   * @throws WekaException if a problem occurs
+   */
+  @Override
+  protected void sendDataToStep(StepManagerImpl step, Data... data)
+    throws WekaException {
+    if (data != null && data.length == 1 && isPipelined(data[0])) {
+      PipelineStage stage = getStage(step);
+      if (stage != null) {
+        try {
+          // upstream steps re-use their Data objects, so the queue gets a copy
+          stage.put(copyData(data[0]));
+        } catch (InterruptedException ex) {
+          throw new WekaException(ex);
+        }
+        return;
+      }
+    }
+
+    super.sendDataToStep(step, data);
+  }
+
+  /**
+   * Returns true if the supplied data should be sent via a pipeline stage
+   *
+   * @param data the data to check
+   * @return true if the data should be pipelined
+   */
+  protected boolean isPipelined(Data data) {
+    if (!StepManager.CON_INSTANCE.equals(data.getConnectionName())) {
+      return false;
+    }
+    Instance inst = data.getPayloadElement(StepManager.CON_INSTANCE);
+    if (inst == null || inst.dataset() == null) {
+      return true;
+    }
+
+    Instances header = inst.dataset();
+    Boolean hasStrings = m_stringHeaders.get(header);
+    if (hasStrings == null) {
+      hasStrings = header.checkForStringAttributes();
+      m_stringHeaders.put(header, hasStrings);
+    }
+    return !hasStrings;
+  }
+
+  /**
+   * Make a shallow copy of a Data object (i.e. a new payload map holding the
+   * same payload elements).
+   *
+   * @param data the Data object to copy
+   * @return the copy
+   */
+  protected static Data copyData(Data data) {
+    Data copy = new Data();
+    copy.m_connectionName = data.m_connectionName;
+    copy.m_sourceStep = data.m_sourceStep;
+    copy.m_payloadMap.putAll(data.m_payloadMap);
+    return copy;
+  }
+
+  /**
+   * Get (creating and starting if necessary) the pipeline stage for a step
+   *
+   * @param step the step to get the stage for
+   * @return the stage, or null if the stages have been shut down
+   */
+  protected PipelineStage getStage(StepManagerImpl step) {
+    synchronized (m_stages) {
+      if (m_stageService == null) {
+        return null;
+      }
+      PipelineStage stage = m_stages.get(step);
+      if (stage == null) {
+        stage = new PipelineStage(step, m_queueCapacity);
+        m_stages.put(step, stage);
+        stage.addWorker();
+      }
+      return stage;
+    }
+  }
+
+  /**
+   * Shut down the threads running the pipeline stages
+   */
+  protected void shutdownStages() {
+    synchronized (m_stages) {
+      if (m_stageService != null) {
+        m_stageService.shutdownNow();
+        m_stageService = null;
+      }
+      for (PipelineStage s : m_stages.values()) {
+        s.stop();
+      }
+    }
+  }
+
+  /**
+   * Get default settings for the pipelined execution environment
+   *
+   * @return the default settings
+   */
+  @Override
+  public Defaults getDefaultSettings() {
+    return new PipelinedExecutionEnvironmentDefaults();
+  }
+
+  /**
+   * A pipeline stage. Runs one step with one or more worker threads that take
+   * data from a bounded queue. The first row of a stream and the end of stream
+   * marker are always processed by one worker on its own; the rows in between
+   * are processed concurrently if the step has agreed to it (see
+   * {@code ConcurrentStreamHandler}). If processing fails, the stage stops and
+   * discards all further data, so that upstream steps don't block on it.
+   */
+  protected class PipelineStage implements Runnable {
+
+    /** The step run by this stage */
+    protected final StepManagerImpl m_step;
+
+    /** The queue of incoming data */
+    protected final BlockingQueue<QueuedData> m_queue;
+
+    /** Number of data objects queued or being processed */
+    protected final AtomicInteger m_pending = new AtomicInteger();
+
+    /**
+     * Rows are processed while holding the read lock when processing
+     * concurrently, and the write lock otherwise
+     */
+    protected final ReentrantReadWriteLock m_lock =
+      new ReentrantReadWriteLock();
+
+    /** Makes taking data and acquiring the lock for it atomic */
+    protected final Object m_takeLock = new Object();
+
+    /** True if the first row of the current stream has been taken */
+    protected boolean m_streamStarted;
+
+    /** True if the rows of the current stream can be processed concurrently */
+    protected volatile boolean m_concurrent;
+
+    /** The number of workers running this stage */
+    protected int m_numWorkers;
+
+    /** True once the stage has been stopped (or has failed) */
+    protected volatile boolean m_stopped;
+
+    /**
+     * Constructor
+     *
+     * @param step the step to run
+     * @param capacity the capacity of the queue
+     */
+    public PipelineStage(StepManagerImpl step, int capacity) {
+      m_step = step;
+      m_queue = new ArrayBlockingQueue<QueuedData>(capacity);
+    }
+
+    /**
+     * Put data into the queue, waiting for space if necessary. Time spent
+     * waiting is recorded in the metrics of the step that produced the data.
+     *
+     * @param data the data to put
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(Data data) throws InterruptedException {
+      if (m_stopped) {
+        return;
+      }
+      m_pending.incrementAndGet();
+      QueuedData queued = new QueuedData(data);
+      if (m_queue.offer(queued)) {
+        return;
+      }
+
+      // queue is full - wait for the downstream step to catch up, unless the
+      // stage stops in the meantime
+      long start = System.nanoTime();
+      StepMetrics.enter(StepMetrics.WAITING);
+      try {
+        while (!m_queue.offer(queued, 100, TimeUnit.MILLISECONDS)) {
+          if (m_stopped) {
+            m_pending.decrementAndGet();
+            return;
+          }
+        }
+      } catch (InterruptedException ex) {
+        m_pending.decrementAndGet();
+        throw ex;
+      } finally {
+        StepMetrics.exit();
+        if (data.getSourceStep() != null
+          && data.getSourceStep().getStepManager() != null) {
+          data.getSourceStep().getStepManager().getMetrics()
+            .recordBlocked(System.nanoTime() - start);
+        }
+      }
+    }
+
+    /**
+     * Start another worker for this stage
+     */
+    protected void addWorker() {
+      synchronized (m_stages) {
+        if (m_stageService != null) {
+          m_numWorkers++;
+          m_stageService.submit(this);
+        }
+      }
+    }
+
+    /**
+     * Stop the stage: discard the data in the queue and any data that is put
+     * into it from now on
+     */
+    protected void stop() {
+      m_stopped = true;
+      ArrayList<QueuedData> discarded = new ArrayList<QueuedData>();
+      m_queue.drainTo(discarded);
+      m_pending.addAndGet(-discarded.size());
+    }
+
+    /**
+     * Process data from the queue until interrupted or stopped
+     */
+    @Override
+    public void run() {
+      while (!m_stopped && !Thread.currentThread().isInterrupted()) {
+        QueuedData queued;
+        Lock lock;
+        boolean first;
+        boolean end;
+        synchronized (m_takeLock) {
+          try {
+            queued = m_queue.take();
+          } catch (InterruptedException ex) {
+            // stage is being shut down
+            return;
+          }
+          end = m_step.isStreamFinished(queued.m_data);
+          first = !m_streamStarted;
+          m_streamStarted = !end;
+          lock =
+            first || end || !m_concurrent ? m_lock.writeLock() : m_lock
+              .readLock();
+          lock.lock();
+          if (end) {
+            m_concurrent = false;
+          }
+        }
+
+        try {
+          m_step.getMetrics().recordQueueWait(
+            System.nanoTime() - queued.m_queuedAt);
+          m_step.processIncoming(queued.m_data);
+          if (first && !end) {
+            checkConcurrent();
+          }
+        } catch (Throwable ex) {
+          failed(ex);
+        } finally {
+          lock.unlock();
+          m_pending.decrementAndGet();
+        }
+      }
+    }
+
+    /**
+     * Called when processing data has failed. Stops this stage and reports
+     * the error via the step, which stops the flow.
+     *
+     * @param cause the error
+     */
+    protected void failed(Throwable cause) {
+      stop();
+      m_step.interrupted();
+      m_step.logError(cause.getMessage(), cause);
+    }
+
+    /**
+     * Ask the step whether the remaining rows of the stream can be processed
+     * concurrently, and start additional workers if so
+     */
+    protected void checkConcurrent() {
+      if (m_numReplicas > 1
+        && m_step.getManagedStep() instanceof ConcurrentStreamHandler
+        && !m_step.isStopRequested()) {
+        try {
+          m_concurrent =
+            ((ConcurrentStreamHandler) m_step.getManagedStep())
+              .enableConcurrentStreaming();
+        } catch (WekaException ex) {
+          m_step.logWarning("Unable to process stream concurrently: "
+            + ex.getMessage());
+          m_concurrent = false;
+        }
+        if (m_concurrent) {
+          while (m_numWorkers < m_numReplicas) {
+            addWorker();
+          }
+          m_step.logDetailed("Processing stream with " + m_numWorkers
+            + " replicas");
+        }
+      }
+    }
+  }
+
+  /**
+   * A Data object waiting in a queue
+   */
+  protected static class QueuedData {
+
+    /** The data */
+    protected final Data m_data;
+
+    /** The time (System.nanoTime()) when the data was handed to the queue */
+    protected final long m_queuedAt = System.nanoTime();
+
+    /**
+     * Constructor
+     *
+     * @param data the data
+     */
+    public QueuedData(Data data) {
+      m_data = data;
+    }
+  }
+
+  /**
+   * Defaults for the pipelined execution environment
+   */
+  public static class PipelinedExecutionEnvironmentDefaults extends
+    BaseExecutionEnvironmentDefaults {
+
+    public static final Settings.SettingKey QUEUE_CAPACITY_KEY =
+      new Settings.SettingKey(KFDefaults.APP_ID + ".pipelineQueueCapacity",
+        "Capacity of the queue in front of each pipeline stage",
+        "<html>Number of data objects (instances or blocks of instances)<br>"
+          + "that can be waiting for a step. Upstream steps wait when the<br>"
+          + "queue is full.</html>");
+    public static final int QUEUE_CAPACITY = 256;
+
+    public static final Settings.SettingKey REPLICAS_KEY =
+      new Settings.SettingKey(KFDefaults.APP_ID + ".pipelineReplicas",
+        "Maximum number of replicas per pipeline stage",
+        "<html>Steps that can process streaming instances concurrently (e.g.<br>"
+          + "Filter with a streamable filter) are run with this many<br>"
+          + "threads. Note that the order of the rows is not preserved<br>"
+          + "when more than one replica is used.</html>");
+    public static final int REPLICAS = 1;
+
+    private static final long serialVersionUID = -6513224826347217064L;
+
+    public PipelinedExecutionEnvironmentDefaults() {
+      m_defaults.put(QUEUE_CAPACITY_KEY, QUEUE_CAPACITY);
+      m_defaults.put(REPLICAS_KEY, REPLICAS);
+    }
+  }
+}
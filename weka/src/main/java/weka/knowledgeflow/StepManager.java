@@ -84,6 +84,9 @@ public interface StepManager {
   public static final String CON_AUX_DATA_INCREMENTAL_STREAM_END =
     "incremental_stream_end";
   public static final String CON_AUX_DATA_IS_INCREMENTAL = "incremental_stream";
+  public static final String CON_AUX_DATA_INSTANCE_BLOCK = "instance_block";
+  public static final String CON_AUX_DATA_INSTANCE_BLOCK_ELEMENT =
+    "instance_block_element";
 
   /**
    * Get the name of the step managed by this StepManager
@@ -115,6 +118,14 @@ public interface StepManager {
    */
   Settings getSettings();
 
+  /**
+   * Get the performance metrics recorded for the managed step during the
+   * current (or most recent) execution of the flow
+   *
+   * @return the metrics for the managed step
+   */
+  StepMetrics getMetrics();
+
   /**
    * Get the number of steps that are connected with incoming connections
    * 
@@ -30,6 +30,7 @@ import weka.core.WekaException;
 import weka.gui.Logger;
 import weka.gui.beans.StreamThroughput;
 import weka.gui.knowledgeflow.StepVisual;
+import weka.knowledgeflow.steps.InstanceBlockHandler;
 import weka.knowledgeflow.steps.KFStep;
 import weka.knowledgeflow.steps.Step;
 import weka.knowledgeflow.steps.WekaAlgorithmWrapper;
@@ -124,6 +125,9 @@ public class StepManagerImpl implements StepManager {
   /** For measuring performance of instance streams */
   protected transient StreamThroughput m_throughput;
 
+  /** Performance metrics for the managed step */
+  protected transient StepMetrics m_metrics = new StepMetrics();
+
   /**
    * Used when interrogating the managed step for what output connections it can
    * produce at present given the incoming connections to the step. Normally, a
@@ -327,6 +331,17 @@ public class StepManagerImpl implements StepManager {
     return getExecutionEnvironment().getSettings();
   }
 
+  /**
+   * Get the performance metrics recorded for the managed step during the
+   * current (or most recent) execution of the flow
+   *
+   * @return the metrics for the managed step
+   */
+  @Override
+  public StepMetrics getMetrics() {
+    return m_metrics;
+  }
+
   /**
    * Set the execution environment the managed step is running in
    *
@@ -410,6 +425,16 @@ public class StepManagerImpl implements StepManager {
     }
 
     m_throughput = null;
+    boolean recordResourceUsage = false;
+    if (getExecutionEnvironment() != null) {
+      recordResourceUsage =
+        getSettings()
+          .getSetting(
+            KFDefaults.APP_ID,
+            BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.STEP_RESOURCE_USAGE_KEY,
+            BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.STEP_RESOURCE_USAGE);
+    }
+    m_metrics.reset(recordResourceUsage);
 
     return initializedOK;
   }
@@ -881,11 +906,15 @@ public class StepManagerImpl implements StepManager {
     List<StepOutputListener> listenersForType =
       m_outputListeners.get(data.getConnectionName());
     if (listenersForType != null) {
-      for (StepOutputListener l : listenersForType) {
-        if (!l.dataFromStep(data)) {
-          logWarning("StepOutputListener '" + l.getClass().getCanonicalName()
-            + "' " + "did not process data '" + data.getConnectionName()
-            + "' successfully'");
+      // listeners always see individual rows
+      for (Data row : data.instanceBlockRows()) {
+        for (StepOutputListener l : listenersForType) {
+          if (!l.dataFromStep(row)) {
+            logWarning("StepOutputListener '"
+              + l.getClass().getCanonicalName() + "' "
+              + "did not process data '" + row.getConnectionName()
+              + "' successfully'");
+          }
         }
       }
     }
@@ -908,6 +937,7 @@ public class StepManagerImpl implements StepManager {
     if (!isStopRequested()) {
       data.setConnectionName(outgoingConnectionName);
       data.setSourceStep(m_managedStep);
+      m_metrics.recordOutgoing(data);
 
       List<StepManager> toNotify =
         m_connectedByTypeOutgoing.get(outgoingConnectionName);
@@ -950,6 +980,7 @@ public class StepManagerImpl implements StepManager {
           || d.getConnectionName().length() == 0) {
           throw new WekaException("Data does not have a connection name set.");
         }
+        m_metrics.recordOutgoing(d);
         List<StepManager> candidates =
           m_connectedByTypeOutgoing.get(d.getConnectionName());
         if (candidates != null) {
@@ -992,6 +1023,7 @@ public class StepManagerImpl implements StepManager {
     if (!isStopRequested()) {
       data.setConnectionName(outgoingConnectionName);
       data.setSourceStep(m_managedStep);
+      m_metrics.recordOutgoing(data);
 
       List<StepManager> outConnsOfType =
         m_connectedByTypeOutgoing.get(outgoingConnectionName);
@@ -1016,6 +1048,7 @@ public class StepManagerImpl implements StepManager {
    * Start the managed step processing
    */
   protected void startStep() {
+    StepMetrics.enter(m_metrics);
     try {
       getManagedStep().start();
     } catch (WekaException ex) {
@@ -1024,6 +1057,8 @@ public class StepManagerImpl implements StepManager {
     } catch (Throwable ex) {
       interrupted();
       logError(ex.getMessage(), ex);
+    } finally {
+      StepMetrics.exit();
     }
   }
 
@@ -1041,14 +1076,29 @@ public class StepManagerImpl implements StepManager {
    * @param data the data for the managed step to process
    */
   protected void processIncoming(Data data) {
+    m_metrics.recordIncoming(data);
+    StepMetrics.enter(m_metrics);
     try {
-      getManagedStep().processIncoming(data);
+      if (data.isInstanceBlock()
+        && !(getManagedStep() instanceof InstanceBlockHandler)) {
+        // split the block into rows for steps that can't handle blocks
+        for (Data row : data.instanceBlockRows()) {
+          if (isStopRequested()) {
+            break;
+          }
+          getManagedStep().processIncoming(row);
+        }
+      } else {
+        getManagedStep().processIncoming(data);
+      }
     } catch (WekaException ex) {
       interrupted();
       logError(ex.getMessage(), ex);
     } catch (Throwable e) {
       interrupted();
       logError(e.getMessage(), e);
+    } finally {
+      StepMetrics.exit();
     }
   }
 
@@ -0,0 +1,648 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    StepMetrics.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records performance metrics for a step while a flow is executing: the number
+ * of Data objects and rows (instances) received and output, a histogram of the
+ * time taken by each call to the step, time spent waiting in queues (if the
+ * execution environment queues data), the number of threads that have run the
+ * step and (optionally) CPU time and heap allocation.<br>
+ * <br>
+ * Processing time is "self" time, i.e. time spent in steps that are called
+ * synchronously by this step (e.g. via StepManager.outputData() for an
+ * instance connection) is charged to those steps and not to this one. This is
+ * achieved by keeping track of the step that is currently active in each
+ * thread - see enter() and exit().
+ *
+ * @version $Revision: $
+ */
+public class StepMetrics {
+
+  /**
+   * Number of buckets in the processing time histogram. Bucket i holds calls
+   * that took between 2^i and 2^(i+1) nanoseconds; the last bucket holds
+   * everything longer than that.
+   */
+  public static final int NUM_BUCKETS = 40;
+
+  /**
+   * Metrics object that time is charged to while a step is blocked waiting
+   * for space in a downstream queue. Not reported.
+   */
+  protected static final StepMetrics WAITING = new StepMetrics();
+
+  /** The call stack of steps active in each thread */
+  protected static final ThreadLocal<CallStack> CALL_STACK =
+    new ThreadLocal<CallStack>() {
+      @Override
+      protected CallStack initialValue() {
+        return new CallStack();
+      }
+    };
+
+  /** Number of Data objects received */
+  protected final AtomicLong m_dataIn = new AtomicLong();
+
+  /** Number of rows received */
+  protected final AtomicLong m_rowsIn = new AtomicLong();
+
+  /** Number of Data objects output */
+  protected final AtomicLong m_dataOut = new AtomicLong();
+
+  /** Number of rows output */
+  protected final AtomicLong m_rowsOut = new AtomicLong();
+
+  /** Number of calls (processIncoming(), start() or tasks) */
+  protected final AtomicLong m_numCalls = new AtomicLong();
+
+  /** Total processing (self) time in nanoseconds */
+  protected final AtomicLong m_processingNanos = new AtomicLong();
+
+  /** Longest single call (self time, nanoseconds) */
+  protected final AtomicLong m_maxProcessingNanos = new AtomicLong();
+
+  /** Histogram of the processing time per call */
+  protected final AtomicLongArray m_histogram = new AtomicLongArray(
+    NUM_BUCKETS);
+
+  /** Total time that incoming data spent waiting in queues */
+  protected final AtomicLong m_queueWaitNanos = new AtomicLong();
+
+  /** Number of Data objects that were queued */
+  protected final AtomicLong m_numQueued = new AtomicLong();
+
+  /** Total time spent blocked waiting for space in downstream queues */
+  protected final AtomicLong m_blockedNanos = new AtomicLong();
+
+  /** CPU time in nanoseconds (if resource usage is being recorded) */
+  protected final AtomicLong m_cpuNanos = new AtomicLong();
+
+  /** Bytes allocated on the heap (if resource usage is being recorded) */
+  protected final AtomicLong m_allocatedBytes = new AtomicLong();
+
+  /** IDs of the threads that have run the step */
+  protected final Set<Long> m_threadIds = Collections
+    .newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+  /** Number of threads currently running the step */
+  protected final AtomicInteger m_active = new AtomicInteger();
+
+  /** Maximum number of threads that have run the step at the same time */
+  protected final AtomicInteger m_maxActive = new AtomicInteger();
+
+  /** True if CPU time and allocation are to be recorded */
+  protected volatile boolean m_recordResourceUsage;
+
+  /**
+   * Reset all the metrics
+   *
+   * @param recordResourceUsage true if CPU time and heap allocation are to be
+   *          recorded (this has some overhead)
+   */
+  public void reset(boolean recordResourceUsage) {
+    m_dataIn.set(0);
+    m_rowsIn.set(0);
+    m_dataOut.set(0);
+    m_rowsOut.set(0);
+    m_numCalls.set(0);
+    m_processingNanos.set(0);
+    m_maxProcessingNanos.set(0);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      m_histogram.set(i, 0);
+    }
+    m_queueWaitNanos.set(0);
+    m_numQueued.set(0);
+    m_blockedNanos.set(0);
+    m_cpuNanos.set(0);
+    m_allocatedBytes.set(0);
+    m_threadIds.clear();
+    m_maxActive.set(m_active.get());
+    m_recordResourceUsage = recordResourceUsage;
+  }
+
+  /**
+   * Returns the number of rows (instances) held by a Data object. Blocks count
+   * as the number of instances in the block, Instances as the number of
+   * instances and single instances as 1.
+   *
+   * @param data the Data object
+   * @return the number of rows
+   */
+  public static long numRows(Data data) {
+    if (data.isInstanceBlock()) {
+      return data.getInstanceBlock().size();
+    }
+    Object payload = data.getPrimaryPayload();
+    if (payload instanceof Instance
+      || data.getPayloadElement(StepManager.CON_AUX_DATA_TEST_INSTANCE) != null) {
+      return 1;
+    }
+    if (payload instanceof Instances) {
+      return ((Instances) payload).numInstances();
+    }
+    return 0;
+  }
+
+  /**
+   * Record an incoming Data object
+   *
+   * @param data the Data object received
+   */
+  public void recordIncoming(Data data) {
+    m_dataIn.incrementAndGet();
+    m_rowsIn.addAndGet(numRows(data));
+  }
+
+  /**
+   * Record an outgoing Data object
+   *
+   * @param data the Data object output
+   */
+  public void recordOutgoing(Data data) {
+    m_dataOut.incrementAndGet();
+    m_rowsOut.addAndGet(numRows(data));
+  }
+
+  /**
+   * Record the time that a Data object spent waiting in a queue
+   *
+   * @param nanos the waiting time in nanoseconds
+   */
+  public void recordQueueWait(long nanos) {
+    m_numQueued.incrementAndGet();
+    m_queueWaitNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Record time spent waiting for space in a downstream queue
+   *
+   * @param nanos the waiting time in nanoseconds
+   */
+  public void recordBlocked(long nanos) {
+    m_blockedNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Record a completed call
+   *
+   * @param nanos the self time of the call
+   * @param cpuNanos the CPU time of the call (or < 0 if not known)
+   * @param allocated the bytes allocated by the call (or < 0 if not known)
+   */
+  protected void recordCall(long nanos, long cpuNanos, long allocated) {
+    m_numCalls.incrementAndGet();
+    m_processingNanos.addAndGet(nanos);
+    long max = m_maxProcessingNanos.get();
+    while (nanos > max && !m_maxProcessingNanos.compareAndSet(max, nanos)) {
+      max = m_maxProcessingNanos.get();
+    }
+    m_histogram.incrementAndGet(bucket(nanos));
+    if (cpuNanos > 0) {
+      m_cpuNanos.addAndGet(cpuNanos);
+    }
+    if (allocated > 0) {
+      m_allocatedBytes.addAndGet(allocated);
+    }
+  }
+
+  /**
+   * Get the histogram bucket for a duration
+   *
+   * @param nanos the duration in nanoseconds
+   * @return the bucket
+   */
+  protected static int bucket(long nanos) {
+    if (nanos <= 1) {
+      return 0;
+    }
+    return Math.min(NUM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+  }
+
+  /**
+   * Mark the start of a call to the step in the current thread. Time in the
+   * current thread is charged to this step until the matching exit() (apart
+   * from any time spent in nested calls to other steps).
+   *
+   * @param metrics the metrics of the step being called
+   */
+  public static void enter(StepMetrics metrics) {
+    CALL_STACK.get().enter(metrics);
+  }
+
+  /**
+   * Mark the end of the most recent call in the current thread
+   */
+  public static void exit() {
+    CALL_STACK.get().exit();
+  }
+
+  /**
+   * Get the number of Data objects received
+   *
+   * @return the number of Data objects received
+   */
+  public long getDataIn() {
+    return m_dataIn.get();
+  }
+
+  /**
+   * Get the number of rows received
+   *
+   * @return the number of rows received
+   */
+  public long getRowsIn() {
+    return m_rowsIn.get();
+  }
+
+  /**
+   * Get the number of Data objects output
+   *
+   * @return the number of Data objects output
+   */
+  public long getDataOut() {
+    return m_dataOut.get();
+  }
+
+  /**
+   * Get the number of rows output
+   *
+   * @return the number of rows output
+   */
+  public long getRowsOut() {
+    return m_rowsOut.get();
+  }
+
+  /**
+   * Get the number of calls to the step
+   *
+   * @return the number of calls to the step
+   */
+  public long getNumCalls() {
+    return m_numCalls.get();
+  }
+
+  /**
+   * Get the total processing (self) time in nanoseconds
+   *
+   * @return the total processing (self) time in nanoseconds
+   */
+  public long getProcessingNanos() {
+    return m_processingNanos.get();
+  }
+
+  /**
+   * Get the mean processing time per call
+   *
+   * @return the mean processing time in nanoseconds (0 if no calls)
+   */
+  public double getMeanProcessingNanos() {
+    long calls = m_numCalls.get();
+    return calls == 0 ? 0 : (double) m_processingNanos.get() / calls;
+  }
+
+  /**
+   * Get the longest processing time of a single call
+   *
+   * @return the longest processing time in nanoseconds
+   */
+  public long getMaxProcessingNanos() {
+    return m_maxProcessingNanos.get();
+  }
+
+  /**
+   * Get an (upper bound) estimate of a percentile of the processing time per
+   * call from the histogram
+   *
+   * @param percentile the percentile (between 0 and 100)
+   * @return the estimate in nanoseconds (0 if no calls)
+   */
+  public double getProcessingNanosPercentile(double percentile) {
+    long total = 0;
+    long[] counts = getHistogram();
+    for (long c : counts) {
+      total += c;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    double target = total * percentile / 100.0;
+    long sum = 0;
+    for (int i = 0; i < counts.length; i++) {
+      sum += counts[i];
+      if (sum >= target && counts[i] > 0) {
+        return Math.min(Math.pow(2, i + 1), getMaxProcessingNanos());
+      }
+    }
+    return getMaxProcessingNanos();
+  }
+
+  /**
+   * Get a copy of the processing time histogram
+   *
+   * @return the histogram counts
+   */
+  public long[] getHistogram() {
+    long[] result = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      result[i] = m_histogram.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Get the total time incoming data spent waiting in queues (nanoseconds)
+   *
+   * @return the total time incoming data spent waiting in queues (nanoseconds)
+   */
+  public long getQueueWaitNanos() {
+    return m_queueWaitNanos.get();
+  }
+
+  /**
+   * Get the number of incoming Data objects that were queued
+   *
+   * @return the number of incoming Data objects that were queued
+   */
+  public long getNumQueued() {
+    return m_numQueued.get();
+  }
+
+  /**
+   * Get the total time spent blocked on full downstream queues (nanoseconds)
+   *
+   * @return the total time spent blocked on full downstream queues (nanoseconds)
+   */
+  public long getBlockedNanos() {
+    return m_blockedNanos.get();
+  }
+
+  /**
+   * Get the CPU time (nanoseconds), if resource usage is being recorded
+   *
+   * @return the CPU time (nanoseconds), if resource usage is being recorded
+   */
+  public long getCpuNanos() {
+    return m_cpuNanos.get();
+  }
+
+  /**
+   * Get the bytes allocated on the heap, if resource usage is being recorded
+   *
+   * @return the bytes allocated on the heap, if resource usage is being recorded
+   */
+  public long getAllocatedBytes() {
+    return m_allocatedBytes.get();
+  }
+
+  /**
+   * Get whether CPU time and heap allocation are being recorded
+   *
+   * @return true if CPU time and heap allocation are being recorded
+   */
+  public boolean getRecordResourceUsage() {
+    return m_recordResourceUsage;
+  }
+
+  /**
+   * Get the number of distinct threads that have run the step
+   *
+   * @return the number of distinct threads that have run the step
+   */
+  public int getNumThreads() {
+    return m_threadIds.size();
+  }
+
+  /**
+   * Get the maximum number of threads that have run the step concurrently
+   *
+   * @return the maximum number of threads that have run the step concurrently
+   */
+  public int getMaxConcurrentThreads() {
+    return m_maxActive.get();
+  }
+
+  /**
+   * A call in progress
+   */
+  protected static class Frame {
+
+    /** The metrics to charge */
+    protected StepMetrics m_metrics;
+
+    /** Self time so far */
+    protected long m_nanos;
+
+    /** CPU time so far */
+    protected long m_cpuNanos;
+
+    /** Allocated bytes so far */
+    protected long m_allocated;
+  }
+
+  /**
+   * The steps that are active in a thread. Time is charged to the frame on the
+   * top of the stack between calls to enter() and exit().
+   */
+  protected static class CallStack {
+
+    /** The active calls */
+    protected List<Frame> m_frames = new ArrayList<Frame>();
+
+    /** Start of the current segment */
+    protected long m_segmentStart;
+
+    /** CPU time at the start of the current segment (-1 if not read) */
+    protected long m_segmentCpu = -1;
+
+    /** Allocated bytes at the start of the current segment (-1 if not read) */
+    protected long m_segmentAllocated = -1;
+
+    /**
+     * Close the current segment and start a new one
+     *
+     * @param readResources true if CPU time and allocation should be read at
+     *          this boundary
+     */
+    protected void switchSegment(boolean readResources) {
+      long now = System.nanoTime();
+      long cpu = readResources ? ResourceUsage.cpuTime() : -1;
+      long allocated = readResources ? ResourceUsage.allocatedBytes() : -1;
+      if (m_frames.size() > 0) {
+        Frame top = m_frames.get(m_frames.size() - 1);
+        top.m_nanos += now - m_segmentStart;
+        if (cpu >= 0 && m_segmentCpu >= 0) {
+          top.m_cpuNanos += cpu - m_segmentCpu;
+        }
+        if (allocated >= 0 && m_segmentAllocated >= 0) {
+          top.m_allocated += allocated - m_segmentAllocated;
+        }
+      }
+      m_segmentStart = now;
+      m_segmentCpu = cpu;
+      m_segmentAllocated = allocated;
+    }
+
+    /**
+     * Returns true if CPU time and allocation need to be read at a boundary
+     * involving the top frame and the supplied metrics
+     *
+     * @param other the metrics of the frame being entered or exited
+     * @return true if resource usage should be read
+     */
+    protected boolean needResources(StepMetrics other) {
+      if (other.m_recordResourceUsage) {
+        return true;
+      }
+      return m_frames.size() > 0
+        && m_frames.get(m_frames.size() - 1).m_metrics.m_recordResourceUsage;
+    }
+
+    /**
+     * Enter a call
+     *
+     * @param metrics the metrics to charge
+     */
+    protected void enter(StepMetrics metrics) {
+      switchSegment(needResources(metrics));
+      Frame f = new Frame();
+      f.m_metrics = metrics;
+      m_frames.add(f);
+
+      metrics.m_threadIds.add(Thread.currentThread().getId());
+      int active = metrics.m_active.incrementAndGet();
+      int max = metrics.m_maxActive.get();
+      while (active > max && !metrics.m_maxActive.compareAndSet(max, active)) {
+        max = metrics.m_maxActive.get();
+      }
+    }
+
+    /**
+     * Exit the most recent call
+     */
+    protected void exit() {
+      if (m_frames.size() == 0) {
+        return;
+      }
+      Frame top = m_frames.get(m_frames.size() - 1);
+      boolean resources = top.m_metrics.m_recordResourceUsage;
+      // also read at this boundary if the frame we return to records usage
+      if (!resources && m_frames.size() > 1) {
+        resources =
+          m_frames.get(m_frames.size() - 2).m_metrics.m_recordResourceUsage;
+      }
+      switchSegment(resources);
+      m_frames.remove(m_frames.size() - 1);
+      top.m_metrics.m_active.decrementAndGet();
+      if (top.m_metrics != WAITING) {
+        top.m_metrics.recordCall(top.m_nanos,
+          top.m_metrics.m_recordResourceUsage ? top.m_cpuNanos : -1,
+          top.m_metrics.m_recordResourceUsage ? top.m_allocated : -1);
+      }
+    }
+  }
+
+  /**
+   * Access to per-thread CPU time and allocation counters
+   */
+  protected static class ResourceUsage {
+
+    /** The thread MX bean */
+    protected static final ThreadMXBean THREADS = ManagementFactory
+      .getThreadMXBean();
+
+    /** True if CPU time for the current thread can be read */
+    protected static final boolean CPU_SUPPORTED;
+
+    /**
+     * getThreadAllocatedBytes(long) of com.sun.management.ThreadMXBean (if
+     * available)
+     */
+    protected static final Method ALLOCATED_BYTES;
+
+    static {
+      boolean cpu = false;
+      try {
+        cpu = THREADS.isCurrentThreadCpuTimeSupported();
+      } catch (Throwable t) {
+        // not supported
+      }
+      CPU_SUPPORTED = cpu;
+
+      Method m = null;
+      try {
+        m =
+          Class.forName("com.sun.management.ThreadMXBean").getMethod(
+            "getThreadAllocatedBytes", long.class);
+        if (!m.getDeclaringClass().isInstance(THREADS)) {
+          m = null;
+        } else {
+          m.setAccessible(true);
+        }
+      } catch (Throwable t) {
+        m = null;
+      }
+      ALLOCATED_BYTES = m;
+    }
+
+    /**
+     * Get the CPU time of the current thread
+     *
+     * @return the CPU time in nanoseconds, or -1 if not supported
+     */
+    protected static long cpuTime() {
+      return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Get the bytes allocated by the current thread
+     *
+     * @return the allocated bytes, or -1 if not supported
+     */
+    protected static long allocatedBytes() {
+      if (ALLOCATED_BYTES == null) {
+        return -1;
+      }
+      try {
+        return (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread()
+          .getId());
+      } catch (Throwable t) {
+        return -1;
+      }
+    }
+  }
+}
@@ -52,6 +52,9 @@ public abstract class StepTask<T> implements Callable<ExecutionResult<T>>,
    */
   protected boolean m_mustRunSingleThreaded;
 
+  /** Metrics of the source step (time spent in the task is charged to it) */
+  protected transient StepMetrics m_metrics;
+
   /**
    * The callback notifier delegate. Performs the actual notification back to
    * the step
@@ -102,6 +105,9 @@ public abstract class StepTask<T> implements Callable<ExecutionResult<T>>,
   public StepTask(Step source, StepTaskCallback<T> callback,
     boolean resourceIntensive) {
     m_log = new LogManager(source);
+    if (source != null && source.getStepManager() != null) {
+      m_metrics = source.getStepManager().getMetrics();
+    }
     m_callback = callback;
     m_resourceIntensive = resourceIntensive;
   }
@@ -227,10 +233,17 @@ public abstract class StepTask<T> implements Callable<ExecutionResult<T>>,
    */
   @Override
   public ExecutionResult<T> call() throws Exception {
+    if (m_metrics != null) {
+      StepMetrics.enter(m_metrics);
+    }
     try {
       process();
     } catch (Exception ex) {
       getExecutionResult().setError(ex);
+    } finally {
+      if (m_metrics != null) {
+        StepMetrics.exit();
+      }
     }
     notifyCallback();
 
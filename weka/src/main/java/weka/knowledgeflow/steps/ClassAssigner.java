@@ -43,7 +43,7 @@ import java.util.List;
   toolTipText = "Designate which column is to be considered the class column "
     + "in incoming data.",
   iconPath = KFGUIConsts.BASE_ICON_PATH + "ClassAssigner.gif")
-public class ClassAssigner extends BaseStep {
+public class ClassAssigner extends BaseStep implements InstanceBlockHandler {
 
   private static final long serialVersionUID = -4269063233834866140L;
 
@@ -66,7 +66,8 @@ import java.util.List;
   toolTipText = "Weka classifier wrapper", iconPath = "",
   resourceIntensive = true)
 public class Classifier extends WekaAlgorithmWrapper implements
-  PairedDataHelper.PairedProcessor<weka.classifiers.Classifier> {
+  PairedDataHelper.PairedProcessor<weka.classifiers.Classifier>,
+  InstanceBlockHandler, SetReplicaHelper.ReplicaProcessor {
 
   /** For serialization */
   private static final long serialVersionUID = 8326706942962123155L;
@@ -118,6 +119,15 @@ public class Classifier extends WekaAlgorithmWrapper implements
   /** True if we've been reset */
   protected boolean m_isReset;
 
+  /**
+   * Number of sets/folds to process concurrently in replicas of the classifier
+   * (0 = leave scheduling to the execution environment)
+   */
+  protected int m_numReplicas;
+
+  /** Runs sets/folds in replicas and outputs results in set order */
+  protected transient SetReplicaHelper m_replicaHelper;
+
   @Override
   public Class getWrappedAlgorithmClass() {
     return weka.classifiers.Classifier.class;
@@ -154,6 +164,10 @@ public class Classifier extends WekaAlgorithmWrapper implements
       m_trainedClassifier = null;
       m_trainedClassifierHeader = null;
       m_trainTestHelper = null;
+      if (m_replicaHelper != null) {
+        m_replicaHelper.shutdown();
+        m_replicaHelper = null;
+      }
       m_incrementalData = new Data(StepManager.CON_INCREMENTAL_CLASSIFIER);
       m_classifierTemplate =
         AbstractClassifier
@@ -192,6 +206,12 @@ public class Classifier extends WekaAlgorithmWrapper implements
             : null);
     }
 
+    if (m_numReplicas > 0
+      && getStepManager().numIncomingConnectionsOfType(
+        StepManager.CON_INSTANCE) == 0) {
+      m_replicaHelper = new SetReplicaHelper(this, m_numReplicas);
+    }
+
     m_isReset = true;
     m_classifierIsIncremental =
       m_classifierTemplate instanceof UpdateableClassifier;
@@ -300,6 +320,33 @@ public class Classifier extends WekaAlgorithmWrapper implements
     m_updateIncrementalClassifier = update;
   }
 
+  /**
+   * Get the number of sets/folds to process concurrently in replicas of the
+   * classifier
+   *
+   * @return the number of replicas (0 = leave scheduling to the execution
+   *         environment)
+   */
+  public int getNumReplicas() {
+    return m_numReplicas;
+  }
+
+  /**
+   * Set the number of sets/folds to process concurrently in replicas of the
+   * classifier. When greater than zero, the step trains on incoming sets in its
+   * own pool of this many threads and outputs the results in set order.
+   *
+   * @param numReplicas the number of replicas (0 = leave scheduling to the
+   *          execution environment)
+   */
+  @OptionMetadata(displayName = "Number of replicas",
+    description = "Number of sets/folds to train on concurrently (each with "
+      + "its own copy of the classifier). Results are output in set order. "
+      + "0 = leave scheduling to the execution environment")
+  public void setNumReplicas(int numReplicas) {
+    m_numReplicas = numReplicas;
+  }
+
   @Override
   public void processIncoming(Data data) throws WekaException {
     try {
@@ -374,6 +421,8 @@ public class Classifier extends WekaAlgorithmWrapper implements
 
       if (m_streaming) {
         processStreaming(data);
+      } else if (m_replicaHelper != null) {
+        m_replicaHelper.submit(data, this);
       } else if (m_trainTestHelper != null) {
         // train test pairs
         m_trainTestHelper.process(data);
@@ -386,6 +435,44 @@ public class Classifier extends WekaAlgorithmWrapper implements
     }
   }
 
+  /**
+   * Process a batch Data object in one of the replicas
+   *
+   * @param data the Data object to process
+   * @throws WekaException if a problem occurs
+   */
+  @Override
+  public void processReplica(Data data) throws WekaException {
+    if (m_trainTestHelper != null) {
+      m_trainTestHelper.process(data);
+    } else {
+      processOnlyTestSet(data);
+    }
+  }
+
+  /**
+   * Output a batch Data object, in set order if sets are being processed in
+   * replicas
+   *
+   * @param data the Data object to output
+   * @throws WekaException if a problem occurs
+   */
+  protected void outputBatchData(Data data) throws WekaException {
+    if (m_replicaHelper != null) {
+      m_replicaHelper.outputData(data);
+    } else {
+      getStepManager().outputData(data);
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    if (m_replicaHelper != null) {
+      m_replicaHelper.shutdown();
+    }
+  }
+
   /**
    * Process a training split (primary data handled by the PairedDataHelper)
    *
@@ -462,7 +549,7 @@ public class Classifier extends WekaAlgorithmWrapper implements
             StepManager.CON_AUX_DATA_MAX_SET_NUM, maxSetNum);
           batchClassifier.setPayloadElement(StepManager.CON_AUX_DATA_LABEL,
             getName());
-          getStepManager().outputData(batchClassifier);
+          outputBatchData(batchClassifier);
         }
       }
       return classifier;
@@ -510,7 +597,7 @@ public class Classifier extends WekaAlgorithmWrapper implements
       maxSetNum);
     batchClassifier
       .setPayloadElement(StepManager.CON_AUX_DATA_LABEL, getName());
-    getStepManager().outputData(batchClassifier);
+    outputBatchData(batchClassifier);
   }
 
   /**
@@ -536,7 +623,7 @@ public class Classifier extends WekaAlgorithmWrapper implements
         data.getPayloadElement(StepManager.CON_AUX_DATA_MAX_SET_NUM, 1));
       batchClassifier.setPayloadElement(StepManager.CON_AUX_DATA_LABEL,
         getName());
-      getStepManager().outputData(batchClassifier);
+      outputBatchData(batchClassifier);
       if (isStopRequested()) {
         getStepManager().interrupted();
       } else {
@@ -586,6 +673,26 @@ public class Classifier extends WekaAlgorithmWrapper implements
       return;
     }
 
+    if (data.isInstanceBlock()) {
+      // test on the block with the current model and then train on it. Note
+      // that all the instances in the block are tested with the model as it
+      // was at the start of the block
+      List<Instance> block = data.getInstanceBlock();
+      Data testBlock = new Data(StepManager.CON_INCREMENTAL_CLASSIFIER);
+      testBlock.setPayloadElement(StepManager.CON_INCREMENTAL_CLASSIFIER,
+        m_trainedClassifier);
+      testBlock.setInstanceBlock(StepManager.CON_AUX_DATA_TEST_INSTANCE, block);
+      getStepManager().outputData(testBlock.getConnectionName(), testBlock);
+
+      for (Instance i : block) {
+        if (isStopRequested()) {
+          return;
+        }
+        trainStreaming(i);
+      }
+      return;
+    }
+
     // test on the instance
     m_incrementalData.setPayloadElement(StepManager.CON_AUX_DATA_TEST_INSTANCE,
       inst);
@@ -594,7 +701,17 @@ public class Classifier extends WekaAlgorithmWrapper implements
     getStepManager().outputData(m_incrementalData.getConnectionName(),
       m_incrementalData);
 
-    // train on the instance?
+    trainStreaming(inst);
+  }
+
+  /**
+   * Train the incremental classifier on an instance (if the classifier is
+   * incremental and is to be updated)
+   *
+   * @param inst the instance to train on
+   * @throws WekaException if a problem occurs
+   */
+  protected void trainStreaming(Instance inst) throws WekaException {
     getStepManager().throughputUpdateStart();
     if (m_classifierIsIncremental && m_updateIncrementalClassifier) {
       if (!inst.classIsMissing()) {
@@ -645,7 +762,7 @@ public class Classifier extends WekaAlgorithmWrapper implements
       textData.setPayloadElement(StepManager.CON_AUX_DATA_SET_NUM, setNum);
     }
 
-    getStepManager().outputData(textData);
+    outputBatchData(textData);
   }
 
   /**
@@ -0,0 +1,48 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ConcurrentStreamHandler.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow.steps;
+
+import weka.core.WekaException;
+
+/**
+ * Interface for steps that are able to process the rows of an instance stream
+ * concurrently, i.e. have processIncoming() called from several threads at the
+ * same time. Execution environments that run replicas of a step (such as the
+ * PipelinedExecutionEnvironment) will always deliver the first row and the end
+ * of stream marker on their own, so a step can initialize itself from the
+ * first row and tidy up at the end as usual.
+ *
+ * @version $Revision: $
+ */
+public interface ConcurrentStreamHandler {
+
+  /**
+   * Called once the first row of an instance stream has been processed. Steps
+   * that can process the remaining rows of the stream concurrently should
+   * prepare for this and return true.
+   *
+   * @return true if the remaining rows of the stream can be processed
+   *         concurrently
+   * @throws WekaException if a problem occurs
+   */
+  boolean enableConcurrentStreaming() throws WekaException;
+}
@@ -24,6 +24,7 @@ package weka.knowledgeflow.steps;
 import weka.core.EnvironmentHandler;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.OptionMetadata;
 import weka.core.WekaException;
 import weka.filters.StreamableFilter;
 import weka.gui.ProgrammaticProperty;
@@ -35,6 +36,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -46,7 +49,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 @KFStep(name = "Filter", category = "Filters",
   toolTipText = "Weka filter wrapper", iconPath = "")
-public class Filter extends WekaAlgorithmWrapper {
+public class Filter extends WekaAlgorithmWrapper implements
+  InstanceBlockHandler, ConcurrentStreamHandler,
+  SetReplicaHelper.ReplicaProcessor {
   private static final long serialVersionUID = 6857031910153224479L;
 
   /** Template filter */
@@ -75,9 +80,37 @@ public class Filter extends WekaAlgorithmWrapper {
   /** Data object to reuse when processing incrementally */
   protected Data m_incrementalData;
 
+  /**
+   * Collects filtered instances while processing a block of instances (null
+   * when not processing a block)
+   */
+  protected List<Instance> m_outputBlock;
+
+  /** True if rows are being processed concurrently by several threads */
+  protected volatile boolean m_concurrentStreaming;
+
+  /** Copies of the streaming filter for use when processing concurrently */
+  protected transient Queue<weka.filters.Filter> m_streamingFilterCopies;
+
+  /**
+   * The header of the rows output by the streaming filter. Rows output by the
+   * copies of the filter are given this header too, so that downstream steps
+   * see a single header for the whole stream.
+   */
+  protected transient Instances m_streamingOutputHeader;
+
   /** Keeps track of the number of train/test batches processed */
   protected AtomicInteger m_setCount;
 
+  /**
+   * Number of sets/folds to process concurrently in replicas of the filter (0 =
+   * leave scheduling to the execution environment)
+   */
+  protected int m_numReplicas;
+
+  /** Runs sets/folds in replicas and outputs results in set order */
+  protected transient SetReplicaHelper m_replicaHelper;
+
   /**
    * Get the class of the wrapped algorithm
    *
@@ -120,6 +153,33 @@ public class Filter extends WekaAlgorithmWrapper {
     return (weka.filters.Filter) getWrappedAlgorithm();
   }
 
+  /**
+   * Get the number of sets/folds to process concurrently in replicas of the
+   * filter
+   *
+   * @return the number of replicas (0 = leave scheduling to the execution
+   *         environment)
+   */
+  public int getNumReplicas() {
+    return m_numReplicas;
+  }
+
+  /**
+   * Set the number of sets/folds to process concurrently in replicas of the
+   * filter. When greater than zero, the step filters incoming batches in its
+   * own pool of this many threads and outputs the results in set order.
+   *
+   * @param numReplicas the number of replicas (0 = leave scheduling to the
+   *          execution environment)
+   */
+  @OptionMetadata(displayName = "Number of replicas",
+    description = "Number of sets/folds to filter concurrently (each with "
+      + "its own copy of the filter). Results are output in set order. "
+      + "0 = leave scheduling to the execution environment")
+  public void setNumReplicas(int numReplicas) {
+    m_numReplicas = numReplicas;
+  }
+
   /**
    * Get a list of incoming connection types that this step can accept. Ideally
    * (and if appropriate), this should take into account the state of the step
@@ -232,7 +292,28 @@ public class Filter extends WekaAlgorithmWrapper {
     m_waitingTestData.clear();
     m_streaming = false;
     m_stringAttsPresent = false;
+    m_concurrentStreaming = false;
+    m_streamingFilterCopies = null;
+    m_streamingOutputHeader = null;
     m_isReset = true;
+
+    if (m_replicaHelper != null) {
+      m_replicaHelper.shutdown();
+      m_replicaHelper = null;
+    }
+    if (m_numReplicas > 0
+      && getStepManager().numIncomingConnectionsOfType(
+        StepManager.CON_INSTANCE) == 0) {
+      m_replicaHelper = new SetReplicaHelper(this, m_numReplicas);
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    if (m_replicaHelper != null) {
+      m_replicaHelper.shutdown();
+    }
   }
 
   /**
@@ -268,20 +349,51 @@ public class Filter extends WekaAlgorithmWrapper {
       }
     }
 
-    // we are NOT necessarily guaranteed to get tran/test pairs in the order
-    // of train followed by test (especially if they come from different
-    // sources). Output from trainTestSplitMaker and XValMaker are guaranteed
-    // to be in order though
     if (m_streaming) {
       if (getStepManager().isStreamFinished(data)) {
+        m_concurrentStreaming = false;
         checkPendingStreaming();
 
         m_incrementalData.clearPayload();
         getStepManager().throughputFinished(m_incrementalData);
+      } else if (m_concurrentStreaming) {
+        processStreamingConcurrent(data);
+      } else if (data.isInstanceBlock()) {
+        processStreamingBlock(data);
       } else {
         processStreaming(data);
       }
-    } else if (data.getConnectionName().equals(StepManager.CON_TRAININGSET)
+      if (isStopRequested()) {
+        getStepManager().interrupted();
+      }
+      return;
+    }
+
+    if (m_replicaHelper != null) {
+      m_replicaHelper.submit(data, this);
+    } else {
+      processReplica(data);
+    }
+  }
+
+  /**
+   * Process a batch Data object. Called directly from processIncoming(), or
+   * from a replica thread if sets are being processed in replicas.
+   *
+   * @param data the Data object to process
+   * @throws WekaException if a problem occurs
+   */
+  @Override
+  public void processReplica(Data data) throws WekaException {
+    Integer setNum = data.getPayloadElement(StepManager.CON_AUX_DATA_SET_NUM);
+    Integer maxSetNum =
+      data.getPayloadElement(StepManager.CON_AUX_DATA_MAX_SET_NUM);
+
+    // we are NOT necessarily guaranteed to get tran/test pairs in the order
+    // of train followed by test (especially if they come from different
+    // sources). Output from trainTestSplitMaker and XValMaker are guaranteed
+    // to be in order though
+    if (data.getConnectionName().equals(StepManager.CON_TRAININGSET)
       || data.getConnectionName().equals(StepManager.CON_DATASET)) {
       Instances d = data.getPrimaryPayload();
       processFirstBatch(d, data.getConnectionName(), setNum, maxSetNum);
@@ -301,7 +413,7 @@ public class Filter extends WekaAlgorithmWrapper {
 
     if (isStopRequested()) {
       getStepManager().interrupted();
-    } else if (!m_streaming) {
+    } else {
       if (m_setCount.get() == 0) {
         getStepManager().finished();
 
@@ -338,13 +450,17 @@ public class Filter extends WekaAlgorithmWrapper {
         getStepManager().logBasic(message);
         processBatch(batch, conType, filterToUse, setNum, maxSetNum);
 
-        if (setNum != null) {
-          m_filterMap.put(setNum, filterToUse);
-        } else {
-          m_filterMap.put(-1, filterToUse);
+        // test sets may be arriving concurrently (processSubsequentBatch()
+        // holds the same lock)
+        Instances waitingTest;
+        synchronized (this) {
+          if (setNum != null) {
+            m_filterMap.put(setNum, filterToUse);
+          } else {
+            m_filterMap.put(-1, filterToUse);
+          }
+          waitingTest = m_waitingTestData.remove(setNum);
         }
-
-        Instances waitingTest = m_waitingTestData.get(setNum);
         if (waitingTest != null) {
           processSubsequentBatch(waitingTest, StepManager.CON_TESTSET, setNum,
             maxSetNum);
@@ -414,7 +530,11 @@ public class Filter extends WekaAlgorithmWrapper {
           maxSetNum);
         output.setPayloadElement(StepManager.CON_AUX_DATA_TEXT_TITLE, title);
       }
-      getStepManager().outputData(output);
+      if (m_replicaHelper != null) {
+        m_replicaHelper.outputData(output);
+      } else {
+        getStepManager().outputData(output);
+      }
     } catch (Exception ex) {
       throw new WekaException(ex);
     }
@@ -432,6 +552,7 @@ public class Filter extends WekaAlgorithmWrapper {
     try {
       if (m_streamingFilter.input(toFilter)) {
         Instance filteredI = m_streamingFilter.output();
+        m_streamingOutputHeader = filteredI.dataset();
         if (m_stringAttsPresent) {
           for (int i = 0; i < filteredI.numAttributes(); i++) {
             if (filteredI.dataset().attribute(i).isString()
@@ -442,10 +563,14 @@ public class Filter extends WekaAlgorithmWrapper {
             }
           }
         }
-        m_incrementalData
-          .setPayloadElement(StepManager.CON_INSTANCE, filteredI);
-        if (!isStopRequested()) {
-          getStepManager().outputData(m_incrementalData);
+        if (m_outputBlock != null) {
+          m_outputBlock.add(filteredI);
+        } else {
+          m_incrementalData.setPayloadElement(StepManager.CON_INSTANCE,
+            filteredI);
+          if (!isStopRequested()) {
+            getStepManager().outputData(m_incrementalData);
+          }
         }
       }
     } catch (Exception ex) {
@@ -454,6 +579,125 @@ public class Filter extends WekaAlgorithmWrapper {
     getStepManager().throughputUpdateEnd();
   }
 
+  /**
+   * Process a block of instances. Filtered instances are passed on as a block,
+   * unless the output contains string attributes (in which case they are
+   * output one at a time).
+   *
+   * @param data the {@code Data} object containing the block of instances
+   * @throws WekaException if a problem occurs
+   */
+  protected void processStreamingBlock(Data data) throws WekaException {
+    List<Instance> filtered = null;
+    if (!m_stringAttsPresent) {
+      m_outputBlock = new ArrayList<Instance>(data.getInstanceBlock().size());
+    }
+    try {
+      for (Data row : data.instanceBlockRows()) {
+        if (isStopRequested()) {
+          break;
+        }
+        processStreaming(row);
+      }
+    } finally {
+      filtered = m_outputBlock;
+      m_outputBlock = null;
+    }
+
+    if (filtered != null && filtered.size() > 0 && !isStopRequested()) {
+      Data blockData = new Data(StepManager.CON_INSTANCE);
+      blockData.setInstanceBlock(StepManager.CON_INSTANCE, filtered);
+      getStepManager().outputData(blockData);
+    }
+  }
+
+  /**
+   * Enable concurrent processing of the rows of the current stream. This is
+   * possible for streamable filters (which output each instance as soon as it
+   * has been input), as long as the output does not contain string attributes.
+   * Note that filters that keep state across instances (e.g. AddID) will not
+   * produce the same output as they do for sequential processing. Concurrent
+   * processing is only enabled once the header of the output rows is known
+   * (i.e. the first row has not been consumed by the filter), as all rows are
+   * output with that header.
+   *
+   * @return true if concurrent processing has been enabled
+   * @throws WekaException if a problem occurs
+   */
+  @Override
+  public boolean enableConcurrentStreaming() throws WekaException {
+    if (!m_streaming || m_stringAttsPresent
+      || !(m_streamingFilter instanceof StreamableFilter)
+      || m_streamingOutputHeader == null) {
+      return false;
+    }
+
+    m_streamingFilterCopies = new ConcurrentLinkedQueue<weka.filters.Filter>();
+    try {
+      m_streamingFilterCopies.add(weka.filters.Filter
+        .makeCopy(m_streamingFilter));
+    } catch (Exception ex) {
+      throw new WekaException(ex);
+    }
+    m_concurrentStreaming = true;
+
+    return true;
+  }
+
+  /**
+   * Process an instance or block of instances when rows are being processed
+   * concurrently. Each thread uses its own copy of the streaming filter, and
+   * the filtered rows are given the header of the rows of the streaming
+   * filter.
+   *
+   * @param data the {@code Data} object containing the instance(s)
+   * @throws WekaException if a problem occurs
+   */
+  protected void processStreamingConcurrent(Data data) throws WekaException {
+    weka.filters.Filter filter = m_streamingFilterCopies.poll();
+    try {
+      if (filter == null) {
+        filter = weka.filters.Filter.makeCopy(m_streamingFilter);
+      }
+      List<Instance> filtered = new ArrayList<Instance>();
+      for (Data row : data.instanceBlockRows()) {
+        if (isStopRequested()) {
+          return;
+        }
+        Instance toFilter = row.getPrimaryPayload();
+        synchronized (m_streamingFilterCopies) {
+          getStepManager().throughputUpdateStart();
+        }
+        if (filter.input(toFilter)) {
+          Instance filteredI = filter.output();
+          filteredI.setDataset(m_streamingOutputHeader);
+          filtered.add(filteredI);
+        }
+        synchronized (m_streamingFilterCopies) {
+          getStepManager().throughputUpdateEnd();
+        }
+      }
+
+      if (filtered.size() > 0 && !isStopRequested()) {
+        Data output = new Data(StepManager.CON_INSTANCE);
+        if (data.isInstanceBlock()) {
+          output.setInstanceBlock(StepManager.CON_INSTANCE, filtered);
+        } else {
+          output.setPayloadElement(StepManager.CON_INSTANCE, filtered.get(0));
+        }
+        getStepManager().outputData(output);
+      }
+    } catch (WekaException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new WekaException(ex);
+    } finally {
+      if (filter != null) {
+        m_streamingFilterCopies.add(filter);
+      }
+    }
+  }
+
   /**
    * Check to see if there are any pending instances to output from the filter
    *
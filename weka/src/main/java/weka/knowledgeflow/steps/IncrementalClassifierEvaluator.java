@@ -45,7 +45,8 @@ import java.util.List;
   category = "Evaluation",
   toolTipText = "Evaluate the performance of incrementally training classifiers",
   iconPath = KFGUIConsts.BASE_ICON_PATH + "IncrementalClassifierEvaluator.gif")
-public class IncrementalClassifierEvaluator extends BaseStep {
+public class IncrementalClassifierEvaluator extends BaseStep implements
+  InstanceBlockHandler {
 
   private static final long serialVersionUID = -5951569492213633100L;
 
@@ -58,6 +59,12 @@ public class IncrementalClassifierEvaluator extends BaseStep {
   /** Re-usable chart data */
   protected Data m_chartData = new Data(StepManager.CON_CHART);
 
+  /** True while the rows of a block of instances are being evaluated */
+  protected boolean m_processingBlock;
+
+  /** True if there is a chart update waiting to be output for a block */
+  protected boolean m_chartPending;
+
   protected double m_min = Double.MAX_VALUE;
   protected double m_max = Double.MIN_VALUE;
 
@@ -206,6 +213,11 @@ public class IncrementalClassifierEvaluator extends BaseStep {
       return;
     }
 
+    if (data.isInstanceBlock()) {
+      processBlock(data);
+      return;
+    }
+
     weka.classifiers.Classifier classifier =
       (weka.classifiers.Classifier) data
         .getPayloadElement(StepManager.CON_INCREMENTAL_CLASSIFIER);
@@ -339,14 +351,45 @@ public class IncrementalClassifierEvaluator extends BaseStep {
           return;
         }
         getStepManager().throughputUpdateEnd();
-        getStepManager().outputData(m_chartData.getConnectionName(),
-          m_chartData);
+        if (m_processingBlock) {
+          m_chartPending = true;
+        } else {
+          getStepManager().outputData(m_chartData.getConnectionName(),
+            m_chartData);
+        }
       }
     } catch (Exception ex) {
       throw new WekaException(ex);
     }
   }
 
+  /**
+   * Evaluate a block of test instances. Only one chart update (reflecting the
+   * state of the evaluation at the end of the block) is output per block.
+   *
+   * @param data the Data object containing the block to process
+   * @throws WekaException if a problem occurs
+   */
+  protected void processBlock(Data data) throws WekaException {
+    m_processingBlock = true;
+    m_chartPending = false;
+    try {
+      for (Data row : data.instanceBlockRows()) {
+        if (isStopRequested()) {
+          break;
+        }
+        processIncoming(row);
+      }
+    } finally {
+      m_processingBlock = false;
+    }
+
+    if (m_chartPending && !isStopRequested()) {
+      getStepManager().outputData(m_chartData.getConnectionName(),
+        m_chartData);
+    }
+  }
+
   /**
    * Set how often progress is reported to the status bar.
    *
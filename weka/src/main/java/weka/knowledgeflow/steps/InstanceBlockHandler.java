@@ -14,27 +14,20 @@
  */
 
 /*
- *    WeightMass.java
- *    Copyright (C) 2013 University of Waikato, Hamilton, New Zealand
+ *    InstanceBlockHandler.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
  *
  */
 
-package weka.classifiers.trees.ht;
-
-import java.io.Serializable;
+package weka.knowledgeflow.steps;
 
 /**
- * Simple container for a weight
- * 
- * @author Mark Hall (mhall{[at]}pentaho{[dot]}com)
- * @version $Revision$
+ * Marker interface for steps that can process blocks of streaming instances
+ * (see Data.isInstanceBlock()) directly in their processIncoming() method.
+ * Blocks sent to steps that do not implement this interface are split into
+ * individual rows by the StepManager.
+ *
+ * @version $Revision: $
  */
-public class WeightMass implements Serializable {
-
-  /**
-   * For serialization
-   */
-  private static final long serialVersionUID = 6794839107050779425L;
-
-  public double m_weight;
+public interface InstanceBlockHandler {
 }
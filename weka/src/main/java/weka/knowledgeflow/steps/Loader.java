@@ -31,7 +31,9 @@ import weka.core.converters.FileSourcedConverter;
 import weka.gui.ProgrammaticProperty;
 import weka.gui.beans.StreamThroughput;
 import weka.gui.knowledgeflow.StepVisual;
+import weka.knowledgeflow.BaseExecutionEnvironment;
 import weka.knowledgeflow.Data;
+import weka.knowledgeflow.KFDefaults;
 import weka.knowledgeflow.StepManager;
 import weka.knowledgeflow.StepManagerImpl;
 
@@ -68,6 +70,12 @@ public class Loader extends WekaAlgorithmWrapper implements Serializable {
   /** For measuring the overall flow throughput */
   protected StreamThroughput m_flowThroughput;
 
+  /** Number of instances to send downstream in each block */
+  protected int m_blockSize = 1;
+
+  /** Maximum time (ms) that a partially filled block is held for */
+  protected long m_blockMaxLatency;
+
   /**
    * Get the class of the wrapped algorithm
    *
@@ -140,6 +148,15 @@ public class Loader extends WekaAlgorithmWrapper implements Serializable {
 
     m_instanceGeneration = numInstanceOutputs > 0;
     m_instanceData = new Data(StepManager.CON_INSTANCE);
+
+    m_blockSize =
+      getStepManager().getSettings().getSetting(KFDefaults.APP_ID,
+        BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.INSTANCE_BLOCK_SIZE_KEY,
+        BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.INSTANCE_BLOCK_SIZE);
+    m_blockMaxLatency =
+      getStepManager().getSettings().getSetting(KFDefaults.APP_ID,
+        BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.INSTANCE_BLOCK_MAX_LATENCY_KEY,
+        BaseExecutionEnvironment.BaseExecutionEnvironmentDefaults.INSTANCE_BLOCK_MAX_LATENCY);
   }
 
   /**
@@ -210,6 +227,13 @@ public class Loader extends WekaAlgorithmWrapper implements Serializable {
         return;
       }
 
+      // string values are held in the header, so instances can only be
+      // passed on in blocks if there are no string attributes
+      List<Instance> block =
+        m_blockSize > 1 && !stringAttsPresent ? new ArrayList<Instance>(
+          m_blockSize) : null;
+      long blockStart = 0;
+
       try {
         nextInstance = theLoader.getNextInstance(structure);
       } catch (Exception ex) {
@@ -229,8 +253,15 @@ public class Loader extends WekaAlgorithmWrapper implements Serializable {
           }
         }
 
-        m_instanceData
-          .setPayloadElement(StepManager.CON_INSTANCE, nextInstance);
+        if (block != null) {
+          if (block.size() == 0) {
+            blockStart = System.currentTimeMillis();
+          }
+          block.add(nextInstance);
+        } else {
+          m_instanceData.setPayloadElement(StepManager.CON_INSTANCE,
+            nextInstance);
+        }
 
         try {
           nextInstance = theLoader.getNextInstance(currentStructure);
@@ -239,7 +270,17 @@ public class Loader extends WekaAlgorithmWrapper implements Serializable {
           throw new WekaException(ex);
         }
         getStepManager().throughputUpdateEnd(); // finished read operation
-        getStepManager().outputData(StepManager.CON_INSTANCE, m_instanceData);
+        if (block == null) {
+          getStepManager().outputData(StepManager.CON_INSTANCE,
+            m_instanceData);
+        } else if (block.size() >= m_blockSize
+          || nextInstance == null
+          || System.currentTimeMillis() - blockStart >= m_blockMaxLatency) {
+          Data blockData = new Data(StepManager.CON_INSTANCE);
+          blockData.setInstanceBlock(StepManager.CON_INSTANCE, block);
+          getStepManager().outputData(StepManager.CON_INSTANCE, blockData);
+          block = new ArrayList<Instance>(m_blockSize);
+        }
 
         m_flowThroughput.updateEnd(((StepManagerImpl) getStepManager())
           .getLog());
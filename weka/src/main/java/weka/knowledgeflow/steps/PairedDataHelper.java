@@ -203,8 +203,10 @@ public class PairedDataHelper<P> implements java.io.Serializable {
       data.getPayloadElement(StepManager.CON_AUX_DATA_SET_NUM, 1);
     Integer maxSetNum =
       data.getPayloadElement(StepManager.CON_AUX_DATA_MAX_SET_NUM, 1);
-    if (m_setCount == null) {
-      m_setCount = new AtomicInteger(maxSetNum);
+    synchronized (this) {
+      if (m_setCount == null) {
+        m_setCount = new AtomicInteger(maxSetNum);
+      }
     }
 
     if (setNum == 1) {
@@ -213,17 +215,23 @@ public class PairedDataHelper<P> implements java.io.Serializable {
         "Processing set/fold " + setNum + " out of " + maxSetNum);
     }
 
+    P result;
     if (!m_ownerStep.getStepManager().isStopRequested()) {
-      P result = (P) m_processor.processPrimary(setNum, maxSetNum, data, this);
-      if (result != null) {
-        m_primaryResultMap.put(setNum, result);
-      }
+      result = (P) m_processor.processPrimary(setNum, maxSetNum, data, this);
     } else {
       m_ownerStep.getStepManager().interrupted();
       return;
     }
 
-    Data waitingSecondary = m_secondaryDataMap.get(setNum);
+    // the matching secondary may be arriving concurrently - processSecondary()
+    // holds the same lock while it checks for the primary result
+    Data waitingSecondary;
+    synchronized (this) {
+      if (result != null) {
+        m_primaryResultMap.put(setNum, result);
+      }
+      waitingSecondary = m_secondaryDataMap.remove(setNum);
+    }
     if (waitingSecondary != null) {
       processSecondary(waitingSecondary);
     } else if (m_secondaryConType == null) {
@@ -50,7 +50,8 @@ import java.util.List;
   category = "Evaluation",
   toolTipText = "Append predictions from classifiers or clusterers to incoming data ",
   iconPath = KFGUIConsts.BASE_ICON_PATH + "PredictionAppender.gif")
-public class PredictionAppender extends BaseStep {
+public class PredictionAppender extends BaseStep implements
+  InstanceBlockHandler {
 
   private static final long serialVersionUID = 3558618759400903936L;
 
@@ -66,6 +67,12 @@ public class PredictionAppender extends BaseStep {
   /** Keep track of indexes of string attributes in the streaming case */
   protected List<Integer> m_stringAttIndexes;
 
+  /**
+   * Collects output instances while processing a block of instances (null
+   * when not processing a block)
+   */
+  protected List<Instance> m_outputBlock;
+
   /**
    * Initialize the step
    *
@@ -135,7 +142,11 @@ public class PredictionAppender extends BaseStep {
       processBatchClassifierCase(data, trainingData, testData);
     } else if (getStepManager().numIncomingConnectionsOfType(
       StepManager.CON_INCREMENTAL_CLASSIFIER) > 0) {
-      processIncrementalClassifier(data, streamInstance);
+      if (data.isInstanceBlock()) {
+        processIncrementalClassifierBlock(data);
+      } else {
+        processIncrementalClassifier(data, streamInstance);
+      }
     } else if (getStepManager().numIncomingConnectionsOfType(
       StepManagerImpl.CON_BATCH_CLUSTERER) > 0) {
       processBatchClustererCase(data, trainingData, testData);
@@ -229,13 +240,49 @@ public class PredictionAppender extends BaseStep {
       }
     }
 
-    m_instanceData.setPayloadElement(StepManagerImpl.CON_INSTANCE, newInst);
     if (isStopRequested()) {
       return;
     }
     getStepManager().throughputUpdateEnd();
-    getStepManager().outputData(m_instanceData.getConnectionName(),
-      m_instanceData);
+    if (m_outputBlock != null && m_stringAttIndexes.size() == 0) {
+      m_outputBlock.add(newInst);
+    } else {
+      m_instanceData.setPayloadElement(StepManagerImpl.CON_INSTANCE, newInst);
+      getStepManager().outputData(m_instanceData.getConnectionName(),
+        m_instanceData);
+    }
+  }
+
+  /**
+   * Process a block of test instances from an incremental classifier. The
+   * instances with predictions appended are passed on as a block, unless
+   * there are string attributes (in which case they are output one at a time).
+   *
+   * @param data the Data object containing the block to process
+   * @throws WekaException if a problem occurs
+   */
+  protected void processIncrementalClassifierBlock(Data data)
+    throws WekaException {
+    List<Instance> output = null;
+    m_outputBlock = new ArrayList<Instance>(data.getInstanceBlock().size());
+    try {
+      for (Data row : data.instanceBlockRows()) {
+        if (isStopRequested()) {
+          break;
+        }
+        processIncrementalClassifier(row, (Instance) row
+          .getPayloadElement(StepManager.CON_AUX_DATA_TEST_INSTANCE));
+      }
+    } finally {
+      output = m_outputBlock;
+      m_outputBlock = null;
+    }
+
+    if (output.size() > 0 && !isStopRequested()) {
+      Data blockData = new Data(StepManager.CON_INSTANCE);
+      blockData.setInstanceBlock(StepManager.CON_INSTANCE, output);
+      getStepManager().outputData(blockData.getConnectionName(), blockData);
+    }
   }
 
   /**
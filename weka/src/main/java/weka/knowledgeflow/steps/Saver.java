@@ -48,7 +48,8 @@ import java.util.List;
  */
 @KFStep(name = "Saver", category = "DataSinks",
   toolTipText = "Weka saver wrapper", iconPath = "")
-public class Saver extends WekaAlgorithmWrapper implements Serializable {
+public class Saver extends WekaAlgorithmWrapper implements Serializable,
+  InstanceBlockHandler {
 
   private static final long serialVersionUID = 6831606284211403465L;
 
@@ -305,14 +306,21 @@ public class Saver extends WekaAlgorithmWrapper implements Serializable {
         return;
       }
 
-      if (!isStopRequested()) {
+      if (data.isInstanceBlock() && !isStopRequested()) {
+        for (Instance inst : data.getInstanceBlock()) {
+          getStepManager().throughputUpdateStart();
+          m_saver.writeIncremental(inst);
+          getStepManager().throughputUpdateEnd();
+        }
+      } else if (!isStopRequested()) {
         getStepManager().throughputUpdateStart();
         m_saver.writeIncremental(toSave);
+        getStepManager().throughputUpdateEnd();
       } else {
         // make sure that saver finishes and closes file
         m_saver.writeIncremental(null);
+        getStepManager().throughputUpdateEnd();
       }
-      getStepManager().throughputUpdateEnd();
     } catch (Exception ex) {
       throw new WekaException(ex);
     }
@@ -0,0 +1,208 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    SetReplicaHelper.java
+ *    Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.knowledgeflow.steps;
+
+import weka.core.WekaException;
+import weka.knowledgeflow.Data;
+import weka.knowledgeflow.StepManager;
+import weka.knowledgeflow.StepMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A helper class that batch Step implementations can use to process the
+ * sets/folds of a batch (e.g. those produced by the CrossValidationFoldMaker)
+ * in parallel replicas of the step's scheme. Work for each incoming Data object
+ * is handed to a pool of replica threads owned by the step, so that the number
+ * of sets processed concurrently is controlled by the step rather than by the
+ * execution environment's shared thread pools.
+ * </p>
+ *
+ * <p>
+ * Because replicas finish in an arbitrary order, output should be routed
+ * through {@code outputData()}, which releases Data objects carrying a set
+ * number in set order (separately for each connection type). Data without a
+ * set number is output immediately.
+ * </p>
+ *
+ * @version $Revision: $
+ */
+public class SetReplicaHelper {
+
+  /** Idle replica threads are discarded after this many seconds */
+  protected static final long IDLE_SECONDS = 10;
+
+  /** The step that owns this helper */
+  protected Step m_ownerStep;
+
+  /** The pool of replica threads */
+  protected ThreadPoolExecutor m_replicas;
+
+  /** The next set number to be output, keyed by connection type */
+  protected Map<String, Integer> m_nextSetNum = new HashMap<String, Integer>();
+
+  /**
+   * Data waiting for its preceding sets to be output, keyed by connection type
+   * and set number
+   */
+  protected Map<String, TreeMap<Integer, Data>> m_waiting =
+    new HashMap<String, TreeMap<Integer, Data>>();
+
+  /**
+   * Constructor
+   *
+   * @param owner the step that owns this helper
+   * @param numReplicas the number of sets to process concurrently
+   */
+  public SetReplicaHelper(Step owner, int numReplicas) {
+    m_ownerStep = owner;
+    final String name = owner.getName();
+    final AtomicInteger count = new AtomicInteger();
+    m_replicas =
+      new ThreadPoolExecutor(numReplicas, numReplicas, IDLE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t =
+              new Thread(r, name + "-replica-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    m_replicas.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Get the number of replicas
+   *
+   * @return the number of sets that can be processed concurrently
+   */
+  public int getNumReplicas() {
+    return m_replicas.getMaximumPoolSize();
+  }
+
+  /**
+   * Process a Data object in one of the replicas. The processor's
+   * processReplica() method is called with the data from a replica thread.
+   * Problems are logged and cause the owner step to be interrupted.
+   *
+   * @param data the data to process
+   * @param processor the processor (typically the owner step) to call
+   */
+  public void submit(final Data data, final ReplicaProcessor processor) {
+    final StepManager manager = m_ownerStep.getStepManager();
+    m_replicas.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (manager.isStopRequested()) {
+          manager.interrupted();
+          return;
+        }
+        StepMetrics.enter(manager.getMetrics());
+        try {
+          processor.processReplica(data);
+        } catch (Throwable ex) {
+          manager.interrupted();
+          manager.logError(ex.getMessage(), ex);
+        } finally {
+          StepMetrics.exit();
+        }
+      }
+    });
+  }
+
+  /**
+   * Output data from the owner step. Data carrying a set number is held back
+   * until all the preceding sets for the same connection type have been
+   * output.
+   *
+   * @param data the data to output
+   * @throws WekaException if a problem occurs
+   */
+  public synchronized void outputData(Data data) throws WekaException {
+    Integer setNum = data.getPayloadElement(StepManager.CON_AUX_DATA_SET_NUM);
+    if (setNum == null) {
+      m_ownerStep.getStepManager().outputData(data);
+      return;
+    }
+
+    String conType = data.getConnectionName();
+    Integer next = m_nextSetNum.get(conType);
+    if (next == null) {
+      next = 1;
+    }
+    TreeMap<Integer, Data> waiting = m_waiting.get(conType);
+    if (waiting == null) {
+      waiting = new TreeMap<Integer, Data>();
+      m_waiting.put(conType, waiting);
+    }
+    waiting.put(setNum, data);
+
+    while (waiting.size() > 0 && waiting.firstKey() <= next) {
+      Data toOutput = waiting.remove(waiting.firstKey());
+      next++;
+      Integer maxSetNum =
+        toOutput.getPayloadElement(StepManager.CON_AUX_DATA_MAX_SET_NUM);
+      if (maxSetNum != null && next > maxSetNum) {
+        // end of the batch - the next one starts from set 1 again
+        next = 1;
+      }
+      if (!m_ownerStep.getStepManager().isStopRequested()) {
+        m_ownerStep.getStepManager().outputData(toOutput);
+      }
+    }
+    m_nextSetNum.put(conType, next);
+  }
+
+  /**
+   * Discard any data waiting to be output and stop the replica threads once
+   * they have finished their current work
+   */
+  public synchronized void shutdown() {
+    m_waiting.clear();
+    m_nextSetNum.clear();
+    m_replicas.shutdown();
+  }
+
+  /**
+   * Interface for steps that process Data in replicas
+   */
+  public static interface ReplicaProcessor {
+
+    /**
+     * Process a Data object in a replica thread
+     *
+     * @param data the data to process
+     * @throws WekaException if a problem occurs
+     */
+    void processReplica(Data data) throws WekaException;
+  }
+}
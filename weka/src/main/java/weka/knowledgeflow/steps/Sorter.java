@@ -23,11 +23,12 @@ package weka.knowledgeflow.steps;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,10 +39,12 @@ import java.util.List;
 import java.util.Map;
 
 import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Environment;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionMetadata;
+import weka.core.SparseInstance;
 import weka.core.WekaException;
 import weka.gui.FilePropertyMetadata;
 import weka.gui.ProgrammaticProperty;
@@ -84,6 +87,18 @@ public class Sorter extends BaseStep {
   /** Size of the in-memory buffer after resolving any environment vars */
   protected int m_bufferSizeI = 10000;
 
+  /**
+   * Maximum (estimated) memory to use for the in-memory buffer in MB (empty or
+   * 0 = no limit other than the buffer size)
+   */
+  protected String m_bufferMemory = "";
+
+  /** Memory limit for the in-memory buffer in bytes (0 = no limit) */
+  protected long m_bufferMemoryBytes;
+
+  /** Estimated memory used by the instances in the in-memory buffer */
+  protected long m_bufferBytesUsed;
+
   /** Holds indexes of string attributes, keyed by attribute name */
   protected Map<String, Integer> m_stringAttIndexes;
 
@@ -129,6 +144,29 @@ public class Sorter extends BaseStep {
     m_bufferSize = buffSize;
   }
 
+  /**
+   * Get the maximum memory (MB) to use for the in-memory buffer
+   *
+   * @return the maximum memory to use for the in-memory buffer
+   */
+  public String getBufferMemory() {
+    return m_bufferMemory;
+  }
+
+  /**
+   * Set the maximum memory (MB) to use for the in-memory buffer
+   *
+   * @param bufferMemory the maximum memory to use for the in-memory buffer
+   */
+  @OptionMetadata(displayName = "Max memory for in-mem streaming buffer (MB)",
+    description = "Write the in-memory buffer to a temp file once the "
+      + "(estimated) memory used by its instances reaches this many megabytes, "
+      + "even if it is not full. Empty or 0 = no limit (instance connections "
+      + "only)", displayOrder = 2)
+  public void setBufferMemory(String bufferMemory) {
+    m_bufferMemory = bufferMemory;
+  }
+
   /**
    * Set the directory to use for temporary files during incremental operation
    *
@@ -138,7 +176,7 @@ public class Sorter extends BaseStep {
     directoriesOnly = true)
   @OptionMetadata(displayName = "Directory for temp files",
     description = "Where to store temporary files when spilling to disk",
-    displayOrder = 2)
+    displayOrder = 3)
   public void setTempDirectory(File tempDir) {
     m_tempDirectory = tempDir;
   }
@@ -274,6 +312,13 @@ public class Sorter extends BaseStep {
       String buffSize = environmentSubstitute(m_bufferSize);
       m_bufferSizeI = Integer.parseInt(buffSize);
       m_incrementalBuffer = new ArrayList<InstanceHolder>(m_bufferSizeI);
+      m_bufferBytesUsed = 0;
+      m_bufferMemoryBytes = 0;
+      String bufferMem = environmentSubstitute(m_bufferMemory).trim();
+      if (bufferMem.length() > 0) {
+        m_bufferMemoryBytes =
+          (long) (Double.parseDouble(bufferMem) * 1024 * 1024);
+      }
     }
   }
 
@@ -330,6 +375,9 @@ public class Sorter extends BaseStep {
     for (int i = 0; i < insts.numInstances(); i++) {
       InstanceHolder h = new InstanceHolder();
       h.m_instance = insts.instance(i);
+      if (m_stringAttIndexes != null) {
+        copyStringAttVals(h);
+      }
       instances.add(h);
     }
     Collections.sort(instances, m_sortComparator);
@@ -368,8 +416,13 @@ public class Sorter extends BaseStep {
         copyStringAttVals(tempH);
       }
       m_incrementalBuffer.add(tempH);
+      if (m_bufferMemoryBytes > 0) {
+        m_bufferBytesUsed += estimateSize(tempH);
+      }
 
-      if (m_incrementalBuffer.size() == m_bufferSizeI) {
+      if (m_incrementalBuffer.size() == m_bufferSizeI
+        || (m_bufferMemoryBytes > 0
+          && m_bufferBytesUsed >= m_bufferMemoryBytes)) {
         // time to sort and write this to a temp file
         try {
           sortBuffer(true);
@@ -381,6 +434,46 @@ public class Sorter extends BaseStep {
     }
   }
 
+  /**
+   * Rough estimate of the heap used by a buffered instance
+   *
+   * @param holder the holder of the instance
+   * @return the estimated size in bytes
+   */
+  protected static long estimateSize(InstanceHolder holder) {
+    // object headers, value array and (for sparse instances) index array
+    long size = 96 + 12L * holder.m_instance.numValues();
+    if (holder.m_stringVals != null) {
+      for (String s : holder.m_stringVals.values()) {
+        size += 64 + (s != null ? 2L * s.length() : 0);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Set up the header for outputting an instance. String values are held
+   * separately from the instance when sorting, and the header of a stream only
+   * holds one value for each string attribute, so this sets the instance's
+   * string values in the header.
+   *
+   * @param holder the holder of the instance to output
+   * @param header the header to use for the instance
+   */
+  protected void prepareForOutput(InstanceHolder holder, Instances header) {
+    holder.m_instance.setDataset(header);
+    if (m_stringAttIndexes != null) {
+      for (Map.Entry<String, Integer> e : m_stringAttIndexes.entrySet()) {
+        if (holder.m_instance.isMissing(e.getValue())) {
+          continue;
+        }
+        Attribute att = header.attribute(e.getValue());
+        att.setStringValue(holder.m_stringVals.get(e.getKey()));
+        holder.m_instance.setValue(att, 0);
+      }
+    }
+  }
+
   /**
    * Output any buffered instances
    *
@@ -399,190 +492,107 @@ public class Sorter extends BaseStep {
       } catch (Exception ex) {
         throw new WekaException(ex);
       }
-
-      if (m_bufferFiles.size() == 0) {
-        // we only have the in memory buffer
-        getStepManager().logDetailed("Emitting in memory buffer");
-        Instances newHeader =
-          new Instances(m_incrementalBuffer.get(0).m_instance.dataset(), 0);
-        for (int i = 0; i < m_incrementalBuffer.size(); i++) {
-          getStepManager().throughputUpdateStart();
-          InstanceHolder currentH = m_incrementalBuffer.get(i);
-          currentH.m_instance.setDataset(newHeader);
-          if (m_stringAttIndexes != null) {
-            for (String attName : m_stringAttIndexes.keySet()) {
-              boolean setValToZero =
-                newHeader.attribute(attName).numValues() > 0;
-              newHeader.attribute(attName).setStringValue(
-                currentH.m_stringVals.get(attName));
-              if (setValToZero) {
-                currentH.m_instance.setValue(newHeader.attribute(attName), 0);
-              }
-            }
-          }
-          if (isStopRequested()) {
-            return;
-          }
-          m_streamingData.setPayloadElement(StepManager.CON_INSTANCE,
-            currentH.m_instance);
-          getStepManager().throughputUpdateEnd();
-          getStepManager().outputData(m_streamingData);
-          if (i == m_incrementalBuffer.size() - 1) {
-            // end of stream
-            m_streamingData.clearPayload();
-            getStepManager().throughputFinished(m_streamingData);
-          }
-        }
-        return;
-      }
     }
 
-    List<ObjectInputStream> inputStreams = new ArrayList<ObjectInputStream>();
-    // for the interleaving part of the merge sort
-    List<InstanceHolder> merger = new ArrayList<InstanceHolder>();
-
     Instances tempHeader = new Instances(m_connectedFormat, 0);
-
-    // add an instance from the in-memory buffer first
-    if (m_incrementalBuffer.size() > 0) {
-      InstanceHolder tempH = m_incrementalBuffer.remove(0);
-      merger.add(tempH);
-    }
-
-    if (isStopRequested()) {
-      return;
-    }
-
-    if (m_bufferFiles.size() > 0) {
-      getStepManager().logDetailed("Merging temp files");
-    }
-    // open all temp buffer files and read one instance from each
-    for (int i = 0; i < m_bufferFiles.size(); i++) {
-      ObjectInputStream ois = null;
-      try {
-        FileInputStream fis = new FileInputStream(m_bufferFiles.get(i));
-        BufferedInputStream bis = new BufferedInputStream(fis, 50000);
-        ois = new ObjectInputStream(bis);
-
-        InstanceHolder tempH = (InstanceHolder) ois.readObject();
-        if (tempH != null) {
-          inputStreams.add(ois);
-
-          tempH.m_fileNumber = i;
-          merger.add(tempH);
-        } else {
-          // no instances?!??
-          ois.close();
-        }
-      } catch (Exception ex) {
-        if (ois != null) {
-          try {
-            ois.close();
-          } catch (Exception e) {
-            throw new WekaException(e);
-          }
+    if (m_bufferFiles.size() == 0) {
+      // we only have the in memory buffer
+      getStepManager().logDetailed("Emitting in memory buffer");
+      for (int i = 0; i < m_incrementalBuffer.size(); i++) {
+        if (isStopRequested()) {
+          return;
         }
-        throw new WekaException(ex);
+        getStepManager().throughputUpdateStart();
+        InstanceHolder currentH = m_incrementalBuffer.get(i);
+        prepareForOutput(currentH, tempHeader);
+        m_streamingData.setPayloadElement(StepManager.CON_INSTANCE,
+          currentH.m_instance);
+        getStepManager().throughputUpdateEnd();
+        getStepManager().outputData(m_streamingData);
       }
+      m_incrementalBuffer.clear();
+      m_streamingData.clearPayload();
+      getStepManager().throughputFinished(m_streamingData);
+      return;
     }
-    Collections.sort(merger, m_sortComparator);
 
-    int mergeCount = 0;
-    do {
-      if (isStopRequested()) {
-        return;
+    // k-way merge of the sorted runs on disk and the sorted in-memory buffer.
+    // Sources 0..n-1 are the run files, source n is the in-memory buffer
+    getStepManager().logDetailed(
+      "Merging " + m_bufferFiles.size() + " temp files");
+    int numSources = m_bufferFiles.size() + 1;
+    RunReader[] readers = new RunReader[numSources - 1];
+    InstanceHolder[] heads = new InstanceHolder[numSources];
+    int memPos = 0;
+    try {
+      for (int i = 0; i < readers.length; i++) {
+        readers[i] = new RunReader(m_bufferFiles.get(i), m_connectedFormat);
+        heads[i] = readers[i].next();
       }
-      InstanceHolder holder = merger.remove(0);
-      holder.m_instance.setDataset(tempHeader);
-
-      if (m_stringAttIndexes != null) {
-        for (String attName : m_stringAttIndexes.keySet()) {
-          boolean setValToZero =
-            (tempHeader.attribute(attName).numValues() > 1);
-          tempHeader.attribute(attName).setStringValue(
-            holder.m_stringVals.get(attName));
-          if (setValToZero) {
-            holder.m_instance.setValue(tempHeader.attribute(attName), 0);
-          }
-        }
+      if (m_incrementalBuffer.size() > 0) {
+        heads[numSources - 1] = m_incrementalBuffer.get(memPos++);
       }
 
-      m_streamingData.setPayloadElement(StepManager.CON_INSTANCE,
-        holder.m_instance);
-      mergeCount++;
-      getStepManager().outputData(m_streamingData);
-      getStepManager().throughputUpdateStart();
-
-      if (mergeCount % m_bufferSizeI == 0) {
-        getStepManager().logDetailed("Merged " + mergeCount + " instances");
-      }
-      int smallest = holder.m_fileNumber;
+      RunHeap heap = new RunHeap(heads, m_sortComparator);
+      int mergeCount = 0;
+      while (heap.size() > 0) {
+        if (isStopRequested()) {
+          return;
+        }
+        int source = heap.top();
+        InstanceHolder holder = heads[source];
+        prepareForOutput(holder, tempHeader);
+        m_streamingData.setPayloadElement(StepManager.CON_INSTANCE,
+          holder.m_instance);
+        mergeCount++;
+        getStepManager().outputData(m_streamingData);
+        getStepManager().throughputUpdateStart();
 
-      // now get another instance from the source of "smallest"
-      InstanceHolder nextH = null;
-      if (smallest == -1) {
-        if (m_incrementalBuffer.size() > 0) {
-          nextH = m_incrementalBuffer.remove(0);
-          nextH.m_fileNumber = -1;
+        if (mergeCount % m_bufferSizeI == 0) {
+          getStepManager().logDetailed("Merged " + mergeCount + " instances");
         }
-      } else {
-        ObjectInputStream tis = inputStreams.get(smallest);
 
-        try {
-          InstanceHolder tempH = (InstanceHolder) tis.readObject();
-          if (tempH != null) {
-            nextH = tempH;
-            nextH.m_fileNumber = smallest;
-          } else {
-            throw new Exception("end of buffer");
-          }
-        } catch (Exception ex) {
-          // EOF
-          try {
+        // now get another instance from the same source
+        if (source == numSources - 1) {
+          heads[source] =
+            memPos < m_incrementalBuffer.size() ? m_incrementalBuffer
+              .get(memPos++) : null;
+        } else {
+          heads[source] = readers[source].next();
+          if (heads[source] == null) {
             getStepManager().logDetailed("Closing temp file");
-            tis.close();
-          } catch (Exception e) {
-            throw new WekaException(ex);
+            readers[source].close();
+            readers[source] = null;
           }
-          File file = m_bufferFiles.remove(smallest);
-          // file.delete();
-          inputStreams.remove(smallest);
-
-          // update file numbers
-          for (InstanceHolder h : merger) {
-            if (h.m_fileNumber != -1 && h.m_fileNumber > smallest) {
-              h.m_fileNumber--;
-            }
+        }
+        heap.replaceTop();
+        getStepManager().throughputUpdateEnd();
+      }
+    } catch (IOException ex) {
+      throw new WekaException(ex);
+    } finally {
+      for (RunReader r : readers) {
+        if (r != null) {
+          try {
+            r.close();
+          } catch (IOException ex) {
+            // ignore
           }
         }
       }
-
-      if (nextH != null) {
-        // find the correct position (i.e. interleave) for this new Instance
-        int index = Collections.binarySearch(merger, nextH, m_sortComparator);
-        if (index < 0) {
-          merger.add(index * -1 - 1, nextH);
-        } else {
-          merger.add(index, nextH);
+      for (File f : m_bufferFiles) {
+        if (!f.delete()) {
+          f.deleteOnExit();
         }
-        nextH = null;
       }
-      getStepManager().throughputUpdateEnd();
-    } while (merger.size() > 0 && !isStopRequested());
+      m_bufferFiles.clear();
+      m_incrementalBuffer.clear();
+    }
 
     if (!isStopRequested()) {
       // signal end of stream
       m_streamingData.clearPayload();
       getStepManager().throughputFinished(m_streamingData);
-    } else {
-      // try an close any input streams still open...
-      for (ObjectInputStream is : inputStreams) {
-        try {
-          is.close();
-        } catch (Exception ex) {
-          // ignore
-        }
-      }
     }
   }
 
@@ -603,40 +613,34 @@ public class Sorter extends BaseStep {
       return;
     }
 
+    File tempDir = null;
     String tmpDir = m_tempDirectory.toString();
-    File tempFile = File.createTempFile("Sorter", ".tmp");
-
     if (tmpDir != null && tmpDir.length() > 0) {
       tmpDir = environmentSubstitute(tmpDir);
-      File tempDir = new File(tmpDir);
-      if (tempDir.exists() && tempDir.canWrite()) {
-        String filename = tempFile.getName();
-        tempFile = new File(tmpDir + File.separator + filename);
-        tempFile.deleteOnExit();
+      tempDir = new File(tmpDir);
+      if (!tempDir.exists() || !tempDir.canWrite()) {
+        tempDir = null;
       }
     }
+    File tempFile = File.createTempFile("Sorter", ".tmp", tempDir);
+    tempFile.deleteOnExit();
     getStepManager().logDebug("Temp file: " + tempFile.toString());
 
     m_bufferFiles.add(tempFile);
-    FileOutputStream fos = new FileOutputStream(tempFile);
-    BufferedOutputStream bos = new BufferedOutputStream(fos, 50000);
-    ObjectOutputStream oos = new ObjectOutputStream(bos);
     getStepManager().logDetailed(
       "Writing buffer to temp file " + m_bufferFiles.size()
         + ". Buffer contains " + m_incrementalBuffer.size() + " instances");
 
-    for (int i = 0; i < m_incrementalBuffer.size(); i++) {
-      InstanceHolder temp = m_incrementalBuffer.get(i);
-      temp.m_instance.setDataset(null);
-      oos.writeObject(temp);
-      if (i % (m_bufferSizeI / 10) == 0) {
-        oos.reset();
+    RunWriter writer = new RunWriter(tempFile, m_connectedFormat);
+    try {
+      for (int i = 0; i < m_incrementalBuffer.size(); i++) {
+        writer.write(m_incrementalBuffer.get(i));
       }
+    } finally {
+      writer.close();
     }
-
-    bos.flush();
-    oos.close();
     m_incrementalBuffer.clear();
+    m_bufferBytesUsed = 0;
   }
 
   private void copyStringAttVals(InstanceHolder holder) {
@@ -676,6 +680,317 @@ public class Sorter extends BaseStep {
     protected Map<String, String> m_stringVals;
   }
 
+  /**
+   * Writes sorted runs of instances to a temp file in a compact binary format.
+   * Each instance is written as a type marker (dense or sparse), the weight,
+   * the attribute values (and indices for sparse instances) and then the values
+   * of any string attributes.
+   */
+  protected static class RunWriter {
+
+    /** Marker for the end of the run */
+    protected static final int END = 0;
+
+    /** Marker for a dense instance */
+    protected static final int DENSE = 1;
+
+    /** Marker for a sparse instance */
+    protected static final int SPARSE = 2;
+
+    /** The stream to write to */
+    protected DataOutputStream m_out;
+
+    /** Indexes of string attributes */
+    protected int[] m_stringIndexes;
+
+    /** Names of string attributes */
+    protected String[] m_stringNames;
+
+    /**
+     * Constructor
+     *
+     * @param file the file to write to
+     * @param structure the structure of the instances to be written
+     * @throws IOException if the file can't be opened
+     */
+    public RunWriter(File file, Instances structure) throws IOException {
+      m_out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+          file), 1 << 16));
+      List<Integer> stringIndexes = new ArrayList<Integer>();
+      for (int i = 0; i < structure.numAttributes(); i++) {
+        if (structure.attribute(i).isString()) {
+          stringIndexes.add(i);
+        }
+      }
+      m_stringIndexes = new int[stringIndexes.size()];
+      m_stringNames = new String[stringIndexes.size()];
+      for (int i = 0; i < m_stringIndexes.length; i++) {
+        m_stringIndexes[i] = stringIndexes.get(i);
+        m_stringNames[i] = structure.attribute(m_stringIndexes[i]).name();
+      }
+    }
+
+    /**
+     * Write an instance
+     *
+     * @param holder the holder of the instance to write
+     * @throws IOException if a problem occurs
+     */
+    public void write(InstanceHolder holder) throws IOException {
+      Instance inst = holder.m_instance;
+      if (inst instanceof SparseInstance) {
+        m_out.writeByte(SPARSE);
+        m_out.writeDouble(inst.weight());
+        m_out.writeInt(inst.numValues());
+        for (int i = 0; i < inst.numValues(); i++) {
+          m_out.writeInt(inst.index(i));
+          m_out.writeDouble(inst.valueSparse(i));
+        }
+      } else {
+        m_out.writeByte(DENSE);
+        m_out.writeDouble(inst.weight());
+        for (int i = 0; i < inst.numAttributes(); i++) {
+          m_out.writeDouble(inst.value(i));
+        }
+      }
+
+      for (int i = 0; i < m_stringIndexes.length; i++) {
+        String val = null;
+        if (!inst.isMissing(m_stringIndexes[i])
+          && holder.m_stringVals != null) {
+          val = holder.m_stringVals.get(m_stringNames[i]);
+        }
+        if (val == null) {
+          m_out.writeInt(-1);
+        } else {
+          byte[] bytes = val.getBytes("UTF-8");
+          m_out.writeInt(bytes.length);
+          m_out.write(bytes);
+        }
+      }
+    }
+
+    /**
+     * Finish the run and close the file
+     *
+     * @throws IOException if a problem occurs
+     */
+    public void close() throws IOException {
+      m_out.writeByte(END);
+      m_out.close();
+    }
+  }
+
+  /**
+   * Reads back a run of instances written by a RunWriter
+   */
+  protected static class RunReader {
+
+    /** The stream to read from */
+    protected DataInputStream m_in;
+
+    /** Number of attributes in the data */
+    protected int m_numAttributes;
+
+    /** Indexes of string attributes */
+    protected int[] m_stringIndexes;
+
+    /** Names of string attributes */
+    protected String[] m_stringNames;
+
+    /**
+     * Constructor
+     *
+     * @param file the file to read from
+     * @param structure the structure of the instances in the file
+     * @throws IOException if the file can't be opened
+     */
+    public RunReader(File file, Instances structure) throws IOException {
+      m_in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+          1 << 16));
+      m_numAttributes = structure.numAttributes();
+      List<Integer> stringIndexes = new ArrayList<Integer>();
+      for (int i = 0; i < m_numAttributes; i++) {
+        if (structure.attribute(i).isString()) {
+          stringIndexes.add(i);
+        }
+      }
+      m_stringIndexes = new int[stringIndexes.size()];
+      m_stringNames = new String[stringIndexes.size()];
+      for (int i = 0; i < m_stringIndexes.length; i++) {
+        m_stringIndexes[i] = stringIndexes.get(i);
+        m_stringNames[i] = structure.attribute(m_stringIndexes[i]).name();
+      }
+    }
+
+    /**
+     * Read the next instance
+     *
+     * @return the holder of the next instance, or null at the end of the run
+     * @throws IOException if a problem occurs
+     */
+    public InstanceHolder next() throws IOException {
+      int type = m_in.read();
+      if (type == RunWriter.END || type < 0) {
+        return null;
+      }
+
+      InstanceHolder holder = new InstanceHolder();
+      double weight = m_in.readDouble();
+      if (type == RunWriter.SPARSE) {
+        int numValues = m_in.readInt();
+        int[] indices = new int[numValues];
+        double[] vals = new double[numValues];
+        for (int i = 0; i < numValues; i++) {
+          indices[i] = m_in.readInt();
+          vals[i] = m_in.readDouble();
+        }
+        holder.m_instance =
+          new SparseInstance(weight, vals, indices, m_numAttributes);
+      } else {
+        double[] vals = new double[m_numAttributes];
+        for (int i = 0; i < m_numAttributes; i++) {
+          vals[i] = m_in.readDouble();
+        }
+        holder.m_instance = new DenseInstance(weight, vals);
+      }
+
+      if (m_stringIndexes.length > 0) {
+        holder.m_stringVals = new HashMap<String, String>();
+        for (int i = 0; i < m_stringIndexes.length; i++) {
+          int len = m_in.readInt();
+          if (len < 0) {
+            continue;
+          }
+          byte[] bytes = new byte[len];
+          m_in.readFully(bytes);
+          holder.m_stringVals.put(m_stringNames[i], new String(bytes, "UTF-8"));
+          holder.m_instance.setValue(m_stringIndexes[i], 0);
+        }
+      }
+
+      return holder;
+    }
+
+    /**
+     * Close the file
+     *
+     * @throws IOException if a problem occurs
+     */
+    public void close() throws IOException {
+      m_in.close();
+    }
+  }
+
+  /**
+   * Binary heap of source (run) numbers, ordered by the current instance of
+   * each source. Ties are broken by source number so that the merge is stable.
+   */
+  protected static class RunHeap {
+
+    /** The heap of source numbers */
+    protected int[] m_heap;
+
+    /** Number of sources in the heap */
+    protected int m_size;
+
+    /** The current instance of each source (null when exhausted) */
+    protected InstanceHolder[] m_heads;
+
+    /** Comparator for instances */
+    protected Comparator<InstanceHolder> m_comparator;
+
+    /**
+     * Constructor
+     *
+     * @param heads the current instance of each source
+     * @param comparator the comparator to order instances with
+     */
+    public RunHeap(InstanceHolder[] heads,
+      Comparator<InstanceHolder> comparator) {
+      m_heads = heads;
+      m_comparator = comparator;
+      m_heap = new int[heads.length];
+      for (int i = 0; i < heads.length; i++) {
+        if (heads[i] != null) {
+          m_heap[m_size++] = i;
+        }
+      }
+      for (int i = m_size / 2 - 1; i >= 0; i--) {
+        siftDown(i);
+      }
+    }
+
+    /**
+     * Get the number of sources that are not exhausted
+     *
+     * @return the number of sources in the heap
+     */
+    public int size() {
+      return m_size;
+    }
+
+    /**
+     * Get the source with the smallest current instance
+     *
+     * @return the source number
+     */
+    public int top() {
+      return m_heap[0];
+    }
+
+    /**
+     * Restore the heap after the current instance of the top source has been
+     * replaced (or set to null if the source is exhausted)
+     */
+    public void replaceTop() {
+      if (m_heads[m_heap[0]] == null) {
+        m_heap[0] = m_heap[--m_size];
+      }
+      if (m_size > 0) {
+        siftDown(0);
+      }
+    }
+
+    /**
+     * Compare two sources
+     *
+     * @param a the first source
+     * @param b the second source
+     * @return true if source a should come before source b
+     */
+    protected boolean less(int a, int b) {
+      int cmp = m_comparator.compare(m_heads[a], m_heads[b]);
+      return cmp < 0 || (cmp == 0 && a < b);
+    }
+
+    /**
+     * Move an element down the heap to its correct position
+     *
+     * @param pos the position of the element
+     */
+    protected void siftDown(int pos) {
+      int source = m_heap[pos];
+      while (true) {
+        int child = 2 * pos + 1;
+        if (child >= m_size) {
+          break;
+        }
+        if (child + 1 < m_size && less(m_heap[child + 1], m_heap[child])) {
+          child++;
+        }
+        if (!less(m_heap[child], source)) {
+          break;
+        }
+        m_heap[pos] = m_heap[child];
+        pos = child;
+      }
+      m_heap[pos] = source;
+    }
+  }
+
   /**
    * Comparator that applies the sort rules to {@code InstanceHolder}s
    */
@@ -19,8 +19,17 @@
 
 package weka.attributeSelection;
 
+import java.util.Random;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.LinearNNSearch;
 
 /**
  * Tests BestFirst. Run from the command line with:<p/>
@@ -46,6 +55,135 @@ public class ReliefFAttributeEvalTest
     return new ReliefFAttributeEval();
   }
 
+  /**
+   * Generates a dataset with the given class type.
+   *
+   * @param classType the type of the class attribute
+   * @return the generated data
+   */
+  protected Instances getData(int classType) throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(3);
+    test.setNumNumeric(5);
+    test.setNumInstances(200);
+    test.setClassType(classType);
+    test.setNumClasses(3);
+    return test.generate();
+  }
+
+  /**
+   * Builds the evaluator and returns the weights of all attributes.
+   *
+   * @param eval the evaluator to build
+   * @param data the data to build it on
+   * @return the attribute weights
+   */
+  protected double[] getWeights(ReliefFAttributeEval eval, Instances data)
+    throws Exception {
+    double[] result = new double[data.numAttributes()];
+
+    eval.buildEvaluator(data);
+    for (int i = 0; i < result.length; i++) {
+      result[i] = eval.evaluateAttribute(i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Compares the weights computed with several execution slots against the
+   * ones computed sequentially.
+   *
+   * @param sequential the sequential evaluator
+   * @param parallel the evaluator with several execution slots
+   */
+  protected void compareParallel(ReliefFAttributeEval sequential,
+    ReliefFAttributeEval parallel) {
+    int[] classTypes = { Attribute.NOMINAL, Attribute.NUMERIC };
+
+    parallel.setNumExecutionSlots(3);
+    for (int classType : classTypes) {
+      try {
+        Instances data = getData(classType);
+        double[] expected = getWeights(sequential, data);
+        double[] actual = getWeights(parallel, data);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals("Weight of attribute " + i + " differs", expected[i],
+            actual[i], 1e-10);
+        }
+      } catch (Exception e) {
+        fail("Evaluation failed: " + e);
+      }
+    }
+  }
+
+  /**
+   * Tests whether the multi-threaded mode computes the same weights.
+   */
+  public void testParallel() {
+    ReliefFAttributeEval sequential = new ReliefFAttributeEval();
+    ReliefFAttributeEval parallel = new ReliefFAttributeEval();
+
+    compareParallel(sequential, parallel);
+
+    sequential.setWeightByDistance(true);
+    parallel.setWeightByDistance(true);
+    sequential.setSampleSize(50);
+    parallel.setSampleSize(50);
+    compareParallel(sequential, parallel);
+  }
+
+  /**
+   * Tests the per-class nearest neighbour searches, sequentially and with
+   * several execution slots.
+   */
+  public void testNearestNeighbourSearch() {
+    ReliefFAttributeEval sequential = new ReliefFAttributeEval();
+    ReliefFAttributeEval parallel = new ReliefFAttributeEval();
+
+    sequential.setUseNearestNeighbourSearch(true);
+    parallel.setUseNearestNeighbourSearch(true);
+    compareParallel(sequential, parallel);
+
+    sequential.setNearestNeighbourSearch(new LinearNNSearch());
+    parallel.setNearestNeighbourSearch(new LinearNNSearch());
+    compareParallel(sequential, parallel);
+
+    sequential.setNearestNeighbourSearch(new KDTree());
+    parallel.setNearestNeighbourSearch(new KDTree());
+    compareParallel(sequential, parallel);
+  }
+
+  /**
+   * Tests whether the default nearest neighbour search (-N) computes the
+   * same weights as the linear scan, on data with missing values.
+   */
+  public void testDefaultSearchMatchesLinearScan() throws Exception {
+    int[] classTypes = { Attribute.NOMINAL, Attribute.NUMERIC };
+
+    for (int classType : classTypes) {
+      Instances data = getData(classType);
+      Random rand = new Random(42);
+      for (Instance inst : data) {
+        for (int i = 0; i < data.numAttributes(); i++) {
+          if (i != data.classIndex() && rand.nextInt(10) == 0) {
+            inst.setMissing(i);
+          }
+        }
+      }
+
+      ReliefFAttributeEval linear = new ReliefFAttributeEval();
+      ReliefFAttributeEval search = new ReliefFAttributeEval();
+      search.setOptions(Utils.splitOptions("-N"));
+      double[] expected = getWeights(linear, data);
+      double[] actual = getWeights(search, data);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals("Weight of attribute " + i + " differs", expected[i],
+          actual[i], 1e-10);
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(ReliefFAttributeEvalTest.class);
   }
@@ -19,8 +19,15 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 /**
  * Tests BestFirst. Run from the command line with:<p/>
@@ -48,6 +55,79 @@ public class WrapperSubsetEvalTest
     return eval;
   }
 
+  /**
+   * Generates a dataset with a nominal class.
+   *
+   * @return the generated data
+   */
+  protected Instances getData() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumNominal(4);
+    test.setNumNumeric(4);
+    test.setNumInstances(60);
+    test.setNumClasses(2);
+    return test.generate();
+  }
+
+  /**
+   * Tests whether evaluating a batch of subsets in parallel (with and
+   * without the cache) gives the same merits as evaluating them one by one.
+   */
+  public void testBatchEvaluation() {
+    try {
+      Instances data = getData();
+      List<BitSet> subsets = new ArrayList<BitSet>();
+      for (int i = 0; i < data.numAttributes(); i++) {
+        if (i != data.classIndex()) {
+          BitSet subset = new BitSet(data.numAttributes());
+          subset.set(i);
+          subsets.add(subset);
+        }
+      }
+
+      WrapperSubsetEval single = (WrapperSubsetEval) getEvaluator();
+      single.setCacheSize(0);
+      single.buildEvaluator(data);
+      WrapperSubsetEval batch = (WrapperSubsetEval) getEvaluator();
+      batch.setNumExecutionSlots(3);
+      batch.buildEvaluator(data);
+
+      for (int n = 0; n < 2; n++) {
+        double[] merits = batch.evaluateSubsets(subsets);
+        assertEquals("Number of merits differs", subsets.size(),
+          merits.length);
+        for (int i = 0; i < subsets.size(); i++) {
+          assertEquals("Merit of subset " + subsets.get(i) + " differs",
+            single.evaluateSubset(subsets.get(i)), merits[i], 0.0);
+        }
+      }
+    } catch (Exception e) {
+      fail("Batch evaluation failed: " + e);
+    }
+  }
+
+  /**
+   * Tests whether BestFirst selects the same attributes when the children of
+   * a node are evaluated in parallel.
+   */
+  public void testParallelBestFirst() {
+    try {
+      Instances data = getData();
+      WrapperSubsetEval sequential = (WrapperSubsetEval) getEvaluator();
+      sequential.buildEvaluator(data);
+      WrapperSubsetEval parallel = (WrapperSubsetEval) getEvaluator();
+      parallel.setNumExecutionSlots(3);
+      parallel.buildEvaluator(data);
+
+      int[] expected = new BestFirst().search(sequential, data);
+      int[] actual = new BestFirst().search(parallel, data);
+      assertEquals("Selected attributes differ",
+        Arrays.toString(expected), Arrays.toString(actual));
+    } catch (Exception e) {
+      fail("Search failed: " + e);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(WrapperSubsetEvalTest.class);
   }
@@ -39,6 +39,7 @@ public class AllTests
     TestSuite suite = new TestSuite();
 
     suite.addTest(new TestSuite(weka.classifiers.CostMatrixTest.class));
+    suite.addTest(new TestSuite(weka.classifiers.ScorerTest.class));
     suite.addTest(weka.classifiers.pmml.consumer.AllTests.suite());
     suite.addTest(suite("weka.classifiers.Classifier"));
     suite.addTest(suite("weka.classifiers.functions.supportVector.Kernel"));
@@ -0,0 +1,238 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScorerTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.functions.LinearRegression;
+import weka.classifiers.meta.FilteredClassifier;
+import weka.classifiers.rules.ZeroR;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.MultiFilter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.Remove;
+import weka.filters.unsupervised.attribute.Standardize;
+import weka.filters.unsupervised.attribute.TimeSeriesTranslate;
+
+/**
+ * Tests Scorer. Run from the command line with:
+ * <p/>
+ * java weka.classifiers.ScorerTest
+ *
+ * @version $Revision$
+ */
+public class ScorerTest extends TestCase {
+
+  /**
+   * A time series filter that also keeps every instance it is given
+   */
+  protected static class RecordingTranslate extends TimeSeriesTranslate {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The instances given to the filter */
+    protected List<Instance> m_Inputs = new ArrayList<Instance>();
+
+    @Override
+    public boolean input(Instance instance) throws Exception {
+      m_Inputs.add(instance);
+      return super.input(instance);
+    }
+  }
+
+  /**
+   * Constructs the <code>ScorerTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public ScorerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Generates a dataset with a nominal or numeric class
+   */
+  protected static Instances getData(int classType) throws Exception {
+    TestInstances generator = new TestInstances();
+    generator.setClassType(classType);
+    generator.setNumNominal(2);
+    generator.setNumNumeric(3);
+    generator.setNumInstances(50);
+    generator.setClassIndex(TestInstances.CLASS_IS_LAST);
+    return generator.generate();
+  }
+
+  /**
+   * Checks that a scorer predicts the same as its classifier
+   */
+  protected void checkSame(Classifier classifier, Instances data)
+    throws Exception {
+    classifier.buildClassifier(data);
+    Scorer scorer = new Scorer(classifier, new Instances(data, 0));
+    double[] result = new double[scorer.numOutputs()];
+    for (Instance inst : data) {
+      double[] expected = classifier.distributionForInstance(inst);
+      scorer.distribution(inst.toDoubleArray(), result);
+      assertEquals(expected.length, result.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], result[i], 1e-12);
+      }
+      assertEquals(classifier.classifyInstance(inst),
+        scorer.classify(inst.toDoubleArray()), 1e-12);
+    }
+  }
+
+  public void testPlainClassifier() throws Exception {
+    checkSame(new J48(), getData(Attribute.NOMINAL));
+  }
+
+  public void testNumericClass() throws Exception {
+    checkSame(new LinearRegression(), getData(Attribute.NUMERIC));
+  }
+
+  public void testFilterChain() throws Exception {
+    Remove remove = new Remove();
+    remove.setAttributeIndices("1");
+    MultiFilter multi = new MultiFilter();
+    multi.setFilters(new Filter[] { new Standardize(), new Discretize() });
+    FilteredClassifier inner = new FilteredClassifier();
+    inner.setFilter(multi);
+    inner.setClassifier(new NaiveBayes());
+    FilteredClassifier outer = new FilteredClassifier();
+    outer.setFilter(remove);
+    outer.setClassifier(inner);
+
+    Instances data = getData(Attribute.NOMINAL);
+    checkSame(outer, data);
+    Scorer scorer = new Scorer(outer, data);
+    assertSame(inner.getClassifier(), scorer.getClassifier());
+  }
+
+  public void testFields() throws Exception {
+    Instances data = getData(Attribute.NOMINAL);
+    J48 classifier = new J48();
+    classifier.buildClassifier(data);
+    Scorer scorer = new Scorer(classifier, data);
+
+    double[] expected = new double[scorer.numOutputs()];
+    double[] result = new double[scorer.numOutputs()];
+    Map<String, Object> fields = new HashMap<String, Object>();
+    for (Instance inst : data) {
+      fields.clear();
+      for (int i = 0; i < data.numAttributes(); i++) {
+        Attribute att = data.attribute(i);
+        if (i == data.classIndex() || inst.isMissing(i)) {
+          continue;
+        }
+        fields.put(att.name(), att.isNominal() ? inst.stringValue(i)
+          : (Object) inst.value(i));
+      }
+      scorer.distribution(inst.toDoubleArray(), expected);
+      scorer.distribution(fields, result);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], result[i], 1e-12);
+      }
+    }
+
+    fields.put("unknown", 1.0);
+    try {
+      scorer.distribution(fields, result);
+      fail("Unknown attribute should be rejected");
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  public void testFilterKeepingInput() throws Exception {
+    RecordingTranslate translate = new RecordingTranslate();
+    translate.setAttributeIndices("first-last");
+    FilteredClassifier classifier = new FilteredClassifier();
+    classifier.setFilter(translate);
+    classifier.setClassifier(new LinearRegression());
+    Instances data = getData(Attribute.NUMERIC);
+    checkSame(classifier, data);
+
+    // the rows the filter keeps aren't overwritten by the following rows
+    Scorer scorer = new Scorer(classifier, data);
+    RecordingTranslate copy = (RecordingTranslate) scorer.m_Filters[0];
+    copy.m_Inputs.clear();
+    double[] result = new double[scorer.numOutputs()];
+    for (Instance inst : data) {
+      scorer.distribution(inst.toDoubleArray(), result);
+    }
+    assertEquals(data.numInstances(), copy.m_Inputs.size());
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] expected = data.instance(i).toDoubleArray();
+      expected[data.classIndex()] = Utils.missingValue();
+      assertTrue(Arrays.equals(expected,
+        copy.m_Inputs.get(i).toDoubleArray()));
+    }
+  }
+
+  public void testStringAttribute() throws Exception {
+    Instances data = getData(Attribute.NOMINAL);
+    data.insertAttributeAt(new Attribute("text", (List<String>) null), 0);
+    for (Instance inst : data) {
+      inst.setValue(0, "some text");
+    }
+    ZeroR classifier = new ZeroR();
+    classifier.buildClassifier(data);
+    Scorer scorer = new Scorer(classifier, data);
+    double[] result = new double[scorer.numOutputs()];
+
+    double[] values = data.instance(0).toDoubleArray();
+    try {
+      scorer.distribution(values, result);
+      fail("String value should be rejected");
+    } catch (Exception e) {
+      // expected
+    }
+    values[0] = Utils.missingValue();
+    scorer.distribution(values, result);
+
+    Map<String, Object> fields = new HashMap<String, Object>();
+    fields.put("text", "other text");
+    scorer.distribution(fields, result);
+  }
+
+  public static Test suite() {
+    return new TestSuite(ScorerTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -19,8 +19,14 @@
 
 package weka.classifiers.functions;
 
+import java.util.ArrayList;
+
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -44,6 +50,56 @@ public class SGDTextTest extends AbstractClassifierTest {
     return p;
   }
 
+  /**
+   * Creates a text dataset with a binary class
+   */
+  protected static Instances makeTextData(String[] docs) {
+    ArrayList<String> classValues = new ArrayList<String>();
+    classValues.add("neg");
+    classValues.add("pos");
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("text", (ArrayList<String>) null));
+    atts.add(new Attribute("class", classValues));
+    Instances data = new Instances("text", atts, docs.length);
+    data.setClassIndex(1);
+    for (int i = 0; i < docs.length; i++) {
+      Instance inst = new DenseInstance(2);
+      inst.setDataset(data);
+      inst.setValue(0, docs[i]);
+      inst.setValue(1, i % 2);
+      data.add(inst);
+    }
+    return data;
+  }
+
+  public void testPredictionDoesNotGrowVocabulary() throws Exception {
+    SGDText sgd = new SGDText();
+    sgd.setNormalizeDocLength(true);
+    sgd.setLossFunction(new weka.core.SelectedTag(SGDText.LOGLOSS,
+      SGDText.TAGS_SELECTION));
+    Instances train = makeTextData(new String[] { "bad awful poor",
+      "good great fine", "awful bad", "great good", "poor bad",
+      "fine good" });
+    sgd.buildClassifier(train);
+    int size = sgd.m_vocabulary.size();
+
+    Instances test = makeTextData(new String[] { "good unseen words here",
+      "completely new text", "bad another unseen document" });
+    double[] first = sgd.distributionForInstance(test.instance(0));
+    for (Instance inst : test) {
+      sgd.distributionForInstance(inst);
+    }
+    assertEquals(size, sgd.m_vocabulary.size());
+
+    // unknown words still count towards the length of the document
+    double[] known =
+      sgd.distributionForInstance(makeTextData(new String[] { "good" })
+        .instance(0));
+    assertTrue(first[1] < known[1]);
+    assertEquals(first[1], sgd.distributionForInstance(test.instance(0))[1],
+      1e-12);
+  }
+
   public static Test suite() {
     return new TestSuite(SGDTextTest.class);
   }
@@ -19,6 +19,10 @@
 
 package weka.classifiers.misc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
 import weka.classifiers.misc.InputMappedClassifier;
@@ -222,6 +226,53 @@ public class InputMappedClassifierTest extends AbstractClassifierTest {
     performTest(false, 4, 3, true, true, false);
   }
   
+  public void testMapValuesAlternatingHeaders() throws Exception {
+    Instances train = generateData(true, 4, 3, 3);
+    Instances test = reorderAtts(swapValues(1, new Instances(train)));
+    InputMappedClassifier toUse = trainClassifier(train, true);
+
+    double[] mapped = new double[train.numAttributes()];
+    for (int i = 0; i < train.numInstances(); i++) {
+      double[] expected = train.instance(i).toDoubleArray();
+      toUse.mapValues(test.instance(i), mapped);
+      assertTrue("Mapped test instance #" + (i + 1) + " differs",
+        Arrays.equals(expected, mapped));
+      toUse.mapValues(train.instance(i), mapped);
+      assertTrue("Mapped training instance #" + (i + 1) + " differs",
+        Arrays.equals(expected, mapped));
+      assertEquals(toUse.classifyInstance(train.instance(i)),
+        toUse.classifyInstance(test.instance(i)), 0);
+    }
+  }
+  
+  public void testMappingPerHeader() throws Exception {
+    Instances train = generateData(true, 4, 3, 3);
+    Instances test = reorderAtts(swapValues(1, new Instances(train)));
+    Instances copy = new Instances(train, 0);
+    InputMappedClassifier toUse = trainClassifier(train, true);
+    toUse.setSuppressMappingReport(false);
+
+    PrintStream out = System.out;
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(report, true));
+    try {
+      InputMappedClassifier.Mapping trainMapping = toUse.getMapping(train);
+      InputMappedClassifier.Mapping testMapping = toUse.getMapping(test);
+      for (int i = 0; i < 3; i++) {
+        assertSame(trainMapping, toUse.getMapping(train));
+        assertSame(testMapping, toUse.getMapping(test));
+      }
+      // a header with the same structure shares the tables
+      assertSame(trainMapping.m_source, toUse.getMapping(copy).m_source);
+    } finally {
+      System.setOut(out);
+    }
+
+    // the report is printed once for each structure
+    String printed = report.toString();
+    assertEquals(2, printed.split("Model attributes", -1).length - 1);
+  }
+  
   protected InputMappedClassifier trainClassifier(Instances data, boolean nominalClass) {
     InputMappedClassifier toUse = new InputMappedClassifier();
     if (nominalClass) {
@@ -19,8 +19,16 @@
 
 package weka.classifiers.trees;
 
+import java.util.ArrayList;
+
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +49,108 @@ public class HoeffdingTreeTest extends AbstractClassifierTest {
     return new HoeffdingTree();
   }
 
+  /**
+   * Trains a HoeffdingTree with the given options on the data
+   *
+   * @param options the options to use
+   * @param data the training data
+   * @return the trained tree
+   * @throws Exception if training fails
+   */
+  protected HoeffdingTree train(String[] options, Instances data)
+    throws Exception {
+    HoeffdingTree tree = new HoeffdingTree();
+    tree.setOptions(options);
+    tree.buildClassifier(data);
+    return tree;
+  }
+
+  /**
+   * Tests that evaluating the split candidates in parallel grows the same
+   * tree as evaluating them in the calling thread.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances gen = new TestInstances();
+    gen.setSeed(42);
+    gen.setNumInstances(2000);
+    gen.setNumNominal(4);
+    gen.setNumNominalValues(3);
+    gen.setNumNumeric(4);
+    gen.setNumClasses(3);
+    Instances data = gen.generate();
+
+    HoeffdingTree sequential =
+      train(new String[] { "-G", "50", "-H", "1", "-num-slots", "1" }, data);
+    HoeffdingTree parallel =
+      train(new String[] { "-G", "50", "-H", "1", "-num-slots", "4" }, data);
+
+    assertTrue("No splits made", sequential.m_decisionNodeCount > 0);
+    assertEquals(sequential.toString(), parallel.toString());
+  }
+
+  /**
+   * Creates a dataset with a nominal attribute with values a, b, c and d, in
+   * which only a (class yes) and c (class no) occur
+   *
+   * @return the dataset
+   */
+  protected Instances makeUnseenValuesData() {
+    ArrayList<String> values = new ArrayList<String>();
+    values.add("a");
+    values.add("b");
+    values.add("c");
+    values.add("d");
+    ArrayList<String> classValues = new ArrayList<String>();
+    classValues.add("yes");
+    classValues.add("no");
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("att", values));
+    atts.add(new Attribute("class", classValues));
+    Instances data = new Instances("unseen", atts, 0);
+    data.setClassIndex(1);
+
+    for (int i = 0; i < 400; i++) {
+      data.add(new DenseInstance(1.0, new double[] { i % 2 == 0 ? 0 : 2,
+        i % 2 }));
+    }
+
+    return data;
+  }
+
+  /**
+   * Tests a nominal split on an attribute for which some values have not
+   * been seen. Branches must be named by value, and unseen values only get a
+   * child once they turn up.
+   */
+  public void testNominalSplitWithUnseenValues() throws Exception {
+    Instances data = makeUnseenValuesData();
+    HoeffdingTree tree = train(new String[] { "-G", "20", "-L", "0" }, data);
+
+    String model = tree.toString();
+    assertTrue(model, model.contains("att = a"));
+    assertTrue(model, model.contains("att = c"));
+    assertFalse(model, model.contains("att = b"));
+    assertFalse(model, model.contains("att = d"));
+
+    Instance inst = new DenseInstance(1.0, new double[] { 0, 0 });
+    inst.setDataset(data);
+    assertEquals(0, tree.classifyInstance(inst), 0);
+    inst.setValue(0, 2);
+    assertEquals(1, tree.classifyInstance(inst), 0);
+
+    // an unseen value is classified with the distribution at the split
+    inst.setValue(0, 1);
+    assertEquals(1.0, Utils.sum(tree.distributionForInstance(inst)), 1e-6);
+
+    // a child is grown for a value once it has been seen
+    inst.setValue(0, 3);
+    inst.setClassValue(1);
+    tree.updateClassifier(inst);
+    model = tree.toString();
+    assertTrue(model, model.contains("att = d"));
+    assertFalse(model, model.contains("att = b"));
+  }
+
   public static Test suite() {
     return new TestSuite(HoeffdingTreeTest.class);
   }
@@ -0,0 +1,165 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CovarianceAccumulatorTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests CovarianceAccumulator. Run from the command line with:
+ * <p/>
+ * java weka.core.CovarianceAccumulatorTest
+ *
+ * @version $Revision$
+ */
+public class CovarianceAccumulatorTest extends TestCase {
+
+  /** tolerance for comparisons */
+  protected static final double TOL = 1e-9;
+
+  /**
+   * Constructs the <code>CovarianceAccumulatorTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public CovarianceAccumulatorTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Correlated data with a large offset, so that a naive sum of products
+   * would lose precision
+   */
+  protected static Instances getData(int numAtts, int numRows) {
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    for (int j = 0; j < numAtts; j++) {
+      atts.add(new Attribute("att" + j));
+    }
+    Instances data = new Instances("test", atts, numRows);
+    Random r = new Random(1);
+    for (int i = 0; i < numRows; i++) {
+      double[] vals = new double[numAtts];
+      double shared = r.nextGaussian();
+      for (int j = 0; j < numAtts; j++) {
+        vals[j] = 1e6 + shared * (j % 3) + r.nextGaussian();
+      }
+      data.add(new DenseInstance(1.0, vals));
+    }
+    return data;
+  }
+
+  /**
+   * Two-pass covariance for comparison
+   */
+  protected static double[][] twoPass(Instances data) {
+    int p = data.numAttributes();
+    double[] means = new double[p];
+    for (int j = 0; j < p; j++) {
+      means[j] = data.meanOrMode(j);
+    }
+    double[][] result = new double[p][p];
+    for (int i = 0; i < p; i++) {
+      for (int j = 0; j <= i; j++) {
+        double sum = 0;
+        for (Instance inst : data) {
+          sum += (inst.value(i) - means[i]) * (inst.value(j) - means[j]);
+        }
+        result[i][j] = result[j][i] = sum / (data.numInstances() - 1);
+      }
+    }
+    return result;
+  }
+
+  protected void checkMatrix(double[][] expected, double[][] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      for (int j = 0; j < expected.length; j++) {
+        assertEquals("cell " + i + "," + j, expected[i][j], actual[i][j], TOL);
+      }
+    }
+  }
+
+  public void testIncremental() {
+    // more attributes than a tile and rows that don't fill the last block
+    Instances data = getData(CovarianceAccumulator.TILE_SIZE + 5, 1000);
+    CovarianceAccumulator acc =
+      new CovarianceAccumulator(data.numAttributes());
+    for (Instance inst : data) {
+      acc.update(inst.toDoubleArray());
+    }
+
+    assertEquals(1000, acc.getCount());
+    assertEquals(1e6, acc.getMeans()[0], 1);
+    checkMatrix(twoPass(data), acc.getCovarianceMatrix());
+  }
+
+  public void testMerge() {
+    Instances data = getData(10, 997);
+    CovarianceAccumulator a = new CovarianceAccumulator(10);
+    CovarianceAccumulator b = new CovarianceAccumulator(10);
+    CovarianceAccumulator c = new CovarianceAccumulator(10);
+    for (int i = 0; i < data.numInstances(); i++) {
+      (i < 300 ? a : i < 310 ? b : c).update(data.instance(i));
+    }
+    a.merge(b);
+    a.merge(c);
+
+    assertEquals(997, a.getCount());
+    checkMatrix(twoPass(data), a.getCovarianceMatrix());
+  }
+
+  public void testCompute() throws Exception {
+    Instances data = getData(20, 5000);
+    double[][] expected = twoPass(data);
+
+    checkMatrix(expected, CovarianceAccumulator.compute(data, 1)
+      .getCovarianceMatrix());
+    checkMatrix(expected, CovarianceAccumulator.compute(data, 4)
+      .getCovarianceMatrix());
+  }
+
+  public void testSerialization() throws Exception {
+    Instances data = getData(5, 50);
+    CovarianceAccumulator acc = new CovarianceAccumulator(5);
+    for (Instance inst : data) {
+      acc.update(inst);
+    }
+
+    // buffered rows must survive serialization
+    CovarianceAccumulator copy =
+      (CovarianceAccumulator) new SerializedObject(acc).getObject();
+    assertEquals(50, copy.getCount());
+    checkMatrix(twoPass(data), copy.getCovarianceMatrix());
+  }
+
+  public static Test suite() {
+    return new TestSuite(CovarianceAccumulatorTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InstancesCodecTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests InstancesCodec. Run from the command line with:
+ * <p/>
+ * java weka.core.InstancesCodecTest
+ *
+ * @version $Revision$
+ */
+public class InstancesCodecTest extends TestCase {
+
+  /**
+   * An object stream that encodes the datasets in the object graph
+   */
+  protected static class EncodingOutputStream extends ObjectOutputStream {
+
+    protected EncodingOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) {
+      return InstancesCodec.replaceObject(obj);
+    }
+  }
+
+  /**
+   * Constructs the <code>InstancesCodecTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public InstancesCodecTest(String name) {
+    super(name);
+  }
+
+  /**
+   * A dataset with attributes of every type, missing values and weights
+   */
+  protected static Instances getData(int numRows) throws Exception {
+    ArrayList<Attribute> bagAtts = new ArrayList<Attribute>();
+    bagAtts.add(new Attribute("x"));
+    Instances bagHeader = new Instances("bag", bagAtts, 0);
+
+    ArrayList<String> small = new ArrayList<String>();
+    small.add("a");
+    small.add("b");
+    ArrayList<String> large = new ArrayList<String>();
+    for (int i = 0; i < 300; i++) {
+      large.add("v" + i);
+    }
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("num"));
+    atts.add(new Attribute("small", small));
+    atts.add(new Attribute("large", large));
+    atts.add(new Attribute("str", (ArrayList<String>) null));
+    atts.add(new Attribute("date", "yyyy-MM-dd"));
+    atts.add(new Attribute("bag", bagHeader));
+    Instances data = new Instances("test", atts, numRows);
+    data.setClassIndex(1);
+
+    Random r = new Random(1);
+    for (int i = 0; i < numRows; i++) {
+      Instances bag = new Instances(bagHeader, 1);
+      bag.add(new DenseInstance(1.0, new double[] { r.nextGaussian() }));
+      double[] vals = new double[] { r.nextGaussian(), r.nextInt(2),
+        r.nextInt(300), data.attribute(3).addStringValue("s" + r.nextInt(20)),
+        data.attribute(4).parseDate("2017-01-0" + (1 + r.nextInt(9))),
+        data.attribute(5).addRelation(bag) };
+      vals[r.nextInt(vals.length)] = Utils.missingValue();
+      data.add(new DenseInstance(i % 3 == 0 ? 0.5 : 1.0, vals));
+    }
+
+    return data;
+  }
+
+  /**
+   * Copies a dataset through the codec
+   */
+  protected static Instances copy(Instances data) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    InstancesCodec.writeStream(data, bos);
+    return InstancesCodec.readStream(new ByteArrayInputStream(
+      bos.toByteArray()));
+  }
+
+  /**
+   * Serializes an object, encoding the datasets in it if requested
+   */
+  protected static byte[] serialize(Object obj, boolean encode)
+    throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = encode ? new EncodingOutputStream(bos)
+      : new ObjectOutputStream(bos);
+    oos.writeObject(obj);
+    oos.close();
+    return bos.toByteArray();
+  }
+
+  /**
+   * Deserializes an object
+   */
+  protected static Object deserialize(byte[] bytes) throws Exception {
+    return new ObjectInputStream(new ByteArrayInputStream(bytes))
+      .readObject();
+  }
+
+  protected void checkEqual(Instances expected, Instances actual) {
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expected.classIndex(), actual.classIndex());
+    assertEquals(expected.numInstances(), actual.numInstances());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals(expected.instance(i).getClass(),
+        actual.instance(i).getClass());
+      assertEquals(expected.instance(i).weight(), actual.instance(i).weight(),
+        0);
+      assertSame(actual, actual.instance(i).dataset());
+    }
+  }
+
+  public void testDense() throws Exception {
+    Instances data = getData(20000);
+    assertTrue(InstancesCodec.canEncode(data));
+    Instances copy = copy(data);
+    checkEqual(data, copy);
+    assertEquals(InstancesCodec.INTS, InstancesCodec.getEncoding(copy, 2));
+    assertEquals(InstancesCodec.BYTES, InstancesCodec.getEncoding(copy, 1));
+
+    // string values can still be added to the copy
+    int index = copy.attribute(3).addStringValue("new");
+    assertEquals("new", copy.attribute(3).value(index));
+  }
+
+  public void testSparse() throws Exception {
+    Instances data = getData(100);
+    Instances sparse = new Instances(data, data.numInstances());
+    for (Instance inst : data) {
+      sparse.add(new SparseInstance(inst));
+    }
+    checkEqual(sparse, copy(sparse));
+  }
+
+  public void testMixedInstances() throws Exception {
+    Instances data = getData(10);
+    data.add(new SparseInstance(data.instance(0)));
+    assertFalse(InstancesCodec.canEncode(data));
+    try {
+      copy(data);
+      fail("Mixed instances should be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testSerializedDataset() throws Exception {
+    // plain serialization is unaffected by the codec, and readStream() reads
+    // its output as well
+    Instances data = getData(10);
+    byte[] bytes = serialize(data, false);
+    assertFalse(new String(bytes, "ISO-8859-1").contains("InstancesCodec"));
+    checkEqual(data, InstancesCodec.readStream(new ByteArrayInputStream(
+      bytes)));
+  }
+
+  public void testSerializationHelper() throws Exception {
+    Instances data = getData(100);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    SerializationHelper.writeInstances(bos, data);
+    byte[] bytes = bos.toByteArray();
+    checkEqual(data, SerializationHelper.readInstances(
+      new ByteArrayInputStream(bytes)));
+    checkEqual(data, (Instances) deserialize(bytes));
+
+    // plain serialized datasets are read as well
+    checkEqual(data, SerializationHelper.readInstances(
+      new ByteArrayInputStream(serialize(data, false))));
+  }
+
+  public void testSharedDataset() throws Exception {
+    Instances data = getData(10);
+    Object[] objects = new Object[] { data, data, data.instance(3) };
+    Object[] copy = (Object[]) deserialize(serialize(objects, true));
+    assertSame(copy[0], copy[1]);
+    checkEqual(data, (Instances) copy[0]);
+    assertSame(copy[0], ((Instance) copy[2]).dataset());
+  }
+
+  public static Test suite() {
+    return new TestSuite(InstancesCodecTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ModelRegistryTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests ModelRegistry. Run from the command line with:
+ * <p/>
+ * java weka.core.ModelRegistryTest
+ *
+ * @version $Revision$
+ */
+public class ModelRegistryTest extends TestCase {
+
+  /** The number of models deserialized */
+  protected static final AtomicInteger LOADS = new AtomicInteger();
+
+  /**
+   * A model that counts how often it is deserialized and is slow to load
+   */
+  protected static class Model implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected String m_Name;
+
+    protected Model(String name) {
+      m_Name = name;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+      ClassNotFoundException {
+      in.defaultReadObject();
+      LOADS.incrementAndGet();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        // ignored
+      }
+    }
+  }
+
+  /** the model files */
+  protected File[] m_Files;
+
+  /**
+   * Constructs the <code>ModelRegistryTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public ModelRegistryTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    m_Files = new File[3];
+    for (int i = 0; i < m_Files.length; i++) {
+      m_Files[i] = File.createTempFile("ModelRegistryTest", ".model");
+      SerializationHelper.write(m_Files[i].getPath(), new Model("m" + i));
+    }
+    LOADS.set(0);
+  }
+
+  @Override
+  protected void tearDown() {
+    for (File f : m_Files) {
+      f.delete();
+    }
+  }
+
+  public void testSharing() throws Exception {
+    ModelRegistry registry = new ModelRegistry();
+    Object model = registry.get(m_Files[0]);
+    assertEquals("m0", ((Model) model).m_Name);
+    assertSame(model, registry.get(m_Files[0]));
+    assertSame(model, registry.get(new File(m_Files[0].getParentFile(), "."
+      + File.separator + m_Files[0].getName())));
+    assertEquals(1, LOADS.get());
+  }
+
+  public void testConcurrentLoadsOnce() throws Exception {
+    final ModelRegistry registry = new ModelRegistry();
+    final Object[] models = new Object[4];
+    Thread[] threads = new Thread[models.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int index = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            models[index] = registry.get(m_Files[0]);
+          } catch (Exception e) {
+            // leaves the model null
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(1, LOADS.get());
+    for (Object model : models) {
+      assertNotNull(model);
+      assertSame(models[0], model);
+    }
+  }
+
+  public void testReload() throws Exception {
+    ModelRegistry registry = new ModelRegistry();
+    registry.setCheckInterval(0);
+    Object model = registry.get(m_Files[0]);
+
+    SerializationHelper.write(m_Files[0].getPath(), new Model("changed"));
+    m_Files[0].setLastModified(m_Files[0].lastModified() - 10000);
+    Object reloaded = registry.get(m_Files[0]);
+    assertNotSame(model, reloaded);
+    assertEquals("changed", ((Model) reloaded).m_Name);
+    assertEquals(2, LOADS.get());
+  }
+
+  public void testEviction() throws Exception {
+    ModelRegistry registry = new ModelRegistry();
+    registry.setMaxCachedModels(1);
+    Object pinned = registry.acquire(m_Files[0]);
+    registry.get(m_Files[1]);
+    registry.get(m_Files[2]);
+
+    assertTrue(registry.isCached(m_Files[0]));
+    assertFalse(registry.isCached(m_Files[1]));
+    assertTrue(registry.isCached(m_Files[2]));
+    assertEquals(2, registry.numCachedModels());
+    assertSame(pinned, registry.get(m_Files[0]));
+
+    registry.release(m_Files[0]);
+    assertEquals(1, registry.numCachedModels());
+  }
+
+  public void testPreload() throws Exception {
+    ModelRegistry registry = new ModelRegistry();
+    Future<Object> loading = registry.preload(m_Files[1]);
+    assertSame(loading.get(), registry.get(m_Files[1]));
+    assertEquals(1, LOADS.get());
+  }
+
+  public void testMissingFile() throws Exception {
+    ModelRegistry registry = new ModelRegistry();
+    File missing = new File(m_Files[0].getPath() + ".missing");
+    try {
+      registry.get(missing);
+      fail("Loading a missing file should fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(registry.isCached(missing));
+  }
+
+  public static Test suite() {
+    return new TestSuite(ModelRegistryTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * QuantileSketchTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests QuantileSketch and HeavyHitterSketch. Run from the command line
+ * with:
+ * <p/>
+ * java weka.core.QuantileSketchTest
+ *
+ * @version $Revision$
+ */
+public class QuantileSketchTest extends TestCase {
+
+  /** rank error allowed with the default k */
+  protected static final double RANK_TOLERANCE = 0.02;
+
+  /**
+   * Constructs the <code>QuantileSketchTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public QuantileSketchTest(String name) {
+    super(name);
+  }
+
+  protected static double[] randomData(int n, long seed) {
+    Random r = new Random(seed);
+    double[] data = new double[n];
+    for (int i = 0; i < n; i++) {
+      data[i] = r.nextGaussian() * 10 + 5;
+    }
+    return data;
+  }
+
+  /**
+   * checks that the estimate of quantile q has a rank within the tolerance
+   */
+  protected void checkRank(double[] sorted, double q, double estimate) {
+    int lo = Arrays.binarySearch(sorted, estimate);
+    assertTrue("estimate is not one of the values", lo >= 0);
+    double rank = (double) lo / sorted.length;
+    assertTrue("rank error too large for q = " + q + ": " + rank,
+      Math.abs(rank - q) <= RANK_TOLERANCE);
+  }
+
+  public void testExactForSmallInput() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 100; i >= 1; i--) {
+      sketch.update(i);
+    }
+    assertEquals(100, sketch.getN());
+    assertEquals(100, sketch.getNumRetained());
+    assertEquals(1.0, sketch.quantile(0), 0);
+    assertEquals(51.0, sketch.quantile(0.5), 0);
+    assertEquals(100.0, sketch.quantile(1), 0);
+    assertEquals(0.25, sketch.cdf(25), 1e-12);
+  }
+
+  public void testBoundedMemoryAndAccuracy() {
+    double[] data = randomData(200000, 1);
+    QuantileSketch sketch = new QuantileSketch();
+    for (double d : data) {
+      sketch.update(d);
+    }
+    Arrays.sort(data);
+
+    assertEquals(data.length, sketch.getN());
+    assertTrue("too many values retained: " + sketch.getNumRetained(),
+      sketch.getNumRetained() < 3 * QuantileSketch.DEFAULT_K);
+    assertEquals(data[0], sketch.getMin(), 0);
+    assertEquals(data[data.length - 1], sketch.getMax(), 0);
+    for (double q = 0.05; q < 1; q += 0.05) {
+      checkRank(data, q, sketch.quantile(q));
+    }
+  }
+
+  public void testMerge() {
+    double[] data = randomData(100000, 2);
+    QuantileSketch[] parts = new QuantileSketch[7];
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = new QuantileSketch();
+    }
+    for (int i = 0; i < data.length; i++) {
+      parts[i % parts.length].update(data[i]);
+    }
+    QuantileSketch merged = new QuantileSketch();
+    for (QuantileSketch p : parts) {
+      merged.merge(p);
+    }
+    Arrays.sort(data);
+
+    assertEquals(data.length, merged.getN());
+    assertTrue(merged.getNumRetained() < 3 * QuantileSketch.DEFAULT_K);
+    for (double q = 0.05; q < 1; q += 0.05) {
+      checkRank(data, q, merged.quantile(q));
+    }
+  }
+
+  public void testWeightedUpdate() {
+    QuantileSketch weighted = new QuantileSketch();
+    QuantileSketch unweighted = new QuantileSketch();
+    for (int i = 0; i < 50; i++) {
+      weighted.update(i, 3);
+      for (int j = 0; j < 3; j++) {
+        unweighted.update(i);
+      }
+    }
+    assertEquals(unweighted.getN(), weighted.getN());
+    assertEquals(unweighted.cdf(20), weighted.cdf(20), 1e-12);
+  }
+
+  public void testBytesRoundTrip() {
+    QuantileSketch sketch = new QuantileSketch(50);
+    for (double d : randomData(10000, 3)) {
+      sketch.update(d);
+    }
+    ByteBuffer buff = ByteBuffer.allocate(sketch.byteSize());
+    sketch.toBytes(buff);
+    assertEquals(0, buff.remaining());
+    buff.flip();
+    QuantileSketch decoded = QuantileSketch.fromBytes(buff);
+
+    assertEquals(sketch.getN(), decoded.getN());
+    assertEquals(sketch.getK(), decoded.getK());
+    for (double q = 0.1; q < 1; q += 0.1) {
+      assertEquals(sketch.quantile(q), decoded.quantile(q), 0);
+    }
+  }
+
+  public void testHeavyHitters() {
+    // zipf-like stream: item i appears roughly 10000 / (i + 1) times
+    HeavyHitterSketch sketch = new HeavyHitterSketch(50);
+    HeavyHitterSketch part1 = new HeavyHitterSketch(50);
+    HeavyHitterSketch part2 = new HeavyHitterSketch(50);
+    int[] counts = new int[2000];
+    Random r = new Random(4);
+    for (int n = 0; n < 100000; n++) {
+      int item = (int) Math.min(counts.length - 1,
+        Math.floor(Math.exp(r.nextDouble() * Math.log(counts.length))) - 1);
+      counts[item]++;
+      sketch.add("v" + item);
+      (n % 2 == 0 ? part1 : part2).add("v" + item);
+    }
+    part1.merge(part2);
+
+    for (HeavyHitterSketch s : new HeavyHitterSketch[] { sketch, part1 }) {
+      assertFalse(s.isExact());
+      assertEquals(100000, s.getTotal(), 1e-6);
+      assertTrue(s.size() <= 50);
+      assertEquals("v0", s.getTopItems(1).get(0));
+      for (int i = 0; i < counts.length; i++) {
+        String item = "v" + i;
+        if (counts[i] > s.getTotal() / s.getCapacity()) {
+          assertTrue("frequent item not tracked: " + item, s.contains(item));
+        }
+        if (s.contains(item)) {
+          assertTrue(s.getCount(item) >= counts[i]);
+          assertTrue(s.getCount(item) - s.getError(item) <= counts[i]);
+        }
+      }
+    }
+
+    HeavyHitterSketch small = new HeavyHitterSketch(10);
+    small.add("a");
+    small.add("b", 2);
+    small.add("a");
+    assertTrue(small.isExact());
+    assertEquals(2.0, small.getCount("a"), 0);
+    assertEquals(0.0, small.getCount("c"), 0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(QuantileSketchTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
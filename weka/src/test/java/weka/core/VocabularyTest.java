@@ -0,0 +1,148 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * VocabularyTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests Vocabulary. Run from the command line with:
+ * <p/>
+ * java weka.core.VocabularyTest
+ *
+ * @version $Revision$
+ */
+public class VocabularyTest extends TestCase {
+
+  /**
+   * Constructs the <code>VocabularyTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public VocabularyTest(String name) {
+    super(name);
+  }
+
+  public void testIds() {
+    Vocabulary vocab = new Vocabulary();
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(i, vocab.addToken("word" + i));
+    }
+    assertEquals(5000, vocab.size());
+    assertEquals(17, vocab.addToken("word17"));
+    assertEquals(4999, vocab.getId("word4999"));
+    assertEquals(-1, vocab.getId("unseen"));
+    assertEquals("word123", vocab.getToken(123));
+    assertEquals(5000, vocab.size());
+  }
+
+  public void testCompact() throws Exception {
+    Vocabulary vocab = new Vocabulary();
+    boolean[] keep = new boolean[Vocabulary.MIN_COMPACT_SIZE * 2];
+    int numKept = 0;
+    for (int i = 0; i < keep.length; i++) {
+      vocab.addToken("w" + i);
+      keep[i] = i % 3 == 0;
+      numKept += keep[i] ? 1 : 0;
+    }
+    assertTrue(vocab.isSparse(numKept));
+    assertFalse(vocab.isSparse(keep.length));
+
+    Vocabulary compacted = vocab.compact(keep);
+    assertEquals(numKept, compacted.size());
+    assertEquals(0, compacted.getId("w0"));
+    assertEquals(1, compacted.getId("w3"));
+    assertEquals(-1, compacted.getId("w1"));
+    assertEquals(keep.length, vocab.size());
+
+    Vocabulary copy =
+      (Vocabulary) new SerializedObject(compacted).getObject();
+    assertEquals(numKept, copy.size());
+    assertEquals(2, copy.getId("w6"));
+    assertEquals(numKept, copy.addToken("new"));
+  }
+
+  public void testConcurrentAdds() throws Exception {
+    final Vocabulary vocab = new Vocabulary();
+    final AtomicBoolean consistent = new AtomicBoolean(true);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            int id = vocab.addToken("w" + i);
+            if (!vocab.getToken(id).equals("w" + i)) {
+              consistent.set(false);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertTrue(consistent.get());
+    assertEquals(20000, vocab.size());
+    Set<String> tokens = new HashSet<String>();
+    for (int id = 0; id < vocab.size(); id++) {
+      assertTrue(tokens.add(vocab.getToken(id)));
+      assertEquals(id, vocab.getId(vocab.getToken(id)));
+    }
+  }
+
+  public void testDocument() {
+    Vocabulary.Document doc = new Vocabulary.Document();
+    doc.add(100, 1);
+    doc.add(3, 2);
+    doc.add(100, 0.5);
+    assertEquals(2, doc.numTerms());
+    assertEquals(100, doc.id(0));
+    assertEquals(1.5, doc.count(0), 0);
+    assertEquals(3, doc.id(1));
+
+    doc.clear();
+    assertEquals(0, doc.numTerms());
+    doc.add(3, 1);
+    for (int id = 0; id < 50; id++) {
+      doc.add(id, 1);
+    }
+    assertEquals(50, doc.numTerms());
+    assertEquals(3, doc.id(0));
+    assertEquals(2.0, doc.count(0), 0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(VocabularyTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -19,8 +19,13 @@
 
 package weka.core.converters;
 
+import java.io.File;
+import java.io.FileInputStream;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
 
 /**
  * Tests SerializedInstancesLoader/SerializedInstancesSaver. Run from the command line with:<p/>
@@ -59,6 +64,58 @@ public class SerializedInstancesTest
     return new SerializedInstancesSaver();
   }
 
+  /**
+   * saves the test data with the given saver options and returns the content
+   * of the file
+   * 
+   * @param options the options of the saver
+   * @return the content of the file, one char per byte
+   * @throws Exception if saving fails
+   */
+  protected String save(String[] options) throws Exception {
+    SerializedInstancesSaver saver = (SerializedInstancesSaver) getSaver();
+    saver.setOptions(options);
+    saver.setInstances(m_Instances);
+    saver.setFile(new File(m_ExportFilename));
+    saver.writeBatch();
+
+    File file = new File(m_ExportFilename);
+    byte[] content = new byte[(int) file.length()];
+    FileInputStream in = new FileInputStream(file);
+    int numRead = 0;
+    while (numRead < content.length) {
+      numRead += in.read(content, numRead, content.length - numRead);
+    }
+    in.close();
+    return new String(content, "ISO-8859-1");
+  }
+
+  /**
+   * tests that datasets are serialized as plain objects by default.
+   * 
+   * @throws Exception if the test fails
+   */
+  public void testDefaultEncoding() throws Exception {
+    assertFalse(save(new String[0]).contains("InstancesCodec"));
+    Instances data = (Instances) SerializationHelper.read(m_ExportFilename);
+    compareDatasets(m_Instances, data);
+  }
+
+  /**
+   * tests the compact encoding option.
+   * 
+   * @throws Exception if the test fails
+   */
+  public void testCompactEncoding() throws Exception {
+    assertTrue(save(new String[] { "-compact" }).contains("InstancesCodec"));
+
+    SerializedInstancesLoader loader = new SerializedInstancesLoader();
+    loader.setFile(new File(m_ExportFilename));
+    compareDatasets(m_Instances, loader.getDataSet());
+    compareDatasets(m_Instances,
+      SerializationHelper.readInstances(m_ExportFilename));
+  }
+
   /**
    * returns a test suite
    * 
@@ -129,6 +129,21 @@ public abstract class AbstractNearestNeighbourSearchTest extends TestCase {
    */
   public abstract NearestNeighbourSearch getNearestNeighbourSearch();
 
+  /**
+   * Returns a tree-based search of the type under test, for checking parallel
+   * building and logarithmic updates. The default returns null, which skips
+   * those tests.
+   *
+   * @param numSlots the number of execution slots to build the tree with
+   * @param logarithmicUpdates whether to add instances with the logarithmic
+   *          method
+   * @return the configured search, or null if not tree-based
+   */
+  protected NearestNeighbourSearch getTreeSearch(int numSlots,
+    boolean logarithmicUpdates) {
+    return null;
+  }
+
   /**
    * Called by JUnit before each test method. This implementation creates the
    * default NearestNeighbourSearch to test and loads a test set of Instances.
@@ -314,6 +329,118 @@ public abstract class AbstractNearestNeighbourSearchTest extends TestCase {
     }
   }
 
+  /**
+   * Compares the neighbours and distances of the given searches on all the
+   * training instances.
+   * 
+   * @param queries the instances to find the neighbours for
+   * @param expected the search to compare against
+   * @param actual the search to check
+   * @param compareNeighbors whether to compare the neighbours as well,
+   * rather than just the distances
+   * @throws Exception if the search fails
+   */
+  protected void compareSearches(Instances queries,
+    NearestNeighbourSearch expected, NearestNeighbourSearch actual,
+    boolean compareNeighbors) throws Exception {
+    Instances neighborsExpected;
+    Instances neighborsActual;
+    double[] distExpected;
+    double[] distActual;
+    int i;
+    int n;
+
+    for (i = 0; i < queries.numInstances(); i++) {
+      neighborsExpected = expected.kNearestNeighbours(queries.instance(i),
+        m_NumNeighbors);
+      distExpected = expected.getDistances();
+      neighborsActual = actual.kNearestNeighbours(queries.instance(i),
+        m_NumNeighbors);
+      distActual = actual.getDistances();
+      assertEquals("Number of neighbors differ for instance #" + (i + 1),
+        neighborsExpected.numInstances(), neighborsActual.numInstances());
+      for (n = 0; n < distExpected.length; n++) {
+        assertEquals("Distances differ for instance #" + (i + 1),
+          distExpected[n], distActual[n], 1e-12);
+        if (compareNeighbors)
+          assertEquals("Neighbors differ for instance #" + (i + 1),
+            neighborsExpected.instance(n).toString(),
+            neighborsActual.instance(n).toString());
+      }
+    }
+  }
+
+  /**
+   * Tests whether building the tree in parallel results in the same tree.
+   * Skipped if the search under test isn't tree-based.
+   *
+   * @see #getTreeSearch(int, boolean)
+   */
+  public void testParallelBuild() {
+    NearestNeighbourSearch sequential;
+    NearestNeighbourSearch search;
+    String[] measures = { "measureTreeSize", "measureNumLeaves",
+      "measureMaxDepth" };
+
+    sequential = getTreeSearch(1, false);
+    if (sequential == null) {
+      return;
+    }
+
+    try {
+      sequential.setInstances(m_Instances);
+      search = getTreeSearch(4, false);
+      search.setInstances(m_Instances);
+      for (String measure : measures) {
+        assertEquals(measure + " differs",
+          sequential.getMeasure(measure), search.getMeasure(measure), 0.0);
+      }
+      compareSearches(m_Instances, sequential, search, true);
+    } catch (Exception e) {
+      fail("Parallel build failed: " + e);
+    }
+  }
+
+  /**
+   * Tests whether instances that get added with the logarithmic method can
+   * be found. The queries are copies of the training instances, so that they
+   * don't get skipped as in hold-one-out cross-validation. Skipped if the
+   * search under test isn't tree-based.
+   *
+   * @see #getTreeSearch(int, boolean)
+   */
+  public void testLogarithmicUpdates() {
+    LinearNNSearch linear;
+    NearestNeighbourSearch search;
+    Instances dataLinear;
+    Instances data;
+    int i;
+
+    search = getTreeSearch(1, true);
+    if (search == null) {
+      return;
+    }
+
+    try {
+      dataLinear = new Instances(m_Instances, 0);
+      data = new Instances(m_Instances, 0);
+      linear = new LinearNNSearch();
+      linear.setInstances(dataLinear);
+      search.setInstances(data);
+      for (i = 0; i < m_Instances.numInstances(); i++) {
+        dataLinear.add(m_Instances.instance(i));
+        linear.update(dataLinear.instance(i));
+        data.add(m_Instances.instance(i));
+        search.update(data.instance(i));
+        if (i % 100 == 0)
+          compareSearches(m_Instances, linear, search, false);
+      }
+      compareSearches(m_Instances, linear, search, false);
+    } catch (Exception e) {
+      fail("Logarithmic updates failed: " + e);
+    }
+  }
+
   /**
    * Runs the NearestNeighbourSearch with the given data and returns the
    * generated results.
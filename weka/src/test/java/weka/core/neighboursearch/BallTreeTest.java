@@ -21,6 +21,7 @@ package weka.core.neighboursearch;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.neighboursearch.balltrees.TopDownConstructor;
 
 /**
  * Tests BallTree. Run from the command line with: <p/>
@@ -40,7 +41,21 @@ public class BallTreeTest
   public NearestNeighbourSearch getNearestNeighbourSearch() {
     return new BallTree();
   }
-  
+
+  /**
+   * Creates a BallTree with the given number of execution slots and update
+   * method
+   */
+  @Override
+  protected NearestNeighbourSearch getTreeSearch(int numSlots,
+    boolean logarithmicUpdates) {
+    BallTree result = new BallTree();
+    ((TopDownConstructor) result.getBallTreeConstructor())
+      .setNumExecutionSlots(numSlots);
+    result.setLogarithmicUpdates(logarithmicUpdates);
+    return result;
+  }
+
   public static Test suite() {
     return new TestSuite(BallTreeTest.class);
   }
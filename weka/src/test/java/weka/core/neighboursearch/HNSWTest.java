@@ -0,0 +1,103 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+/**
+ * Tests HNSW. Run from the command line with: <p/>
+ * java weka.core.neighboursearch.HNSWTest
+ *
+ * @version $Revision$
+ */
+public class HNSWTest
+  extends AbstractNearestNeighbourSearchTest {
+
+  public HNSWTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default HNSW */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return new HNSW();
+  }
+
+  /**
+   * Tests whether the recall measured against a linear search is reasonable.
+   */
+  public void testRecall() {
+    HNSW search;
+    int i;
+
+    search = new HNSW();
+    search.setMeasurePerformance(true);
+    search.setRecallCheckInterval(1);
+    try {
+      search.setInstances(m_Instances);
+      for (i = 0; i < m_Instances.numInstances(); i++) {
+        search.kNearestNeighbours(m_Instances.instance(i), m_NumNeighbors);
+      }
+      assertEquals("Not all queries were checked",
+        (double) m_Instances.numInstances(),
+        search.getMeasure("measureNumRecallChecks"), 0.0);
+      assertTrue("Mean recall too low",
+        search.getMeasure("measureMeanRecall") >= 0.9);
+    } catch (Exception e) {
+      fail("Recall check failed: " + e);
+    }
+  }
+
+  /**
+   * Tests whether instances that get added incrementally can be found.
+   */
+  public void testUpdate() {
+    HNSW search;
+    Instances data;
+    Instances neighbors;
+    int i;
+
+    try {
+      data = new Instances(m_Instances, 0);
+      search = new HNSW();
+      search.setInstances(data);
+      for (i = 0; i < m_Instances.numInstances(); i++) {
+        data.add(m_Instances.instance(i));
+        search.update(data.instance(i));
+      }
+      for (i = 0; i < data.numInstances(); i += 50) {
+        neighbors = search.kNearestNeighbours(data.instance(i), m_NumNeighbors);
+        assertTrue("Too few neighbors returned",
+          neighbors.numInstances() >= m_NumNeighbors);
+      }
+    } catch (Exception e) {
+      fail("Incremental update failed: " + e);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(HNSWTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
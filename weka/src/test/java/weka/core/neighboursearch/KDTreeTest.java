@@ -40,7 +40,20 @@ public class KDTreeTest
   public NearestNeighbourSearch getNearestNeighbourSearch() {
     return new KDTree();
   }
-  
+
+  /**
+   * Creates a KDTree with the given number of execution slots and update
+   * method
+   */
+  @Override
+  protected NearestNeighbourSearch getTreeSearch(int numSlots,
+    boolean logarithmicUpdates) {
+    KDTree result = new KDTree();
+    result.setNumExecutionSlots(numSlots);
+    result.setLogarithmicUpdates(logarithmicUpdates);
+    return result;
+  }
+
   public static Test suite() {
     return new TestSuite(KDTreeTest.class);
   }
@@ -21,6 +21,8 @@ package weka.core.neighboursearch;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.EuclideanDistance;
+import weka.core.Instances;
 
 /**
  * Tests LinearNNSearch. Run from the command line with: <p/>
@@ -41,6 +43,102 @@ public class LinearNNSearchTest
     return new LinearNNSearch();
   }
   
+  /**
+   * Compares the neighbours and distances of the given search setups.
+   * 
+   * @param data the training data
+   * @param dontNormalize whether to turn off normalization
+   * @throws Exception if the search fails
+   */
+  protected void compareDenseEngine(Instances data, boolean dontNormalize)
+    throws Exception {
+    LinearNNSearch plain;
+    LinearNNSearch dense;
+    EuclideanDistance df;
+    Instances neighborsPlain;
+    Instances neighborsDense;
+    double[] distPlain;
+    double[] distDense;
+    int i;
+    int n;
+
+    plain = new LinearNNSearch();
+    df = new EuclideanDistance();
+    df.setDontNormalize(dontNormalize);
+    plain.setDistanceFunction(df);
+    plain.setInstances(data);
+    dense = new LinearNNSearch();
+    df = new EuclideanDistance();
+    df.setDontNormalize(dontNormalize);
+    dense.setDistanceFunction(df);
+    dense.setUseDenseEngine(true);
+    dense.setInstances(data);
+
+    for (i = 0; i < data.numInstances(); i++) {
+      neighborsPlain = plain.kNearestNeighbours(data.instance(i), m_NumNeighbors);
+      distPlain = plain.getDistances();
+      neighborsDense = dense.kNearestNeighbours(data.instance(i), m_NumNeighbors);
+      distDense = dense.getDistances();
+      assertEquals("Number of neighbors differ for instance #" + (i + 1),
+        neighborsPlain.numInstances(), neighborsDense.numInstances());
+      for (n = 0; n < distPlain.length; n++) {
+        assertEquals("Distances differ for instance #" + (i + 1),
+          distPlain[n], distDense[n], 0.0);
+        assertEquals("Neighbors differ for instance #" + (i + 1),
+          neighborsPlain.instance(n).toString(),
+          neighborsDense.instance(n).toString());
+      }
+    }
+  }
+
+  /**
+   * Tests whether the dense engine returns the same neighbours and distances
+   * as the distance function.
+   */
+  public void testDenseEngine() {
+    try {
+      compareDenseEngine(m_Instances, false);
+      compareDenseEngine(m_Instances, true);
+    } catch (Exception e) {
+      fail("Dense engine failed: " + e);
+    }
+  }
+
+  /**
+   * Tests whether the dense engine picks up instances that get added after
+   * the search was initialized.
+   */
+  public void testDenseEngineUpdate() {
+    LinearNNSearch plain;
+    LinearNNSearch dense;
+    Instances dataPlain;
+    Instances dataDense;
+    int i;
+
+    try {
+      dataPlain = new Instances(m_Instances, 0);
+      dataDense = new Instances(m_Instances, 0);
+      plain = new LinearNNSearch();
+      plain.setInstances(dataPlain);
+      dense = new LinearNNSearch();
+      dense.setUseDenseEngine(true);
+      dense.setInstances(dataDense);
+      for (i = 0; i < m_Instances.numInstances(); i++) {
+        dataPlain.add(m_Instances.instance(i));
+        plain.update(m_Instances.instance(i));
+        dataDense.add(m_Instances.instance(i));
+        dense.update(m_Instances.instance(i));
+        if (i % 50 == 0) {
+          assertEquals("Neighbors differ after update #" + (i + 1),
+            plain.kNearestNeighbours(m_Instances.instance(i), 1).toString(),
+            dense.kNearestNeighbours(m_Instances.instance(i), 1).toString());
+        }
+      }
+    } catch (Exception e) {
+      fail("Dense engine failed: " + e);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(LinearNNSearchTest.class);
   }
@@ -0,0 +1,177 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ParallelExperimentTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.experiment;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import javax.swing.DefaultListModel;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.datagenerators.classifiers.classification.RDG1;
+
+/**
+ * Tests ParallelExperiment. Run from the command line with:
+ * <p/>
+ * java weka.experiment.ParallelExperimentTest
+ *
+ * @version $Revision$
+ */
+public class ParallelExperimentTest extends TestCase {
+
+  /** the files created by the test */
+  protected File[] m_files;
+
+  /**
+   * Constructs the <code>ParallelExperimentTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public ParallelExperimentTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Listener that reports the results of the first run as already present
+   */
+  protected static class SkipFirstRunListener extends InstancesResultListener {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean isResultRequired(ResultProducer rp, Object[] key) {
+      return !"1".equals(key[1]);
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    m_files = new File[4];
+    for (int i = 0; i < m_files.length; i++) {
+      m_files[i] = File.createTempFile("ParallelExperimentTest", ".arff");
+    }
+    for (int i = 0; i < 2; i++) {
+      RDG1 generator = new RDG1();
+      generator.setSeed(i + 1);
+      generator.setNumExamples(200);
+      generator.setRelationName("data" + i);
+      generator.setDatasetFormat(generator.defineDataFormat());
+      FileWriter writer = new FileWriter(m_files[i]);
+      writer.write(generator.generateExamples().toString());
+      writer.close();
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    for (File f : m_files) {
+      f.delete();
+    }
+  }
+
+  /**
+   * Runs a cross-validation experiment with J48 on the two datasets
+   */
+  protected Instances runExperiment(Experiment exp,
+    InstancesResultListener listener, File output) throws Exception {
+    DefaultListModel<File> datasets = new DefaultListModel<File>();
+    datasets.addElement(m_files[0]);
+    datasets.addElement(m_files[1]);
+    exp.setDatasets(datasets);
+    exp.setRunLower(1);
+    exp.setRunUpper(3);
+
+    ClassifierSplitEvaluator se = new ClassifierSplitEvaluator();
+    se.setClassifier(new J48());
+    CrossValidationResultProducer cv = new CrossValidationResultProducer();
+    cv.setNumFolds(5);
+    cv.setSplitEvaluator(se);
+    exp.setResultProducer(cv);
+
+    listener.setOutputFile(output);
+    exp.setResultListener(listener);
+
+    exp.initialize();
+    exp.runExperiment();
+    exp.postProcess();
+
+    return DataSource.read(output.getPath());
+  }
+
+  public void testSameResultsAsExperiment() throws Exception {
+    Instances expected = runExperiment(new Experiment(),
+      new InstancesResultListener(), m_files[2]);
+    ParallelExperiment parallel = new ParallelExperiment();
+    parallel.setNumExecutionSlots(3);
+    Instances actual = runExperiment(parallel, new InstancesResultListener(),
+      m_files[3]);
+
+    assertEquals(2 * 3 * 5, expected.numInstances());
+    assertEquals(expected.numInstances(), actual.numInstances());
+    String[] columns = { "Key_Dataset", "Key_Run", "Key_Fold",
+      "Percent_correct", "Number_of_testing_instances" };
+    for (int i = 0; i < expected.numInstances(); i++) {
+      for (String column : columns) {
+        int att = expected.attribute(column).index();
+        assertEquals(column + " of result " + i,
+          expected.instance(i).toString(att), actual.instance(i).toString(att));
+      }
+    }
+  }
+
+  public void testSkipsResultsThatAreNotRequired() throws Exception {
+    ParallelExperiment parallel = new ParallelExperiment();
+    parallel.setNumExecutionSlots(2);
+    Instances results = runExperiment(parallel, new SkipFirstRunListener(),
+      m_files[3]);
+
+    assertEquals(2 * 2 * 5, results.numInstances());
+    int runAtt = results.attribute("Key_Run").index();
+    for (int i = 0; i < results.numInstances(); i++) {
+      assertFalse(results.instance(i).toString(runAtt).equals("1"));
+    }
+  }
+
+  public void testOptions() throws Exception {
+    ParallelExperiment exp = new ParallelExperiment();
+    exp.getDatasets().addElement(m_files[0]);
+    exp.setNumExecutionSlots(4);
+
+    ParallelExperiment copy = new ParallelExperiment();
+    copy.setOptions(exp.getOptions());
+    assertEquals(4, copy.getNumExecutionSlots());
+    assertEquals(1, copy.getDatasets().size());
+  }
+
+  public static Test suite() {
+    return new TestSuite(ParallelExperimentTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
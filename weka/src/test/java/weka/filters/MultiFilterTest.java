@@ -19,10 +19,15 @@
 
 package weka.filters;
 
+import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.filters.unsupervised.attribute.Add;
 import weka.filters.unsupervised.attribute.AddExpression;
 import weka.filters.unsupervised.attribute.Center;
+import weka.filters.unsupervised.attribute.NominalToBinary;
+import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 
 import junit.framework.Test;
@@ -105,6 +110,48 @@ public class MultiFilterTest extends AbstractFilterTest {
     assertEquals(m_Instances.numInstances(),  result.numInstances());
   }
 
+  /** Creates the filters of a chain that can be fused */
+  protected Filter[] getFusableFilters() {
+    Remove remove = new Remove();
+    remove.setAttributeIndices("2");
+    return new Filter[] { new ReplaceMissingValues(), new Normalize(),
+      new NominalToBinary(), remove };
+  }
+
+  /**
+   * tests that fused filters produce the same output as the filters applied
+   * one after the other
+   */
+  public void testFused() throws Exception {
+    Instances data = new Instances(m_Instances);
+    data.deleteAttributeType(Attribute.STRING);
+    data.deleteAttributeType(Attribute.RELATIONAL);
+
+    Filter[] filters = getFusableFilters();
+    Instances expected = data;
+    for (Filter filter : filters) {
+      filter.setInputFormat(expected);
+      expected = Filter.useFilter(expected, filter);
+    }
+
+    MultiFilter multi = new MultiFilter();
+    multi.setFilters(getFusableFilters());
+    multi.setInputFormat(data);
+    Instances first = Filter.useFilter(data, multi);
+    assertNull(compareDatasets(expected, first));
+    assertTrue(multi.canTransformValues());
+
+    // second batch and single instances take the fused path
+    Instances second = Filter.useFilter(data, multi);
+    assertNull(compareDatasets(expected, second));
+    for (int i = 0; i < data.numInstances(); i++) {
+      assertTrue(multi.input(data.instance(i)));
+      Instance inst = multi.output();
+      assertEquals(expected.instance(i).toString(), inst.toString());
+      assertEquals(expected.instance(i).weight(), inst.weight(), 0);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(MultiFilterTest.class);
   }
@@ -0,0 +1,184 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FlowMetricsTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.knowledgeflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.DenseInstance;
+import weka.core.WekaException;
+import weka.gui.Logger;
+import weka.knowledgeflow.steps.BaseStep;
+
+/**
+ * Tests StepMetrics and FlowMetrics. Run from the command line with:
+ * <p/>
+ * java weka.knowledgeflow.FlowMetricsTest
+ *
+ * @version $Revision$
+ */
+public class FlowMetricsTest extends TestCase {
+
+  /** Number of rows to push through the flow */
+  protected static final int NUM_ROWS = 20;
+
+  /** Busy time of the upstream step per row (nanoseconds) */
+  protected static final long UPSTREAM_NANOS = 1000000L;
+
+  /** Busy time of the downstream step per row (nanoseconds) */
+  protected static final long DOWNSTREAM_NANOS = 3000000L;
+
+  /**
+   * A step that spins for a while on each row and then (optionally) passes the
+   * row on
+   */
+  protected static class SpinStep extends BaseStep {
+
+    private static final long serialVersionUID = 1L;
+
+    /** How long to spin for on each row */
+    protected long m_spinNanos;
+
+    /** True if rows are passed on */
+    protected boolean m_output;
+
+    protected SpinStep(String name, long spinNanos, boolean output) {
+      setName(name);
+      m_spinNanos = spinNanos;
+      m_output = output;
+    }
+
+    @Override
+    public void stepInit() {
+    }
+
+    @Override
+    public List<String> getIncomingConnectionTypes() {
+      return Arrays.asList(StepManager.CON_INSTANCE);
+    }
+
+    @Override
+    public List<String> getOutgoingConnectionTypes() {
+      return m_output ? Arrays.asList(StepManager.CON_INSTANCE)
+        : new ArrayList<String>();
+    }
+
+    @Override
+    public void processIncoming(Data data) throws WekaException {
+      long start = System.nanoTime();
+      while (System.nanoTime() - start < m_spinNanos) {
+        // busy
+      }
+      if (m_output) {
+        getStepManager().outputData(StepManager.CON_INSTANCE,
+          new Data(StepManager.CON_INSTANCE, data.getPrimaryPayload()));
+      }
+    }
+  }
+
+  /**
+   * A log that discards everything
+   */
+  protected static class QuietLog implements Logger {
+
+    @Override
+    public void logMessage(String message) {
+    }
+
+    @Override
+    public void statusMessage(String message) {
+    }
+  }
+
+  /**
+   * Constructs the <code>FlowMetricsTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public FlowMetricsTest(String name) {
+    super(name);
+  }
+
+  public void testSelfTimeOfTwoStepFlow() throws Exception {
+    BaseExecutionEnvironment env = new BaseExecutionEnvironment();
+    env.setLog(new QuietLog());
+
+    Flow flow = new Flow();
+    flow.setFlowName("two steps");
+    StepManagerImpl upstream =
+      new StepManagerImpl(new SpinStep("Upstream", UPSTREAM_NANOS, true));
+    StepManagerImpl downstream =
+      new StepManagerImpl(new SpinStep("Downstream", DOWNSTREAM_NANOS, false));
+    flow.addStep(upstream);
+    flow.addStep(downstream);
+    assertTrue(flow.connectSteps(upstream, downstream,
+      StepManager.CON_INSTANCE));
+    upstream.setExecutionEnvironment(env);
+    downstream.setExecutionEnvironment(env);
+
+    FlowMetrics metrics = new FlowMetrics(flow);
+    long start = System.nanoTime();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      upstream.processIncoming(new Data(StepManager.CON_INSTANCE,
+        new DenseInstance(1.0, new double[] { i })));
+    }
+    long elapsed = System.nanoTime() - start;
+    metrics.finished();
+
+    StepMetrics up = metrics.getStepMetrics("Upstream");
+    StepMetrics down = metrics.getStepMetrics("Downstream");
+    assertEquals(NUM_ROWS, up.getRowsIn());
+    assertEquals(NUM_ROWS, up.getRowsOut());
+    assertEquals(NUM_ROWS, up.getNumCalls());
+    assertEquals(NUM_ROWS, down.getRowsIn());
+    assertEquals(0, down.getRowsOut());
+    assertEquals(NUM_ROWS, down.getNumCalls());
+    assertEquals(NUM_ROWS, metrics.getRowsIn("Downstream"));
+
+    // each step is charged at least its own busy time...
+    assertTrue(up.getProcessingNanos() >= NUM_ROWS * UPSTREAM_NANOS);
+    assertTrue(down.getProcessingNanos() >= NUM_ROWS * DOWNSTREAM_NANOS);
+    // ...but the upstream step is not charged for the downstream step,
+    // so the self times add up to no more than the wall clock time
+    assertTrue("Upstream step charged for downstream processing",
+      up.getProcessingNanos() < NUM_ROWS * DOWNSTREAM_NANOS);
+    assertTrue("Self times overlap",
+      up.getProcessingNanos() + down.getProcessingNanos() <= elapsed);
+
+    assertEquals("Downstream", metrics.getSlowestStep());
+    String report = metrics.getReport();
+    assertTrue(report.contains("Upstream"));
+    assertTrue(report.contains("Downstream"));
+  }
+
+  public static Test suite() {
+    return new TestSuite(FlowMetricsTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
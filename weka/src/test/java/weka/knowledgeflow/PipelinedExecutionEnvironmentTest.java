@@ -0,0 +1,184 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PipelinedExecutionEnvironmentTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.knowledgeflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.WekaException;
+import weka.gui.Logger;
+import weka.knowledgeflow.steps.BaseStep;
+import weka.knowledgeflow.steps.ConcurrentStreamHandler;
+
+/**
+ * Tests PipelinedExecutionEnvironment. Run from the command line with:
+ * <p/>
+ * java weka.knowledgeflow.PipelinedExecutionEnvironmentTest
+ *
+ * @version $Revision$
+ */
+public class PipelinedExecutionEnvironmentTest extends TestCase {
+
+  /**
+   * A step that fails on a given row, or when asked to process the stream
+   * concurrently
+   */
+  protected static class FailingStep extends BaseStep implements
+    ConcurrentStreamHandler {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of rows processed */
+    protected final AtomicInteger m_rows = new AtomicInteger();
+
+    /** The row to fail on, or -1 */
+    protected int m_failOn;
+
+    protected FailingStep(int failOn) {
+      m_failOn = failOn;
+    }
+
+    @Override
+    public void stepInit() {
+    }
+
+    @Override
+    public List<String> getIncomingConnectionTypes() {
+      return Arrays.asList(StepManager.CON_INSTANCE);
+    }
+
+    @Override
+    public List<String> getOutgoingConnectionTypes() {
+      return new ArrayList<String>();
+    }
+
+    @Override
+    public void processIncoming(Data data) throws WekaException {
+      if (m_rows.incrementAndGet() == m_failOn) {
+        throw new IllegalStateException("row " + m_failOn);
+      }
+    }
+
+    @Override
+    public boolean enableConcurrentStreaming() {
+      throw new IllegalStateException("concurrent");
+    }
+  }
+
+  /**
+   * A log that collects the messages
+   */
+  protected static class CollectingLog implements Logger {
+
+    protected final List<String> m_messages = new ArrayList<String>();
+
+    @Override
+    public synchronized void logMessage(String message) {
+      m_messages.add(message);
+    }
+
+    @Override
+    public void statusMessage(String message) {
+    }
+
+    protected synchronized boolean contains(String text) {
+      for (String m : m_messages) {
+        if (m.contains(text)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Constructs the <code>PipelinedExecutionEnvironmentTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public PipelinedExecutionEnvironmentTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Streams rows into a stage of a step until the stage stops, and checks
+   * that the failure is logged and stops the flow
+   */
+  protected void checkFails(FailingStep step, int replicas, String message)
+    throws Exception {
+    CollectingLog log = new CollectingLog();
+    final PipelinedExecutionEnvironment env =
+      new PipelinedExecutionEnvironment();
+    env.setLog(log);
+    env.m_queueCapacity = 4;
+    env.m_numReplicas = replicas;
+    env.m_stageService = Executors.newCachedThreadPool();
+    final StepManagerImpl manager = new StepManagerImpl(step);
+    manager.setExecutionEnvironment(env);
+
+    final PipelinedExecutionEnvironment.PipelineStage stage =
+      env.getStage(manager);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 1000; i++) {
+            stage.put(new Data(StepManager.CON_INSTANCE));
+          }
+        } catch (InterruptedException ex) {
+          // ends the stream
+        }
+      }
+    };
+    producer.start();
+    producer.join(10000);
+
+    assertFalse("Upstream step still blocked", producer.isAlive());
+    assertTrue(stage.m_stopped);
+    assertTrue(step.m_rows.get() < 1000);
+    assertFalse(env.hasPendingWork());
+    assertFalse(manager.isStepBusy());
+    assertTrue(log.contains(message));
+  }
+
+  public void testStepThatThrows() throws Exception {
+    checkFails(new FailingStep(3), 1, "row 3");
+  }
+
+  public void testEnableConcurrentStreamingThatThrows() throws Exception {
+    checkFails(new FailingStep(-1), 2, "concurrent");
+  }
+
+  public static Test suite() {
+    return new TestSuite(PipelinedExecutionEnvironmentTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
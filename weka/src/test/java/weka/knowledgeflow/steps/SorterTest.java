@@ -0,0 +1,243 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SorterTest.java
+ * Copyright (C) 2017 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.knowledgeflow.steps;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Environment;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Tests the run files and the merge of the Sorter step. Run from the command
+ * line with:
+ * <p/>
+ * java weka.knowledgeflow.steps.SorterTest
+ *
+ * @version $Revision$
+ */
+public class SorterTest extends TestCase {
+
+  /** Number of instances to sort */
+  protected static final int NUM_INSTANCES = 200;
+
+  /** Number of runs written to disk (plus one held in memory) */
+  protected static final int NUM_RUNS = 4;
+
+  /** Index of the attribute holding the original position of an instance */
+  protected static final int SEQ = 2;
+
+  /** The structure of the data */
+  protected Instances m_structure;
+
+  /** The comparator to sort with */
+  protected Sorter.SortComparator m_comparator;
+
+  /** Run files to delete after each test */
+  protected List<File> m_files;
+
+  /**
+   * Constructs the <code>SorterTest</code>.
+   *
+   * @param name the name of the test
+   */
+  public SorterTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    ArrayList<Attribute> atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("key"));
+    atts.add(new Attribute("name", (List<String>) null));
+    atts.add(new Attribute("seq"));
+    m_structure = new Instances("sorter", atts, 0);
+
+    // sort on the string attribute and then on the key, descending
+    List<Sorter.SortRule> rules = new ArrayList<Sorter.SortRule>();
+    rules.add(new Sorter.SortRule("name", false));
+    rules.add(new Sorter.SortRule("key", true));
+    for (Sorter.SortRule r : rules) {
+      r.init(Environment.getSystemWide(), m_structure);
+    }
+    m_comparator = new Sorter.SortComparator(rules);
+    m_files = new ArrayList<File>();
+  }
+
+  @Override
+  protected void tearDown() {
+    for (File f : m_files) {
+      f.delete();
+    }
+    m_files = null;
+    m_structure = null;
+    m_comparator = null;
+  }
+
+  /**
+   * Creates instances with few distinct keys and names, so that there are
+   * many duplicates, and some missing values of each
+   *
+   * @return the holders of the instances
+   */
+  protected List<Sorter.InstanceHolder> makeHolders() {
+    String[] names = { "pear", "apple", "fig", "\u00c4pfel" };
+    Random r = new Random(1);
+    List<Sorter.InstanceHolder> result =
+      new ArrayList<Sorter.InstanceHolder>();
+
+    for (int i = 0; i < NUM_INSTANCES; i++) {
+      double[] vals = new double[3];
+      vals[0] = r.nextInt(8) == 0 ? Utils.missingValue() : r.nextInt(3);
+      vals[2] = i;
+      String name = null;
+      if (r.nextInt(8) == 0) {
+        vals[1] = Utils.missingValue();
+      } else {
+        name = names[r.nextInt(names.length)];
+        vals[1] = m_structure.attribute(1).addStringValue(name);
+      }
+
+      Sorter.InstanceHolder holder = new Sorter.InstanceHolder();
+      holder.m_instance = new DenseInstance(1.0, vals);
+      holder.m_instance.setDataset(m_structure);
+      if (name != null) {
+        holder.m_stringVals = new HashMap<String, String>();
+        holder.m_stringVals.put("name", name);
+      }
+      result.add(holder);
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes a sorted run to a temp file
+   *
+   * @param run the instances in the run
+   * @return the file
+   * @throws Exception if writing fails
+   */
+  protected File writeRun(List<Sorter.InstanceHolder> run) throws Exception {
+    File file = File.createTempFile("SorterTest", ".tmp");
+    m_files.add(file);
+    Sorter.RunWriter writer = new Sorter.RunWriter(file, m_structure);
+    for (Sorter.InstanceHolder h : run) {
+      writer.write(h);
+    }
+    writer.close();
+    return file;
+  }
+
+  /**
+   * Checks that the merged output is in the same order as a stable sort of
+   * all the input, and that the values survived the trip through the run
+   * files
+   */
+  public void testMergeIsSortedAndStable() throws Exception {
+    List<Sorter.InstanceHolder> input = makeHolders();
+
+    // sort chunks of the input into runs, as the Sorter does when its buffer
+    // fills up. The last run stays in memory
+    int runSize = NUM_INSTANCES / (NUM_RUNS + 1);
+    Sorter.RunReader[] readers = new Sorter.RunReader[NUM_RUNS];
+    Sorter.InstanceHolder[] heads = new Sorter.InstanceHolder[NUM_RUNS + 1];
+    for (int i = 0; i < NUM_RUNS; i++) {
+      List<Sorter.InstanceHolder> run =
+        new ArrayList<Sorter.InstanceHolder>(input.subList(i * runSize,
+          (i + 1) * runSize));
+      Collections.sort(run, m_comparator);
+      readers[i] = new Sorter.RunReader(writeRun(run), m_structure);
+      heads[i] = readers[i].next();
+    }
+    List<Sorter.InstanceHolder> memory =
+      new ArrayList<Sorter.InstanceHolder>(input.subList(NUM_RUNS * runSize,
+        NUM_INSTANCES));
+    Collections.sort(memory, m_comparator);
+    int memPos = 0;
+    heads[NUM_RUNS] = memory.get(memPos++);
+
+    List<Sorter.InstanceHolder> merged =
+      new ArrayList<Sorter.InstanceHolder>();
+    Sorter.RunHeap heap = new Sorter.RunHeap(heads, m_comparator);
+    while (heap.size() > 0) {
+      int source = heap.top();
+      merged.add(heads[source]);
+      if (source == NUM_RUNS) {
+        heads[source] = memPos < memory.size() ? memory.get(memPos++) : null;
+      } else {
+        heads[source] = readers[source].next();
+        if (heads[source] == null) {
+          readers[source].close();
+        }
+      }
+      heap.replaceTop();
+    }
+
+    List<Sorter.InstanceHolder> expected =
+      new ArrayList<Sorter.InstanceHolder>(input);
+    Collections.sort(expected, m_comparator);
+
+    assertEquals(NUM_INSTANCES, merged.size());
+    for (int i = 0; i < NUM_INSTANCES; i++) {
+      Sorter.InstanceHolder e = expected.get(i);
+      Sorter.InstanceHolder m = merged.get(i);
+      if (i > 0) {
+        assertTrue("Not sorted at " + i,
+          m_comparator.compare(merged.get(i - 1), m) <= 0);
+      }
+      // equal instances must come out in their original order
+      assertEquals("Not stable at " + i, e.m_instance.value(SEQ),
+        m.m_instance.value(SEQ), 0);
+
+      assertEquals(e.m_instance.isMissing(0), m.m_instance.isMissing(0));
+      if (!e.m_instance.isMissing(0)) {
+        assertEquals(e.m_instance.value(0), m.m_instance.value(0), 0);
+      }
+      assertEquals(e.m_instance.isMissing(1), m.m_instance.isMissing(1));
+      if (!e.m_instance.isMissing(1)) {
+        assertEquals(e.m_stringVals.get("name"), m.m_stringVals.get("name"));
+      }
+    }
+
+    // missing names sort last
+    assertTrue(merged.get(NUM_INSTANCES - 1).m_instance.isMissing(1));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SorterTest.class);
+  }
+
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}